@@ -0,0 +1,205 @@
+package fr.univtln.bruno.samples.jaxrs.accesslog;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.java.Log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The access log of the server : the threads of the requests put their records in a ring buffer without waiting,
+ * a background thread writes them as JSON lines to a rotating file, or to its logger if there is no file.
+ * The records are dropped (and counted) when the writer cannot keep up.
+ */
+@Log
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class AccessLog implements Closeable {
+    /**
+     * The access log of the server.
+     */
+    public static final AccessLog accesses = new AccessLog(AccessLogConfig.fromSystemProperties());
+    private static final ObjectWriter JSON = new ObjectMapper().writerFor(AccessRecord.class);
+    //The pause of the writer when there is nothing to write.
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    AccessLogConfig config;
+    RingBuffer<AccessRecord> buffer;
+    RotatingFile file;
+    Thread writer;
+    LongAdder recorded = new LongAdder();
+    LongAdder dropped = new LongAdder();
+    LongAdder slow = new LongAdder();
+    //Written or failed by the writer.
+    LongAdder written = new LongAdder();
+    LongAdder failed = new LongAdder();
+    //The written records flushed to the file, set by the writer.
+    @NonFinal
+    volatile long flushed;
+    @NonFinal
+    volatile boolean closed;
+
+    /**
+     * Creates an access log and starts its writer.
+     *
+     * @param config the configuration
+     */
+    public AccessLog(AccessLogConfig config) {
+        this.config = config;
+        this.buffer = new RingBuffer<>(config.getBufferSize());
+        RotatingFile rotatingFile = null;
+        if (config.getFile() != null)
+            try {
+                rotatingFile = new RotatingFile(config.getFile(), config.getMaxFileSize(), config.getFiles());
+            } catch (IOException e) {
+                log.severe("The access log cannot be opened, it is written to the logger : " + e.getMessage());
+            }
+        this.file = rotatingFile;
+        this.writer = new Thread(this::drain, "access-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * @return whether a new request is logged.
+     */
+    public boolean sample() {
+        return sample(config.getSampleRate());
+    }
+
+    /**
+     * @return whether the payloads of a new request are logged.
+     */
+    public boolean samplePayload() {
+        return sample(config.getPayloadSampleRate());
+    }
+
+    private static boolean sample(double rate) {
+        return rate >= 1 || rate > 0 && ThreadLocalRandom.current().nextDouble() < rate;
+    }
+
+    public boolean isSlow(long latencyMicros) {
+        return latencyMicros >= config.getSlowMillis() * 1000;
+    }
+
+    public int getMaxPayloadSize() {
+        return config.getMaxPayloadSize();
+    }
+
+    /**
+     * Adds a record without waiting.
+     *
+     * @param record the record
+     * @return false if it is dropped because the buffer is full.
+     */
+    public boolean record(AccessRecord record) {
+        if (record.isSlow()) slow.increment();
+        if (!buffer.offer(record)) {
+            dropped.increment();
+            return false;
+        }
+        recorded.increment();
+        return true;
+    }
+
+    private void drain() {
+        while (true) {
+            AccessRecord record = buffer.poll();
+            if (record != null) write(record);
+            else {
+                long count = written.sum();
+                if (flushed < count) {
+                    flush();
+                    flushed = count;
+                }
+                if (closed) return;
+                LockSupport.parkNanos(IDLE_NANOS);
+            }
+        }
+    }
+
+    private void write(AccessRecord record) {
+        try {
+            String line = JSON.writeValueAsString(record);
+            if (file == null) log.info(line);
+            else file.write(line);
+        } catch (IOException e) {
+            //Said once, then counted.
+            if (failed.sum() == 0) log.warning("Access record not written : " + e.getMessage());
+            failed.increment();
+        }
+        written.increment();
+    }
+
+    private void flush() {
+        if (file == null) return;
+        try {
+            file.flush();
+        } catch (IOException e) {
+            log.warning("Access log not flushed : " + e.getMessage());
+        }
+    }
+
+    /**
+     * Waits for the records to be written.
+     *
+     * @param timeoutMillis the maximum wait
+     * @return whether all the records added so far are written and flushed.
+     */
+    public boolean flush(long timeoutMillis) throws InterruptedException {
+        long target = recorded.sum();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (flushed < target) {
+            if (System.nanoTime() > deadline) return false;
+            Thread.sleep(1);
+        }
+        return true;
+    }
+
+    /**
+     * Writes the remaining records and closes the file.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (file != null) file.close();
+    }
+
+    /**
+     * @return the counts of the records since the start.
+     */
+    public Statistics getStatistics() {
+        return new Statistics(config.getFile() == null ? null : config.getFile().toString(), buffer.capacity(),
+                buffer.size(), recorded.sum(), dropped.sum(), slow.sum(), written.sum(), failed.sum(),
+                file == null ? 0 : file.getRotations());
+    }
+
+    @Getter
+    @AllArgsConstructor
+    @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+    public static class Statistics {
+        String file;
+        int capacity;
+        int pending;
+        long recorded;
+        long dropped;
+        long slow;
+        long written;
+        long failed;
+        long rotations;
+    }
+}
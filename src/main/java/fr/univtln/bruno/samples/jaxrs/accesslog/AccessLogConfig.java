@@ -0,0 +1,66 @@
+package fr.univtln.bruno.samples.jaxrs.accesslog;
+
+import lombok.AccessLevel;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+
+import java.nio.file.Path;
+
+/**
+ * The configuration of the access log, read from the system properties (-Dlibrary.access.file=... on the command line).
+ */
+@Getter
+@Builder
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class AccessLogConfig {
+    public static final String FILE_PROPERTY = "library.access.file";
+    public static final String FILE_SIZE_PROPERTY = "library.access.file.bytes";
+    public static final String FILES_PROPERTY = "library.access.files";
+    public static final String BUFFER_PROPERTY = "library.access.buffer";
+    public static final String SAMPLE_PROPERTY = "library.access.sample";
+    public static final String PAYLOAD_SAMPLE_PROPERTY = "library.access.payload.sample";
+    public static final String PAYLOAD_SIZE_PROPERTY = "library.access.payload.bytes";
+    public static final String SLOW_PROPERTY = "library.access.slow.ms";
+
+    //The log file, without one the records are written to the logger of the access log.
+    Path file;
+    //The size beyond which the file is rotated and the number of rotated files kept.
+    @Builder.Default
+    long maxFileSize = 10L << 20;
+    @Builder.Default
+    int files = 5;
+    //The records waiting for the writer, the next ones are dropped.
+    @Builder.Default
+    int bufferSize = 8192;
+    //The part of the requests which are logged, and of those whose payloads are logged (0 to 1).
+    @Builder.Default
+    double sampleRate = 1;
+    @Builder.Default
+    double payloadSampleRate = 0;
+    //The bytes kept of each payload.
+    @Builder.Default
+    int maxPayloadSize = 4096;
+    //The slower requests are always logged.
+    @Builder.Default
+    long slowMillis = 1000;
+
+    /**
+     * Reads the configuration from the system properties.
+     *
+     * @return the configuration
+     */
+    public static AccessLogConfig fromSystemProperties() {
+        String file = System.getProperty(FILE_PROPERTY);
+        return AccessLogConfig.builder()
+                .file(file == null || file.isBlank() ? null : Path.of(file))
+                .maxFileSize(Long.getLong(FILE_SIZE_PROPERTY, 10L << 20))
+                .files(Integer.getInteger(FILES_PROPERTY, 5))
+                .bufferSize(Integer.getInteger(BUFFER_PROPERTY, 8192))
+                .sampleRate(Double.parseDouble(System.getProperty(SAMPLE_PROPERTY, "1")))
+                .payloadSampleRate(Double.parseDouble(System.getProperty(PAYLOAD_SAMPLE_PROPERTY, "0")))
+                .maxPayloadSize(Integer.getInteger(PAYLOAD_SIZE_PROPERTY, 4096))
+                .slowMillis(Long.getLong(SLOW_PROPERTY, 1000))
+                .build();
+    }
+}
@@ -0,0 +1,179 @@
+package fr.univtln.bruno.samples.jaxrs.accesslog;
+
+import jakarta.annotation.Priority;
+import jakarta.ws.rs.container.*;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.ext.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records each request in the {@link AccessLog} : method, path, status, size of the response body, latency and
+ * authentication scheme. The latency runs from the first filter to the end of the response body.
+ * It is the first request filter and the last response filter, the payloads of the sampled requests
+ * are copied while they are read and written.
+ */
+@Provider
+@PreMatching
+@Priority(AccessLogFilter.PRIORITY)
+public class AccessLogFilter implements ContainerRequestFilter, ContainerResponseFilter, ReaderInterceptor, WriterInterceptor {
+    //Before the authentication (1000) and every other filter.
+    static final int PRIORITY = 100;
+    /**
+     * The property of the request giving the System.nanoTime() of its start, for the other measures.
+     */
+    public static final String START_PROPERTY = AccessLogFilter.class.getName() + ".start";
+    private static final String SAMPLED_PROPERTY = AccessLogFilter.class.getName() + ".sampled";
+    private static final String REQUEST_PAYLOAD_PROPERTY = AccessLogFilter.class.getName() + ".request";
+    private static final String RECORD_PROPERTY = AccessLogFilter.class.getName() + ".record";
+
+    @Override
+    public void filter(ContainerRequestContext request) {
+        request.setProperty(START_PROPERTY, System.nanoTime());
+        request.setProperty(SAMPLED_PROPERTY, AccessLog.accesses.sample());
+        if (AccessLog.accesses.samplePayload())
+            request.setProperty(REQUEST_PAYLOAD_PROPERTY, new Copy(AccessLog.accesses.getMaxPayloadSize()));
+    }
+
+    @Override
+    public Object aroundReadFrom(ReaderInterceptorContext context) throws IOException {
+        Copy copy = (Copy) context.getProperty(REQUEST_PAYLOAD_PROPERTY);
+        if (copy != null && isText(context.getMediaType()))
+            context.setInputStream(copy.tee(context.getInputStream()));
+        return context.proceed();
+    }
+
+    @Override
+    public void filter(ContainerRequestContext request, ContainerResponseContext response) {
+        Object start = request.getProperty(START_PROPERTY);
+        if (start == null) return;
+        AccessRecord.AccessRecordBuilder record = AccessRecord.builder()
+                .method(request.getMethod())
+                .path(request.getUriInfo().getRequestUri().getRawPath())
+                .status(response.getStatus())
+                .authScheme(authScheme(request));
+        Copy requestPayload = (Copy) request.getProperty(REQUEST_PAYLOAD_PROPERTY);
+        if (requestPayload != null && !requestPayload.isEmpty()) record.requestPayload(requestPayload.toString());
+        //The record ends with the body, if there is one.
+        if (response.hasEntity()) request.setProperty(RECORD_PROPERTY, record);
+        else record(record, (long) start, (boolean) request.getProperty(SAMPLED_PROPERTY), 0);
+    }
+
+    @Override
+    public void aroundWriteTo(WriterInterceptorContext context) throws IOException {
+        AccessRecord.AccessRecordBuilder record = (AccessRecord.AccessRecordBuilder) context.getProperty(RECORD_PROPERTY);
+        if (record == null) {
+            context.proceed();
+            return;
+        }
+        Copy copy = context.getProperty(REQUEST_PAYLOAD_PROPERTY) != null && isText(context.getMediaType())
+                ? new Copy(AccessLog.accesses.getMaxPayloadSize()) : null;
+        Count count = new Count(context.getOutputStream(), copy);
+        context.setOutputStream(count);
+        try {
+            context.proceed();
+        } finally {
+            if (copy != null) record.responsePayload(copy.toString());
+            record(record, (long) context.getProperty(START_PROPERTY), (boolean) context.getProperty(SAMPLED_PROPERTY), count.count);
+        }
+    }
+
+    private static void record(AccessRecord.AccessRecordBuilder record, long start, boolean sampled, long bytes) {
+        long latencyMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+        boolean slow = AccessLog.accesses.isSlow(latencyMicros);
+        if (!sampled && !slow) return;
+        AccessLog.accesses.record(record.timestamp(System.currentTimeMillis())
+                .latencyMicros(latencyMicros).slow(slow).bytes(bytes).build());
+    }
+
+    //The scheme of the security context, or of the credentials when they were refused.
+    private static String authScheme(ContainerRequestContext request) {
+        if (request.getSecurityContext() != null && request.getSecurityContext().getAuthenticationScheme() != null)
+            return request.getSecurityContext().getAuthenticationScheme();
+        String authorization = request.getHeaderString(HttpHeaders.AUTHORIZATION);
+        if (authorization == null || authorization.isBlank()) return null;
+        int space = authorization.indexOf(' ');
+        return space < 0 ? authorization : authorization.substring(0, space);
+    }
+
+    //The binary payloads (CBOR, Smile...) are not copied.
+    private static boolean isText(MediaType type) {
+        if (type == null) return false;
+        String subtype = type.getSubtype();
+        return "text".equals(type.getType()) || subtype.endsWith("json") || subtype.endsWith("xml")
+                || subtype.equals(MediaType.APPLICATION_FORM_URLENCODED_TYPE.getSubtype());
+    }
+
+    //The first bytes of a payload.
+    private static class Copy {
+        private final int limit;
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        Copy(int limit) {
+            this.limit = limit;
+        }
+
+        void write(int b) {
+            if (bytes.size() < limit) bytes.write(b);
+        }
+
+        void write(byte[] b, int off, int len) {
+            bytes.write(b, off, Math.max(0, Math.min(len, limit - bytes.size())));
+        }
+
+        boolean isEmpty() {
+            return bytes.size() == 0;
+        }
+
+        InputStream tee(InputStream in) {
+            return new FilterInputStream(in) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b >= 0) write(b);
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int read = super.read(b, off, len);
+                    if (read > 0) write(b, off, read);
+                    return read;
+                }
+            };
+        }
+
+        @Override
+        public String toString() {
+            return bytes.toString(StandardCharsets.UTF_8);
+        }
+    }
+
+    //Counts the bytes of the response body and copies the first ones if sampled.
+    private static class Count extends FilterOutputStream {
+        private final Copy copy;
+        private long count;
+
+        Count(OutputStream out, Copy copy) {
+            super(out);
+            this.copy = copy;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+            if (copy != null) copy.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+            if (copy != null) copy.write(b, off, len);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package fr.univtln.bruno.samples.jaxrs.accesslog;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AccessLevel;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+import lombok.experimental.FieldDefaults;
+
+/**
+ * A line of the access log, written as a JSON object. The payloads are only given for the sampled requests.
+ */
+@Getter
+@Builder
+@ToString
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class AccessRecord {
+    //The end of the response, in milliseconds since the epoch.
+    long timestamp;
+    String method;
+    String path;
+    int status;
+    //The size of the response body.
+    long bytes;
+    long latencyMicros;
+    //Basic, Bearer... null without credentials.
+    String authScheme;
+    //Above the slow request threshold.
+    boolean slow;
+    String requestPayload;
+    String responsePayload;
+}
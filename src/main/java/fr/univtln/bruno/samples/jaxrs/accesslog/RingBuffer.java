@@ -0,0 +1,89 @@
+package fr.univtln.bruno.samples.jaxrs.accesslog;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded queue without locks for many producers and a single consumer.
+ * A producer claims a slot with a compare and set on the tail, the sequence of each slot tells whether it is
+ * free or filled for a given position. A full buffer refuses the elements instead of blocking the producers.
+ *
+ * @param <T> the type of the elements
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class RingBuffer<T> {
+    AtomicReferenceArray<T> slots;
+    //The position a slot is free for, or this position + 1 once it is filled.
+    AtomicLongArray sequences;
+    int mask;
+    AtomicLong tail = new AtomicLong();
+    //Only moved by the consumer.
+    AtomicLong head = new AtomicLong();
+
+    /**
+     * Creates a buffer.
+     *
+     * @param capacity the minimum number of elements, rounded up to a power of two
+     */
+    public RingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        slots = new AtomicReferenceArray<>(size);
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) sequences.set(i, i);
+        mask = size - 1;
+    }
+
+    /**
+     * Adds an element, from any thread.
+     *
+     * @param element the element
+     * @return false if the buffer is full.
+     */
+    public boolean offer(T element) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    slots.lazySet(index, element);
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) return false;
+            else position = tail.get();
+        }
+    }
+
+    /**
+     * Removes the oldest element, from the consumer thread only.
+     *
+     * @return the element or null if there is none.
+     */
+    public T poll() {
+        long position = head.get();
+        int index = (int) (position & mask);
+        if (sequences.get(index) != position + 1) return null;
+        T element = slots.get(index);
+        slots.lazySet(index, null);
+        sequences.set(index, position + mask + 1);
+        head.set(position + 1);
+        return element;
+    }
+
+    /**
+     * @return the number of elements, approximate while they are added.
+     */
+    public int size() {
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+}
@@ -0,0 +1,77 @@
+package fr.univtln.bruno.samples.jaxrs.accesslog;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A file of lines rotated when it exceeds a size : access.log becomes access.log.1, access.log.1 becomes
+ * access.log.2... and the oldest one beyond the number of kept files is replaced.
+ * It is written by a single thread.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE)
+class RotatingFile implements Closeable {
+    final Path path;
+    final long maxSize;
+    final int files;
+    Writer out;
+    long size;
+    //Read by the statistics.
+    @Getter
+    volatile long rotations;
+
+    RotatingFile(Path path, long maxSize, int files) throws IOException {
+        this.path = path;
+        this.maxSize = maxSize;
+        this.files = files;
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        open();
+    }
+
+    private void open() throws IOException {
+        out = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        size = Files.size(path);
+    }
+
+    private Path rotated(int number) {
+        return path.resolveSibling(path.getFileName() + "." + number);
+    }
+
+    void write(String line) throws IOException {
+        //The characters are counted as bytes, the records are mostly ASCII.
+        if (size > 0 && size + line.length() + 1 > maxSize) rotate();
+        out.write(line);
+        out.write('\n');
+        size += line.length() + 1;
+    }
+
+    private void rotate() throws IOException {
+        out.close();
+        for (int number = files - 1; number > 0; number--)
+            if (Files.exists(rotated(number)))
+                Files.move(rotated(number), rotated(number + 1), StandardCopyOption.REPLACE_EXISTING);
+        if (files > 0) Files.move(path, rotated(1), StandardCopyOption.REPLACE_EXISTING);
+        else Files.delete(path);
+        rotations++;
+        open();
+    }
+
+    void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,146 @@
+package fr.univtln.bruno.samples.jaxrs.async;
+
+import fr.univtln.bruno.samples.jaxrs.exceptions.BusinessException;
+import jakarta.ws.rs.core.Response;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.java.Log;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs the heavy queries of the resources (filters, pages) on their own bounded pool, so that they do not hold
+ * the threads of the HTTP server : the cheap calls are still answered while the queries wait or run.
+ * A query is rejected with 503 when the queue is full and fails with 503 if it is not answered in time.
+ * The timeout is a deadline for the response : a query which has not started is dropped, a running one
+ * is interrupted. The scans of the library stop at the interrupt (see {@link
+ * fr.univtln.bruno.samples.jaxrs.model.Library#getAuthorsWithFilter}) and give their thread back,
+ * a query which does not check it runs to its end and its result is discarded.
+ */
+@Log
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class QueryExecutor {
+    public static final String THREADS_PROPERTY = "library.query.threads";
+    public static final String QUEUE_PROPERTY = "library.query.queue";
+    public static final String TIMEOUT_PROPERTY = "library.query.timeout.ms";
+    /**
+     * The executor of the queries of the server.
+     */
+    public static final QueryExecutor queries = new QueryExecutor(
+            Integer.getInteger(THREADS_PROPERTY, Runtime.getRuntime().availableProcessors()),
+            Integer.getInteger(QUEUE_PROPERTY, 256),
+            Long.getLong(TIMEOUT_PROPERTY, 5000));
+
+    ThreadPoolExecutor executor;
+    ScheduledExecutorService timer;
+    long timeoutMillis;
+    LongAdder completed = new LongAdder();
+    LongAdder rejected = new LongAdder();
+    LongAdder timedOut = new LongAdder();
+    //The time spent in the queue by the started queries.
+    LongAdder waitNanos = new LongAdder();
+    LongAdder started = new LongAdder();
+
+    /**
+     * Creates an executor.
+     *
+     * @param threads       the number of threads running the queries
+     * @param queue         the number of queries waiting for a thread beyond which they are rejected
+     * @param timeoutMillis the time after which a query fails and is interrupted, from its submission
+     */
+    public QueryExecutor(int threads, int queue, long timeoutMillis) {
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queue), daemons("query"), new ThreadPoolExecutor.AbortPolicy());
+        this.timer = Executors.newSingleThreadScheduledExecutor(daemons("query-timeout"));
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    private static ThreadFactory daemons(String name) {
+        AtomicInteger number = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + number.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Submits a query.
+     *
+     * @param query the query
+     * @param <T>   the type of its result
+     * @return the result to come : it fails with the exception of the query, or with a 503 if the query
+     * is rejected or times out (the query is then cancelled if it has not started, interrupted otherwise).
+     */
+    public <T> CompletableFuture<T> submit(Query<T> query) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        long submitted = System.nanoTime();
+        Future<?> task;
+        try {
+            task = executor.submit(() -> {
+                waitNanos.add(System.nanoTime() - submitted);
+                started.increment();
+                if (result.isDone()) return;
+                try {
+                    result.complete(query.get());
+                } catch (BusinessException | RuntimeException e) {
+                    //An interrupted query has already failed, with its timeout.
+                    result.completeExceptionally(e);
+                }
+                if (!Thread.interrupted()) completed.increment();
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            log.warning("Query rejected, " + executor.getQueue().size() + " queries waiting");
+            result.completeExceptionally(new BusinessException(Response.Status.SERVICE_UNAVAILABLE, "Too many queries"));
+            return result;
+        }
+        ScheduledFuture<?> timeout = timer.schedule(() -> {
+            //Counted before the caller sees the failure, uncounted if the query completed meanwhile.
+            timedOut.increment();
+            if (result.completeExceptionally(new BusinessException(Response.Status.SERVICE_UNAVAILABLE, "Query timed out")))
+                task.cancel(true);
+            else timedOut.decrement();
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+        result.whenComplete((value, exception) -> timeout.cancel(false));
+        return result;
+    }
+
+    /**
+     * @return the state of the pool and the counts of the queries since the start.
+     */
+    public Statistics getStatistics() {
+        long count = started.sum();
+        return new Statistics(executor.getMaximumPoolSize(), executor.getActiveCount(), executor.getQueue().size(),
+                executor.getQueue().remainingCapacity(), completed.sum(), rejected.sum(), timedOut.sum(),
+                count == 0 ? 0 : waitNanos.sum() / count / 1000);
+    }
+
+    /**
+     * A query run on the executor.
+     *
+     * @param <T> the type of its result
+     */
+    @FunctionalInterface
+    public interface Query<T> {
+        T get() throws BusinessException;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+    public static class Statistics {
+        int threads;
+        int active;
+        int queued;
+        int remainingCapacity;
+        long completed;
+        long rejected;
+        long timedOut;
+        long averageWaitMicros;
+    }
+}
@@ -0,0 +1,20 @@
+package fr.univtln.bruno.samples.jaxrs.binary;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.ext.Provider;
+
+/**
+ * Reads and writes entities in CBOR (RFC 8949).
+ */
+@Provider
+@Consumes(CborProvider.APPLICATION_CBOR)
+@Produces(CborProvider.APPLICATION_CBOR)
+public class CborProvider extends JacksonBinaryProvider {
+    public static final String APPLICATION_CBOR = "application/cbor";
+
+    public CborProvider() {
+        super(new CBORFactory());
+    }
+}
@@ -0,0 +1,69 @@
+package fr.univtln.bruno.samples.jaxrs.binary;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.univtln.bruno.samples.jaxrs.writers.LibraryViewJsonWriter;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.ext.MessageBodyReader;
+import jakarta.ws.rs.ext.MessageBodyWriter;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+/**
+ * Reads and writes entities in a binary format of Jackson. The model is mapped as in JSON
+ * (same annotations, so the authors and the books still refer to each other by id),
+ * only the encoding differs : it is smaller and faster to parse than text.
+ * The pinned views of the library are streamed as by the JSON writer.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public abstract class JacksonBinaryProvider implements MessageBodyReader<Object>, MessageBodyWriter<Object> {
+    @Getter
+    ObjectMapper mapper;
+
+    protected JacksonBinaryProvider(JsonFactory factory) {
+        this.mapper = LibraryViewJsonWriter.streamingMapper(factory);
+    }
+
+    //The raw types are left to the default providers.
+    private static boolean isMapped(Class<?> type) {
+        return type != String.class && type != byte[].class
+                && !InputStream.class.isAssignableFrom(type) && !OutputStream.class.isAssignableFrom(type);
+    }
+
+    @Override
+    public boolean isReadable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return isMapped(type);
+    }
+
+    @Override
+    public Object readFrom(Class<Object> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+                           MultivaluedMap<String, String> httpHeaders, InputStream entityStream) throws IOException {
+        //Read from a parser as the JSON provider does : the references to entities not in the document are left unresolved.
+        try (JsonParser parser = mapper.getFactory().createParser(entityStream)) {
+            return mapper.readerFor(mapper.constructType(genericType)).readValue(parser);
+        }
+    }
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return isMapped(type);
+    }
+
+    @Override
+    public void writeTo(Object entity, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+                        MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException {
+        if (LibraryViewJsonWriter.isView(type))
+            LibraryViewJsonWriter.write(mapper, entity, entityStream);
+        else
+            mapper.writeValue(entityStream, entity);
+    }
+}
@@ -0,0 +1,21 @@
+package fr.univtln.bruno.samples.jaxrs.binary;
+
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.ext.Provider;
+
+/**
+ * Reads and writes entities in Smile, the binary JSON of Jackson.
+ * Repeated property names are written once and then referred to.
+ */
+@Provider
+@Consumes(SmileProvider.APPLICATION_SMILE)
+@Produces(SmileProvider.APPLICATION_SMILE)
+public class SmileProvider extends JacksonBinaryProvider {
+    public static final String APPLICATION_SMILE = "application/x-jackson-smile";
+
+    public SmileProvider() {
+        super(new SmileFactory());
+    }
+}
@@ -0,0 +1,77 @@
+package fr.univtln.bruno.samples.jaxrs.bulk;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads the lines of a text as {@link java.io.BufferedReader#readLine()} does, but with a bounded length :
+ * the characters of a longer line are skipped up to its end instead of being kept, so a line without end
+ * cannot fill the memory. A line ends with '\n', a '\r' before it is removed.
+ * It is not thread safe.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE)
+final class BoundedLineReader {
+    final Reader reader;
+    final int maxLength;
+    final char[] buffer = new char[1 << 16];
+    final StringBuilder line = new StringBuilder();
+    int position;
+    int limit;
+
+    BoundedLineReader(Reader reader, int maxLength) {
+        this.reader = reader;
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * Reads the next line.
+     *
+     * @return the line without its end, or null at the end of the input.
+     * @throws LineTooLongException if the line is longer than the maximum length, it is skipped then.
+     * @throws IOException          if the input cannot be read.
+     */
+    String readLine() throws IOException {
+        line.setLength(0);
+        long length = 0;
+        boolean ended = false;
+        while (!ended) {
+            if (position == limit) {
+                int read = reader.read(buffer, 0, buffer.length);
+                if (read == -1) {
+                    if (length == 0) return null;
+                    break;
+                }
+                position = 0;
+                limit = read;
+            }
+            int start = position;
+            while (position < limit && buffer[position] != '\n') position++;
+            int count = position - start;
+            //One more character than the maximum is kept for the '\r' of a line ending with "\r\n".
+            line.append(buffer, start, (int) Math.min(count, Math.max(0, maxLength + 1L - line.length())));
+            length += count;
+            if (position < limit) {
+                position++;
+                ended = true;
+            }
+        }
+        if (length == line.length() && length > 0 && line.charAt(line.length() - 1) == '\r') {
+            line.setLength(line.length() - 1);
+            length--;
+        }
+        if (length > maxLength) throw new LineTooLongException(length, maxLength);
+        return line.toString();
+    }
+
+    /**
+     * Thrown for a line longer than the maximum length, the reader goes on at the next line.
+     */
+    static class LineTooLongException extends IOException {
+        LineTooLongException(long length, int maxLength) {
+            super("The line is too long (" + length + " characters, at most " + maxLength + ")");
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package fr.univtln.bruno.samples.jaxrs.bulk;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+
+import java.util.List;
+
+/**
+ * The outcome of a bulk import : the number of records read, added and rejected,
+ * the first errors with their line numbers and the throughput.
+ */
+@Getter
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@AllArgsConstructor
+public class ImportReport {
+    long records;
+    long authors;
+    long books;
+    long rejected;
+    List<LineError> errors;
+    long elapsedMillis;
+    long recordsPerSecond;
+
+    /**
+     * A rejected record.
+     */
+    @Getter
+    @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+    @AllArgsConstructor
+    public static class LineError {
+        long line;
+        String message;
+    }
+}
@@ -0,0 +1,202 @@
+package fr.univtln.bruno.samples.jaxrs.bulk;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import fr.univtln.bruno.samples.jaxrs.exceptions.BusinessException;
+import fr.univtln.bruno.samples.jaxrs.model.Library;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.java.Log;
+import org.eclipse.collections.api.map.primitive.IntObjectMap;
+import org.eclipse.collections.impl.list.mutable.primitive.LongArrayList;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Imports authors and books in bulk from newline delimited JSON, one record per line :
+ * <pre>
+ * {"type":"author","name":"Martin","firstname":"Jean","biography":"..."}
+ * {"type":"book","title":"...","authors":[1,2]}
+ * </pre>
+ * The books refer to the ids of existing authors (or of authors in the previous lines).
+ * The input is read line by line and each line is parsed with the Jackson streaming parser,
+ * the records are added in batches (one write lock and one wait for the journal per batch),
+ * so the memory used does not depend on the size of the input : a line longer than {@value #MAX_LINE_PROPERTY}
+ * characters (1 MiB by default) is skipped without being kept and rejected.
+ * An invalid record, or one the library refuses, is rejected with its line number, the import goes on.
+ * An importer is used for a single import, it is not thread safe.
+ */
+@Log
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class NdjsonImporter {
+    /**
+     * The media type of newline delimited JSON.
+     */
+    public static final String MEDIA_TYPE = "application/x-ndjson";
+    public static final String MAX_LINE_PROPERTY = "library.import.line.chars";
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final int BATCH_SIZE = 1000;
+    //Only the first errors are reported, the others are just counted.
+    private static final int MAX_ERRORS = 100;
+
+    final Library library;
+    final int maxLineLength;
+    final List<Library.Author> authors = new ArrayList<>(BATCH_SIZE);
+    final LongArrayList authorLines = new LongArrayList(BATCH_SIZE);
+    final List<Library.Book> books = new ArrayList<>(BATCH_SIZE);
+    final LongArrayList bookLines = new LongArrayList(BATCH_SIZE);
+    final List<ImportReport.LineError> errors = new ArrayList<>();
+    long records;
+    long addedAuthors;
+    long addedBooks;
+    long rejected;
+
+    public NdjsonImporter(Library library) {
+        this(library, Integer.getInteger(MAX_LINE_PROPERTY, 1 << 20));
+    }
+
+    /**
+     * @param library       the library to add the records to
+     * @param maxLineLength the maximum length of a line in characters
+     */
+    public NdjsonImporter(Library library, int maxLineLength) {
+        this.library = library;
+        this.maxLineLength = maxLineLength;
+    }
+
+    private static String text(JsonParser parser) throws IOException {
+        String value = parser.getValueAsString();
+        parser.skipChildren();
+        return value;
+    }
+
+    /**
+     * Reads the records of an input and adds them to the library.
+     *
+     * @param input the records, UTF-8 encoded
+     * @return the report
+     * @throws IOException if the input cannot be read.
+     */
+    public ImportReport importFrom(InputStream input) throws IOException {
+        long start = System.nanoTime();
+        BoundedLineReader reader =
+                new BoundedLineReader(new InputStreamReader(input, StandardCharsets.UTF_8), maxLineLength);
+        long lineNumber = 0;
+        while (true) {
+            String line;
+            try {
+                line = reader.readLine();
+            } catch (BoundedLineReader.LineTooLongException e) {
+                lineNumber++;
+                records++;
+                reject(lineNumber, e.getMessage());
+                continue;
+            }
+            if (line == null) break;
+            lineNumber++;
+            if (line.isBlank()) continue;
+            records++;
+            try {
+                parse(line, lineNumber);
+            } catch (JsonProcessingException e) {
+                reject(lineNumber, e.getOriginalMessage());
+            }
+        }
+        flush();
+
+        long elapsed = System.nanoTime() - start;
+        long recordsPerSecond = elapsed == 0 ? 0 : records * TimeUnit.SECONDS.toNanos(1) / elapsed;
+        log.info(() -> String.format("Imported %d authors and %d books, %d rejected, in %d ms (%d records/s)",
+                addedAuthors, addedBooks, rejected, TimeUnit.NANOSECONDS.toMillis(elapsed), recordsPerSecond));
+        return new ImportReport(records, addedAuthors, addedBooks, rejected, errors,
+                TimeUnit.NANOSECONDS.toMillis(elapsed), recordsPerSecond);
+    }
+
+    private void parse(String line, long lineNumber) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(line)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT)
+                throw new JsonParseException(parser, "A record must be a JSON object");
+            String type = null;
+            Library.Author.AuthorBuilder author = Library.Author.builder();
+            Library.Book.BookBuilder book = Library.Book.builder();
+            Set<Library.Author> bookAuthors = new HashSet<>();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                switch (field) {
+                    case "type":
+                        type = text(parser);
+                        break;
+                    case "name":
+                        author.name(text(parser));
+                        break;
+                    case "firstname":
+                        author.firstname(text(parser));
+                        break;
+                    case "biography":
+                        author.biography(text(parser));
+                        break;
+                    case "title":
+                        book.title(text(parser));
+                        break;
+                    case "authors":
+                        if (parser.currentToken() != JsonToken.START_ARRAY)
+                            throw new JsonParseException(parser, "The authors must be an array of ids");
+                        while (parser.nextToken() != JsonToken.END_ARRAY)
+                            bookAuthors.add(Library.Author.builder().id(parser.getLongValue()).build());
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+            if (parser.nextToken() != null) throw new JsonParseException(parser, "Unexpected data after the record");
+
+            if ("author".equals(type)) {
+                authors.add(author.build());
+                authorLines.add(lineNumber);
+                if (authors.size() == BATCH_SIZE) flushAuthors();
+            } else if ("book".equals(type)) {
+                books.add(book.authors(bookAuthors).build());
+                bookLines.add(lineNumber);
+                if (books.size() == BATCH_SIZE) flush();
+            } else
+                throw new JsonParseException(parser, "Unknown record type " + type);
+        }
+    }
+
+    private void reject(long lineNumber, String message) {
+        rejected++;
+        if (errors.size() < MAX_ERRORS) errors.add(new ImportReport.LineError(lineNumber, message));
+    }
+
+    //The books may refer to the pending authors, they are added first.
+    private void flush() {
+        flushAuthors();
+        if (books.isEmpty()) return;
+        IntObjectMap<BusinessException> bookErrors = library.addBooks(books);
+        bookErrors.forEachKeyValue((index, error) -> reject(bookLines.get(index), error.getMessage()));
+        addedBooks += books.size() - bookErrors.size();
+        books.clear();
+        bookLines.clear();
+    }
+
+    private void flushAuthors() {
+        if (authors.isEmpty()) return;
+        IntObjectMap<BusinessException> authorErrors = library.addAuthors(authors);
+        authorErrors.forEachKeyValue((index, error) -> reject(authorLines.get(index), error.getMessage()));
+        addedAuthors += authors.size() - authorErrors.size();
+        authors.clear();
+        authorLines.clear();
+    }
+}
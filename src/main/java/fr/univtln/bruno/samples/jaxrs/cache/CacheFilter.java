@@ -0,0 +1,165 @@
+package fr.univtln.bruno.samples.jaxrs.cache;
+
+import fr.univtln.bruno.samples.jaxrs.model.Library;
+import fr.univtln.bruno.samples.jaxrs.model.Version;
+import jakarta.annotation.Priority;
+import jakarta.ws.rs.HttpMethod;
+import jakarta.ws.rs.Priorities;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.container.*;
+import jakarta.ws.rs.core.*;
+import jakarta.ws.rs.ext.Provider;
+import jakarta.ws.rs.ext.WriterInterceptor;
+import jakarta.ws.rs.ext.WriterInterceptorContext;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Serves the methods annotated with {@link Cacheable} from the {@link ResponseCache} : on a hit the response is sent
+ * as it was encoded and the method is not called, on a miss the encoded response is copied while it is sent
+ * and kept for the version of the library read before the method was called.
+ * It runs after the authentication filters, and the conditional requests are evaluated against the kept validators.
+ */
+@Provider
+@Cacheable
+@Priority(Priorities.USER)
+public class CacheFilter implements ContainerRequestFilter, ContainerResponseFilter, WriterInterceptor {
+    private static final String KEY_PROPERTY = CacheFilter.class.getName() + ".key";
+    private static final String VERSION_PROPERTY = CacheFilter.class.getName() + ".version";
+    //The types produced by each method, in the order of its annotation.
+    private static final Map<Method, MediaType[]> PRODUCED = new ConcurrentHashMap<>();
+
+    @Context
+    ResourceInfo resourceInfo;
+
+    private static MediaType[] produced(Method method, Class<?> resource) {
+        Produces produces = method.getAnnotation(Produces.class);
+        if (produces == null) produces = resource.getAnnotation(Produces.class);
+        if (produces == null) return new MediaType[0];
+        return Arrays.stream(produces.value()).map(MediaType::valueOf).toArray(MediaType[]::new);
+    }
+
+    //The first produced type accepted by the client, in the order of its preferences.
+    private MediaType negotiate(ContainerRequestContext request) {
+        MediaType[] produced = PRODUCED.computeIfAbsent(resourceInfo.getResourceMethod(),
+                method -> produced(method, resourceInfo.getResourceClass()));
+        for (MediaType accepted : request.getAcceptableMediaTypes())
+            for (MediaType type : produced)
+                if (accepted.isCompatible(type)) return type;
+        return null;
+    }
+
+    private String key(ContainerRequestContext request, MediaType type) {
+        StringBuilder key = new StringBuilder(request.getUriInfo().getRequestUri().toString())
+                .append('\n').append(type);
+        Cacheable cacheable = resourceInfo.getResourceMethod().getAnnotation(Cacheable.class);
+        if (cacheable == null) cacheable = resourceInfo.getResourceClass().getAnnotation(Cacheable.class);
+        for (String header : cacheable.headers())
+            key.append('\n').append(header).append(':').append(request.getHeaderString(header));
+        return key.toString();
+    }
+
+    @Override
+    public void filter(ContainerRequestContext request) {
+        if (!HttpMethod.GET.equals(request.getMethod())) return;
+        MediaType type = negotiate(request);
+        //Nothing acceptable, the method is called and the client told so.
+        if (type == null) return;
+        String key = key(request, type);
+        //The version is read first : if the library changes in between, the response is kept for an older version.
+        Version version = Library.demoLibrary.getVersion();
+        ResponseCache.Entry entry = ResponseCache.responses.get(key, version);
+        if (entry == null) {
+            request.setProperty(KEY_PROPERTY, key);
+            request.setProperty(VERSION_PROPERTY, version);
+            return;
+        }
+        Response.ResponseBuilder notModified = evaluate(request.getRequest(), entry.getHeaders());
+        if (notModified != null) {
+            request.abortWith(notModified.build());
+            return;
+        }
+        Response.ResponseBuilder response = Response.status(entry.getStatus()).entity(entry.getBody());
+        entry.getHeaders().forEach((name, values) -> values.forEach(value -> response.header(name, value)));
+        request.abortWith(response.build());
+    }
+
+    private static Response.ResponseBuilder evaluate(Request request, MultivaluedMap<String, Object> headers) {
+        Object tag = headers.getFirst(HttpHeaders.ETAG);
+        Object lastModified = headers.getFirst(HttpHeaders.LAST_MODIFIED);
+        if (!(tag instanceof EntityTag)) return null;
+        if (lastModified instanceof Date)
+            return request.evaluatePreconditions((Date) lastModified, (EntityTag) tag);
+        return request.evaluatePreconditions((EntityTag) tag);
+    }
+
+    @Override
+    public void filter(ContainerRequestContext request, ContainerResponseContext response) {
+        //Only the complete responses are kept, not the errors nor the 304.
+        if (response.getStatus() != Response.Status.OK.getStatusCode() || !response.hasEntity())
+            request.removeProperty(KEY_PROPERTY);
+    }
+
+    @Override
+    public void aroundWriteTo(WriterInterceptorContext context) throws IOException {
+        String key = (String) context.getProperty(KEY_PROPERTY);
+        if (key == null) {
+            context.proceed();
+            return;
+        }
+        Copy copy = new Copy(context.getOutputStream(), ResponseCache.responses.getMaxEntrySize());
+        context.setOutputStream(copy);
+        context.proceed();
+        copy.flush();
+        if (copy.isComplete())
+            ResponseCache.responses.put(key, new ResponseCache.Entry((Version) context.getProperty(VERSION_PROPERTY),
+                    Response.Status.OK.getStatusCode(), new MultivaluedHashMap<>(context.getHeaders()), copy.toByteArray()));
+    }
+
+    //Copies what is written up to a limit, beyond it the response is only sent.
+    private static class Copy extends FilterOutputStream {
+        private final long limit;
+        private ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        Copy(OutputStream out, long limit) {
+            super(out);
+            this.limit = limit;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            if (bytes == null) return;
+            if (bytes.size() + 1 > limit) bytes = null;
+            else bytes.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            copy(b, off, len);
+        }
+
+        private void copy(byte[] b, int off, int len) {
+            if (bytes == null) return;
+            if (bytes.size() + len > limit) bytes = null;
+            else bytes.write(b, off, len);
+        }
+
+        boolean isComplete() {
+            return bytes != null;
+        }
+
+        byte[] toByteArray() {
+            return bytes.toByteArray();
+        }
+    }
+}
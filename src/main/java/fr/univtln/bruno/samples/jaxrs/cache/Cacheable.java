@@ -0,0 +1,22 @@
+package fr.univtln.bruno.samples.jaxrs.cache;
+
+import jakarta.ws.rs.NameBinding;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Keeps the encoded responses of a GET method while the library does not change (see {@link CacheFilter}).
+ * The responses are kept by request URI and negotiated media type, and by the values of the given request headers.
+ */
+@NameBinding
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.METHOD})
+public @interface Cacheable {
+    /**
+     * @return the names of the request headers the response depends on.
+     */
+    String[] headers() default {};
+}
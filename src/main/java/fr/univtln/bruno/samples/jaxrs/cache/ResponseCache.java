@@ -0,0 +1,159 @@
+package fr.univtln.bruno.samples.jaxrs.cache;
+
+import fr.univtln.bruno.samples.jaxrs.model.Version;
+import jakarta.ws.rs.core.MultivaluedMap;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The encoded responses (status, headers and body) by key, bounded by their total size :
+ * the least recently used responses are evicted first. A response is only given for the version of the library
+ * it was made from, the responses of older versions are dropped when they are looked up or evicted.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class ResponseCache {
+    public static final String CAPACITY_PROPERTY = "library.cache.bytes";
+    /**
+     * The cache of the responses of the server.
+     */
+    public static final ResponseCache responses = new ResponseCache(Long.getLong(CAPACITY_PROPERTY, 32L << 20));
+    //The bytes counted for the key, the headers and the entry besides the body.
+    private static final int ENTRY_OVERHEAD = 512;
+
+    final long capacity;
+    //In access order, the eldest is the least recently used.
+    final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    final ReentrantLock lock = new ReentrantLock();
+    long size;
+    long hits;
+    long misses;
+    long evictions;
+
+    /**
+     * Creates a cache.
+     *
+     * @param capacity the total size of the responses in bytes, 0 disables the cache
+     */
+    public ResponseCache(long capacity) {
+        this.capacity = capacity;
+    }
+
+    private static long sizeOf(Entry entry) {
+        return entry.body.length + ENTRY_OVERHEAD;
+    }
+
+    /**
+     * @return the size of the largest body kept, a larger one would evict too many others.
+     */
+    public long getMaxEntrySize() {
+        return capacity / 8;
+    }
+
+    /**
+     * Gets a response made from a version of the library.
+     *
+     * @param key     the key of the request
+     * @param version the current version of the library
+     * @return the response or null if there is none for this version.
+     */
+    public Entry get(String key, Version version) {
+        lock.lock();
+        try {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.version != version) {
+                remove(key);
+                entry = null;
+            }
+            if (entry == null) misses++;
+            else hits++;
+            return entry;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Keeps a response, the least recently used ones are evicted to make room.
+     *
+     * @param key   the key of the request
+     * @param entry the response
+     */
+    public void put(String key, Entry entry) {
+        if (entry.body.length > getMaxEntrySize()) return;
+        lock.lock();
+        try {
+            Entry previous = entries.put(key, entry);
+            if (previous != null) size -= sizeOf(previous);
+            size += sizeOf(entry);
+            Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+            while (size > capacity && eldest.hasNext()) {
+                size -= sizeOf(eldest.next().getValue());
+                eldest.remove();
+                evictions++;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) size -= sizeOf(entry);
+    }
+
+    /**
+     * Drops every response.
+     */
+    public void clear() {
+        lock.lock();
+        try {
+            entries.clear();
+            size = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of hits, misses and evictions since the start and the number and size of the responses.
+     */
+    public Statistics getStatistics() {
+        lock.lock();
+        try {
+            return new Statistics(hits, misses, evictions, entries.size(), size);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * An encoded response and the version of the library it was made from.
+     */
+    @Getter
+    @AllArgsConstructor
+    @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+    public static class Entry {
+        Version version;
+        int status;
+        MultivaluedMap<String, Object> headers;
+        byte[] body;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+    public static class Statistics {
+        long hits;
+        long misses;
+        long evictions;
+        int entries;
+        long bytes;
+    }
+}
@@ -1,6 +1,7 @@
 package fr.univtln.bruno.samples.jaxrs.mappers;
 
 import fr.univtln.bruno.samples.jaxrs.exceptions.BusinessException;
+import fr.univtln.bruno.samples.jaxrs.metrics.Metrics;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.ext.ExceptionMapper;
 import jakarta.ws.rs.ext.Provider;
@@ -10,7 +11,7 @@ import lombok.extern.java.Log;
 
 /**
  * The type Business exception mapper automatically produces a HTTP Response
- * if a BusinessException is thrown.
+ * if a BusinessException is thrown, and counts it by status in the {@link Metrics}.
  */
 @SuppressWarnings("unused")
 @Provider
@@ -18,6 +19,7 @@ import lombok.extern.java.Log;
 @Log
 public class BusinessExceptionMapper implements ExceptionMapper<BusinessException> {
     public Response toResponse(BusinessException ex) {
+        Metrics.metrics.businessException(ex.getStatus());
         return Response.status(ex.getStatus())
                 .entity(ex)
                 .build();
@@ -0,0 +1,93 @@
+package fr.univtln.bruno.samples.jaxrs.metrics;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of durations in microseconds, with the log-linear buckets of HdrHistogram : each power of two is split
+ * in 32 buckets, so a value is known within 3 % from 1 µs to 19 hours. Recording is an increment of a bucket and
+ * of the total, without lock nor allocation.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class Histogram {
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    //The larger values are counted in the last bucket.
+    private static final long MAX_VALUE = (1L << 36) - 1;
+    private static final int BUCKETS = index(MAX_VALUE) + 1;
+
+    AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    LongAdder count = new LongAdder();
+    LongAdder sum = new LongAdder();
+
+    //The values below 2 * 32 have a bucket each, above the buckets double in width with each power of two.
+    static int index(long value) {
+        if (value <= 0) return 0;
+        if (value > MAX_VALUE) value = MAX_VALUE;
+        int shift = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - SUB_BITS);
+        return (shift << SUB_BITS) + (int) (value >>> shift);
+    }
+
+    //The largest value of a bucket.
+    static long highestValue(int index) {
+        int shift = Math.max(0, (index >> SUB_BITS) - 1);
+        long lowest = (long) (index - (shift << SUB_BITS)) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * Records a duration.
+     *
+     * @param micros the duration in microseconds
+     */
+    public void record(long micros) {
+        counts.incrementAndGet(index(micros));
+        count.increment();
+        sum.add(micros);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSumMicros() {
+        return sum.sum();
+    }
+
+    /**
+     * Counts the recorded durations up to each bound, in one pass, within the precision of the buckets.
+     *
+     * @param bounds the bounds in microseconds, in increasing order
+     * @return the cumulative count for each bound
+     */
+    public long[] countsAtOrBelow(long[] bounds) {
+        long[] cumulative = new long[bounds.length];
+        long total = 0;
+        int bucket = 0;
+        for (int i = 0; i < bounds.length; i++) {
+            int last = index(bounds[i]);
+            for (; bucket <= last; bucket++) total += counts.get(bucket);
+            cumulative[i] = total;
+        }
+        return cumulative;
+    }
+
+    /**
+     * @param quantile the quantile, between 0 and 1
+     * @return the highest value of the bucket of the quantile in microseconds, 0 if nothing is recorded.
+     */
+    public long getValueAtQuantile(double quantile) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) total += counts.get(i);
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS && total > 0; i++) {
+            seen += counts.get(i);
+            if (seen >= Math.max(1, rank)) return highestValue(i);
+        }
+        return 0;
+    }
+}
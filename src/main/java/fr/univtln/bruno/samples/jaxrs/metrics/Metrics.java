@@ -0,0 +1,243 @@
+package fr.univtln.bruno.samples.jaxrs.metrics;
+
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+
+import java.lang.management.*;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The metrics of the server : the latency of each resource method by status class and media type and of each phase
+ * of its requests, the business exceptions by status and the memory and garbage collections of the JVM,
+ * given in the text format of Prometheus.
+ * The histograms of an endpoint are found without a map nor an allocation once its first responses are recorded.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class Metrics {
+    /**
+     * The metrics of the server.
+     */
+    public static final Metrics metrics = new Metrics();
+    /**
+     * The content type of the text format of Prometheus.
+     */
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    /**
+     * The system property which gives the metrics without authentication as well (setup/metrics/public).
+     */
+    public static final String PUBLIC_PROPERTY = "library.metrics.public";
+    //The bounds of the buckets of the latency, in seconds.
+    private static final String[] BOUNDS = {"0.0001", "0.00025", "0.0005", "0.001", "0.0025", "0.005", "0.01", "0.025",
+            "0.05", "0.1", "0.25", "0.5", "1", "2.5", "5", "10"};
+    private static final long[] BOUNDS_MICROS = Arrays.stream(BOUNDS)
+            .mapToLong(bound -> (long) (Double.parseDouble(bound) * 1_000_000)).toArray();
+
+    //By name, sorted for the output.
+    Map<String, Endpoint> endpoints = new ConcurrentSkipListMap<>();
+    AtomicLongArray businessExceptions = new AtomicLongArray(600);
+
+    /**
+     * Gives the metrics of an endpoint, created once when the resources are bound.
+     *
+     * @param name the name of the endpoint (Resource.method)
+     * @return its metrics
+     */
+    public Endpoint endpoint(String name) {
+        return endpoints.computeIfAbsent(name, Endpoint::new);
+    }
+
+    /**
+     * Counts a business exception sent as a response.
+     *
+     * @param status its status
+     */
+    public void businessException(Response.Status status) {
+        businessExceptions.incrementAndGet(status.getStatusCode());
+    }
+
+    public long getBusinessExceptions(Response.Status status) {
+        return businessExceptions.get(status.getStatusCode());
+    }
+
+    /**
+     * Writes every metric in the text format of Prometheus.
+     *
+     * @return the metrics
+     */
+    public String toPrometheus() {
+        StringBuilder out = new StringBuilder(16 * 1024);
+        writeLatencies(out);
+        writeBusinessExceptions(out);
+        writeJvm(out);
+        return out.toString();
+    }
+
+    private void writeLatencies(StringBuilder out) {
+        String name = "library_request_duration_seconds";
+        header(out, name, "histogram", "The time from the first filter to the end of the response body, by resource method, status class and media type.");
+        for (Endpoint endpoint : endpoints.values())
+            for (int statusClass = 1; statusClass <= 5; statusClass++)
+                for (Series series : endpoint.series.get(statusClass))
+                    writeHistogram(out, name, "endpoint=\"" + escape(endpoint.name) + "\",status=\"" + statusClass
+                            + "xx\",media_type=\"" + escape(series.mediaType) + "\"", series.histogram);
+
+        name = "library_phase_duration_seconds";
+        header(out, name, "histogram", "The time of each phase of the requests (see the Server-Timing header), by resource method.");
+        for (Endpoint endpoint : endpoints.values())
+            for (ServerTiming.Phase phase : ServerTiming.Phase.values())
+                if (endpoint.phase(phase).getCount() > 0)
+                    writeHistogram(out, name, "endpoint=\"" + escape(endpoint.name) + "\",phase=\"" + phase.getToken() + "\"",
+                            endpoint.phase(phase));
+    }
+
+    private static void writeHistogram(StringBuilder out, String name, String labels, Histogram histogram) {
+        long count = histogram.getCount();
+        long[] cumulative = histogram.countsAtOrBelow(BOUNDS_MICROS);
+        for (int i = 0; i < BOUNDS.length; i++)
+            sample(out, name + "_bucket", labels + ",le=\"" + BOUNDS[i] + "\"", Math.min(count, cumulative[i]));
+        sample(out, name + "_bucket", labels + ",le=\"+Inf\"", count);
+        sample(out, name + "_sum", labels, histogram.getSumMicros() / 1e6);
+        sample(out, name + "_count", labels, count);
+    }
+
+    private void writeBusinessExceptions(StringBuilder out) {
+        String name = "library_business_exceptions_total";
+        header(out, name, "counter", "The business exceptions sent as responses, by status.");
+        for (int status = 0; status < businessExceptions.length(); status++) {
+            long count = businessExceptions.get(status);
+            if (count > 0) sample(out, name, "status=\"" + status + "\"", count);
+        }
+    }
+
+    private static void writeJvm(StringBuilder out) {
+        header(out, "jvm_gc_collections_total", "counter", "The collections of each garbage collector.");
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            sample(out, "jvm_gc_collections_total", "gc=\"" + escape(gc.getName()) + "\"", Math.max(0, gc.getCollectionCount()));
+        header(out, "jvm_gc_collection_seconds_total", "counter", "The time spent by each garbage collector.");
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            sample(out, "jvm_gc_collection_seconds_total", "gc=\"" + escape(gc.getName()) + "\"", Math.max(0, gc.getCollectionTime()) / 1e3);
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        header(out, "jvm_memory_used_bytes", "gauge", "The memory used by area.");
+        sample(out, "jvm_memory_used_bytes", "area=\"heap\"", memory.getHeapMemoryUsage().getUsed());
+        sample(out, "jvm_memory_used_bytes", "area=\"nonheap\"", memory.getNonHeapMemoryUsage().getUsed());
+        header(out, "jvm_memory_committed_bytes", "gauge", "The memory committed by area.");
+        sample(out, "jvm_memory_committed_bytes", "area=\"heap\"", memory.getHeapMemoryUsage().getCommitted());
+        sample(out, "jvm_memory_committed_bytes", "area=\"nonheap\"", memory.getNonHeapMemoryUsage().getCommitted());
+        header(out, "jvm_memory_pool_used_bytes", "gauge", "The memory used by pool (eden, survivor, old...).");
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+            sample(out, "jvm_memory_pool_used_bytes", "pool=\"" + escape(pool.getName()) + "\"", pool.getUsage().getUsed());
+
+        //The allocations of the live threads, the rate of this sum shows the allocation rate of the requests.
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+            if (allocations.isThreadAllocatedMemorySupported() && allocations.isThreadAllocatedMemoryEnabled()) {
+                long total = 0;
+                for (long allocated : allocations.getThreadAllocatedBytes(threads.getAllThreadIds()))
+                    if (allocated > 0) total += allocated;
+                header(out, "jvm_threads_allocated_bytes", "gauge", "The bytes allocated by the live threads.");
+                sample(out, "jvm_threads_allocated_bytes", null, total);
+            }
+        }
+        header(out, "jvm_threads_live", "gauge", "The live threads.");
+        sample(out, "jvm_threads_live", null, threads.getThreadCount());
+        header(out, "jvm_uptime_seconds", "gauge", "The time since the start of the JVM.");
+        sample(out, "jvm_uptime_seconds", null, TimeUnit.MILLISECONDS.toSeconds(ManagementFactory.getRuntimeMXBean().getUptime()));
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, Object value) {
+        out.append(name);
+        if (labels != null) out.append('{').append(labels).append('}');
+        out.append(' ').append(value).append('\n');
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * The latency histograms of a resource method, by status class and media type.
+     */
+    public static class Endpoint {
+        @Getter
+        private final String name;
+        //By status class (index 0 for the invalid statuses), copied when a media type is added.
+        private final AtomicReferenceArray<Series[]> series = new AtomicReferenceArray<>(6);
+        //By phase of the requests (see ServerTiming).
+        private final Histogram[] phases = new Histogram[ServerTiming.Phase.values().length];
+
+        Endpoint(String name) {
+            this.name = name;
+            for (int i = 0; i < 6; i++) series.set(i, new Series[0]);
+            for (int i = 0; i < phases.length; i++) phases[i] = new Histogram();
+        }
+
+        /**
+         * @param phase a phase of the requests
+         * @return the histogram of its durations
+         */
+        public Histogram phase(ServerTiming.Phase phase) {
+            return phases[phase.ordinal()];
+        }
+
+        /**
+         * Gives the histogram of a response, it is created at the first response of its status class and media type.
+         *
+         * @param status the status of the response
+         * @param type   its media type or null without a body
+         * @return the histogram
+         */
+        public Histogram histogram(int status, MediaType type) {
+            int statusClass = status >= 100 && status < 600 ? status / 100 : 0;
+            String mainType = type == null ? null : type.getType();
+            String subtype = type == null ? null : type.getSubtype();
+            for (Series candidate : series.get(statusClass))
+                if (candidate.matches(mainType, subtype)) return candidate.histogram;
+            return add(statusClass, mainType, subtype);
+        }
+
+        private synchronized Histogram add(int statusClass, String mainType, String subtype) {
+            Series[] current = series.get(statusClass);
+            for (Series candidate : current)
+                if (candidate.matches(mainType, subtype)) return candidate.histogram;
+            Series[] extended = Arrays.copyOf(current, current.length + 1);
+            extended[current.length] = new Series(mainType, subtype);
+            series.set(statusClass, extended);
+            return extended[current.length].histogram;
+        }
+    }
+
+    //The histogram of a media type, compared without building its name.
+    private static class Series {
+        private final String mainType;
+        private final String subtype;
+        private final String mediaType;
+        private final Histogram histogram = new Histogram();
+
+        Series(String mainType, String subtype) {
+            this.mainType = mainType;
+            this.subtype = subtype;
+            this.mediaType = mainType == null ? "none" : (mainType + "/" + subtype).toLowerCase(Locale.ROOT);
+        }
+
+        boolean matches(String mainType, String subtype) {
+            if (this.mainType == null) return mainType == null;
+            return this.mainType.equalsIgnoreCase(mainType) && this.subtype.equalsIgnoreCase(subtype);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package fr.univtln.bruno.samples.jaxrs.metrics;
+
+import fr.univtln.bruno.samples.jaxrs.accesslog.AccessLogFilter;
+import jakarta.annotation.Priority;
+import jakarta.ws.rs.container.*;
+import jakarta.ws.rs.core.FeatureContext;
+import jakarta.ws.rs.ext.Provider;
+import jakarta.ws.rs.ext.WriterInterceptor;
+import jakarta.ws.rs.ext.WriterInterceptorContext;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Binds a {@link LatencyFilter} to each resource method with the histograms of the method, so that a request
+ * finds them without a lookup.
+ */
+@Provider
+public class MetricsFeature implements DynamicFeature {
+    @Override
+    public void configure(ResourceInfo resourceInfo, FeatureContext context) {
+        String name = resourceInfo.getResourceClass().getSimpleName() + "." + resourceInfo.getResourceMethod().getName();
+        context.register(new LatencyFilter(Metrics.metrics.endpoint(name)));
+    }
+
+    /**
+     * Records the latency of the responses of a resource method, from the start of the request given
+     * by the {@link AccessLogFilter} to the end of the response body.
+     */
+    @Priority(LatencyFilter.PRIORITY)
+    public static class LatencyFilter implements ContainerResponseFilter, WriterInterceptor {
+        //The response filters run by decreasing priority : after the ones which change the status.
+        static final int PRIORITY = 200;
+        private static final String HISTOGRAM_PROPERTY = LatencyFilter.class.getName() + ".histogram";
+        private final Metrics.Endpoint endpoint;
+
+        LatencyFilter(Metrics.Endpoint endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        @Override
+        public void filter(ContainerRequestContext request, ContainerResponseContext response) {
+            Histogram histogram = endpoint.histogram(response.getStatus(), response.getMediaType());
+            ServerTiming timing = ServerTiming.of(request);
+            if (timing != null) timing.setEndpoint(endpoint);
+            //The duration ends with the body, if there is one.
+            if (response.hasEntity()) request.setProperty(HISTOGRAM_PROPERTY, histogram);
+            else record(histogram, request.getProperty(AccessLogFilter.START_PROPERTY));
+        }
+
+        @Override
+        public void aroundWriteTo(WriterInterceptorContext context) throws IOException {
+            Histogram histogram = (Histogram) context.getProperty(HISTOGRAM_PROPERTY);
+            try {
+                context.proceed();
+            } finally {
+                if (histogram != null) record(histogram, context.getProperty(AccessLogFilter.START_PROPERTY));
+            }
+        }
+
+        private static void record(Histogram histogram, Object start) {
+            if (start instanceof Long)
+                histogram.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - (Long) start));
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package fr.univtln.bruno.samples.jaxrs.metrics;
+
+import jakarta.ws.rs.container.ContainerRequestContext;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.glassfish.jersey.server.monitoring.RequestEvent;
+import org.glassfish.jersey.server.monitoring.RequestEventListener;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The phases of a request in the pipeline of Jersey, timed from its events and from the {@link ServerTimingFilter}.
+ * They are given in the Server-Timing header of the response when the request asks for it (see
+ * {@link ServerTimingFilter#REQUEST_HEADER}), and each phase is recorded in the histograms of the resource method
+ * once the response is sent (see {@link Metrics}).
+ * A phase which did not happen (a request refused by a filter is not given to its method) is left out,
+ * its time is counted in the next phase.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class ServerTiming implements RequestEventListener {
+    /**
+     * The property of the request giving its timing.
+     */
+    public static final String PROPERTY = ServerTiming.class.getName();
+
+    //The System.nanoTime() of the start, then of the end of each phase, 0 if it did not happen.
+    final long[] marks = new long[Phase.values().length + 1];
+    //Set by the latency filter of the resource method.
+    Metrics.Endpoint endpoint;
+
+    /**
+     * Starts the timing of a request.
+     *
+     * @param request the request
+     */
+    public ServerTiming(ContainerRequestContext request) {
+        marks[0] = System.nanoTime();
+        request.setProperty(PROPERTY, this);
+    }
+
+    /**
+     * Gives the timing of a request.
+     *
+     * @param request the request
+     * @return its timing or null if it is not timed.
+     */
+    public static ServerTiming of(ContainerRequestContext request) {
+        return (ServerTiming) request.getProperty(PROPERTY);
+    }
+
+    @Override
+    public void onEvent(RequestEvent event) {
+        switch (event.getType()) {
+            case REQUEST_MATCHED:
+                end(Phase.MATCH);
+                break;
+            case REQUEST_FILTERED:
+                end(Phase.FILTERS);
+                break;
+            case RESOURCE_METHOD_FINISHED:
+                end(Phase.RESOURCE);
+                break;
+            case RESP_FILTERS_START:
+                end(Phase.ASYNC);
+                break;
+            case FINISHED:
+                end(Phase.WRITE);
+                record();
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Marks the end of a phase.
+     *
+     * @param phase the phase
+     */
+    public void end(Phase phase) {
+        marks[phase.ordinal() + 1] = System.nanoTime();
+    }
+
+    void setEndpoint(Metrics.Endpoint endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    /**
+     * Gives the duration of a phase.
+     *
+     * @param phase the phase
+     * @return its duration in nanoseconds, or -1 if it has not happened yet.
+     */
+    public long getNanos(Phase phase) {
+        int end = phase.ordinal() + 1;
+        if (marks[0] == 0 || marks[end] == 0) return -1;
+        int start = end - 1;
+        while (marks[start] == 0) start--;
+        return marks[end] - marks[start];
+    }
+
+    private void record() {
+        if (endpoint == null) return;
+        for (Phase phase : Phase.values()) {
+            long nanos = getNanos(phase);
+            if (nanos >= 0) endpoint.phase(phase).record(TimeUnit.NANOSECONDS.toMicros(nanos));
+        }
+    }
+
+    /**
+     * Writes the phases which happened so far and the total as the value of a Server-Timing header,
+     * the durations are in milliseconds.
+     *
+     * @return the value of the header
+     */
+    public String toHeader() {
+        StringBuilder header = new StringBuilder(256);
+        for (Phase phase : Phase.values()) {
+            long nanos = getNanos(phase);
+            if (nanos >= 0) append(header, phase.getToken(), phase.getDescription(), nanos);
+        }
+        append(header, "total", "Until the headers", System.nanoTime() - marks[0]);
+        return header.toString();
+    }
+
+    private static void append(StringBuilder header, String name, String description, long nanos) {
+        if (header.length() > 0) header.append(", ");
+        header.append(name).append(";desc=\"").append(description).append("\";dur=")
+                .append(String.format(Locale.ROOT, "%.3f", nanos / 1e6));
+    }
+
+    /**
+     * The phases of a request, in order.
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public enum Phase {
+        /**
+         * The pre-matching filters and the matching of the resource method.
+         */
+        MATCH("match", "Matching"),
+        /**
+         * The authentication filters (Basic, JWT).
+         */
+        AUTH("auth", "Authentication"),
+        /**
+         * The other request filters, such as the cache.
+         */
+        FILTERS("filters", "Request filters"),
+        /**
+         * The reading of the parameters and the body, and the resource method.
+         */
+        RESOURCE("resource", "Resource method"),
+        /**
+         * The wait for an asynchronous result (the queries) and the mapping of the exceptions.
+         */
+        ASYNC("async", "Async result"),
+        /**
+         * The response filters, such as the links of the pages.
+         */
+        RESPONSE_FILTERS("respfilters", "Response filters"),
+        /**
+         * The writing of the body (Jackson, JAXB...), after the headers : only in the statistics.
+         */
+        WRITE("write", "Body writing");
+
+        private final String token;
+        private final String description;
+    }
+}
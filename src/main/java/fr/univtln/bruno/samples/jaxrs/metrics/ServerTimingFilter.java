@@ -0,0 +1,43 @@
+package fr.univtln.bruno.samples.jaxrs.metrics;
+
+import jakarta.annotation.Priority;
+import jakarta.ws.rs.Priorities;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerRequestFilter;
+import jakarta.ws.rs.container.ContainerResponseContext;
+import jakarta.ws.rs.container.ContainerResponseFilter;
+import jakarta.ws.rs.ext.Provider;
+
+/**
+ * Ends the authentication phase of the {@link ServerTiming}, as the first request filter after the authentication
+ * filters, and the response filters phase, as one of the last response filters. The Server-Timing header is then
+ * added if the request has a {@link #REQUEST_HEADER} header : it gives the phases until the headers,
+ * the writing of the body is only in the statistics.
+ */
+@Provider
+@Priority(ServerTimingFilter.PRIORITY)
+public class ServerTimingFilter implements ContainerRequestFilter, ContainerResponseFilter {
+    /**
+     * The header of a request asking for the timing of the server.
+     */
+    public static final String REQUEST_HEADER = "X-Server-Timing";
+    public static final String RESPONSE_HEADER = "Server-Timing";
+    static final int PRIORITY = Priorities.AUTHENTICATION + 1;
+
+    @Override
+    public void filter(ContainerRequestContext request) {
+        ServerTiming timing = ServerTiming.of(request);
+        if (timing != null) timing.end(ServerTiming.Phase.AUTH);
+    }
+
+    @Override
+    public void filter(ContainerRequestContext request, ContainerResponseContext response) {
+        ServerTiming timing = ServerTiming.of(request);
+        if (timing == null) return;
+        timing.end(ServerTiming.Phase.RESPONSE_FILTERS);
+        //A response from the cache has the timing of the request it was made for.
+        if (request.getHeaderString(REQUEST_HEADER) != null)
+            response.getHeaders().putSingle(RESPONSE_HEADER, timing.toHeader());
+        else response.getHeaders().remove(RESPONSE_HEADER);
+    }
+}
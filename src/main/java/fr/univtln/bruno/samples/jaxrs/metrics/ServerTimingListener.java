@@ -0,0 +1,24 @@
+package fr.univtln.bruno.samples.jaxrs.metrics;
+
+import jakarta.ws.rs.ext.Provider;
+import org.glassfish.jersey.server.monitoring.ApplicationEvent;
+import org.glassfish.jersey.server.monitoring.ApplicationEventListener;
+import org.glassfish.jersey.server.monitoring.RequestEvent;
+import org.glassfish.jersey.server.monitoring.RequestEventListener;
+
+/**
+ * Gives a {@link ServerTiming} to each request, which follows the events of its processing by Jersey.
+ */
+@Provider
+public class ServerTimingListener implements ApplicationEventListener {
+    @Override
+    public void onEvent(ApplicationEvent event) {
+        //Only the requests are timed.
+    }
+
+    @Override
+    public RequestEventListener onRequest(RequestEvent requestEvent) {
+        //The start event is the one given here, not to the listener of the request.
+        return new ServerTiming(requestEvent.getContainerRequest());
+    }
+}
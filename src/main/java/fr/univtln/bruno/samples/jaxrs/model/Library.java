@@ -3,35 +3,64 @@ package fr.univtln.bruno.samples.jaxrs.model;
 import com.fasterxml.jackson.annotation.*;
 import fr.univtln.bruno.samples.jaxrs.exceptions.BusinessException;
 import fr.univtln.bruno.samples.jaxrs.exceptions.NotFoundException;
+import fr.univtln.bruno.samples.jaxrs.model.index.IdSets;
+import fr.univtln.bruno.samples.jaxrs.model.index.SortedIndex;
+import fr.univtln.bruno.samples.jaxrs.model.index.TrigramIndex;
+import fr.univtln.bruno.samples.jaxrs.model.query.AuthorQuery;
+import fr.univtln.bruno.samples.jaxrs.model.query.Cursor;
+import fr.univtln.bruno.samples.jaxrs.model.query.TopK;
+import fr.univtln.bruno.samples.jaxrs.model.store.Adjacency;
+import fr.univtln.bruno.samples.jaxrs.model.store.AuthorStore;
+import fr.univtln.bruno.samples.jaxrs.model.store.PersistentLongMap;
+import fr.univtln.bruno.samples.jaxrs.persistence.Checkpoint;
+import fr.univtln.bruno.samples.jaxrs.persistence.Journal;
+import fr.univtln.bruno.samples.jaxrs.persistence.Mutation;
 import fr.univtln.bruno.samples.jaxrs.resources.PaginationInfo;
 import jakarta.ws.rs.core.Response;
 import jakarta.xml.bind.annotation.*;
 import lombok.*;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.java.Log;
+import org.eclipse.collections.api.LongIterable;
+import org.eclipse.collections.api.map.primitive.IntObjectMap;
+import org.eclipse.collections.api.map.primitive.LongObjectMap;
+import org.eclipse.collections.api.map.primitive.MutableIntObjectMap;
 import org.eclipse.collections.api.map.primitive.MutableLongObjectMap;
-import org.eclipse.collections.impl.factory.primitive.LongObjectMaps;
+import org.eclipse.collections.api.set.primitive.LongSet;
+import org.eclipse.collections.api.set.primitive.MutableLongSet;
+import org.eclipse.collections.impl.factory.primitive.IntObjectMaps;
+import org.eclipse.collections.impl.factory.primitive.LongSets;
+import org.eclipse.collections.impl.lazy.LazyIterableAdapter;
+import org.eclipse.collections.impl.map.mutable.primitive.LongObjectHashMap;
 
 import java.io.Serializable;
-import java.security.InvalidParameterException;
-import java.util.Comparator;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
-
-import static fr.univtln.bruno.samples.jaxrs.model.Library.Field.valueOf;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongFunction;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 
 /**
  * The type Biblio model. A in memory instance of a Library model. Kind of a mock.
+ * It is shared by every request thread : writers are serialized by a {@link StampedLock}
+ * and readers first try an optimistic (lock free) read before falling back to a shared read lock.
+ * Mutations are recorded in a {@link Journal} (none by default) to make the library durable.
+ * The authors are kept in an {@link AuthorStore}, on the heap or off heap, the books without their authors,
+ * and the relation between them in an {@link Adjacency} of ids : the stored objects do not reference each other.
+ * The books and the relation are persistent : a write publishes new versions of them, so a reader can pin
+ * the whole library (see {@link #pin()}) and read it without blocking the writers nor being affected by them.
  */
 @Log
 @Getter
 @FieldDefaults(level = AccessLevel.PRIVATE)
-@NoArgsConstructor(staticName = "newInstance")
 @XmlRootElement
 public class Library {
     //An in memory instance of a Library model. Kind of a mock.
@@ -41,10 +70,80 @@ public class Library {
     private static final AtomicLong lastBookId = new AtomicLong(0);
 
     @JsonIgnore
-    final MutableLongObjectMap<Author> authors = LongObjectMaps.mutable.empty();
-    final MutableLongObjectMap<Book> books = LongObjectMaps.mutable.empty();
+    @Getter(AccessLevel.NONE)
+    final AuthorStore authors;
+    //The books without their authors.
+    @Getter(AccessLevel.NONE)
+    volatile PersistentLongMap<Book> books = PersistentLongMap.empty();
+    //The ids of the books of each author and of the authors of each book.
+    @Getter(AccessLevel.NONE)
+    volatile Adjacency relation = Adjacency.empty();
+
+    //Ordered secondary indexes of the authors for the sortable fields.
+    @Getter(AccessLevel.NONE)
+    final Map<Field, SortedIndex> sortIndexes = new EnumMap<>(Field.class);
+
+    {
+        for (Field field : Field.values())
+            if (field.isSortable()) sortIndexes.put(field, new SortedIndex());
+    }
+
+    //Inverted index of the biographies trigrams for the contains filter.
+    @Getter(AccessLevel.NONE)
+    final TrigramIndex biographyIndex = new TrigramIndex();
+
+    //Guards authors, books and indexes. Every mutation is done under the write lock, and a pin under the read lock.
+    @Getter(AccessLevel.NONE)
+    final StampedLock lock = new StampedLock();
+
+    //Records the mutations, appended under the write lock and awaited after it.
+    @Getter(AccessLevel.NONE)
+    Journal journal = Journal.NONE;
+
+    //The views pinned and not closed yet.
+    @Getter(AccessLevel.NONE)
+    final AtomicInteger pinnedViews = new AtomicInteger();
+
+    //Notified of the changed authors and books under the write lock.
+    @Getter(AccessLevel.NONE)
+    final List<ChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    //The version of the whole library, a new one for each change.
+    @Getter(AccessLevel.NONE)
+    volatile Version version = Version.first();
+    //The version of the last change of each author (including its books), guarded by the lock.
+    @Getter(AccessLevel.NONE)
+    final MutableLongObjectMap<Version> authorVersions = new LongObjectHashMap<>();
 
     private static final String AUTHOR_NOT_FOUND = "Author not found";
+    private static final String BOOK_NOT_FOUND = "Book not found";
+
+    private Library() {
+        this(AuthorStore.newInstance());
+    }
+
+    private Library(AuthorStore authors) {
+        this.authors = authors;
+    }
+
+    /**
+     * Creates a library whose storage is selected by the system property {@value AuthorStore#STORAGE_PROPERTY}.
+     *
+     * @return the library
+     */
+    public static Library newInstance() {
+        return new Library();
+    }
+
+    /**
+     * Creates a library on a given storage.
+     *
+     * @param authors the (empty) author store
+     * @return the library
+     */
+    public static Library newInstance(AuthorStore authors) {
+        return new Library(authors);
+    }
     /**
      * used mainly to provide easy XML Serialization
      *
@@ -54,7 +153,9 @@ public class Library {
     @XmlElements({@XmlElement(name = "author")})
     @JsonProperty("authors")
     public List<Author> getAuthorsAsList() {
-        return authors.toList();
+        try (LibraryView view = pin()) {
+            return view.getAuthorsAsList();
+        }
     }
 
     /**
@@ -66,7 +167,172 @@ public class Library {
     @XmlElements({@XmlElement(name = "book")})
     @JsonProperty("books")
     public List<Book> getBooksAsList() {
-        return books.toList();
+        try (LibraryView view = pin()) {
+            return view.getBooksAsList();
+        }
+    }
+
+    /**
+     * Gets a consistent copy of the authors indexed by id.
+     *
+     * @return the authors
+     */
+    public LongObjectMap<Author> getAuthors() {
+        try (LibraryView view = pin()) {
+            MutableLongObjectMap<Author> copy = new LongObjectHashMap<>(view.getAuthorsNumber());
+            view.getAuthorsAsList().forEach(author -> copy.put(author.id, author));
+            return copy.toImmutable();
+        }
+    }
+
+    /**
+     * Gives an author with its books in a version of the library, a copy if it has some :
+     * the stored authors are shared by the versions and never modified.
+     * The books of the author are the stored ones, without their authors.
+     *
+     * @param author   the author given by a store (may be null)
+     * @param books    the version of the books
+     * @param relation the version of the relation
+     * @return the author with its books
+     */
+    static Author withBooks(Author author, PersistentLongMap<Book> books, Adjacency relation) {
+        if (author == null) return null;
+        LongSet bookIds = relation.getBooks(author.id);
+        if (bookIds.isEmpty()) return author;
+        Set<Book> authorBooks = new HashSet<>(bookIds.size());
+        bookIds.forEach(id -> authorBooks.add(books.get(id)));
+        return author.toBuilder().books(authorBooks).build();
+    }
+
+    /**
+     * Gives a copy of a stored book with its authors in a version of the library.
+     *
+     * @param book     the stored book
+     * @param authors  the authors by id in this version
+     * @param relation the version of the relation
+     * @return the book with its authors
+     */
+    static Book withAuthors(Book book, LongFunction<Author> authors, Adjacency relation) {
+        LongSet authorIds = relation.getAuthors(book.id);
+        Set<Author> bookAuthors = new HashSet<>(authorIds.size());
+        authorIds.forEach(id -> bookAuthors.add(authors.apply(id)));
+        return book.toBuilder().authors(bookAuthors).build();
+    }
+
+    private Author withBooks(Author author) {
+        return withBooks(author, books, relation);
+    }
+
+    /**
+     * Gets a consistent copy of the books indexed by id.
+     *
+     * @return the books
+     */
+    public LongObjectMap<Book> getBooks() {
+        try (LibraryView view = pin()) {
+            MutableLongObjectMap<Book> copy = new LongObjectHashMap<>(view.getBooksNumber());
+            view.getBooksAsList().forEach(book -> copy.put(book.id, book));
+            return copy.toImmutable();
+        }
+    }
+
+    /**
+     * Gets the ids of the books of an author, without loading any object.
+     *
+     * @param authorId the id of the author
+     * @return the ids of its books
+     */
+    public LongSet getBookIds(long authorId) {
+        return relation.getBooks(authorId);
+    }
+
+    /**
+     * Gets the ids of the authors of a book, without loading any object.
+     *
+     * @param bookId the id of the book
+     * @return the ids of its authors
+     */
+    public LongSet getAuthorIds(long bookId) {
+        return relation.getAuthors(bookId);
+    }
+
+    /**
+     * Pins the current version of the whole library. The writers go on, they do not affect the view.
+     * It is taken under the read lock so that the authors, the books and their relation are consistent.
+     *
+     * @return the view, to be closed once read.
+     */
+    public LibraryView pin() {
+        return readLocked(this::pinLocked);
+    }
+
+    //Must be called under the read lock.
+    private LibraryView pinLocked() {
+        return new LibraryView(authors.snapshot(), books, relation, version, pinnedViews);
+    }
+
+    /**
+     * Gives the number of views pinned and not closed yet, the checkpoints of the snapshots and exports included.
+     * It goes back to 0 once the readers are done,
+     * a view never closed keeps the space of the authors only it can see.
+     *
+     * @return the number of open views
+     */
+    @JsonIgnore
+    @XmlTransient
+    public int getPinnedViews() {
+        return pinnedViews.get();
+    }
+
+    /**
+     * Runs a side effect free reader on the maps. It is first run without any lock (optimistic read),
+     * if a writer interfered the result is discarded and the reader is run again under the shared read lock.
+     *
+     * @param reader the reader
+     * @param <T>    the type of the result
+     * @return the result of the reader
+     */
+    private <T> T read(Supplier<T> reader) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                T result = reader.get();
+                if (lock.validate(stamp)) return result;
+            } catch (RuntimeException e) {
+                //The maps may have been seen in an intermediate state, unless the stamp is still valid.
+                if (lock.validate(stamp)) throw e;
+            }
+        }
+        return readLocked(reader);
+    }
+
+    /**
+     * Runs a reader under the shared read lock. It is used for tree traversals which,
+     * unlike hash maps lookups, are not guaranteed to terminate on a structure being modified.
+     *
+     * @param reader the reader
+     * @param <T>    the type of the result
+     * @return the result of the reader
+     */
+    private <T> T readLocked(Supplier<T> reader) {
+        long stamp = lock.readLock();
+        try {
+            return reader.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    //Must be called under the write lock.
+    private void index(Author author) {
+        sortIndexes.forEach((field, index) -> index.add(field.getValue(author), author.id));
+        biographyIndex.add(author.biography, author.id);
+    }
+
+    //Must be called under the write lock.
+    private void unindex(Author author) {
+        sortIndexes.forEach((field, index) -> index.remove(field.getValue(author), author.id));
+        biographyIndex.remove(author.biography, author.id);
     }
 
     /**
@@ -79,29 +345,170 @@ public class Library {
     public Author addAuthor(Author author) throws BusinessException {
         if (author.id != 0) throw new BusinessException(Response.Status.NOT_ACCEPTABLE, "Id shouldn't be given");
 
-        author.id = lastAuthorId.incrementAndGet();
-        authors.put(author.id, author);
+        long lsn;
+        long stamp = lock.writeLock();
+        try {
+            journal.check(Mutation.addAuthor(author));
+            lsn = journal.append(insertAuthor(author));
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        journal.await(lsn);
         return author;
     }
 
+    //Must be called under the write lock.
+    private Mutation insertAuthor(Author author) {
+        author.id = lastAuthorId.incrementAndGet();
+        authors.put(author);
+        index(author);
+        authorChanged(author.id);
+        return Mutation.addAuthor(author);
+    }
+
     /**
      * Adds a book to the model
      *
      * @param book the book without its id and an non empty authors set.
      * @return the book with its id.
-     * @throws BusinessException if the format is incorrect.
+     * @throws BusinessException if the format is incorrect, an author is not found or the book is too large.
      */
     public Book addBook(Book book) throws BusinessException {
+        checkFormat(book);
+        long lsn;
+        long stamp = lock.writeLock();
+        try {
+            journal.check(Mutation.addBook(book));
+            lsn = journal.append(insertBook(book));
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        journal.await(lsn);
+        return book;
+    }
+
+    /**
+     * Adds a batch of authors (a bulk import) under a single write lock, the journal is awaited once for the batch.
+     * The invalid authors (with an id, or too large to be journaled) are skipped, the others are given their ids.
+     *
+     * @param batch the authors without ids.
+     * @return the errors of the skipped authors by index in the batch.
+     */
+    public IntObjectMap<BusinessException> addAuthors(List<Author> batch) {
+        MutableIntObjectMap<BusinessException> errors = IntObjectMaps.mutable.empty();
+        for (int i = 0; i < batch.size(); i++)
+            if (batch.get(i).id != 0)
+                errors.put(i, new BusinessException(Response.Status.NOT_ACCEPTABLE, "Id shouldn't be given"));
+
+        long lsn = 0;
+        long stamp = lock.writeLock();
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                if (errors.containsKey(i)) continue;
+                try {
+                    journal.check(Mutation.addAuthor(batch.get(i)));
+                    lsn = journal.append(insertAuthor(batch.get(i)));
+                } catch (BusinessException e) {
+                    errors.put(i, e);
+                }
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        journal.await(lsn);
+        return errors;
+    }
+
+    /**
+     * Adds a batch of books (a bulk import) under a single write lock, the journal is awaited once for the batch.
+     * The invalid books are skipped.
+     *
+     * @param batch the books without their ids and with non empty authors sets.
+     * @return the errors of the skipped books by index in the batch.
+     */
+    public IntObjectMap<BusinessException> addBooks(List<Book> batch) {
+        MutableIntObjectMap<BusinessException> errors = IntObjectMaps.mutable.empty();
+        for (int i = 0; i < batch.size(); i++) {
+            try {
+                checkFormat(batch.get(i));
+            } catch (BusinessException e) {
+                errors.put(i, e);
+            }
+        }
+
+        long lsn = 0;
+        long stamp = lock.writeLock();
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                if (errors.containsKey(i)) continue;
+                try {
+                    journal.check(Mutation.addBook(batch.get(i)));
+                    lsn = journal.append(insertBook(batch.get(i)));
+                } catch (BusinessException e) {
+                    errors.put(i, e);
+                }
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        journal.await(lsn);
+        return errors;
+    }
+
+    private static void checkFormat(Book book) throws BusinessException {
         if (book.id != 0) throw new BusinessException(Response.Status.INTERNAL_SERVER_ERROR, "Id shouldn't be given");
         if (book.authors == null || book.authors.isEmpty())
             throw new BusinessException(Response.Status.INTERNAL_SERVER_ERROR, "Author set is mandatory");
+    }
+
+    //Must be called under the write lock.
+    private Mutation insertBook(Book book) throws BusinessException {
+        for (Author author : book.authors)
+            if (!authors.contains(author.id)) throw new BusinessException(Response.Status.NOT_FOUND, AUTHOR_NOT_FOUND);
         book.id = lastBookId.incrementAndGet();
-        book.authors.stream().forEach(auteur -> {
-            if (auteur.books == null) auteur.books = new HashSet<>();
-            auteur.books.add(book);
-        });
-        books.put(book.id, book);
-        return book;
+        putBook(book);
+        return Mutation.addBook(book);
+    }
+
+    //Must be called under the write lock, the book is stored without its authors.
+    private void putBook(Book book) {
+        LongSet authorIds = LongSets.immutable.of(book.authors.stream().mapToLong(Author::getId).toArray());
+        relation = relation.addBook(book.id, authorIds);
+        books = books.put(book.id, book.toBuilder().authors(null).build());
+        authorsChanged(authorIds);
+        bookChanged(book.id);
+    }
+
+    /**
+     * Removes one book by id, it is unlinked from its authors.
+     *
+     * @param id the id
+     * @throws BusinessException if not found
+     */
+    public void removeBook(long id) throws BusinessException {
+        long lsn;
+        long stamp = lock.writeLock();
+        try {
+            lsn = journal.append(removeExistingBook(id));
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        journal.await(lsn);
+    }
+
+    //Must be called under the write lock.
+    private Mutation removeExistingBook(long id) throws BusinessException {
+        if (!books.containsKey(id)) throw new BusinessException(Response.Status.NOT_FOUND, BOOK_NOT_FOUND);
+        deleteBook(id);
+        return Mutation.removeBook(id);
+    }
+
+    //Must be called under the write lock.
+    private void deleteBook(long id) {
+        authorsChanged(relation.getAuthors(id));
+        bookChanged(id);
+        relation = relation.removeBook(id);
+        books = books.remove(id);
     }
 
     /**
@@ -113,12 +520,55 @@ public class Library {
      * @throws BusinessException if the author if not found or the data invalid.
      */
     public Author updateAuteur(long id, Author author) throws BusinessException {
+        updateAuteur(id, author, current -> true);
+        return author;
+    }
+
+    /**
+     * Updates auteur by id if its current version satisfies a precondition (optimistic concurrency).
+     * The precondition is evaluated under the write lock, so no other write can happen in between.
+     *
+     * @param id           the id of the author to update
+     * @param author       the author instance containing the data without id.
+     * @param precondition the precondition on the current version of the author
+     * @return the version of the updated author.
+     * @throws BusinessException if the author if not found, the data invalid or the precondition not satisfied.
+     */
+    public Version updateAuteur(long id, Author author, Predicate<Version> precondition) throws BusinessException {
         if (author.id != 0)
             throw new BusinessException(Response.Status.NOT_ACCEPTABLE, "Id shouldn't be given in data");
+        long lsn;
+        Version updated;
+        long stamp = lock.writeLock();
+        try {
+            journal.check(Mutation.updateAuthor(author));
+            Version current = authorVersions.get(id);
+            if (current != null && !precondition.test(current))
+                throw new BusinessException(Response.Status.PRECONDITION_FAILED, "Author modified since");
+            lsn = journal.append(updateExistingAuthor(id, author));
+            updated = authorVersions.get(id);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        journal.await(lsn);
+        return updated;
+    }
+
+    //Must be called under the write lock.
+    private Mutation updateExistingAuthor(long id, Author author) throws BusinessException {
+        Author previous = authors.get(id);
+        if (previous == null) throw new BusinessException(Response.Status.NOT_FOUND, AUTHOR_NOT_FOUND);
         author.id = id;
-        if (!authors.containsKey(id)) throw new BusinessException(Response.Status.NOT_FOUND, AUTHOR_NOT_FOUND);
-        authors.put(id, author);
-        return author;
+        replaceAuthor(previous, author);
+        return Mutation.updateAuthor(author);
+    }
+
+    //Must be called under the write lock.
+    private void replaceAuthor(Author previous, Author author) {
+        unindex(previous);
+        authors.put(author);
+        index(author);
+        authorChanged(author.id);
     }
 
     /**
@@ -128,8 +578,199 @@ public class Library {
      * @throws BusinessException if not found
      */
     public void removeAuthor(long id) throws BusinessException {
-        if (!authors.containsKey(id)) throw new BusinessException(Response.Status.NOT_FOUND, AUTHOR_NOT_FOUND);
-        authors.remove(id);
+        long lsn;
+        long stamp = lock.writeLock();
+        try {
+            lsn = journal.append(removeExistingAuthor(id));
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        journal.await(lsn);
+    }
+
+    //Must be called under the write lock.
+    private Mutation removeExistingAuthor(long id) throws BusinessException {
+        Author removed = authors.remove(id);
+        if (removed == null) throw new BusinessException(Response.Status.NOT_FOUND, AUTHOR_NOT_FOUND);
+        unindex(removed);
+        unlinkAuthor(id);
+        return Mutation.removeAuthor(id);
+    }
+
+    //Must be called under the write lock, the books of the author lose it.
+    private void unlinkAuthor(long id) {
+        authorChanged(id);
+        authorVersions.remove(id);
+        relation.getBooks(id).forEach(this::bookChanged);
+        relation = relation.removeAuthor(id);
+    }
+
+    //Must be called under the write lock, each change makes a new version of the library.
+    private void authorChanged(long id) {
+        version = version.next();
+        authorVersions.put(id, version);
+        listeners.forEach(listener -> listener.authorChanged(id));
+    }
+
+    //Must be called under the write lock.
+    private void authorsChanged(LongIterable ids) {
+        ids.forEach(this::authorChanged);
+    }
+
+    //Must be called under the write lock.
+    private void bookChanged(long id) {
+        version = version.next();
+        listeners.forEach(listener -> listener.bookChanged(id));
+    }
+
+    /**
+     * Executes a batch of operations in order under a single write lock, they are journaled as a single mutation.
+     * In atomic mode every operation is checked before any is applied, if one is invalid none is applied.
+     * Otherwise the invalid operations are skipped.
+     *
+     * @param operations the operations
+     * @param atomic     whether all the operations or none must be applied
+     * @return the result of each operation.
+     * @throws BusinessException if the batch is too large to be journaled, none of its operations is applied then.
+     */
+    public List<Operation.Result> execute(List<Operation> operations, boolean atomic) throws BusinessException {
+        List<Operation.Result> results = new ArrayList<>(operations.size());
+        List<Mutation> mutations = new ArrayList<>(operations.size());
+        long lsn = 0;
+        long stamp = lock.writeLock();
+        try {
+            journal.check(plan(operations));
+            if (atomic) {
+                MutableLongSet removedAuthors = LongSets.mutable.empty();
+                MutableLongSet removedBooks = LongSets.mutable.empty();
+                for (int i = 0; i < operations.size(); i++) {
+                    try {
+                        check(operations.get(i), removedAuthors, removedBooks);
+                    } catch (BusinessException e) {
+                        for (int j = 0; j < operations.size(); j++)
+                            results.add(j == i ? Operation.Result.failure(e.getStatus().getStatusCode(), e.getMessage()) :
+                                    Operation.Result.failure(Response.Status.CONFLICT.getStatusCode(), "Not applied"));
+                        return results;
+                    }
+                }
+            }
+            MutableLongSet removedAuthors = LongSets.mutable.empty();
+            MutableLongSet removedBooks = LongSets.mutable.empty();
+            for (Operation operation : operations) {
+                try {
+                    check(operation, removedAuthors, removedBooks);
+                    Mutation mutation = apply(operation);
+                    mutations.add(mutation);
+                    results.add(Operation.Result.success(statusOf(operation).getStatusCode(), mutation.getId()));
+                } catch (BusinessException e) {
+                    results.add(Operation.Result.failure(e.getStatus().getStatusCode(), e.getMessage()));
+                }
+            }
+            if (!mutations.isEmpty()) lsn = journal.append(Mutation.batch(mutations));
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        journal.await(lsn);
+        return results;
+    }
+
+    /**
+     * Checks an operation of a batch, must be called under the write lock.
+     * The authors and books removed by the previous operations are given when they are checked without being applied.
+     */
+    private void check(Operation operation, MutableLongSet removedAuthors, MutableLongSet removedBooks)
+            throws BusinessException {
+        if (operation.getType() == null) throw new BusinessException(Response.Status.BAD_REQUEST, "Operation type is mandatory");
+        switch (operation.getType()) {
+            case ADD_AUTHOR:
+            case UPDATE_AUTHOR:
+                if (operation.getAuthor() == null)
+                    throw new BusinessException(Response.Status.BAD_REQUEST, "Author is mandatory");
+                if (operation.getAuthor().id != 0)
+                    throw new BusinessException(Response.Status.NOT_ACCEPTABLE, "Id shouldn't be given in data");
+                if (operation.getType() == Operation.Type.UPDATE_AUTHOR)
+                    checkAuthor(operation.getId(), removedAuthors);
+                break;
+            case REMOVE_AUTHOR:
+                checkAuthor(operation.getId(), removedAuthors);
+                removedAuthors.add(operation.getId());
+                break;
+            case ADD_BOOK:
+                if (operation.getAuthors() == null || operation.getAuthors().length == 0)
+                    throw new BusinessException(Response.Status.BAD_REQUEST, "Author set is mandatory");
+                for (long authorId : operation.getAuthors()) checkAuthor(authorId, removedAuthors);
+                break;
+            case REMOVE_BOOK:
+                if (!books.containsKey(operation.getId()) || removedBooks.contains(operation.getId()))
+                    throw new BusinessException(Response.Status.NOT_FOUND, BOOK_NOT_FOUND);
+                removedBooks.add(operation.getId());
+                break;
+        }
+    }
+
+    private void checkAuthor(long id, LongSet removedAuthors) throws BusinessException {
+        if (!authors.contains(id) || removedAuthors.contains(id))
+            throw new BusinessException(Response.Status.NOT_FOUND, AUTHOR_NOT_FOUND);
+    }
+
+    //Applies a checked operation of a batch, must be called under the write lock.
+    private Mutation apply(Operation operation) throws BusinessException {
+        switch (operation.getType()) {
+            case ADD_AUTHOR:
+                return insertAuthor(operation.getAuthor());
+            case UPDATE_AUTHOR:
+                return updateExistingAuthor(operation.getId(), operation.getAuthor());
+            case REMOVE_AUTHOR:
+                return removeExistingAuthor(operation.getId());
+            case ADD_BOOK:
+                return insertBook(bookOf(operation));
+            default:
+                return removeExistingBook(operation.getId());
+        }
+    }
+
+    private static Book bookOf(Operation operation) {
+        Set<Author> bookAuthors = new HashSet<>();
+        for (long authorId : operation.getAuthors()) bookAuthors.add(Author.builder().id(authorId).build());
+        return Book.builder().title(operation.getTitle()).authors(bookAuthors).build();
+    }
+
+    //The mutation a batch would be journaled as if all its operations were valid, the ids to be given do not change its size.
+    private static Mutation plan(List<Operation> operations) {
+        List<Mutation> planned = new ArrayList<>(operations.size());
+        for (Operation operation : operations) {
+            if (operation.getType() == null) continue;
+            switch (operation.getType()) {
+                case ADD_AUTHOR:
+                    if (operation.getAuthor() != null) planned.add(Mutation.addAuthor(operation.getAuthor()));
+                    break;
+                case UPDATE_AUTHOR:
+                    if (operation.getAuthor() != null) planned.add(Mutation.updateAuthor(operation.getAuthor()));
+                    break;
+                case REMOVE_AUTHOR:
+                    planned.add(Mutation.removeAuthor(operation.getId()));
+                    break;
+                case ADD_BOOK:
+                    if (operation.getAuthors() != null) planned.add(Mutation.addBook(bookOf(operation)));
+                    break;
+                default:
+                    planned.add(Mutation.removeBook(operation.getId()));
+                    break;
+            }
+        }
+        return Mutation.batch(planned);
+    }
+
+    private static Response.Status statusOf(Operation operation) {
+        switch (operation.getType()) {
+            case ADD_AUTHOR:
+            case ADD_BOOK:
+                return Response.Status.CREATED;
+            case UPDATE_AUTHOR:
+                return Response.Status.OK;
+            default:
+                return Response.Status.NO_CONTENT;
+        }
     }
 
     /**
@@ -140,8 +781,31 @@ public class Library {
      * @throws NotFoundException if not found exception
      */
     public Author getAuthor(long id) throws BusinessException {
-        if (!authors.containsKey(id)) throw new BusinessException(Response.Status.NOT_FOUND, AUTHOR_NOT_FOUND);
-        return authors.get(id);
+        Author author = read(() -> withBooks(authors.get(id)));
+        if (author == null) throw new BusinessException(Response.Status.NOT_FOUND, AUTHOR_NOT_FOUND);
+        return author;
+    }
+
+    /**
+     * Gets the version of the last change of an author or of its books, it is cheaper than the author itself.
+     *
+     * @param id the id of the author
+     * @return the version
+     * @throws BusinessException if not found
+     */
+    public Version getAuthorVersion(long id) throws BusinessException {
+        Version authorVersion = read(() -> authorVersions.get(id));
+        if (authorVersion == null) throw new BusinessException(Response.Status.NOT_FOUND, AUTHOR_NOT_FOUND);
+        return authorVersion;
+    }
+
+    /**
+     * Gets the current version of the whole library, without any lock.
+     *
+     * @return the version
+     */
+    public Version getVersion() {
+        return version;
     }
 
     /**
@@ -151,79 +815,444 @@ public class Library {
      */
     @JsonIgnore
     public int getAuthorsNumber() {
-        return authors.size();
+        return read(authors::size);
     }
 
-    private Stream<Author> buildSortedFilteredStream(PaginationInfo paginationInfo) {
-        //We build a author stream, first we add sorting
-        Stream<Author> authorStream = authors.stream()
-                .sorted(Comparator.comparing(auteur -> switch (valueOf(paginationInfo.getSortKey().toUpperCase())) {
-                    case NAME -> auteur.getName();
-                    case FIRSTNAME -> auteur.getFirstname();
-                    default -> throw new InvalidParameterException();
-                }));
+    /**
+     * Returns a sorted, filtered and paginated list of authors.
+     * The pagination info is compiled once into a query plan, which is executed in a single pass.
+     * Without filters the page is read in the sorted index under the read lock, in O(log n + pageSize).
+     * With filters only the lookup of the candidates in the indexes is done under the read lock, together with
+     * the pin of the current version : the candidates are then checked by the predicates on this pinned version,
+     * without any lock, so a scan of every author does not hold back the writers.
+     * The scan stops if the thread is interrupted.
+     *
+     * @param paginationInfo the pagination info
+     * @return the sorted, filtered page.
+     * @throws BusinessException     if the cursor is invalid.
+     * @throws CancellationException if the thread is interrupted during the scan.
+     */
+    public Page<Author> getAuthorsWithFilter(PaginationInfo paginationInfo) throws BusinessException {
+        AuthorQuery query = AuthorQuery.compile(paginationInfo);
+        if (!query.hasFilter())
+            //The count and the page are read in the same state of the index.
+            return readLocked(() -> query.isKeyset() ? executeKeysetInIndex(query) : executeInIndex(query));
 
-        //The add filters according to parameters
-        if (paginationInfo.getName() != null)
-            authorStream = authorStream.filter(author -> author.getName().equalsIgnoreCase(paginationInfo.getName()));
-        if (paginationInfo.getFirstname() != null)
-            authorStream = authorStream.filter(author -> author.getFirstname().equalsIgnoreCase(paginationInfo.getFirstname()));
-        if (paginationInfo.getBiography() != null)
-            authorStream = authorStream.filter(author -> author.getBiography().contains(paginationInfo.getBiography()));
+        //The candidates are those of the pinned version, taken under the same lock.
+        Matches matches = readLocked(() -> new Matches(pinLocked(), findCandidates(query)));
+        try (LibraryView view = matches.view) {
+            return query.isKeyset() ?
+                    executeKeyset(query, view, matches.candidates) : execute(query, view, matches.candidates);
+        }
+    }
 
-        return authorStream;
+    /**
+     * Reads the page of a query plan without filters in the sorted index, must be called under the read lock.
+     *
+     * @param query the query plan
+     * @return the page.
+     */
+    private Page<Author> executeInIndex(AuthorQuery query) {
+        SortedIndex sortIndex = sortIndexes.get(query.getSortField());
+        return Page.newInstance(query.getPageSize(), query.getPageNumber(), sortIndex.size(),
+                toAuthors(sortIndex.range(query.getOffset(), query.getLimit())));
     }
 
     /**
-     * Returns a sorted, filtered and paginated list of authors.
+     * Executes a query plan with filters on a pinned version, without any lock.
+     * The candidates (given by the indexes, or every author) are checked by the predicates
+     * and offered to a bounded heap of page * pageSize authors : one scan gives the total and the page.
      *
-     * @param paginationInfo the pagination info
-     * @return the sorted, filtered page.
+     * @param query      the query plan
+     * @param view       the pinned version
+     * @param candidates the candidate ids of this version, or null if every author is a candidate.
+     * @return the page.
      */
-    public Page<Author> getAuthorsWithFilter(PaginationInfo paginationInfo) {
+    private static Page<Author> execute(AuthorQuery query, LibraryView view, LongIterable candidates) {
+        TopK<Author> topK = new TopK<>(query.getComparator(), query.getCapacity());
+        forEachMatch(query, view.getStoredAuthors(), candidates, topK::offer);
+        List<Author> content = topK.toSortedList(query.getOffset());
+        content.replaceAll(view::withBooks);
+        return Page.newInstance(query.getPageSize(), query.getPageNumber(), topK.getOffered(), content);
+    }
 
+    /**
+     * Reads the page of a keyset query plan without filters in the sorted index, must be called under the read lock.
+     * The page does not depend on the number of authors before the cursor : its position is the rank of the cursor.
+     *
+     * @param query the query plan
+     * @return the page with the cursors to its neighbours.
+     */
+    private Page<Author> executeKeysetInIndex(AuthorQuery query) {
+        Cursor cursor = query.getCursor();
+        SortedIndex sortIndex = sortIndexes.get(query.getSortField());
+        long from;
+        long to;
+        if (cursor == null) {
+            from = 0;
+            to = query.getPageSize();
+        } else if (cursor.getDirection() == Cursor.Direction.BEFORE) {
+            to = sortIndex.rank(cursor.getKey(), cursor.getId());
+            from = Math.max(0, to - query.getPageSize());
+        } else {
+            //The entries strictly after the cursor are those from the rank of the next id with the same key.
+            from = sortIndex.rank(cursor.getKey(), cursor.getId() + 1);
+            to = from + query.getPageSize();
+        }
+        List<Author> content = toAuthors(sortIndex.range(from, to - from));
+        return keysetPage(query, content, from > 0, from + content.size() < sortIndex.size(), sortIndex.size());
+    }
+
+    /**
+     * Executes a keyset query plan with filters on a pinned version, without any lock.
+     * The matching authors on the side of the cursor are offered to a heap of pageSize + 1 authors
+     * (the extra one tells if there is a page further).
+     *
+     * @param query      the query plan
+     * @param view       the pinned version
+     * @param candidates the candidate ids of this version, or null if every author is a candidate.
+     * @return the page with the cursors to its neighbours.
+     */
+    private static Page<Author> executeKeyset(AuthorQuery query, LibraryView view, LongIterable candidates) {
+        Cursor cursor = query.getCursor();
+        boolean before = cursor != null && cursor.getDirection() == Cursor.Direction.BEFORE;
+        TopK<Author> topK = new TopK<>(before ? query.getComparator().reversed() : query.getComparator(),
+                query.getPageSize() + 1);
+        //Whether some matching authors are on the other side of the cursor.
+        boolean[] behind = {false};
+        long[] matches = {0};
+        forEachMatch(query, view.getStoredAuthors(), candidates, author -> {
+            matches[0]++;
+            int location = cursor == null ? 1 : cursor.locate(author);
+            if (before ? location < 0 : location > 0) topK.offer(author);
+            else behind[0] = true;
+        });
+        List<Author> content = topK.toSortedList();
+        boolean further = content.size() > query.getPageSize();
+        if (further) content = content.subList(0, (int) query.getPageSize());
+        if (before) Collections.reverse(content);
+        content.replaceAll(view::withBooks);
+        return keysetPage(query, content, before ? further : behind[0], before ? behind[0] : further, matches[0]);
+    }
 
-        //We count the total number of results before limit and offset
-        long elementTotal = buildSortedFilteredStream(paginationInfo).count();
+    //Adds to a keyset page the cursors to its neighbours.
+    private static Page<Author> keysetPage(AuthorQuery query, List<Author> content, boolean hasPrevious,
+                                           boolean hasNext, long total) {
+        String previousCursor = hasPrevious && !content.isEmpty() ?
+                Cursor.before(query.getSortField(), content.get(0)).encode() : null;
+        String nextCursor = hasNext && !content.isEmpty() ?
+                Cursor.after(query.getSortField(), content.get(content.size() - 1)).encode() : null;
+        return Page.newKeysetInstance(query.getPageSize(), query.isCounted() ? total : Page.UNKNOWN,
+                content, previousCursor, nextCursor);
+    }
 
-        Stream<Author> authorStream = buildSortedFilteredStream(paginationInfo);
-        //Finally add pagination instructions.
-        if ((paginationInfo.getPage() > 0) && (paginationInfo.getPageSize() > 0)) {
-            authorStream = authorStream
-                    .skip(paginationInfo.getPageSize() * (paginationInfo.getPage() - 1))
-                    .limit(paginationInfo.getPageSize());
+    /**
+     * Gives the authors of a pinned version matching the filters of a query to an action.
+     * They are the stored ones, without their books : only the authors of the page are given their books.
+     * The scan stops as soon as the thread is interrupted, for instance by the timeout of the query executor.
+     *
+     * @throws CancellationException if the thread is interrupted, its interrupt status is kept.
+     */
+    private static void forEachMatch(AuthorQuery query, AuthorStore.View authors, LongIterable candidates,
+                                     Consumer<Author> action) {
+        if (candidates == null)
+            authors.forEach(author -> {
+                checkInterrupt();
+                if (query.test(author)) action.accept(author);
+            });
+        else
+            candidates.forEach(id -> {
+                checkInterrupt();
+                Author author = authors.get(id);
+                if (query.test(author)) action.accept(author);
+            });
+    }
+
+    private static void checkInterrupt() {
+        if (Thread.currentThread().isInterrupted()) throw new CancellationException("The query was interrupted");
+    }
+
+    /**
+     * Finds the candidates ids in the indexes, must be called under the read lock.
+     * The ids matching the exact filters and the ids whose biography has every trigram of the searched one
+     * are intersected as primitive sets. The result is a copy, the sets of the indexes are changed by the writers.
+     *
+     * @param query the query plan
+     * @return the candidate ids, or null if every author is a candidate.
+     */
+    private LongIterable findCandidates(AuthorQuery query) {
+        List<LongSet> candidates = new ArrayList<>();
+        if (query.getName() != null)
+            candidates.add(sortIndexes.get(Field.NAME).getExactMatches(query.getName()));
+        if (query.getFirstname() != null)
+            candidates.add(sortIndexes.get(Field.FIRSTNAME).getExactMatches(query.getFirstname()));
+        if (query.getBiography() != null) {
+            LongSet biographyCandidates = biographyIndex.getCandidates(query.getBiography());
+            if (biographyCandidates != null) candidates.add(biographyCandidates);
         }
+        return candidates.isEmpty() ? null : IdSets.intersection(candidates).toImmutable();
+    }
+
+    //A pinned version and the candidates of a query in it.
+    @AllArgsConstructor
+    @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+    private static final class Matches {
+        LibraryView view;
+        LongIterable candidates;
+    }
 
-        return Page.newInstance(paginationInfo.getPageSize(),
-                paginationInfo.getPage(),
-                elementTotal,
-                authorStream.collect(Collectors.toList())
-        );
+    //Must be called under the read lock.
+    private List<Author> toAuthors(LongIterable ids) {
+        List<Author> result = new ArrayList<>(ids.size());
+        ids.forEach(id -> result.add(withBooks(authors.get(id))));
+        return result;
     }
 
     /**
      * Removes all authors.
      */
     public void removesAuthors() {
+        long lsn;
+        long stamp = lock.writeLock();
+        try {
+            clear();
+            lsn = journal.append(Mutation.clear());
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        journal.await(lsn);
+    }
+
+    //Must be called under the write lock.
+    private void clear() {
         authors.clear();
-        books.clear();
+        books = PersistentLongMap.empty();
+        relation = Adjacency.empty();
+        sortIndexes.values().forEach(SortedIndex::clear);
+        biographyIndex.clear();
         lastAuthorId.set(0);
         lastBookId.set(0);
+        version = version.next();
+        authorVersions.clear();
+        listeners.forEach(ChangeListener::cleared);
+    }
+
+    /**
+     * Adds a listener of the changes of the authors and the books, to invalidate derived data for instance.
+     *
+     * @param listener the listener
+     */
+    public void addChangeListener(ChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Sets the journal recording the next mutations.
+     *
+     * @param journal the journal ({@link Journal#NONE} to stop recording)
+     */
+    public void attach(Journal journal) {
+        long stamp = lock.writeLock();
+        try {
+            this.journal = journal;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Applies a mutation read from a journal, keeping its ids. It is not journaled again.
+     *
+     * @param mutation the mutation
+     */
+    public void replay(Mutation mutation) {
+        long stamp = lock.writeLock();
+        try {
+            apply(mutation);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    //Must be called under the write lock.
+    private void apply(Mutation mutation) {
+        switch (mutation.getType()) {
+            case ADD_AUTHOR:
+                Author added = mutation.toAuthor();
+                authors.put(added);
+                index(added);
+                authorChanged(added.id);
+                lastAuthorId.accumulateAndGet(added.id, Math::max);
+                break;
+            case UPDATE_AUTHOR:
+                Author previous = authors.get(mutation.getId());
+                if (previous != null) replaceAuthor(previous, mutation.toAuthor());
+                break;
+            case REMOVE_AUTHOR:
+                Author removed = authors.remove(mutation.getId());
+                if (removed != null) {
+                    unindex(removed);
+                    unlinkAuthor(removed.id);
+                }
+                break;
+            case ADD_BOOK:
+                //Only the ids of the authors are needed for the relation.
+                Set<Author> bookAuthors = new HashSet<>();
+                for (long authorId : mutation.getAuthorIds())
+                    if (authors.contains(authorId)) bookAuthors.add(Author.builder().id(authorId).build());
+                putBook(Book.builder().id(mutation.getId()).title(mutation.getTitle()).authors(bookAuthors).build());
+                lastBookId.accumulateAndGet(mutation.getId(), Math::max);
+                break;
+            case REMOVE_BOOK:
+                deleteBook(mutation.getId());
+                break;
+            case CLEAR:
+                clear();
+                break;
+            case BATCH:
+                mutation.getMutations().forEach(this::apply);
+                break;
+        }
+    }
+
+    /**
+     * Pins the library for a snapshot, and marks its position in the journal.
+     * Writers are blocked only while it is pinned.
+     *
+     * @return the checkpoint, to be closed once written.
+     */
+    public Checkpoint checkpoint() {
+        return readLocked(() -> pinCheckpoint(journal.checkpoint()));
+    }
+
+    /**
+     * Pins the library for an export.
+     *
+     * @return the checkpoint, to be closed once written.
+     */
+    public Checkpoint export() {
+        return readLocked(() -> pinCheckpoint(0));
+    }
+
+    //Must be called under the read lock. The checkpoint counts as a pinned view until it is closed, once.
+    private Checkpoint pinCheckpoint(long lsn) {
+        AuthorStore.View view = authors.snapshot();
+        Adjacency pinnedRelation = relation;
+        pinnedViews.incrementAndGet();
+        AtomicBoolean closed = new AtomicBoolean();
+        return new Checkpoint(lsn, lastAuthorId.get(), lastBookId.get(), view,
+                new LazyIterableAdapter<>(books).collect(book -> withAuthors(book, view::get, pinnedRelation)), () -> {
+            if (!closed.compareAndSet(false, true)) return;
+            view.close();
+            pinnedViews.decrementAndGet();
+        });
+    }
+
+    /**
+     * Replaces the content of the library by an imported one, the import is recorded in the journal.
+     * The imported content is written to the journal first, the readers and the writers are then blocked only
+     * while the content is swapped and the journal moves to it.
+     *
+     * @param checkpoint the imported content
+     * @throws java.io.UncheckedIOException if the import could not be recorded, the library is then unchanged.
+     */
+    public void importCheckpoint(Checkpoint checkpoint) {
+        Journal target = readLocked(() -> journal);
+        try (Journal.Reset reset = target.prepareReset(checkpoint)) {
+            long stamp = lock.writeLock();
+            try {
+                if (journal != target) throw new IllegalStateException("The journal was changed during the import");
+                reset.commit();
+                load(checkpoint);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    /**
+     * Replaces the content of the library by a checkpoint loaded from a snapshot.
+     *
+     * @param checkpoint the checkpoint
+     */
+    public void restore(Checkpoint checkpoint) {
+        long stamp = lock.writeLock();
+        try {
+            load(checkpoint);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    //Must be called under the write lock.
+    private void load(Checkpoint checkpoint) {
+        clear();
+        checkpoint.getAuthors().forEach(author -> {
+            authors.put(author);
+            index(author);
+            authorChanged(author.id);
+        });
+        checkpoint.getBooks().forEach(this::putBook);
+        lastAuthorId.set(checkpoint.getLastAuthorId());
+        lastBookId.set(checkpoint.getLastBookId());
+    }
+
+    /**
+     * Listens to the changes of a library. It is notified under the write lock so it must be quick.
+     */
+    public interface ChangeListener {
+        /**
+         * Called when an author is updated or removed, or when its books change.
+         *
+         * @param id the id of the author
+         */
+        void authorChanged(long id);
+
+        /**
+         * Called when a book is removed, or when its authors change.
+         *
+         * @param id the id of the book
+         */
+        void bookChanged(long id);
+
+        /**
+         * Called when every author and book is removed.
+         */
+        void cleared();
     }
 
     /**
      * The list of fields of author that can used in filters.
      */
     public enum Field {
-        NAME,
-        FIRSTNAME,
-        BIOGRAPHY
+        NAME(Author::getName, true),
+        FIRSTNAME(Author::getFirstname, true),
+        BIOGRAPHY(Author::getBiography, false);
+
+        private final Function<Author, String> getter;
+        @Getter
+        private final boolean sortable;
+
+        Field(Function<Author, String> getter, boolean sortable) {
+            this.getter = getter;
+            this.sortable = sortable;
+        }
+
+        /**
+         * Gets the value of this field for an author.
+         *
+         * @param author the author
+         * @return the value
+         */
+        public String getValue(Author author) {
+            return getter.apply(author);
+        }
     }
 
     /**
      * The type Author.
      */
-    @Builder
+    @Builder(toBuilder = true)
     @Getter
     @Setter
     @FieldDefaults(level = AccessLevel.PRIVATE)
@@ -242,6 +1271,9 @@ public class Library {
     @EqualsAndHashCode(onlyExplicitlyIncluded = true)
     @ToString(exclude = "books")
     public static class Author implements Serializable {
+        //The XML IDs are made without formatting, there is one for each element and each reference.
+        private static final String XML_ID_PREFIX = "Author-";
+
         @EqualsAndHashCode.Include
         @XmlTransient
         long id;
@@ -254,14 +1286,24 @@ public class Library {
         @JsonIdentityReference(alwaysAsId = true)
         private Set<Book> books;
 
+        /**
+         * Gives the XML ID of an author, by which the books refer to it.
+         *
+         * @param id the id of the author
+         * @return the XML ID
+         */
+        public static String xmlId(long id) {
+            return XML_ID_PREFIX + id;
+        }
+
         @XmlID
         @XmlAttribute(name = "id")
         private String getXmlID() {
-            return String.format("%s-%s", this.getClass().getSimpleName(), this.getId());
+            return xmlId(id);
         }
     }
 
-    @Builder
+    @Builder(toBuilder = true)
     @Getter
     @Setter
     @FieldDefaults(level = AccessLevel.PRIVATE)
@@ -281,6 +1323,8 @@ public class Library {
     @EqualsAndHashCode(onlyExplicitlyIncluded = true)
     @ToString(exclude = "authors")
     public static class Book implements Serializable {
+        private static final String XML_ID_PREFIX = "Book-";
+
         @EqualsAndHashCode.Include
         @XmlTransient
         long id;
@@ -291,11 +1335,20 @@ public class Library {
         @JsonIdentityReference(alwaysAsId = true)
         private Set<Author> authors;
 
+        /**
+         * Gives the XML ID of a book, by which the authors refer to it.
+         *
+         * @param id the id of the book
+         * @return the XML ID
+         */
+        public static String xmlId(long id) {
+            return XML_ID_PREFIX + id;
+        }
+
         @XmlID
         @XmlAttribute(name = "id")
         private String getXmlID() {
-            return String.format("%s-%s", this.getClass().getSimpleName(), this.getId());
+            return xmlId(id);
         }
-
     }
 }
@@ -0,0 +1,146 @@
+package fr.univtln.bruno.samples.jaxrs.model;
+
+import fr.univtln.bruno.samples.jaxrs.model.store.Adjacency;
+import fr.univtln.bruno.samples.jaxrs.model.store.AuthorStore;
+import fr.univtln.bruno.samples.jaxrs.model.store.PersistentLongMap;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+import org.eclipse.collections.impl.utility.LazyIterate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pinned version of the whole Library (see {@link Library#pin()}) : it can be read, serialized for instance,
+ * by any thread without any lock and is not affected by the next writes.
+ * It is serialized as the Library itself by the streaming writers (see the writers package) which iterate it
+ * and write each author and each book in turn, so no copy of the whole catalogue is made.
+ * It must be closed once read so that the space of the authors only it could see can be reclaimed,
+ * closing it again does nothing.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class LibraryView implements AutoCloseable {
+    AuthorStore.View authors;
+    PersistentLongMap<Library.Book> books;
+    Adjacency relation;
+    @Getter
+    Version version;
+    //The count of the open views of the library.
+    AtomicInteger pinned;
+    AtomicBoolean closed = new AtomicBoolean();
+
+    LibraryView(AuthorStore.View authors, PersistentLongMap<Library.Book> books, Adjacency relation, Version version,
+                AtomicInteger pinned) {
+        this.authors = authors;
+        this.books = books;
+        this.relation = relation;
+        this.version = version;
+        this.pinned = pinned;
+        pinned.incrementAndGet();
+    }
+
+    /**
+     * Iterates the authors of this version with their books, each one is made when it is reached.
+     *
+     * @return the authors
+     */
+    public Iterable<Library.Author> authors() {
+        return LazyIterate.collect(authors, author -> Library.withBooks(author, books, relation));
+    }
+
+    /**
+     * Iterates the books of this version with their authors, each one is made when it is reached.
+     *
+     * @return the books
+     */
+    public Iterable<Library.Book> books() {
+        return LazyIterate.collect(books, book -> Library.withAuthors(book, authors::get, relation));
+    }
+
+    /**
+     * Restricts this view to its authors, for instance to send them without the books.
+     * Closing the result closes this view.
+     *
+     * @return the authors of this view.
+     */
+    public Authors onlyAuthors() {
+        return new Authors(this);
+    }
+
+    /**
+     * @return the authors of this version with their books.
+     */
+    public List<Library.Author> getAuthorsAsList() {
+        List<Library.Author> list = new ArrayList<>(authors.size());
+        authors.forEach(author -> list.add(Library.withBooks(author, books, relation)));
+        return list;
+    }
+
+    /**
+     * @return the books of this version with their authors.
+     */
+    public List<Library.Book> getBooksAsList() {
+        List<Library.Book> list = new ArrayList<>(books.size());
+        books.forEachValue(book -> list.add(Library.withAuthors(book, authors::get, relation)));
+        return list;
+    }
+
+    //The stored authors, without their books, read by the queries of the Library.
+    AuthorStore.View getStoredAuthors() {
+        return authors;
+    }
+
+    //Gives a stored author its books in this version.
+    Library.Author withBooks(Library.Author author) {
+        return Library.withBooks(author, books, relation);
+    }
+
+    public int getAuthorsNumber() {
+        return authors.size();
+    }
+
+    public int getBooksNumber() {
+        return books.size();
+    }
+
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) return;
+        authors.close();
+        pinned.decrementAndGet();
+    }
+
+    /**
+     * The authors of a pinned version only.
+     */
+    @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+    public static class Authors implements AutoCloseable {
+        LibraryView view;
+
+        private Authors(LibraryView view) {
+            this.view = view;
+        }
+
+        /**
+         * @return the version of the library they belong to.
+         */
+        public Version getVersion() {
+            return view.getVersion();
+        }
+
+        /**
+         * @return the authors with their books.
+         */
+        public Iterable<Library.Author> authors() {
+            return view.authors();
+        }
+
+        @Override
+        public void close() {
+            view.close();
+        }
+    }
+}
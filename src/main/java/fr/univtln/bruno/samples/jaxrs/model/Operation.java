@@ -0,0 +1,60 @@
+package fr.univtln.bruno.samples.jaxrs.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+/**
+ * An operation of a batch (see {@link Library#execute(java.util.List, boolean)}) :
+ * <ul>
+ * <li>ADD_AUTHOR with an author without id,</li>
+ * <li>UPDATE_AUTHOR with the id and an author without id,</li>
+ * <li>REMOVE_AUTHOR with the id,</li>
+ * <li>ADD_BOOK with a title and the ids of its authors,</li>
+ * <li>REMOVE_BOOK with the id.</li>
+ * </ul>
+ */
+@Builder
+@Getter
+@Setter
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_EMPTY)
+public class Operation {
+    Type type;
+    long id;
+    Library.Author author;
+    String title;
+    long[] authors;
+
+    public enum Type {
+        ADD_AUTHOR,
+        UPDATE_AUTHOR,
+        REMOVE_AUTHOR,
+        ADD_BOOK,
+        REMOVE_BOOK
+    }
+
+    /**
+     * The outcome of an operation : its http status, the id of the added, updated or removed element,
+     * or the reason of the failure.
+     */
+    @Getter
+    @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+    @AllArgsConstructor(access = AccessLevel.PRIVATE)
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    public static class Result {
+        int status;
+        long id;
+        String message;
+
+        static Result success(int status, long id) {
+            return new Result(status, id, null);
+        }
+
+        static Result failure(int status, String message) {
+            return new Result(status, 0, message);
+        }
+    }
+}
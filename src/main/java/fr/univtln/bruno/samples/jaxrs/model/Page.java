@@ -6,24 +6,42 @@ import lombok.experimental.FieldDefaults;
 
 import java.util.List;
 
+/**
+ * A page of elements, given by its number or (keyset pagination) by cursors to the previous and next pages.
+ * With keyset pagination the page number is unknown (0), and so are the totals (-1) if they are not counted.
+ */
 @FieldDefaults(level = AccessLevel.PRIVATE)
 @Getter
 public class Page<T> {
+    public static final long UNKNOWN = -1;
+
     final long pageSize;
     final long pageNumber;
     final long elementTotal;
     final List<T> content;
     final long pageTotal;
+    final boolean keyset;
+    final String previousCursor;
+    final String nextCursor;
 
-    private Page(long pageSize, long pageNumber, long elementTotal, List<T> content) {
+    private Page(long pageSize, long pageNumber, long elementTotal, List<T> content,
+                 boolean keyset, String previousCursor, String nextCursor) {
         this.pageSize = pageSize;
         this.pageNumber = pageNumber;
         this.elementTotal = elementTotal;
         this.content = content;
-        this.pageTotal = (elementTotal+pageSize-1) / pageSize;
+        this.pageTotal = elementTotal == UNKNOWN ? UNKNOWN : (elementTotal+pageSize-1) / pageSize;
+        this.keyset = keyset;
+        this.previousCursor = previousCursor;
+        this.nextCursor = nextCursor;
     }
 
     public static <V> Page<V> newInstance(long pageSize, long pageNumber, long elementTotal, List<V> content) {
-        return new Page<>(pageSize, pageNumber, elementTotal, content);
+        return new Page<>(pageSize, pageNumber, elementTotal, content, false, null, null);
+    }
+
+    public static <V> Page<V> newKeysetInstance(long pageSize, long elementTotal, List<V> content,
+                                                String previousCursor, String nextCursor) {
+        return new Page<>(pageSize, 0, elementTotal, content, true, previousCursor, nextCursor);
     }
 }
@@ -0,0 +1,54 @@
+package fr.univtln.bruno.samples.jaxrs.model;
+
+import jakarta.ws.rs.core.EntityTag;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+
+import java.util.Date;
+
+/**
+ * A version of the library or of one of its authors : the number of the write that made it and its time.
+ * The numbers restart with the library, so the tags also carry the time the library was created (its epoch)
+ * and never match the tags given before a restart.
+ */
+@Getter
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class Version {
+    long epoch;
+    long number;
+    long lastModified;
+
+    /**
+     * Creates the first version of a library.
+     *
+     * @return the version
+     */
+    static Version first() {
+        long now = System.currentTimeMillis();
+        return new Version(now, 0, now);
+    }
+
+    /**
+     * @return the version made by the next write.
+     */
+    Version next() {
+        return new Version(epoch, number + 1, System.currentTimeMillis());
+    }
+
+    /**
+     * @return the strong entity tag of this version.
+     */
+    public EntityTag getEntityTag() {
+        return new EntityTag(Long.toString(epoch, Character.MAX_RADIX) + "-" + Long.toString(number, Character.MAX_RADIX));
+    }
+
+    /**
+     * @return the time of this version as a date, truncated to the second as the http dates.
+     */
+    public Date getLastModifiedDate() {
+        return new Date(lastModified - lastModified % 1000);
+    }
+}
@@ -0,0 +1,36 @@
+package fr.univtln.bruno.samples.jaxrs.model.index;
+
+import org.eclipse.collections.api.set.primitive.LongSet;
+import org.eclipse.collections.impl.factory.primitive.LongSets;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Operations on primitive sets of ids.
+ */
+public final class IdSets {
+    private IdSets() {
+    }
+
+    /**
+     * Intersects sets of ids, starting with the smallest one so the cost is bounded by its size.
+     *
+     * @param sets the sets to intersect (at least one)
+     * @return the intersection, it may be one of the given sets and must not be modified.
+     */
+    public static LongSet intersection(List<? extends LongSet> sets) {
+        if (sets.size() == 1) return sets.get(0);
+        List<LongSet> bySize = new ArrayList<>(sets);
+        bySize.sort(Comparator.comparingInt(LongSet::size));
+        LongSet smallest = bySize.get(0);
+        if (smallest.isEmpty()) return LongSets.immutable.empty();
+        List<LongSet> others = bySize.subList(1, bySize.size());
+        return smallest.select(id -> {
+            for (LongSet other : others)
+                if (!other.contains(id)) return false;
+            return true;
+        });
+    }
+}
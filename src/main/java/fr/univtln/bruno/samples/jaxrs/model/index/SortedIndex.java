@@ -0,0 +1,264 @@
+package fr.univtln.bruno.samples.jaxrs.model.index;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.eclipse.collections.api.list.primitive.LongList;
+import org.eclipse.collections.api.list.primitive.MutableLongList;
+import org.eclipse.collections.api.map.MutableMap;
+import org.eclipse.collections.api.set.primitive.LongSet;
+import org.eclipse.collections.api.set.primitive.MutableLongSet;
+import org.eclipse.collections.impl.factory.Maps;
+import org.eclipse.collections.impl.factory.primitive.LongLists;
+import org.eclipse.collections.impl.factory.primitive.LongSets;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * An ordered secondary index of ids by the value of a field.
+ * Entries are sorted by value (null first) then by id, so the order is total and stable.
+ * It is an order statistic tree (a treap whose nodes know the size of their subtree) :
+ * the entry at a given rank is found in O(log n), so a page is read in O(log n + pageSize).
+ * Exact case insensitive matches are answered by a hash of the case folded values.
+ * This class is not thread safe, the Library guards it with its own lock.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class SortedIndex {
+    Node root;
+    final MutableMap<String, MutableLongSet> exactMatches = Maps.mutable.empty();
+
+    /**
+     * Folds a value such that two values are equal ignoring case (as in {@link String#equalsIgnoreCase(String)})
+     * if and only if their folded values are equal.
+     *
+     * @param value the value
+     * @return the folded value
+     */
+    static String fold(String value) {
+        char[] chars = value.toCharArray();
+        for (int i = 0; i < chars.length; i++)
+            chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+        return new String(chars);
+    }
+
+    /**
+     * Compares two entries in the order of the index : by value (null first) then by id.
+     *
+     * @param key1 the value of the first entry
+     * @param id1  the id of the first entry
+     * @param key2 the value of the second entry
+     * @param id2  the id of the second entry
+     * @return a negative number, zero or a positive number if the first entry is before, equal or after the second.
+     */
+    public static int compare(String key1, long id1, String key2, long id2) {
+        if (key1 != key2) {
+            if (key1 == null) return -1;
+            if (key2 == null) return 1;
+            int result = key1.compareTo(key2);
+            if (result != 0) return result;
+        }
+        return Long.compare(id1, id2);
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    //The priority of the treap is a hash of the id, so the tree is balanced on average whatever the insertion order.
+    private static int priority(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 32;
+        return (int) h;
+    }
+
+    /**
+     * Adds an entry.
+     *
+     * @param key the value of the field (may be null)
+     * @param id  the id
+     */
+    public void add(String key, long id) {
+        root = insert(root, new Node(key, id));
+        if (key != null) exactMatches.getIfAbsentPut(fold(key), LongSets.mutable::empty).add(id);
+    }
+
+    /**
+     * Removes an entry.
+     *
+     * @param key the value of the field when the entry was added
+     * @param id  the id
+     */
+    public void remove(String key, long id) {
+        root = delete(root, key, id);
+        if (key != null) {
+            String folded = fold(key);
+            MutableLongSet ids = exactMatches.get(folded);
+            if (ids != null && ids.remove(id) && ids.isEmpty()) exactMatches.remove(folded);
+        }
+    }
+
+    /**
+     * Removes every entry.
+     */
+    public void clear() {
+        root = null;
+        exactMatches.clear();
+    }
+
+    /**
+     * @return the number of entries.
+     */
+    public int size() {
+        return size(root);
+    }
+
+    /**
+     * Gets the ids whose value is equal to a given one ignoring case.
+     *
+     * @param value the value
+     * @return the matching ids (must not be modified)
+     */
+    public LongSet getExactMatches(String value) {
+        MutableLongSet ids = exactMatches.get(fold(value));
+        return ids == null ? LongSets.immutable.empty() : ids;
+    }
+
+    /**
+     * Gets the rank of a position, i.e. the number of entries strictly before it.
+     * The position does not have to be an entry of the index.
+     *
+     * @param key the value of the position
+     * @param id  the id of the position
+     * @return the rank
+     */
+    public int rank(String key, long id) {
+        int rank = 0;
+        Node node = root;
+        while (node != null) {
+            if (compare(node.key, node.id, key, id) < 0) {
+                rank += size(node.left) + 1;
+                node = node.right;
+            } else
+                node = node.left;
+        }
+        return rank;
+    }
+
+    /**
+     * Gets the ids at the ranks [from, from + count) in the index order.
+     *
+     * @param from  the rank of the first id
+     * @param count the maximum number of ids
+     * @return the ids in order
+     */
+    public LongList range(long from, long count) {
+        MutableLongList ids = LongLists.mutable.empty();
+        if (from < 0 || from >= size() || count <= 0) return ids;
+
+        //We descend to the first rank keeping the path of nodes still to be visited in order.
+        Deque<Node> path = new ArrayDeque<>();
+        Node node = root;
+        long rank = from;
+        while (node != null) {
+            int leftSize = size(node.left);
+            if (rank < leftSize) {
+                path.push(node);
+                node = node.left;
+            } else if (rank == leftSize) {
+                path.push(node);
+                break;
+            } else {
+                rank -= leftSize + 1;
+                node = node.right;
+            }
+        }
+
+        //Then an in order traversal until count ids are collected.
+        while (!path.isEmpty() && ids.size() < count) {
+            node = path.pop();
+            ids.add(node.id);
+            for (Node child = node.right; child != null; child = child.left)
+                path.push(child);
+        }
+        return ids;
+    }
+
+    private Node insert(Node node, Node newNode) {
+        if (node == null) return newNode;
+        if (newNode.priority > node.priority) {
+            split(node, newNode);
+            newNode.update();
+            return newNode;
+        }
+        if (compare(newNode.key, newNode.id, node.key, node.id) < 0)
+            node.left = insert(node.left, newNode);
+        else
+            node.right = insert(node.right, newNode);
+        node.update();
+        return node;
+    }
+
+    //Splits the subtree rooted in node around the pivot, the two parts become the children of the pivot.
+    private void split(Node node, Node pivot) {
+        if (node == null) {
+            pivot.left = pivot.right = null;
+            return;
+        }
+        if (compare(node.key, node.id, pivot.key, pivot.id) < 0) {
+            split(node.right, pivot);
+            node.right = pivot.left;
+            node.update();
+            pivot.left = node;
+        } else {
+            split(node.left, pivot);
+            node.left = pivot.right;
+            node.update();
+            pivot.right = node;
+        }
+    }
+
+    private Node delete(Node node, String key, long id) {
+        if (node == null) return null;
+        int comparison = compare(key, id, node.key, node.id);
+        if (comparison == 0) return merge(node.left, node.right);
+        if (comparison < 0)
+            node.left = delete(node.left, key, id);
+        else
+            node.right = delete(node.right, key, id);
+        node.update();
+        return node;
+    }
+
+    private Node merge(Node left, Node right) {
+        if (left == null) return right;
+        if (right == null) return left;
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            left.update();
+            return left;
+        }
+        right.left = merge(left, right.left);
+        right.update();
+        return right;
+    }
+
+    @FieldDefaults(level = AccessLevel.PRIVATE)
+    private static class Node {
+        final String key;
+        final long id;
+        final int priority;
+        int size = 1;
+        Node left;
+        Node right;
+
+        Node(String key, long id) {
+            this.key = key;
+            this.id = id;
+            this.priority = priority(id);
+        }
+
+        void update() {
+            size = 1 + SortedIndex.size(left) + SortedIndex.size(right);
+        }
+    }
+}
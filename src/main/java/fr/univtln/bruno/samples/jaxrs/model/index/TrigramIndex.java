@@ -0,0 +1,85 @@
+package fr.univtln.bruno.samples.jaxrs.model.index;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.eclipse.collections.api.map.primitive.MutableLongObjectMap;
+import org.eclipse.collections.api.set.primitive.LongSet;
+import org.eclipse.collections.api.set.primitive.MutableLongSet;
+import org.eclipse.collections.impl.factory.primitive.LongObjectMaps;
+import org.eclipse.collections.impl.factory.primitive.LongSets;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An inverted index of the trigrams (three consecutive chars) of a text field, used for "contains" filters.
+ * Each trigram is packed in a long and maps to the set of ids whose text contains it.
+ * A text containing a query contains all its trigrams, so the intersection of their sets
+ * is a superset of the matching ids : the candidates must still be verified.
+ * This class is not thread safe, the Library guards it with its own lock.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class TrigramIndex {
+    /**
+     * The number of chars of a gram.
+     */
+    public static final int GRAM_LENGTH = 3;
+
+    final MutableLongObjectMap<MutableLongSet> postings = LongObjectMaps.mutable.empty();
+
+    private static MutableLongSet trigrams(String text) {
+        MutableLongSet trigrams = LongSets.mutable.empty();
+        for (int i = 0; i + GRAM_LENGTH <= text.length(); i++)
+            trigrams.add(((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2));
+        return trigrams;
+    }
+
+    /**
+     * Indexes a text.
+     *
+     * @param text the text (may be null)
+     * @param id   the id
+     */
+    public void add(String text, long id) {
+        if (text == null) return;
+        trigrams(text).forEach(trigram -> postings.getIfAbsentPut(trigram, LongSets.mutable::empty).add(id));
+    }
+
+    /**
+     * Removes a text from the index.
+     *
+     * @param text the text when it was added (may be null)
+     * @param id   the id
+     */
+    public void remove(String text, long id) {
+        if (text == null) return;
+        trigrams(text).forEach(trigram -> {
+            MutableLongSet ids = postings.get(trigram);
+            if (ids != null && ids.remove(id) && ids.isEmpty()) postings.remove(trigram);
+        });
+    }
+
+    /**
+     * Removes every text.
+     */
+    public void clear() {
+        postings.clear();
+    }
+
+    /**
+     * Gets the ids whose text may contain a query.
+     *
+     * @param query the searched text
+     * @return the candidate ids (must not be modified), or null if the query is too short to use the index.
+     */
+    public LongSet getCandidates(String query) {
+        if (query.length() < GRAM_LENGTH) return null;
+        List<LongSet> sets = new ArrayList<>();
+        for (long trigram : trigrams(query).toArray()) {
+            MutableLongSet ids = postings.get(trigram);
+            if (ids == null) return LongSets.immutable.empty();
+            sets.add(ids);
+        }
+        return IdSets.intersection(sets);
+    }
+}
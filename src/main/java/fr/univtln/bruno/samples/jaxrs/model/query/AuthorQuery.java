@@ -0,0 +1,110 @@
+package fr.univtln.bruno.samples.jaxrs.model.query;
+
+import fr.univtln.bruno.samples.jaxrs.exceptions.BusinessException;
+import fr.univtln.bruno.samples.jaxrs.model.Library;
+import fr.univtln.bruno.samples.jaxrs.resources.PaginationInfo;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+
+import jakarta.ws.rs.core.Response;
+
+import java.security.InvalidParameterException;
+import java.util.Comparator;
+import java.util.function.Predicate;
+
+/**
+ * A query plan on authors, compiled once from the pagination info before being executed by the Library.
+ * The sort field and its comparator are resolved, the exact filters (answered by the indexes) are separated
+ * from the chain of predicates checked on each candidate, and the page bounds give the capacity
+ * of the bounded heap used to select the page in a single pass.
+ * With keyset pagination the page is located by a cursor instead of an offset.
+ */
+@Getter
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class AuthorQuery {
+    Library.Field sortField;
+    Comparator<Library.Author> comparator;
+    String name;
+    String firstname;
+    String biography;
+    Predicate<Library.Author> predicate;
+    long pageSize;
+    long pageNumber;
+    long offset;
+    long limit;
+    boolean keyset;
+    Cursor cursor;
+    boolean counted;
+
+    private AuthorQuery(PaginationInfo paginationInfo) throws BusinessException {
+        sortField = Library.Field.valueOf(paginationInfo.getSortKey().toUpperCase());
+        if (!sortField.isSortable()) throw new InvalidParameterException();
+        //Same order as the sorted indexes : the value (null first) then the id.
+        comparator = Comparator.comparing(sortField::getValue, Comparator.nullsFirst(Comparator.<String>naturalOrder()))
+                .thenComparingLong(Library.Author::getId);
+
+        name = paginationInfo.getName();
+        firstname = paginationInfo.getFirstname();
+
+        biography = paginationInfo.getBiography();
+
+        //The biography index only gives candidates, the contains filter is always verified.
+        Predicate<Library.Author> chain = null;
+        if (biography != null)
+            chain = author -> author.getBiography() != null && author.getBiography().contains(biography);
+        predicate = chain;
+
+        pageSize = paginationInfo.getPageSize();
+        pageNumber = paginationInfo.getPage();
+        boolean paginated = (paginationInfo.getPage() > 0) && (paginationInfo.getPageSize() > 0);
+        offset = paginated ? paginationInfo.getPageSize() * (paginationInfo.getPage() - 1) : 0;
+        limit = paginated ? paginationInfo.getPageSize() : Long.MAX_VALUE;
+
+        //An empty cursor starts a keyset pagination from the first author.
+        keyset = paginationInfo.getCursor() != null;
+        cursor = keyset && !paginationInfo.getCursor().isEmpty() ? Cursor.decode(paginationInfo.getCursor()) : null;
+        if (cursor != null && cursor.getField() != sortField)
+            throw new BusinessException(Response.Status.BAD_REQUEST, "The cursor does not match the sort key");
+        if (keyset && paginationInfo.getPageSize() <= 0)
+            throw new BusinessException(Response.Status.BAD_REQUEST, "A page size is needed with a cursor");
+        counted = !keyset || paginationInfo.isCount();
+    }
+
+    /**
+     * Compiles the pagination info into a query plan.
+     *
+     * @param paginationInfo the pagination info
+     * @return the query plan
+     * @throws IllegalArgumentException  if the sort key is not a field.
+     * @throws InvalidParameterException if the field is not sortable.
+     * @throws BusinessException         if the cursor is invalid.
+     */
+    public static AuthorQuery compile(PaginationInfo paginationInfo) throws BusinessException {
+        return new AuthorQuery(paginationInfo);
+    }
+
+    /**
+     * @return true if the query has at least one filter.
+     */
+    public boolean hasFilter() {
+        return name != null || firstname != null || predicate != null;
+    }
+
+    /**
+     * @return the number of authors to keep in the bounded heap (all the pages up to the requested one).
+     */
+    public long getCapacity() {
+        return limit == Long.MAX_VALUE ? Long.MAX_VALUE : offset + limit;
+    }
+
+    /**
+     * Checks the predicates which are not answered by an index.
+     *
+     * @param author the candidate
+     * @return true if the author is accepted.
+     */
+    public boolean test(Library.Author author) {
+        return predicate == null || predicate.test(author);
+    }
+}
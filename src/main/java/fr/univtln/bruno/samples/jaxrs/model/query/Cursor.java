@@ -0,0 +1,99 @@
+package fr.univtln.bruno.samples.jaxrs.model.query;
+
+import fr.univtln.bruno.samples.jaxrs.exceptions.BusinessException;
+import fr.univtln.bruno.samples.jaxrs.model.Library;
+import fr.univtln.bruno.samples.jaxrs.model.index.SortedIndex;
+import jakarta.ws.rs.core.Response;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * A position in the sorted authors for keyset pagination : the sort key and the id of an author,
+ * and whether the page is after or before it. Its textual form is opaque (url safe base64)
+ * so clients just send back the cursors they received.
+ */
+@Getter
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class Cursor {
+    private static final String SEPARATOR = "|";
+    private static final String INVALID_CURSOR = "Invalid cursor";
+
+    Direction direction;
+    Library.Field field;
+    String key;
+    long id;
+
+    /**
+     * Creates a cursor to the authors following an author.
+     *
+     * @param field  the sort field
+     * @param author the last author of a page
+     * @return the cursor
+     */
+    public static Cursor after(Library.Field field, Library.Author author) {
+        return new Cursor(Direction.AFTER, field, field.getValue(author), author.getId());
+    }
+
+    /**
+     * Creates a cursor to the authors preceding an author.
+     *
+     * @param field  the sort field
+     * @param author the first author of a page
+     * @return the cursor
+     */
+    public static Cursor before(Library.Field field, Library.Author author) {
+        return new Cursor(Direction.BEFORE, field, field.getValue(author), author.getId());
+    }
+
+    /**
+     * Decodes a cursor.
+     *
+     * @param encoded the textual form of the cursor
+     * @return the cursor
+     * @throws BusinessException if the cursor is invalid.
+     */
+    public static Cursor decode(String encoded) throws BusinessException {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(encoded), StandardCharsets.UTF_8)
+                    .split("\\|", 4);
+            if (parts.length < 3) throw new BusinessException(Response.Status.BAD_REQUEST, INVALID_CURSOR);
+            return new Cursor(Direction.valueOf(parts[0]), Library.Field.valueOf(parts[1]),
+                    parts.length == 4 ? parts[3] : null, Long.parseLong(parts[2]));
+        } catch (java.lang.IllegalArgumentException e) {
+            throw new BusinessException(Response.Status.BAD_REQUEST, INVALID_CURSOR);
+        }
+    }
+
+    /**
+     * @return the opaque textual form of the cursor.
+     */
+    public String encode() {
+        //A null key has no last part, an empty one has an empty last part.
+        String raw = direction + SEPARATOR + field + SEPARATOR + id + (key == null ? "" : SEPARATOR + key);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Locates an author relatively to the position of the cursor, in the order of the sorted indexes.
+     *
+     * @param author the author
+     * @return a negative number, zero or a positive number if the author is before, at or after the position.
+     */
+    public int locate(Library.Author author) {
+        return SortedIndex.compare(field.getValue(author), author.getId(), key, id);
+    }
+
+    /**
+     * The side of the position where the page is.
+     */
+    public enum Direction {
+        AFTER,
+        BEFORE
+    }
+}
@@ -0,0 +1,79 @@
+package fr.univtln.bruno.samples.jaxrs.model.query;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps the k smallest elements offered according to a comparator, in a bounded heap.
+ * Selecting the first k of n elements costs O(n log k) and O(k) memory instead of a full sort.
+ * It also counts every offered element, so a single pass gives both the total and the selection.
+ *
+ * @param <T> the type of the elements
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class TopK<T> {
+    //The largest kept element is on top of the heap, it is the one to evict.
+    final PriorityQueue<T> heap;
+    final Comparator<? super T> comparator;
+    final long capacity;
+
+    /**
+     * The number of elements offered so far.
+     */
+    @Getter
+    long offered;
+
+    /**
+     * Creates a new bounded heap.
+     *
+     * @param comparator the order of the elements
+     * @param capacity   the number of elements to keep (k)
+     */
+    public TopK(Comparator<? super T> comparator, long capacity) {
+        this.comparator = comparator;
+        this.capacity = capacity;
+        this.heap = new PriorityQueue<>((int) Math.min(Math.max(capacity, 1), 1024), comparator.reversed());
+    }
+
+    /**
+     * Offers an element, it is kept if it is among the k smallest so far.
+     *
+     * @param element the element
+     */
+    public void offer(T element) {
+        offered++;
+        if (heap.size() < capacity)
+            heap.add(element);
+        else if (capacity > 0 && comparator.compare(element, heap.peek()) < 0) {
+            heap.poll();
+            heap.add(element);
+        }
+    }
+
+    /**
+     * @return the kept elements in increasing order.
+     */
+    public List<T> toSortedList() {
+        List<T> result = new ArrayList<>(heap);
+        result.sort(comparator);
+        return result;
+    }
+
+    /**
+     * Returns the kept elements in increasing order, skipping the first ones.
+     *
+     * @param skip the number of smallest elements to skip
+     * @return the remaining elements in increasing order
+     */
+    public List<T> toSortedList(long skip) {
+        List<T> result = toSortedList();
+        return skip >= result.size() ? Collections.emptyList() : result.subList((int) skip, result.size());
+    }
+}
@@ -0,0 +1,102 @@
+package fr.univtln.bruno.samples.jaxrs.model.store;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.eclipse.collections.api.LongIterable;
+import org.eclipse.collections.api.set.primitive.ImmutableLongSet;
+import org.eclipse.collections.api.set.primitive.LongSet;
+import org.eclipse.collections.impl.factory.primitive.LongSets;
+
+/**
+ * The books-authors relation as an immutable bidirectional adjacency : the ids of the books of each author
+ * and the ids of the authors of each book, in primitive sets. No object is referenced, so a removed author
+ * or book leaves nothing behind, and both directions are read without loading any author or book.
+ * Like {@link PersistentLongMap} a change gives a new version sharing the unchanged sets with the previous one,
+ * it costs O(degree) : the sets of the neighbours of the changed id are copied.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public final class Adjacency {
+    private static final Adjacency EMPTY = new Adjacency(PersistentLongMap.empty(), PersistentLongMap.empty());
+
+    PersistentLongMap<ImmutableLongSet> booksByAuthor;
+    PersistentLongMap<ImmutableLongSet> authorsByBook;
+
+    private Adjacency(PersistentLongMap<ImmutableLongSet> booksByAuthor,
+                      PersistentLongMap<ImmutableLongSet> authorsByBook) {
+        this.booksByAuthor = booksByAuthor;
+        this.authorsByBook = authorsByBook;
+    }
+
+    public static Adjacency empty() {
+        return EMPTY;
+    }
+
+    private static LongSet orEmpty(ImmutableLongSet ids) {
+        return ids == null ? LongSets.immutable.empty() : ids;
+    }
+
+    /**
+     * @param authorId the id of an author
+     * @return the ids of its books (empty if it has none).
+     */
+    public LongSet getBooks(long authorId) {
+        return orEmpty(booksByAuthor.get(authorId));
+    }
+
+    /**
+     * @param bookId the id of a book
+     * @return the ids of its authors (empty if it has none).
+     */
+    public LongSet getAuthors(long bookId) {
+        return orEmpty(authorsByBook.get(bookId));
+    }
+
+    /**
+     * Gives a new version with a book linked to its authors.
+     *
+     * @param bookId    the id of the book
+     * @param authorIds the ids of its authors
+     * @return the new version
+     */
+    public Adjacency addBook(long bookId, LongIterable authorIds) {
+        PersistentLongMap<ImmutableLongSet> books = booksByAuthor;
+        ImmutableLongSet authors = LongSets.immutable.ofAll(authorIds);
+        for (long authorId : authors.toArray()) {
+            ImmutableLongSet authorBooks = books.get(authorId);
+            books = books.put(authorId, authorBooks == null ? LongSets.immutable.of(bookId) : authorBooks.newWith(bookId));
+        }
+        return new Adjacency(books, authorsByBook.put(bookId, authors));
+    }
+
+    /**
+     * Gives a new version without an author : it is unlinked from each of its books.
+     *
+     * @param authorId the id of the author
+     * @return the new version
+     */
+    public Adjacency removeAuthor(long authorId) {
+        ImmutableLongSet authorBooks = booksByAuthor.get(authorId);
+        if (authorBooks == null) return this;
+        PersistentLongMap<ImmutableLongSet> authors = authorsByBook;
+        for (long bookId : authorBooks.toArray())
+            authors = authors.put(bookId, authors.get(bookId).newWithout(authorId));
+        return new Adjacency(booksByAuthor.remove(authorId), authors);
+    }
+
+    /**
+     * Gives a new version without a book : it is unlinked from each of its authors.
+     *
+     * @param bookId the id of the book
+     * @return the new version
+     */
+    public Adjacency removeBook(long bookId) {
+        ImmutableLongSet bookAuthors = authorsByBook.get(bookId);
+        if (bookAuthors == null) return this;
+        PersistentLongMap<ImmutableLongSet> books = booksByAuthor;
+        for (long authorId : bookAuthors.toArray()) {
+            ImmutableLongSet authorBooks = books.get(authorId).newWithout(bookId);
+            books = authorBooks.isEmpty() ? books.remove(authorId) : books.put(authorId, authorBooks);
+        }
+        return new Adjacency(books, authorsByBook.remove(bookId));
+    }
+}
@@ -0,0 +1,89 @@
+package fr.univtln.bruno.samples.jaxrs.model.store;
+
+import fr.univtln.bruno.samples.jaxrs.model.Library;
+
+import java.util.Locale;
+import java.util.function.Consumer;
+
+/**
+ * Where the Library keeps its authors, indexed by id.
+ * Implementations are not thread safe, the Library guards them with its own lock.
+ * Readers may run optimistically during a write : they may see an inconsistent state
+ * but must then fail with a {@link RuntimeException} rather than loop or exhaust the memory.
+ * A reader needing a consistent state for a long time (an export) pins a {@link View} instead,
+ * which is not affected by the next writes.
+ */
+public interface AuthorStore {
+    /**
+     * The system property selecting the storage : heap (default) or offheap.
+     */
+    String STORAGE_PROPERTY = "library.storage";
+
+    /**
+     * Creates the store selected by the system property {@value #STORAGE_PROPERTY}.
+     *
+     * @return the store
+     */
+    static AuthorStore newInstance() {
+        return "offheap".equals(System.getProperty(STORAGE_PROPERTY, "heap").toLowerCase(Locale.ROOT)) ?
+                new OffHeapAuthorStore() : new HeapAuthorStore();
+    }
+
+    /**
+     * Gets an author.
+     *
+     * @param id the id
+     * @return the author, or null if there is none with this id.
+     */
+    Library.Author get(long id);
+
+    boolean contains(long id);
+
+    /**
+     * Adds an author, or replaces the one with the same id.
+     *
+     * @param author the author with its id
+     */
+    void put(Library.Author author);
+
+    /**
+     * Removes an author.
+     *
+     * @param id the id
+     * @return the removed author, or null if there was none with this id.
+     */
+    Library.Author remove(long id);
+
+    int size();
+
+    void clear();
+
+    /**
+     * Gives every author to an action, in no particular order.
+     *
+     * @param action the action
+     */
+    void forEach(Consumer<Library.Author> action);
+
+    /**
+     * Pins the current content of the store, must be called under the read lock of the Library.
+     *
+     * @return the view of the current content, to be closed when it is not needed anymore.
+     */
+    View snapshot();
+
+    /**
+     * An immutable view of the content of a store at some point. It can be read by any thread without any lock.
+     */
+    interface View extends Iterable<Library.Author>, AutoCloseable {
+        Library.Author get(long id);
+
+        int size();
+
+        /**
+         * Releases the view, the space of the authors only it could see can then be reclaimed.
+         */
+        @Override
+        void close();
+    }
+}
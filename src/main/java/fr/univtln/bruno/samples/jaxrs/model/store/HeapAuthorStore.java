@@ -0,0 +1,86 @@
+package fr.univtln.bruno.samples.jaxrs.model.store;
+
+import fr.univtln.bruno.samples.jaxrs.model.Library;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+
+import java.util.Iterator;
+import java.util.function.Consumer;
+
+/**
+ * The default store : the authors are kept as objects in a persistent map.
+ * A new version of the map is published at each write, a view is just the current version.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class HeapAuthorStore implements AuthorStore {
+    volatile PersistentLongMap<Library.Author> authors = PersistentLongMap.empty();
+
+    @Override
+    public Library.Author get(long id) {
+        return authors.get(id);
+    }
+
+    @Override
+    public boolean contains(long id) {
+        return authors.containsKey(id);
+    }
+
+    @Override
+    public void put(Library.Author author) {
+        authors = authors.put(author.getId(), author);
+    }
+
+    @Override
+    public Library.Author remove(long id) {
+        PersistentLongMap<Library.Author> current = authors;
+        Library.Author removed = current.get(id);
+        if (removed != null) authors = current.remove(id);
+        return removed;
+    }
+
+    @Override
+    public int size() {
+        return authors.size();
+    }
+
+    @Override
+    public void clear() {
+        authors = PersistentLongMap.empty();
+    }
+
+    @Override
+    public void forEach(Consumer<Library.Author> action) {
+        authors.forEachValue(action);
+    }
+
+    @Override
+    public View snapshot() {
+        PersistentLongMap<Library.Author> version = authors;
+        return new View() {
+            @Override
+            public Library.Author get(long id) {
+                return version.get(id);
+            }
+
+            @Override
+            public int size() {
+                return version.size();
+            }
+
+            @Override
+            public Iterator<Library.Author> iterator() {
+                return version.iterator();
+            }
+
+            @Override
+            public void forEach(Consumer<? super Library.Author> action) {
+                version.forEachValue(action);
+            }
+
+            @Override
+            public void close() {
+                //The garbage collector reclaims the version once it is not referenced anymore.
+            }
+        };
+    }
+}
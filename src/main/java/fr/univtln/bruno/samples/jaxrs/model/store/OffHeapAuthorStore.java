@@ -0,0 +1,356 @@
+package fr.univtln.bruno.samples.jaxrs.model.store;
+
+import fr.univtln.bruno.samples.jaxrs.model.Library;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.eclipse.collections.api.iterator.IntIterator;
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
+import org.eclipse.collections.impl.list.mutable.primitive.LongArrayList;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * A store which keeps the fields of the authors out of the Java heap, in columns : there is no
+ * {@link Library.Author} object per author, they are materialized on demand (at the serialization boundary).
+ * <ul>
+ * <li>the names and the firstnames are dictionary encoded : each distinct value is stored once as a String
+ * on the heap, and kept until the store is cleared even when no author uses it any more,</li>
+ * <li>a row of fixed size per author, in direct buffers, holds its id, the codes of its name and firstname
+ * and the address of its biography,</li>
+ * <li>the biographies are length prefixed UTF-8 in an arena of direct buffers, it is compacted when
+ * the space of the removed or updated biographies exceeds the live one,</li>
+ * <li>a persistent map of primitive arrays on the heap gives the row of an id (12 bytes per author in its
+ * arrays plus the nodes, each shared by several authors), the rows of removed authors are reused.</li>
+ * </ul>
+ * The indexes of the library (see the index package) and the versions of the authors are kept on the heap
+ * whatever the store.
+ * A view holds the version of the map of the rows at its pin, so pinning copies nothing. While views are pinned
+ * the rows are copied on write : a replaced or removed row is retired, and reused only once every view which
+ * could see it is closed. The arena is not compacted meanwhile.
+ * The direct memory is limited by -XX:MaxDirectMemorySize (by default the maximum heap size).
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class OffHeapAuthorStore implements AuthorStore {
+    private static final int ID = 0;
+    private static final int NAME = 8;
+    private static final int FIRSTNAME = 12;
+    private static final int BIOGRAPHY = 16;
+    private static final int ROW_SIZE = 24;
+    private static final int ROWS_SEGMENT_BITS = 16;
+    private static final int ROWS_PER_SEGMENT = 1 << ROWS_SEGMENT_BITS;
+    private static final int ARENA_SEGMENT_SIZE = 1 << 22;
+    //The id of a free row, the ids given by the Library start at 1.
+    private static final long FREE = 0;
+    private static final long NO_BIOGRAPHY = -1;
+
+    final StringDictionary names = new StringDictionary();
+    final StringDictionary firstnames = new StringDictionary();
+    //A new version at each new row, the rows updated in place keep their entry.
+    volatile PersistentLongIntMap rows = PersistentLongIntMap.empty();
+    final IntArrayList freeRows = new IntArrayList();
+    ByteBuffer[] rowSegments = new ByteBuffer[0];
+    int rowCount;
+
+    ByteBuffer[] arena = new ByteBuffer[0];
+    int arenaPosition;
+    long arenaLive;
+    long arenaGarbage;
+
+    //The number of writes so far, a view sees the writes up to its sequence.
+    long sequence;
+    final Set<OffHeapView> pinned = ConcurrentHashMap.newKeySet();
+    //The rows retired while views were pinned, with the sequence of the write which retired them, in order.
+    final IntArrayList retiredRows = new IntArrayList();
+    final LongArrayList retiredSequences = new LongArrayList();
+    int retiredHead;
+
+    private static ByteBuffer allocate(int capacity) {
+        return ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+    }
+
+    private static ByteBuffer rowSegment(ByteBuffer[] rowSegments, int row) {
+        return rowSegments[row >>> ROWS_SEGMENT_BITS];
+    }
+
+    private static int rowBase(int row) {
+        return (row & (ROWS_PER_SEGMENT - 1)) * ROW_SIZE;
+    }
+
+    private static Library.Author materialize(ByteBuffer[] rowSegments, ByteBuffer[] arena,
+                                              String[] names, String[] firstnames, int row) {
+        ByteBuffer segment = rowSegment(rowSegments, row);
+        int base = rowBase(row);
+        long biography = segment.getLong(base + BIOGRAPHY);
+        return Library.Author.builder()
+                .id(segment.getLong(base + ID))
+                .name(StringDictionary.decode(names, segment.getInt(base + NAME)))
+                .firstname(StringDictionary.decode(firstnames, segment.getInt(base + FIRSTNAME)))
+                .biography(biography == NO_BIOGRAPHY ? null :
+                        new String(readBiography(arena, biography), StandardCharsets.UTF_8))
+                .build();
+    }
+
+    private static byte[] readBiography(ByteBuffer[] arena, long address) {
+        ByteBuffer segment = arena[(int) (address >>> 32)].duplicate();
+        segment.position((int) address);
+        int length = segment.getInt();
+        //An optimistic reader may see a stale address, it must not allocate an absurd array.
+        if (length < 0 || length > segment.remaining()) throw new IndexOutOfBoundsException(length);
+        byte[] bytes = new byte[length];
+        segment.get(bytes);
+        return bytes;
+    }
+
+    private ByteBuffer rowSegment(int row) {
+        return rowSegment(rowSegments, row);
+    }
+
+    private Library.Author materialize(int row) {
+        return materialize(rowSegments, arena, names.values(), firstnames.values(), row);
+    }
+
+    @Override
+    public Library.Author get(long id) {
+        int row = rows.get(id);
+        return row == PersistentLongIntMap.ABSENT ? null : materialize(row);
+    }
+
+    @Override
+    public boolean contains(long id) {
+        return rows.containsKey(id);
+    }
+
+    @Override
+    public void put(Library.Author author) {
+        startWrite();
+        int current = rows.get(author.getId());
+        int row;
+        if (current != PersistentLongIntMap.ABSENT && pinned.isEmpty()) {
+            row = current;
+            release(row);
+        } else {
+            if (current != PersistentLongIntMap.ABSENT) retire(current);
+            row = allocateRow();
+            rows = rows.put(author.getId(), row);
+        }
+        ByteBuffer segment = rowSegment(row);
+        int base = rowBase(row);
+        segment.putLong(base + ID, author.getId());
+        segment.putInt(base + NAME, names.encode(author.getName()));
+        segment.putInt(base + FIRSTNAME, firstnames.encode(author.getFirstname()));
+        segment.putLong(base + BIOGRAPHY, author.getBiography() == null ?
+                NO_BIOGRAPHY : appendBiography(author.getBiography().getBytes(StandardCharsets.UTF_8)));
+        compactIfNeeded();
+    }
+
+    @Override
+    public Library.Author remove(long id) {
+        startWrite();
+        PersistentLongIntMap current = rows;
+        int row = current.get(id);
+        if (row == PersistentLongIntMap.ABSENT) return null;
+        rows = current.remove(id);
+        Library.Author author = materialize(row);
+        if (pinned.isEmpty())
+            free(row);
+        else
+            retire(row);
+        compactIfNeeded();
+        return author;
+    }
+
+    @Override
+    public int size() {
+        return rows.size();
+    }
+
+    @Override
+    public void clear() {
+        //The pinned views keep the previous buffers.
+        sequence++;
+        names.clear();
+        firstnames.clear();
+        rows = PersistentLongIntMap.empty();
+        freeRows.clear();
+        rowSegments = new ByteBuffer[0];
+        rowCount = 0;
+        arena = new ByteBuffer[0];
+        arenaPosition = 0;
+        arenaLive = 0;
+        arenaGarbage = 0;
+        retiredRows.clear();
+        retiredSequences.clear();
+        retiredHead = 0;
+    }
+
+    @Override
+    public void forEach(Consumer<Library.Author> action) {
+        rows.forEachValue(row -> action.accept(materialize(row)));
+    }
+
+    @Override
+    public View snapshot() {
+        OffHeapView view = new OffHeapView(sequence, rows, rowSegments, arena,
+                names.values(), firstnames.values());
+        pinned.add(view);
+        return view;
+    }
+
+    //A new write, the rows retired before every pinned view are reused.
+    private void startWrite() {
+        sequence++;
+        long oldestPinned = Long.MAX_VALUE;
+        for (OffHeapView view : pinned) oldestPinned = Math.min(oldestPinned, view.sequence);
+        while (retiredHead < retiredRows.size() && retiredSequences.get(retiredHead) <= oldestPinned)
+            free(retiredRows.get(retiredHead++));
+        if (retiredHead == retiredRows.size()) {
+            retiredRows.clear();
+            retiredSequences.clear();
+            retiredHead = 0;
+        }
+    }
+
+    private void retire(int row) {
+        retiredRows.add(row);
+        retiredSequences.add(sequence);
+    }
+
+    private void free(int row) {
+        release(row);
+        rowSegment(row).putLong(rowBase(row) + ID, FREE);
+        freeRows.add(row);
+    }
+
+    private int allocateRow() {
+        if (!freeRows.isEmpty()) return freeRows.removeAtIndex(freeRows.size() - 1);
+        if (rowCount == rowSegments.length * ROWS_PER_SEGMENT) {
+            ByteBuffer[] grown = Arrays.copyOf(rowSegments, rowSegments.length + 1);
+            grown[rowSegments.length] = allocate(ROWS_PER_SEGMENT * ROW_SIZE);
+            rowSegments = grown;
+        }
+        return rowCount++;
+    }
+
+    //The biography of a row becomes garbage.
+    private void release(int row) {
+        long address = rowSegment(row).getLong(rowBase(row) + BIOGRAPHY);
+        if (address == NO_BIOGRAPHY) return;
+        int size = Integer.BYTES + arena[(int) (address >>> 32)].getInt((int) address);
+        arenaLive -= size;
+        arenaGarbage += size;
+    }
+
+    /**
+     * Appends an UTF-8 biography to the arena.
+     *
+     * @return its address : the index of the segment in the high bits and the offset in the low ones.
+     */
+    private long appendBiography(byte[] bytes) {
+        int size = Integer.BYTES + bytes.length;
+        if (arena.length == 0 || arenaPosition + size > arena[arena.length - 1].capacity()) {
+            ByteBuffer[] grown = Arrays.copyOf(arena, arena.length + 1);
+            grown[arena.length] = allocate(Math.max(ARENA_SEGMENT_SIZE, size));
+            arena = grown;
+            arenaPosition = 0;
+        }
+        int segment = arena.length - 1;
+        long address = ((long) segment << 32) | arenaPosition;
+        arena[segment].duplicate().position(arenaPosition).putInt(bytes.length).put(bytes);
+        arenaPosition += size;
+        arenaLive += size;
+        return address;
+    }
+
+    //Copies the live biographies in a new arena when the garbage exceeds them, unless views may read the current one.
+    private void compactIfNeeded() {
+        if (arenaGarbage < ARENA_SEGMENT_SIZE || arenaGarbage < arenaLive || !pinned.isEmpty()) return;
+        ByteBuffer[] previous = arena;
+        arena = new ByteBuffer[0];
+        arenaPosition = 0;
+        arenaLive = 0;
+        arenaGarbage = 0;
+        for (int row = 0; row < rowCount; row++) {
+            ByteBuffer segment = rowSegment(row);
+            int base = rowBase(row);
+            long address = segment.getLong(base + BIOGRAPHY);
+            if (segment.getLong(base + ID) == FREE || address == NO_BIOGRAPHY) continue;
+            segment.putLong(base + BIOGRAPHY, appendBiography(readBiography(previous, address)));
+        }
+    }
+
+    /**
+     * @return the number of bytes of direct memory used.
+     */
+    public long getOffHeapBytes() {
+        long bytes = (long) rowSegments.length * ROWS_PER_SEGMENT * ROW_SIZE;
+        for (ByteBuffer segment : arena) bytes += segment.capacity();
+        return bytes;
+    }
+
+    /**
+     * A pinned view : the version of the rows map and the buffers and dictionaries as they were.
+     */
+    @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+    private class OffHeapView implements View {
+        long sequence;
+        PersistentLongIntMap rows;
+        ByteBuffer[] rowSegments;
+        ByteBuffer[] arena;
+        String[] names;
+        String[] firstnames;
+
+        OffHeapView(long sequence, PersistentLongIntMap rows, ByteBuffer[] rowSegments, ByteBuffer[] arena,
+                    String[] names, String[] firstnames) {
+            this.sequence = sequence;
+            this.rows = rows;
+            this.rowSegments = rowSegments;
+            this.arena = arena;
+            this.names = names;
+            this.firstnames = firstnames;
+        }
+
+        @Override
+        public Library.Author get(long id) {
+            int row = rows.get(id);
+            return row == PersistentLongIntMap.ABSENT ? null : materialize(rowSegments, arena, names, firstnames, row);
+        }
+
+        @Override
+        public int size() {
+            return rows.size();
+        }
+
+        @Override
+        public Iterator<Library.Author> iterator() {
+            IntIterator iterator = rows.intIterator();
+            return new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public Library.Author next() {
+                    return materialize(rowSegments, arena, names, firstnames, iterator.next());
+                }
+            };
+        }
+
+        @Override
+        public void forEach(Consumer<? super Library.Author> action) {
+            rows.forEachValue(row -> action.accept(materialize(rowSegments, arena, names, firstnames, row)));
+        }
+
+        @Override
+        public void close() {
+            pinned.remove(this);
+        }
+    }
+}
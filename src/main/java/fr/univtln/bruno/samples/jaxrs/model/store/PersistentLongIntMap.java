@@ -0,0 +1,284 @@
+package fr.univtln.bruno.samples.jaxrs.model.store;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.eclipse.collections.api.block.procedure.primitive.IntProcedure;
+import org.eclipse.collections.api.iterator.IntIterator;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.NoSuchElementException;
+
+/**
+ * The trie of {@link PersistentLongMap} with int values : the keys and the values of a node are kept in primitive
+ * arrays, so there is no object per entry (no boxed value), only the nodes, each of which holds the entries
+ * of up to 32 slices of hash. An update copies the path from the root to the changed entry and shares the rest.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+final class PersistentLongIntMap {
+    //Given by get for an absent key, the values are not negative.
+    static final int ABSENT = -1;
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    private static final long[] NO_KEYS = new long[0];
+    private static final int[] NO_VALUES = new int[0];
+    private static final Node[] NO_NODES = new Node[0];
+    private static final PersistentLongIntMap EMPTY = new PersistentLongIntMap(new Node(0, 0, NO_KEYS, NO_VALUES, NO_NODES), 0);
+
+    Node root;
+    int size;
+
+    private PersistentLongIntMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    static PersistentLongIntMap empty() {
+        return EMPTY;
+    }
+
+    private static long hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 32);
+    }
+
+    private static int bit(long hash, int shift) {
+        return 1 << ((int) (hash >>> shift) & MASK);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Gets the value of a key.
+     *
+     * @param key the key
+     * @return the value, or {@link #ABSENT} if there is none.
+     */
+    int get(long key) {
+        long hash = hash(key);
+        Node node = root;
+        for (int shift = 0; ; shift += BITS) {
+            int bit = bit(hash, shift);
+            if ((node.dataMap & bit) != 0) {
+                int index = node.dataIndex(bit);
+                return node.keys[index] == key ? node.values[index] : ABSENT;
+            }
+            if ((node.nodeMap & bit) == 0) return ABSENT;
+            node = node.nodes[node.nodeIndex(bit)];
+        }
+    }
+
+    boolean containsKey(long key) {
+        return get(key) != ABSENT;
+    }
+
+    /**
+     * Gives a new version with a key mapped to a value.
+     *
+     * @param key   the key
+     * @param value the value (not negative)
+     * @return the new version
+     */
+    PersistentLongIntMap put(long key, int value) {
+        if (value < 0) throw new IllegalArgumentException("Negative value " + value);
+        int[] sizeChange = {0};
+        Node newRoot = root.put(key, hash(key), value, 0, sizeChange);
+        return newRoot == root ? this : new PersistentLongIntMap(newRoot, size + sizeChange[0]);
+    }
+
+    /**
+     * Gives a new version without a key.
+     *
+     * @param key the key
+     * @return the new version (this one if the key is absent)
+     */
+    PersistentLongIntMap remove(long key) {
+        Node newRoot = root.remove(key, hash(key), 0);
+        return newRoot == root ? this : new PersistentLongIntMap(newRoot, size - 1);
+    }
+
+    /**
+     * Gives every value to an action, in no particular order.
+     *
+     * @param action the action
+     */
+    void forEachValue(IntProcedure action) {
+        root.forEach(action);
+    }
+
+    /**
+     * @return an iterator on the values, in the order of {@link #forEachValue(IntProcedure)}.
+     */
+    IntIterator intIterator() {
+        Deque<Node> pending = new ArrayDeque<>();
+        pending.push(root);
+        return new IntIterator() {
+            Node current;
+            int index;
+
+            @Override
+            public boolean hasNext() {
+                while (current == null || index == current.values.length) {
+                    if (pending.isEmpty()) return false;
+                    current = pending.pop();
+                    index = 0;
+                    for (int i = current.nodes.length - 1; i >= 0; i--) pending.push(current.nodes[i]);
+                }
+                return true;
+            }
+
+            @Override
+            public int next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return current.values[index++];
+            }
+        };
+    }
+
+    /**
+     * A node, as in {@link PersistentLongMap} : the entries and the children stored densely, the bitmaps telling
+     * which slices of hash they hold, every child holding at least two entries.
+     */
+    @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+    private static final class Node {
+        int dataMap;
+        int nodeMap;
+        long[] keys;
+        int[] values;
+        Node[] nodes;
+
+        Node(int dataMap, int nodeMap, long[] keys, int[] values, Node[] nodes) {
+            this.dataMap = dataMap;
+            this.nodeMap = nodeMap;
+            this.keys = keys;
+            this.values = values;
+            this.nodes = nodes;
+        }
+
+        //Two entries whose hashes are equal on the slices before shift.
+        static Node of(long key1, long hash1, int value1, long key2, long hash2, int value2, int shift) {
+            int bit1 = bit(hash1, shift);
+            int bit2 = bit(hash2, shift);
+            if (bit1 == bit2)
+                return new Node(0, bit1, NO_KEYS, NO_VALUES,
+                        new Node[]{of(key1, hash1, value1, key2, hash2, value2, shift + BITS)});
+            return Integer.compareUnsigned(bit1, bit2) < 0 ?
+                    new Node(bit1 | bit2, 0, new long[]{key1, key2}, new int[]{value1, value2}, NO_NODES) :
+                    new Node(bit1 | bit2, 0, new long[]{key2, key1}, new int[]{value2, value1}, NO_NODES);
+        }
+
+        int dataIndex(int bit) {
+            return Integer.bitCount(dataMap & (bit - 1));
+        }
+
+        int nodeIndex(int bit) {
+            return Integer.bitCount(nodeMap & (bit - 1));
+        }
+
+        Node put(long key, long hash, int value, int shift, int[] sizeChange) {
+            int bit = bit(hash, shift);
+            if ((dataMap & bit) != 0) {
+                int index = dataIndex(bit);
+                if (keys[index] == key) {
+                    if (values[index] == value) return this;
+                    int[] newValues = values.clone();
+                    newValues[index] = value;
+                    return new Node(dataMap, nodeMap, keys, newValues, nodes);
+                }
+                //The entry moves down in a new child with the added one.
+                sizeChange[0] = 1;
+                Node child = of(keys[index], hash(keys[index]), values[index], key, hash, value, shift + BITS);
+                int nodeIndex = nodeIndex(bit);
+                return new Node(dataMap ^ bit, nodeMap | bit,
+                        removeAt(keys, index), removeAt(values, index), insertAt(nodes, nodeIndex, child));
+            }
+            if ((nodeMap & bit) != 0) {
+                int index = nodeIndex(bit);
+                Node child = nodes[index].put(key, hash, value, shift + BITS, sizeChange);
+                if (child == nodes[index]) return this;
+                Node[] newNodes = nodes.clone();
+                newNodes[index] = child;
+                return new Node(dataMap, nodeMap, keys, values, newNodes);
+            }
+            sizeChange[0] = 1;
+            int index = dataIndex(bit);
+            return new Node(dataMap | bit, nodeMap, insertAt(keys, index, key), insertAt(values, index, value), nodes);
+        }
+
+        Node remove(long key, long hash, int shift) {
+            int bit = bit(hash, shift);
+            if ((dataMap & bit) != 0) {
+                int index = dataIndex(bit);
+                if (keys[index] != key) return this;
+                return new Node(dataMap ^ bit, nodeMap, removeAt(keys, index), removeAt(values, index), nodes);
+            }
+            if ((nodeMap & bit) == 0) return this;
+            int index = nodeIndex(bit);
+            Node child = nodes[index].remove(key, hash, shift + BITS);
+            if (child == nodes[index]) return this;
+            if (child.nodeMap == 0 && Integer.bitCount(child.dataMap) == 1) {
+                //A child left with a single entry is inlined.
+                int dataIndex = dataIndex(bit);
+                return new Node(dataMap | bit, nodeMap ^ bit, insertAt(keys, dataIndex, child.keys[0]),
+                        insertAt(values, dataIndex, child.values[0]), removeAt(nodes, index));
+            }
+            Node[] newNodes = nodes.clone();
+            newNodes[index] = child;
+            return new Node(dataMap, nodeMap, keys, values, newNodes);
+        }
+
+        void forEach(IntProcedure action) {
+            for (int value : values) action.value(value);
+            for (Node node : nodes) node.forEach(action);
+        }
+
+        private static long[] insertAt(long[] array, int index, long value) {
+            long[] result = new long[array.length + 1];
+            System.arraycopy(array, 0, result, 0, index);
+            result[index] = value;
+            System.arraycopy(array, index, result, index + 1, array.length - index);
+            return result;
+        }
+
+        private static int[] insertAt(int[] array, int index, int value) {
+            int[] result = new int[array.length + 1];
+            System.arraycopy(array, 0, result, 0, index);
+            result[index] = value;
+            System.arraycopy(array, index, result, index + 1, array.length - index);
+            return result;
+        }
+
+        private static <T> T[] insertAt(T[] array, int index, T value) {
+            T[] result = Arrays.copyOf(array, array.length + 1);
+            System.arraycopy(array, index, result, index + 1, array.length - index);
+            result[index] = value;
+            return result;
+        }
+
+        private static long[] removeAt(long[] array, int index) {
+            if (array.length == 1) return NO_KEYS;
+            long[] result = new long[array.length - 1];
+            System.arraycopy(array, 0, result, 0, index);
+            System.arraycopy(array, index + 1, result, index, array.length - index - 1);
+            return result;
+        }
+
+        private static int[] removeAt(int[] array, int index) {
+            if (array.length == 1) return NO_VALUES;
+            int[] result = new int[array.length - 1];
+            System.arraycopy(array, 0, result, 0, index);
+            System.arraycopy(array, index + 1, result, index, array.length - index - 1);
+            return result;
+        }
+
+        private static Node[] removeAt(Node[] array, int index) {
+            if (array.length == 1) return NO_NODES;
+            Node[] result = Arrays.copyOf(array, array.length - 1);
+            System.arraycopy(array, index + 1, result, index, array.length - index - 1);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package fr.univtln.bruno.samples.jaxrs.model.store;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+/**
+ * An immutable map of long keys, as a persistent hash trie (a compressed hash array mapped prefix tree, CHAMP) :
+ * an update copies only the path from the root to the changed entry, O(log32 n) nodes,
+ * and shares the rest with the previous version. Every version stays valid, so a reader holding one
+ * sees a consistent state whatever the writers do, and an old version is reclaimed by the garbage
+ * collector once no reader holds it.
+ * The keys are mixed by a bijective function, so two keys never have the same hash and no collision node is needed.
+ *
+ * @param <V> the type of the values
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public final class PersistentLongMap<V> implements Iterable<V> {
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    private static final Node EMPTY_NODE = new Node(0, 0, new long[0], new Object[0], new Node[0]);
+    @SuppressWarnings("rawtypes")
+    private static final PersistentLongMap EMPTY = new PersistentLongMap<>(EMPTY_NODE, 0);
+
+    Node root;
+    int size;
+
+    private PersistentLongMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <V> PersistentLongMap<V> empty() {
+        return EMPTY;
+    }
+
+    private static long hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 32);
+    }
+
+    private static int bit(long hash, int shift) {
+        return 1 << ((int) (hash >>> shift) & MASK);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Gets the value of a key.
+     *
+     * @param key the key
+     * @return the value, or null if there is none.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        long hash = hash(key);
+        Node node = root;
+        for (int shift = 0; ; shift += BITS) {
+            int bit = bit(hash, shift);
+            if ((node.dataMap & bit) != 0) {
+                int index = node.dataIndex(bit);
+                return node.keys[index] == key ? (V) node.values[index] : null;
+            }
+            if ((node.nodeMap & bit) == 0) return null;
+            node = node.nodes[node.nodeIndex(bit)];
+        }
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Gives a new version with a key mapped to a value.
+     *
+     * @param key   the key
+     * @param value the value (not null)
+     * @return the new version
+     */
+    public PersistentLongMap<V> put(long key, V value) {
+        int[] sizeChange = {0};
+        Node newRoot = root.put(key, hash(key), value, 0, sizeChange);
+        return newRoot == root ? this : new PersistentLongMap<>(newRoot, size + sizeChange[0]);
+    }
+
+    /**
+     * Gives a new version without a key.
+     *
+     * @param key the key
+     * @return the new version (this one if the key is absent)
+     */
+    public PersistentLongMap<V> remove(long key) {
+        Node newRoot = root.remove(key, hash(key), 0);
+        return newRoot == root ? this : new PersistentLongMap<>(newRoot, size - 1);
+    }
+
+    /**
+     * Gives every value to an action, in no particular order.
+     *
+     * @param action the action
+     */
+    @SuppressWarnings("unchecked")
+    public void forEachValue(Consumer<? super V> action) {
+        root.forEach(value -> action.accept((V) value));
+    }
+
+    /**
+     * @return an iterator on the values, in the order of {@link #forEachValue(Consumer)}.
+     */
+    @Override
+    public Iterator<V> iterator() {
+        Deque<Node> pending = new ArrayDeque<>();
+        pending.push(root);
+        return new Iterator<>() {
+            Node current;
+            int index;
+
+            @Override
+            public boolean hasNext() {
+                while (current == null || index == current.values.length) {
+                    if (pending.isEmpty()) return false;
+                    current = pending.pop();
+                    index = 0;
+                    for (int i = current.nodes.length - 1; i >= 0; i--) pending.push(current.nodes[i]);
+                }
+                return true;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public V next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return (V) current.values[index++];
+            }
+        };
+    }
+
+    /**
+     * A node : its entries and its children are stored densely, the bitmaps tell which 5 bits slices of hash they hold.
+     * Every child holds at least two entries, so a version has a single (canonical) shape.
+     */
+    @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+    private static final class Node {
+        int dataMap;
+        int nodeMap;
+        long[] keys;
+        Object[] values;
+        Node[] nodes;
+
+        Node(int dataMap, int nodeMap, long[] keys, Object[] values, Node[] nodes) {
+            this.dataMap = dataMap;
+            this.nodeMap = nodeMap;
+            this.keys = keys;
+            this.values = values;
+            this.nodes = nodes;
+        }
+
+        //Two entries whose hashes are equal on the slices before shift.
+        static Node of(long key1, long hash1, Object value1, long key2, long hash2, Object value2, int shift) {
+            int bit1 = bit(hash1, shift);
+            int bit2 = bit(hash2, shift);
+            if (bit1 == bit2)
+                return new Node(0, bit1, new long[0], new Object[0],
+                        new Node[]{of(key1, hash1, value1, key2, hash2, value2, shift + BITS)});
+            return Integer.compareUnsigned(bit1, bit2) < 0 ?
+                    new Node(bit1 | bit2, 0, new long[]{key1, key2}, new Object[]{value1, value2}, new Node[0]) :
+                    new Node(bit1 | bit2, 0, new long[]{key2, key1}, new Object[]{value2, value1}, new Node[0]);
+        }
+
+        int dataIndex(int bit) {
+            return Integer.bitCount(dataMap & (bit - 1));
+        }
+
+        int nodeIndex(int bit) {
+            return Integer.bitCount(nodeMap & (bit - 1));
+        }
+
+        Node put(long key, long hash, Object value, int shift, int[] sizeChange) {
+            int bit = bit(hash, shift);
+            if ((dataMap & bit) != 0) {
+                int index = dataIndex(bit);
+                if (keys[index] == key) {
+                    if (values[index] == value) return this;
+                    Object[] newValues = values.clone();
+                    newValues[index] = value;
+                    return new Node(dataMap, nodeMap, keys, newValues, nodes);
+                }
+                //The entry moves down in a new child with the added one.
+                sizeChange[0] = 1;
+                Node child = of(keys[index], hash(keys[index]), values[index], key, hash, value, shift + BITS);
+                int nodeIndex = nodeIndex(bit);
+                return new Node(dataMap ^ bit, nodeMap | bit,
+                        removeAt(keys, index), removeAt(values, index), insertAt(nodes, nodeIndex, child));
+            }
+            if ((nodeMap & bit) != 0) {
+                int index = nodeIndex(bit);
+                Node child = nodes[index].put(key, hash, value, shift + BITS, sizeChange);
+                if (child == nodes[index]) return this;
+                Node[] newNodes = nodes.clone();
+                newNodes[index] = child;
+                return new Node(dataMap, nodeMap, keys, values, newNodes);
+            }
+            sizeChange[0] = 1;
+            int index = dataIndex(bit);
+            return new Node(dataMap | bit, nodeMap, insertAt(keys, index, key), insertAt(values, index, value), nodes);
+        }
+
+        Node remove(long key, long hash, int shift) {
+            int bit = bit(hash, shift);
+            if ((dataMap & bit) != 0) {
+                int index = dataIndex(bit);
+                if (keys[index] != key) return this;
+                return new Node(dataMap ^ bit, nodeMap, removeAt(keys, index), removeAt(values, index), nodes);
+            }
+            if ((nodeMap & bit) == 0) return this;
+            int index = nodeIndex(bit);
+            Node child = nodes[index].remove(key, hash, shift + BITS);
+            if (child == nodes[index]) return this;
+            if (child.nodeMap == 0 && Integer.bitCount(child.dataMap) == 1) {
+                //A child left with a single entry is inlined.
+                int dataIndex = dataIndex(bit);
+                return new Node(dataMap | bit, nodeMap ^ bit, insertAt(keys, dataIndex, child.keys[0]),
+                        insertAt(values, dataIndex, child.values[0]), removeAt(nodes, index));
+            }
+            Node[] newNodes = nodes.clone();
+            newNodes[index] = child;
+            return new Node(dataMap, nodeMap, keys, values, newNodes);
+        }
+
+        void forEach(Consumer<Object> action) {
+            for (Object value : values) action.accept(value);
+            for (Node node : nodes) node.forEach(action);
+        }
+
+        private static long[] insertAt(long[] array, int index, long value) {
+            long[] result = new long[array.length + 1];
+            System.arraycopy(array, 0, result, 0, index);
+            result[index] = value;
+            System.arraycopy(array, index, result, index + 1, array.length - index);
+            return result;
+        }
+
+        private static <T> T[] insertAt(T[] array, int index, T value) {
+            T[] result = Arrays.copyOf(array, array.length + 1);
+            System.arraycopy(array, index, result, index + 1, array.length - index);
+            result[index] = value;
+            return result;
+        }
+
+        private static long[] removeAt(long[] array, int index) {
+            long[] result = new long[array.length - 1];
+            System.arraycopy(array, 0, result, 0, index);
+            System.arraycopy(array, index + 1, result, index, array.length - index - 1);
+            return result;
+        }
+
+        private static <T> T[] removeAt(T[] array, int index) {
+            T[] result = Arrays.copyOf(array, array.length - 1);
+            System.arraycopy(array, index + 1, result, index, array.length - index - 1);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package fr.univtln.bruno.samples.jaxrs.model.store;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import org.eclipse.collections.api.map.primitive.MutableObjectIntMap;
+import org.eclipse.collections.impl.factory.primitive.ObjectIntMaps;
+
+import java.util.Arrays;
+
+/**
+ * A dictionary encoding of strings : each distinct string is stored once and given an int code.
+ * Codes are never reused, so a code read optimistically is always valid or out of bounds.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE)
+class StringDictionary {
+    static final int NULL_CODE = -1;
+
+    final MutableObjectIntMap<String> codes = ObjectIntMaps.mutable.empty();
+    String[] values = new String[16];
+    int size;
+
+    /**
+     * Gets the code of a string, it is added if needed.
+     *
+     * @param value the string (may be null)
+     * @return its code
+     */
+    int encode(String value) {
+        if (value == null) return NULL_CODE;
+        int code = codes.getIfAbsent(value, NULL_CODE);
+        if (code != NULL_CODE) return code;
+        if (size == values.length) values = Arrays.copyOf(values, size * 2);
+        values[size] = value;
+        codes.put(value, size);
+        return size++;
+    }
+
+    /**
+     * Gets the string of a code.
+     *
+     * @param code the code
+     * @return the string (null for {@link #NULL_CODE})
+     * @throws IndexOutOfBoundsException if the code is unknown.
+     */
+    String decode(int code) {
+        return decode(values, code);
+    }
+
+    /**
+     * Gets the string of a code in a version of the strings.
+     *
+     * @param values the strings as given by {@link #values()}
+     * @param code   the code
+     * @return the string (null for {@link #NULL_CODE})
+     * @throws IndexOutOfBoundsException if the code is unknown.
+     */
+    static String decode(String[] values, int code) {
+        if (code == NULL_CODE) return null;
+        if (code < 0 || code >= values.length || values[code] == null) throw new IndexOutOfBoundsException(code);
+        return values[code];
+    }
+
+    /**
+     * @return the current strings by code, a code given so far stays valid in them.
+     */
+    String[] values() {
+        return values;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        codes.clear();
+        values = new String[16];
+        size = 0;
+    }
+}
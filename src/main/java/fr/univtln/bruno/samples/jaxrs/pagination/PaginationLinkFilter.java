@@ -5,12 +5,15 @@ import jakarta.ws.rs.WebApplicationException;
 import jakarta.ws.rs.container.ContainerRequestContext;
 import jakarta.ws.rs.container.ContainerResponseContext;
 import jakarta.ws.rs.container.ContainerResponseFilter;
+import jakarta.ws.rs.core.GenericEntity;
 import jakarta.ws.rs.core.Link;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.UriInfo;
 import jakarta.ws.rs.ext.Provider;
 import lombok.extern.java.Log;
 
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -25,6 +28,7 @@ public class PaginationLinkFilter implements ContainerResponseFilter {
     public static final String FIRST_REL = "first";
     public static final String LAST_REL = "last";
     public static final String PAGE_QUERY_PARAM = "page";
+    public static final String CURSOR_QUERY_PARAM = "cursor";
     public static final int FIRST_PAGE = 1;
 
     @Override
@@ -39,11 +43,16 @@ public class PaginationLinkFilter implements ContainerResponseFilter {
         UriInfo uriInfo = requestContext.getUriInfo();
         Page entity = (Page) responseContext.getEntity();
 
+        if (entity.isKeyset()) {
+            filterKeyset(uriInfo, entity, responseContext);
+            return;
+        }
+
         if (entity.getPageNumber() > entity.getPageTotal())
             throw new WebApplicationException(Response.Status.NOT_FOUND);
 
         //We replace the entity by the content of the page (we remove the envelope).
-        responseContext.setEntity(entity.getContent());
+        responseContext.setEntity(content(entity, responseContext.getEntityType()));
 
         List<Link> linksList = new ArrayList<>();
 
@@ -81,4 +90,63 @@ public class PaginationLinkFilter implements ContainerResponseFilter {
         responseContext.getHeaders().add(JAXRS_SAMPLE_TOTAL_COUNT, entity.getElementTotal());
         responseContext.getHeaders().add(JAXRS_SAMPLE_PAGE_COUNT, entity.getPageTotal());
     }
+
+    /**
+     * With keyset pagination the links carry the cursors given by the page (the page number is meaningless),
+     * and the totals are only sent when they have been counted.
+     */
+    private void filterKeyset(UriInfo uriInfo, Page entity, ContainerResponseContext responseContext) {
+        responseContext.setEntity(content(entity, responseContext.getEntityType()));
+
+        List<Link> linksList = new ArrayList<>();
+        if (entity.getPreviousCursor() != null) {
+            linksList.add(cursorLink(uriInfo, entity.getPreviousCursor(), PREV_REL));
+            linksList.add(cursorLink(uriInfo, "", FIRST_REL));
+        }
+        if (entity.getNextCursor() != null)
+            linksList.add(cursorLink(uriInfo, entity.getNextCursor(), NEXT_REL));
+
+        if (!linksList.isEmpty())
+            responseContext.getHeaders().add("Link", linksList.stream().map(l -> l.toString()).collect(Collectors.joining(",")));
+        if (entity.getElementTotal() != Page.UNKNOWN) {
+            responseContext.getHeaders().add(JAXRS_SAMPLE_TOTAL_COUNT, entity.getElementTotal());
+            responseContext.getHeaders().add(JAXRS_SAMPLE_PAGE_COUNT, entity.getPageTotal());
+        }
+    }
+
+    /**
+     * The content of a page keeps the type of its elements (a Page<T> gives a List<T>)
+     * so that the writers of a given type of elements can be selected.
+     */
+    private static Object content(Page<?> page, Type pageType) {
+        //The entity type of an asynchronous method is the one of its stage (CompletionStage<Page<T>>).
+        while (pageType instanceof ParameterizedType && ((ParameterizedType) pageType).getRawType() != Page.class)
+            pageType = ((ParameterizedType) pageType).getActualTypeArguments()[0];
+        if (!(pageType instanceof ParameterizedType)) return page.getContent();
+        Type[] elementType = ((ParameterizedType) pageType).getActualTypeArguments();
+        return new GenericEntity<>(page.getContent(), new ParameterizedType() {
+            @Override
+            public Type[] getActualTypeArguments() {
+                return elementType;
+            }
+
+            @Override
+            public Type getRawType() {
+                return List.class;
+            }
+
+            @Override
+            public Type getOwnerType() {
+                return null;
+            }
+        });
+    }
+
+    private Link cursorLink(UriInfo uriInfo, String cursor, String rel) {
+        return Link.fromUriBuilder(uriInfo.getRequestUriBuilder()
+                .replaceQueryParam(PAGE_QUERY_PARAM)
+                .replaceQueryParam(CURSOR_QUERY_PARAM, cursor))
+                .rel(rel)
+                .build();
+    }
 }
@@ -0,0 +1,39 @@
+package fr.univtln.bruno.samples.jaxrs.persistence;
+
+import fr.univtln.bruno.samples.jaxrs.model.Library;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+
+/**
+ * A consistent state of the Library : its authors, its books and its id counters
+ * after every mutation before a log sequence number.
+ * It may be backed by a pinned version of the Library rather than a copy, it is then closed once written.
+ */
+@Getter
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@AllArgsConstructor
+public class Checkpoint implements AutoCloseable {
+    long lsn;
+    long lastAuthorId;
+    long lastBookId;
+    Iterable<Library.Author> authors;
+    Iterable<Library.Book> books;
+    @Getter(AccessLevel.NONE)
+    Runnable release;
+
+    public Checkpoint(long lsn, long lastAuthorId, long lastBookId,
+                      Iterable<Library.Author> authors, Iterable<Library.Book> books) {
+        this(lsn, lastAuthorId, lastBookId, authors, books, () -> {
+        });
+    }
+
+    /**
+     * Releases the pinned version of the Library, if any.
+     */
+    @Override
+    public void close() {
+        release.run();
+    }
+}
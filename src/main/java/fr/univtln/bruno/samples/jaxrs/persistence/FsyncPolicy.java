@@ -0,0 +1,20 @@
+package fr.univtln.bruno.samples.jaxrs.persistence;
+
+/**
+ * When the write-ahead log is forced to the disk.
+ */
+public enum FsyncPolicy {
+    /**
+     * A mutation returns once it is written and forced to the disk : nothing is lost on a crash.
+     */
+    ALWAYS,
+    /**
+     * The log is written and forced periodically in the background : the last interval may be lost on a crash.
+     */
+    INTERVAL,
+    /**
+     * A mutation returns once it is written to the operating system, which decides when to write it to the disk :
+     * nothing is lost if the process crashes, but the last writes may be lost if the system does.
+     */
+    NEVER
+}
@@ -0,0 +1,110 @@
+package fr.univtln.bruno.samples.jaxrs.persistence;
+
+import fr.univtln.bruno.samples.jaxrs.exceptions.BusinessException;
+
+/**
+ * Where the Library records its mutations. Mutations are appended under the write lock of the Library,
+ * so they are in the order in which they were applied, and the Library waits for them to be durable
+ * after releasing the lock so that concurrent writers share the cost of the synchronisation (group commit).
+ */
+public interface Journal {
+    /**
+     * A journal which records nothing, the Library is then in memory only.
+     */
+    Journal NONE = new Journal() {
+        @Override
+        public long append(Mutation mutation) {
+            return 0;
+        }
+
+        @Override
+        public void await(long lsn) {
+            //Nothing to wait for.
+        }
+
+        @Override
+        public long checkpoint() {
+            return 0;
+        }
+
+        @Override
+        public Reset prepareReset(Checkpoint checkpoint) {
+            //Nothing to record.
+            return new Reset() {
+                @Override
+                public void commit() {
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        }
+    };
+
+    /**
+     * Checks that a mutation can be recorded, before it is applied : a mutation which could not be recovered
+     * must not be acknowledged.
+     *
+     * @param mutation the mutation (the ids it would be given do not matter)
+     * @throws BusinessException (413) if the mutation is too large to be recorded.
+     */
+    default void check(Mutation mutation) throws BusinessException {
+        //Everything can be recorded by default.
+    }
+
+    /**
+     * Appends a mutation, must be called under the write lock of the Library.
+     *
+     * @param mutation the mutation
+     * @return the log sequence number of the mutation.
+     * @throws IllegalStateException if the mutation was not checked and cannot be recorded.
+     */
+    long append(Mutation mutation);
+
+    /**
+     * Waits until a mutation is durable according to the fsync policy.
+     *
+     * @param lsn the log sequence number of the mutation
+     * @throws java.io.UncheckedIOException if the mutation could not be written.
+     */
+    void await(long lsn);
+
+    /**
+     * Marks the point from which the mutations are not in the snapshot being taken,
+     * must be called while no mutation can be appended (under the read lock of the Library).
+     *
+     * @return the log sequence number of the first mutation after the checkpoint.
+     * @throws java.io.UncheckedIOException if the log could not be written.
+     */
+    long checkpoint();
+
+    /**
+     * Prepares the record of a replacement of the whole content of the Library (an import) : the content is written
+     * before the write lock of the Library is taken, since it does not depend on the current one.
+     *
+     * @param checkpoint the new content of the Library
+     * @return the prepared record, to be committed under the write lock and closed after it.
+     * @throws java.io.UncheckedIOException if the content could not be written.
+     */
+    Reset prepareReset(Checkpoint checkpoint);
+
+    /**
+     * The record of a replacement of the content of the Library, written but not in effect yet.
+     */
+    interface Reset extends AutoCloseable {
+        /**
+         * Puts the new content in effect from the current position of the journal, it is durable when this method
+         * returns. Must be called under the write lock of the Library, it does not write the content again.
+         *
+         * @throws java.io.UncheckedIOException if the journal could not be written.
+         */
+        void commit();
+
+        /**
+         * Deletes what the committed record makes useless, or the record itself if it was not committed.
+         */
+        @Override
+        void close();
+    }
+}
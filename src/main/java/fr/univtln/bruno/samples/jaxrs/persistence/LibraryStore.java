@@ -0,0 +1,129 @@
+package fr.univtln.bruno.samples.jaxrs.persistence;
+
+import fr.univtln.bruno.samples.jaxrs.model.Library;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.java.Log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+
+/**
+ * Makes a Library durable : its mutations are journaled in a write-ahead log and snapshots are taken periodically
+ * in the background. Opening a store recovers the Library from the latest snapshot and the tail of the log.
+ */
+@Log
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class LibraryStore implements Closeable {
+    Library library;
+    StoreConfig config;
+    WriteAheadLog writeAheadLog;
+    ScheduledExecutorService snapshotter;
+    //Snapshots are taken one at a time.
+    ReentrantLock snapshotLock = new ReentrantLock();
+
+    private LibraryStore(Library library, StoreConfig config, WriteAheadLog writeAheadLog) {
+        this.library = library;
+        this.config = config;
+        this.writeAheadLog = writeAheadLog;
+        if (config.getSnapshotIntervalSeconds() > 0) {
+            snapshotter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "library-snapshotter");
+                thread.setDaemon(true);
+                return thread;
+            });
+            snapshotter.scheduleWithFixedDelay(this::snapshotInBackground,
+                    config.getSnapshotIntervalSeconds(), config.getSnapshotIntervalSeconds(), TimeUnit.SECONDS);
+        } else
+            snapshotter = null;
+    }
+
+    /**
+     * Recovers a Library from a data directory and journals its next mutations there.
+     * The current content of the Library is replaced.
+     *
+     * @param library the library
+     * @param config  the configuration
+     * @return the store
+     * @throws IOException if the data directory cannot be read.
+     */
+    public static LibraryStore open(Library library, StoreConfig config) throws IOException {
+        long start = System.nanoTime();
+        Files.createDirectories(config.getDirectory());
+
+        Checkpoint checkpoint = SnapshotFile.loadLatest(config.getDirectory());
+        long fromLsn = 0;
+        if (checkpoint == null)
+            library.replay(Mutation.clear());
+        else {
+            library.restore(checkpoint);
+            fromLsn = checkpoint.getLsn();
+        }
+        long nextLsn = WriteAheadLog.recover(config.getDirectory(), fromLsn, library::replay);
+
+        WriteAheadLog writeAheadLog = new WriteAheadLog(config.getDirectory(), config.getFsyncPolicy(),
+                config.getFsyncIntervalMillis(), nextLsn, config.getMaxRecordBytes());
+        library.attach(writeAheadLog);
+        long replayed = nextLsn - fromLsn;
+        log.info(() -> String.format("Library recovered from %s in %d ms (%d authors, %d mutations replayed)",
+                config.getDirectory(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                library.getAuthorsNumber(), replayed));
+        return new LibraryStore(library, config, writeAheadLog);
+    }
+
+    /**
+     * Takes a snapshot of the Library and deletes the log segments it contains.
+     * Writers are only blocked while the state is pinned, not while it is written.
+     *
+     * @return the log sequence number of the snapshot.
+     * @throws IOException if the snapshot cannot be written.
+     */
+    public long snapshot() throws IOException {
+        snapshotLock.lock();
+        try {
+            try (Checkpoint checkpoint = library.checkpoint()) {
+                SnapshotFile.write(config.getDirectory(), checkpoint);
+                writeAheadLog.deleteSegmentsBefore(checkpoint.getLsn());
+                return checkpoint.getLsn();
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    private void snapshotInBackground() {
+        try {
+            long lsn = snapshot();
+            log.fine(() -> "Snapshot taken at " + lsn);
+        } catch (IOException e) {
+            log.log(Level.SEVERE, "Snapshot failed", e);
+        }
+    }
+
+    /**
+     * Stops the snapshots, detaches the log from the Library and closes it.
+     *
+     * @throws IOException if the last mutations cannot be written.
+     */
+    @Override
+    public void close() throws IOException {
+        if (snapshotter != null) snapshotter.shutdown();
+        //Waits for a running snapshot.
+        snapshotLock.lock();
+        try {
+            library.attach(Journal.NONE);
+            writeAheadLog.close();
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package fr.univtln.bruno.samples.jaxrs.persistence;
+
+import fr.univtln.bruno.samples.jaxrs.model.Library;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A mutation of the Library as it is recorded in the write-ahead log. It carries the ids given by the Library
+ * so that replaying it gives back exactly the same state.
+ * A batch is a single mutation made of several ones, so it is recovered entirely or not at all.
+ */
+@Getter
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class Mutation {
+    private static final long[] NO_IDS = new long[0];
+    private static final List<Mutation> NO_MUTATIONS = List.of();
+
+    Type type;
+    long id;
+    String name;
+    String firstname;
+    String biography;
+    String title;
+    long[] authorIds;
+    List<Mutation> mutations;
+
+    public static Mutation addAuthor(Library.Author author) {
+        return ofAuthor(Type.ADD_AUTHOR, author);
+    }
+
+    public static Mutation updateAuthor(Library.Author author) {
+        return ofAuthor(Type.UPDATE_AUTHOR, author);
+    }
+
+    public static Mutation removeAuthor(long id) {
+        return new Mutation(Type.REMOVE_AUTHOR, id, null, null, null, null, NO_IDS, NO_MUTATIONS);
+    }
+
+    public static Mutation addBook(Library.Book book) {
+        return new Mutation(Type.ADD_BOOK, book.getId(), null, null, null, book.getTitle(),
+                book.getAuthors().stream().mapToLong(Library.Author::getId).toArray(), NO_MUTATIONS);
+    }
+
+    public static Mutation removeBook(long id) {
+        return new Mutation(Type.REMOVE_BOOK, id, null, null, null, null, NO_IDS, NO_MUTATIONS);
+    }
+
+    public static Mutation batch(List<Mutation> mutations) {
+        return new Mutation(Type.BATCH, 0, null, null, null, null, NO_IDS, List.copyOf(mutations));
+    }
+
+    public static Mutation clear() {
+        return new Mutation(Type.CLEAR, 0, null, null, null, null, NO_IDS, NO_MUTATIONS);
+    }
+
+    private static Mutation ofAuthor(Type type, Library.Author author) {
+        return new Mutation(type, author.getId(), author.getName(), author.getFirstname(), author.getBiography(),
+                null, NO_IDS, NO_MUTATIONS);
+    }
+
+    /**
+     * Decodes a mutation.
+     *
+     * @param in the encoded mutation
+     * @return the mutation
+     * @throws IOException if the mutation is invalid.
+     */
+    public static Mutation readFrom(DataInput in) throws IOException {
+        int ordinal = in.readByte();
+        if (ordinal < 0 || ordinal >= Type.values().length) throw new IOException("Unknown mutation " + ordinal);
+        Type type = Type.values()[ordinal];
+        long id = in.readLong();
+        switch (type) {
+            case ADD_AUTHOR:
+            case UPDATE_AUTHOR:
+                return new Mutation(type, id, readString(in), readString(in), readString(in), null, NO_IDS, NO_MUTATIONS);
+            case ADD_BOOK:
+                String title = readString(in);
+                long[] authorIds = new long[in.readInt()];
+                for (int i = 0; i < authorIds.length; i++) authorIds[i] = in.readLong();
+                return new Mutation(type, id, null, null, null, title, authorIds, NO_MUTATIONS);
+            case BATCH:
+                int size = in.readInt();
+                if (size < 0) throw new IOException("Invalid batch size " + size);
+                List<Mutation> mutations = new ArrayList<>(Math.min(size, 1024));
+                for (int i = 0; i < size; i++) mutations.add(readFrom(in));
+                return new Mutation(type, id, null, null, null, null, NO_IDS, mutations);
+            default:
+                return new Mutation(type, id, null, null, null, null, NO_IDS, NO_MUTATIONS);
+        }
+    }
+
+    //Strings are written as their UTF-8 length (-1 for null) followed by their bytes, they are not limited to 64KB.
+    static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Encodes this mutation.
+     *
+     * @param out the output
+     * @throws IOException if the output fails.
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeByte(type.ordinal());
+        out.writeLong(id);
+        switch (type) {
+            case ADD_AUTHOR:
+            case UPDATE_AUTHOR:
+                writeString(out, name);
+                writeString(out, firstname);
+                writeString(out, biography);
+                break;
+            case ADD_BOOK:
+                writeString(out, title);
+                out.writeInt(authorIds.length);
+                for (long authorId : authorIds) out.writeLong(authorId);
+                break;
+            case BATCH:
+                out.writeInt(mutations.size());
+                for (Mutation mutation : mutations) mutation.writeTo(out);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Gives the size of the encoded mutation without encoding it, so that it can be checked before the mutation is applied.
+     *
+     * @return the size in bytes of {@link #writeTo}
+     */
+    public long encodedSize() {
+        long size = Byte.BYTES + Long.BYTES;
+        switch (type) {
+            case ADD_AUTHOR:
+            case UPDATE_AUTHOR:
+                return size + stringSize(name) + stringSize(firstname) + stringSize(biography);
+            case ADD_BOOK:
+                return size + stringSize(title) + Integer.BYTES + (long) Long.BYTES * authorIds.length;
+            case BATCH:
+                size += Integer.BYTES;
+                for (Mutation mutation : mutations) size += mutation.encodedSize();
+                return size;
+            default:
+                return size;
+        }
+    }
+
+    //The size written by writeString, the unpaired surrogates are replaced by a single byte.
+    static long stringSize(String value) {
+        if (value == null) return Integer.BYTES;
+        long size = Integer.BYTES;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) size++;
+            else if (c < 0x800) size += 2;
+            else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                size += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) size++;
+            else size += 3;
+        }
+        return size;
+    }
+
+    /**
+     * @return a new author with the id and the data of this mutation.
+     */
+    public Library.Author toAuthor() {
+        return Library.Author.builder().id(id).name(name).firstname(firstname).biography(biography).build();
+    }
+
+    /**
+     * The kinds of mutations, their ordinal is their code in the log so new ones must be added at the end.
+     */
+    public enum Type {
+        ADD_AUTHOR,
+        UPDATE_AUTHOR,
+        REMOVE_AUTHOR,
+        ADD_BOOK,
+        CLEAR,
+        REMOVE_BOOK,
+        BATCH
+    }
+}
@@ -0,0 +1,418 @@
+package fr.univtln.bruno.samples.jaxrs.persistence;
+
+import fr.univtln.bruno.samples.jaxrs.model.Library;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.java.Log;
+import org.eclipse.collections.api.map.primitive.MutableLongObjectMap;
+import org.eclipse.collections.impl.map.mutable.primitive.LongObjectHashMap;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * The binary snapshots of the Library, named after the log sequence number of their checkpoint.
+ * A snapshot is a header (magic, log sequence number, id counters), chunks of author records then chunks of book records,
+ * a directory of the chunks (kind, offset, length, number of records and CRC32) and a trailer giving the directory.
+ * It is written sequentially (so it can be streamed) and read through {@link FileChannel#map} :
+ * the chunks are checked and decoded in parallel, without any intermediate copy of the file.
+ * A snapshot file is written in a temporary file then atomically renamed, so it is either complete or absent.
+ */
+@Log
+public final class SnapshotFile {
+    static final String PREFIX = "snapshot-";
+    public static final String SUFFIX = ".snap";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private static final long MAGIC = 0x4C4942534E415032L;
+    private static final int HEADER_SIZE = Long.BYTES * 4;
+    private static final int TRAILER_SIZE = Long.BYTES * 2 + Integer.BYTES * 2;
+    private static final int ENTRY_SIZE = 1 + Long.BYTES + Integer.BYTES * 3;
+    //The number of records of a chunk, the unit of parallel decoding.
+    private static final int CHUNK_RECORDS = 1 << 14;
+    private static final byte AUTHORS = 0;
+    private static final byte BOOKS = 1;
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * Writes a snapshot in a directory and deletes the older ones.
+     *
+     * @param directory  the directory of the snapshots
+     * @param checkpoint the state to write
+     * @return the path of the snapshot
+     * @throws IOException if the snapshot cannot be written.
+     */
+    public static Path write(Path directory, Checkpoint checkpoint) throws IOException {
+        String name = name(checkpoint.getLsn());
+        Path temporary = directory.resolve(name + TEMPORARY_SUFFIX);
+        writeDurably(temporary, checkpoint);
+        Path snapshot = install(directory, temporary, checkpoint.getLsn());
+        deleteOlder(directory, snapshot);
+        return snapshot;
+    }
+
+    /**
+     * Writes a snapshot in a temporary file of a directory, to be installed later at a log sequence number
+     * not known yet (see {@link #install}). It is not loaded until then.
+     *
+     * @param directory  the directory of the snapshots
+     * @param checkpoint the state to write, its log sequence number does not matter
+     * @return the temporary file
+     * @throws IOException if the snapshot cannot be written.
+     */
+    public static Path writeTemporary(Path directory, Checkpoint checkpoint) throws IOException {
+        Path temporary = Files.createTempFile(directory, PREFIX, TEMPORARY_SUFFIX);
+        try {
+            writeDurably(temporary, checkpoint);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        return temporary;
+    }
+
+    /**
+     * Gives its log sequence number to a snapshot written by {@link #writeTemporary} and renames it,
+     * only the header and the checksum of the metadata are rewritten.
+     *
+     * @param directory the directory of the snapshots
+     * @param temporary the temporary file
+     * @param lsn       the log sequence number of the first mutation not in the snapshot
+     * @return the path of the snapshot
+     * @throws IOException if the snapshot cannot be installed.
+     */
+    public static Path install(Path directory, Path temporary, long lsn) throws IOException {
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE);
+            readFully(channel, header, 0);
+            readFully(channel, trailer, size - TRAILER_SIZE);
+            if (header.getLong(Long.BYTES) != lsn) {
+                long directoryOffset = trailer.getLong(0);
+                ByteBuffer entries = ByteBuffer.allocate((int) (size - TRAILER_SIZE - directoryOffset));
+                readFully(channel, entries, directoryOffset);
+                header.putLong(Long.BYTES, lsn);
+                CRC32 crc = new CRC32();
+                crc.update(header.array());
+                crc.update(entries.array());
+                trailer.putInt(Long.BYTES + Integer.BYTES, (int) crc.getValue());
+                writeFully(channel, header.rewind(), 0);
+                writeFully(channel, trailer.rewind(), size - TRAILER_SIZE);
+                channel.force(true);
+            }
+        }
+        Path snapshot = directory.resolve(name(lsn) + SUFFIX);
+        Files.move(temporary, snapshot, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory(directory);
+        return snapshot;
+    }
+
+    /**
+     * Deletes the snapshots older than a given one : a concurrent snapshot of a later checkpoint must be kept.
+     *
+     * @param directory the directory of the snapshots
+     * @param snapshot  the latest snapshot
+     * @throws IOException if a snapshot cannot be deleted.
+     */
+    public static void deleteOlder(Path directory, Path snapshot) throws IOException {
+        for (Path older : list(directory))
+            if (older.getFileName().compareTo(snapshot.getFileName()) < 0) Files.delete(older);
+    }
+
+    private static String name(long lsn) {
+        return String.format("%s%020d", PREFIX, lsn);
+    }
+
+    private static void writeDurably(Path file, Checkpoint checkpoint) throws IOException {
+        try (FileOutputStream stream = new FileOutputStream(file.toFile())) {
+            BufferedOutputStream out = new BufferedOutputStream(stream, 1 << 16);
+            write(checkpoint, out);
+            out.flush();
+            stream.getChannel().force(true);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining())
+            if (channel.read(buffer, position + buffer.position()) < 0) throw new IOException("Not a snapshot");
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) channel.write(buffer, position + buffer.position());
+    }
+
+    /**
+     * Writes a snapshot to a stream (an export).
+     *
+     * @param checkpoint the state to write
+     * @param out        the output, it is not closed
+     * @throws IOException if the output fails.
+     */
+    public static void write(Checkpoint checkpoint, OutputStream out) throws IOException {
+        ChunkWriter writer = new ChunkWriter(out);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                .putLong(MAGIC)
+                .putLong(checkpoint.getLsn())
+                .putLong(checkpoint.getLastAuthorId())
+                .putLong(checkpoint.getLastBookId());
+        writer.writeHeader(header.array());
+
+        for (Library.Author author : checkpoint.getAuthors()) {
+            DataOutputStream record = writer.record(AUTHORS);
+            record.writeLong(author.getId());
+            Mutation.writeString(record, author.getName());
+            Mutation.writeString(record, author.getFirstname());
+            Mutation.writeString(record, author.getBiography());
+        }
+        for (Library.Book book : checkpoint.getBooks()) {
+            DataOutputStream record = writer.record(BOOKS);
+            record.writeLong(book.getId());
+            Mutation.writeString(record, book.getTitle());
+            record.writeInt(book.getAuthors().size());
+            for (Library.Author author : book.getAuthors()) record.writeLong(author.getId());
+        }
+        writer.finish();
+    }
+
+    /**
+     * Loads the latest valid snapshot, an invalid one is skipped for the previous one.
+     *
+     * @param directory the directory of the snapshots
+     * @return the state in the snapshot, or null if there is none.
+     * @throws IOException if the directory cannot be read.
+     */
+    public static Checkpoint loadLatest(Path directory) throws IOException {
+        List<Path> snapshots = list(directory);
+        for (int i = snapshots.size() - 1; i >= 0; i--) {
+            Path snapshot = snapshots.get(i);
+            try {
+                return read(snapshot);
+            } catch (IOException e) {
+                log.warning("Invalid snapshot " + snapshot + " : " + e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads a snapshot file, its chunks are mapped in memory, checked and decoded in parallel.
+     *
+     * @param snapshot the snapshot file
+     * @return the state in the snapshot
+     * @throws IOException if the file cannot be read or is not a valid snapshot.
+     */
+    public static Checkpoint read(Path snapshot) throws IOException {
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE + TRAILER_SIZE) throw new IOException("Not a snapshot");
+            MappedByteBuffer trailer = channel.map(FileChannel.MapMode.READ_ONLY, size - TRAILER_SIZE, TRAILER_SIZE);
+            long directoryOffset = trailer.getLong();
+            int chunksNumber = trailer.getInt();
+            int metadataCrc = trailer.getInt();
+            if (trailer.getLong() != MAGIC || directoryOffset < HEADER_SIZE
+                || directoryOffset + (long) chunksNumber * ENTRY_SIZE != size - TRAILER_SIZE)
+                throw new IOException("Not a snapshot");
+
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            MappedByteBuffer directory = channel.map(FileChannel.MapMode.READ_ONLY, directoryOffset,
+                    (long) chunksNumber * ENTRY_SIZE);
+            CRC32 crc = new CRC32();
+            crc.update(header.duplicate());
+            crc.update(directory.duplicate());
+            if ((int) crc.getValue() != metadataCrc || header.getLong() != MAGIC)
+                throw new IOException("Checksum mismatch");
+            long lsn = header.getLong();
+            long lastAuthorId = header.getLong();
+            long lastBookId = header.getLong();
+
+            List<Chunk> authorChunks = new ArrayList<>();
+            List<Chunk> bookChunks = new ArrayList<>();
+            for (int i = 0; i < chunksNumber; i++) {
+                Chunk chunk = new Chunk(directory.get(), directory.getLong(), directory.getInt(),
+                        directory.getInt(), directory.getInt());
+                if (chunk.offset < HEADER_SIZE || chunk.offset + chunk.length > directoryOffset)
+                    throw new IOException("Invalid chunk");
+                (chunk.kind == AUTHORS ? authorChunks : bookChunks).add(chunk);
+            }
+
+            try {
+                //Authors first, the books refer to them.
+                MutableLongObjectMap<Library.Author> authors = new LongObjectHashMap<>(
+                        authorChunks.stream().mapToInt(chunk -> chunk.count).sum());
+                for (Library.Author[] decoded : decode(channel, authorChunks, SnapshotFile::readAuthor, Library.Author[]::new))
+                    for (Library.Author author : decoded) authors.put(author.getId(), author);
+
+                MutableLongObjectMap<Library.Book> books = new LongObjectHashMap<>(
+                        bookChunks.stream().mapToInt(chunk -> chunk.count).sum());
+                for (Library.Book[] decoded : decode(channel, bookChunks, buffer -> readBook(buffer, authors), Library.Book[]::new))
+                    for (Library.Book book : decoded) books.put(book.getId(), book);
+
+                return new Checkpoint(lsn, lastAuthorId, lastBookId, authors, books);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                throw new IOException("Invalid record", e);
+            }
+        }
+    }
+
+    private static <T> List<T[]> decode(FileChannel channel, List<Chunk> chunks, RecordReader<T> reader,
+                                        IntFunction<T[]> arrays) {
+        return IntStream.range(0, chunks.size()).parallel().mapToObj(i -> {
+            Chunk chunk = chunks.get(i);
+            try {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, chunk.offset, chunk.length);
+                CRC32 crc = new CRC32();
+                crc.update(buffer.duplicate());
+                if ((int) crc.getValue() != chunk.crc) throw new IOException("Checksum mismatch in a chunk");
+                T[] records = arrays.apply(chunk.count);
+                for (int r = 0; r < chunk.count; r++) records[r] = reader.read(buffer);
+                return records;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }).collect(Collectors.toList());
+    }
+
+    private static Library.Author readAuthor(ByteBuffer buffer) {
+        return Library.Author.builder()
+                .id(buffer.getLong())
+                .name(readString(buffer))
+                .firstname(readString(buffer))
+                .biography(readString(buffer))
+                .build();
+    }
+
+    private static Library.Book readBook(ByteBuffer buffer, MutableLongObjectMap<Library.Author> authors) {
+        long id = buffer.getLong();
+        String title = readString(buffer);
+        int authorsNumber = buffer.getInt();
+        Set<Library.Author> bookAuthors = new HashSet<>();
+        for (int i = 0; i < authorsNumber; i++) {
+            Library.Author author = authors.get(buffer.getLong());
+            if (author != null) bookAuthors.add(author);
+        }
+        return Library.Book.builder().id(id).title(title).authors(bookAuthors).build();
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static List<Path> list(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> {
+                String name = path.getFileName().toString();
+                return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+            }).sorted(Comparator.comparing(Path::getFileName)).collect(Collectors.toList());
+        }
+    }
+
+    //Makes the rename durable, not every platform can open a directory so it is a best effort.
+    static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            log.fine(() -> "Directory " + directory + " not synchronized : " + e.getMessage());
+        }
+    }
+
+    @FunctionalInterface
+    private interface RecordReader<T> {
+        T read(ByteBuffer buffer);
+    }
+
+    @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+    @AllArgsConstructor
+    private static class Chunk {
+        byte kind;
+        long offset;
+        int length;
+        int count;
+        int crc;
+    }
+
+    /**
+     * Groups the records in chunks as they are written, and keeps the directory of the chunks.
+     */
+    @FieldDefaults(level = AccessLevel.PRIVATE)
+    private static class ChunkWriter {
+        final OutputStream out;
+        final ByteArrayOutputStream chunk = new ByteArrayOutputStream(1 << 16);
+        final DataOutputStream records = new DataOutputStream(chunk);
+        final ByteArrayOutputStream directory = new ByteArrayOutputStream();
+        final DataOutputStream entries = new DataOutputStream(directory);
+        final CRC32 metadataCrc = new CRC32();
+        long offset;
+        byte kind;
+        int count;
+        int chunksNumber;
+
+        ChunkWriter(OutputStream out) {
+            this.out = out;
+        }
+
+        void writeHeader(byte[] header) throws IOException {
+            out.write(header);
+            metadataCrc.update(header);
+            offset = header.length;
+        }
+
+        DataOutputStream record(byte recordKind) throws IOException {
+            if (count > 0 && (recordKind != kind || count == CHUNK_RECORDS)) flushChunk();
+            kind = recordKind;
+            count++;
+            return records;
+        }
+
+        private void flushChunk() throws IOException {
+            byte[] bytes = chunk.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            out.write(bytes);
+            entries.writeByte(kind);
+            entries.writeLong(offset);
+            entries.writeInt(bytes.length);
+            entries.writeInt(count);
+            entries.writeInt((int) crc.getValue());
+            offset += bytes.length;
+            chunksNumber++;
+            chunk.reset();
+            count = 0;
+        }
+
+        void finish() throws IOException {
+            if (count > 0) flushChunk();
+            byte[] bytes = directory.toByteArray();
+            metadataCrc.update(bytes);
+            out.write(bytes);
+            ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE)
+                    .putLong(offset)
+                    .putInt(chunksNumber)
+                    .putInt((int) metadataCrc.getValue())
+                    .putLong(MAGIC);
+            out.write(trailer.array());
+        }
+    }
+}
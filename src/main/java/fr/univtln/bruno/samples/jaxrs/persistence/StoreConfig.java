@@ -0,0 +1,53 @@
+package fr.univtln.bruno.samples.jaxrs.persistence;
+
+import lombok.AccessLevel;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * The configuration of the durable mode of the Library.
+ */
+@Getter
+@Builder
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class StoreConfig {
+    public static final String DATA_DIR_PROPERTY = "library.data.dir";
+    public static final String FSYNC_PROPERTY = "library.fsync";
+    public static final String FSYNC_INTERVAL_PROPERTY = "library.fsync.interval.ms";
+    public static final String SNAPSHOT_INTERVAL_PROPERTY = "library.snapshot.interval.s";
+    public static final String MAX_RECORD_PROPERTY = "library.wal.record.bytes";
+
+    Path directory;
+    @Builder.Default
+    FsyncPolicy fsyncPolicy = FsyncPolicy.INTERVAL;
+    @Builder.Default
+    long fsyncIntervalMillis = 100;
+    //0 disables the periodic snapshots.
+    @Builder.Default
+    long snapshotIntervalSeconds = 300;
+    //The largest change journaled, the larger ones are refused.
+    @Builder.Default
+    int maxRecordBytes = WriteAheadLog.MAX_PAYLOAD_SIZE;
+
+    /**
+     * Reads the configuration from the system properties (-Dlibrary.data.dir=... on the command line).
+     *
+     * @return the configuration, or empty if no data directory is given (the Library stays in memory).
+     */
+    public static Optional<StoreConfig> fromSystemProperties() {
+        String directory = System.getProperty(DATA_DIR_PROPERTY);
+        if (directory == null || directory.isBlank()) return Optional.empty();
+        return Optional.of(StoreConfig.builder()
+                .directory(Path.of(directory))
+                .fsyncPolicy(FsyncPolicy.valueOf(System.getProperty(FSYNC_PROPERTY, "interval").toUpperCase(Locale.ROOT)))
+                .fsyncIntervalMillis(Long.getLong(FSYNC_INTERVAL_PROPERTY, 100))
+                .snapshotIntervalSeconds(Long.getLong(SNAPSHOT_INTERVAL_PROPERTY, 300))
+                .maxRecordBytes(Integer.getInteger(MAX_RECORD_PROPERTY, WriteAheadLog.MAX_PAYLOAD_SIZE))
+                .build());
+    }
+}
@@ -0,0 +1,435 @@
+package fr.univtln.bruno.samples.jaxrs.persistence;
+
+import fr.univtln.bruno.samples.jaxrs.exceptions.BusinessException;
+import jakarta.ws.rs.core.Response;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.java.Log;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * An append only log of the mutations of the Library, split in segments named after their first log sequence number.
+ * A record is its length, a CRC32 of its content, its log sequence number and the encoded mutation.
+ * Appended records are buffered in memory, the first writer waiting for its record writes the whole buffer
+ * (and forces it to the disk with {@link FsyncPolicy#ALWAYS}) : the writers which arrived in the meantime
+ * find their records already written (group commit).
+ * A mutation larger than a record can be is refused before it is applied (see {@link #check}) : recovery would take it
+ * for a torn write and drop it with every record after it.
+ */
+@Log
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class WriteAheadLog implements Journal, Closeable {
+    static final String SEGMENT_PREFIX = "wal-";
+    static final String SEGMENT_SUFFIX = ".log";
+    static final String DISCARDED_SUFFIX = ".discarded";
+    private static final int HEADER_SIZE = Integer.BYTES * 2 + Long.BYTES;
+    static final int MAX_PAYLOAD_SIZE = 1 << 26;
+
+    final Path directory;
+    final FsyncPolicy policy;
+    final int maxPayloadSize;
+
+    //Guards the buffer of appended records not yet written.
+    final ReentrantLock appendLock = new ReentrantLock();
+    ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    long nextLsn;
+
+    //Guards the channel, only one thread writes and forces at a time.
+    final ReentrantLock flushLock = new ReentrantLock();
+    FileChannel channel;
+    volatile long writtenLsn;
+    volatile long syncedLsn;
+
+    final ScheduledExecutorService flusher;
+
+    /**
+     * Opens a log to append mutations from a given log sequence number, in a new segment.
+     *
+     * @param directory      the directory of the segments
+     * @param policy         the fsync policy
+     * @param intervalMillis the period of the background flushes with {@link FsyncPolicy#INTERVAL}
+     * @param nextLsn        the log sequence number of the next mutation (as given by {@link #recover})
+     * @throws IOException if the segment cannot be created.
+     */
+    public WriteAheadLog(Path directory, FsyncPolicy policy, long intervalMillis, long nextLsn) throws IOException {
+        this(directory, policy, intervalMillis, nextLsn, MAX_PAYLOAD_SIZE);
+    }
+
+    /**
+     * Opens a log to append mutations from a given log sequence number, in a new segment.
+     *
+     * @param directory      the directory of the segments
+     * @param policy         the fsync policy
+     * @param intervalMillis the period of the background flushes with {@link FsyncPolicy#INTERVAL}
+     * @param nextLsn        the log sequence number of the next mutation (as given by {@link #recover})
+     * @param maxRecordSize  the size of the largest encoded mutation, at most the one accepted by the recovery
+     * @throws IOException if the segment cannot be created.
+     */
+    public WriteAheadLog(Path directory, FsyncPolicy policy, long intervalMillis, long nextLsn, int maxRecordSize)
+            throws IOException {
+        this.directory = directory;
+        this.policy = policy;
+        this.maxPayloadSize = Math.min(maxRecordSize, MAX_PAYLOAD_SIZE);
+        this.nextLsn = writtenLsn = syncedLsn = nextLsn;
+        this.channel = openSegment(nextLsn);
+        if (policy == FsyncPolicy.INTERVAL) {
+            flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "wal-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::flushInBackground, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        } else
+            flusher = null;
+    }
+
+    /**
+     * Replays the valid records of the log from a given log sequence number.
+     * Replay stops at the first truncated or corrupted record (a write torn by a crash), the segment is then truncated
+     * so that it ends with the last valid record. It stops as well at a gap in the log sequence numbers, the records
+     * from the gap are then moved out of the segment. In both cases the later segments are set aside
+     * (renamed with {@value #DISCARDED_SUFFIX}) : the log goes on from the last replayed record and their records
+     * would otherwise be replayed after the new ones at the next recovery.
+     *
+     * @param directory the directory of the segments
+     * @param fromLsn   the log sequence number of the first mutation to replay (the first one not in the snapshot)
+     * @param consumer  the consumer of the mutations
+     * @return the log sequence number of the next mutation.
+     * @throws IOException if the log cannot be read.
+     */
+    public static long recover(Path directory, long fromLsn, Consumer<Mutation> consumer) throws IOException {
+        long expected = fromLsn;
+        List<Path> segments = listSegments(directory);
+        for (int i = 0; i < segments.size(); i++) {
+            Path segment = segments.get(i);
+            boolean stopped = false;
+            try (FileChannel in = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                DataInputStream data = new DataInputStream(new BufferedInputStream(Channels.newInputStream(in), 1 << 16));
+                long validEnd = 0;
+                while (true) {
+                    Record record = Record.readFrom(data);
+                    if (record == null) break;
+                    if (record.lsn > expected) {
+                        log.warning("Gap in the log at " + segment + " before " + record.lsn + ", replay stopped");
+                        discardTail(segment, in, validEnd);
+                        stopped = true;
+                        break;
+                    }
+                    validEnd += record.size();
+                    if (record.lsn < expected) continue;
+                    consumer.accept(record.mutation);
+                    expected++;
+                }
+                if (validEnd < in.size()) {
+                    log.warning("Truncated invalid tail of " + segment + " at " + validEnd);
+                    in.truncate(validEnd);
+                    stopped = true;
+                }
+            }
+            if (stopped) {
+                for (Path later : segments.subList(i + 1, segments.size())) {
+                    log.warning("Segment " + later + " after the end of the replay set aside");
+                    Files.move(later, discarded(later), StandardCopyOption.REPLACE_EXISTING);
+                }
+                break;
+            }
+        }
+        return expected;
+    }
+
+    private static Path discarded(Path segment) {
+        return segment.resolveSibling(segment.getFileName() + DISCARDED_SUFFIX);
+    }
+
+    //Copies the valid records from a position aside, then truncates the segment there.
+    private static void discardTail(Path segment, FileChannel in, long position) throws IOException {
+        try (FileChannel out = FileChannel.open(discarded(segment), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            for (long copied = 0; position + copied < size; )
+                copied += in.transferTo(position + copied, size - position - copied, out);
+            out.force(false);
+        }
+        in.truncate(position);
+    }
+
+    static List<Path> listSegments(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> {
+                String name = path.getFileName().toString();
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }).sorted().collect(Collectors.toList());
+        }
+    }
+
+    static long segmentStart(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private FileChannel openSegment(long firstLsn) throws IOException {
+        //Zero padded so that the lexicographic order of the names is the order of the segments.
+        Path segment = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstLsn, SEGMENT_SUFFIX));
+        return FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    @Override
+    public void check(Mutation mutation) throws BusinessException {
+        long size = mutation.encodedSize();
+        if (size > maxPayloadSize)
+            throw new BusinessException(Response.Status.REQUEST_ENTITY_TOO_LARGE,
+                    "The change is too large to be journaled (" + size + " bytes, at most " + maxPayloadSize + ")");
+    }
+
+    @Override
+    public long append(Mutation mutation) {
+        try {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream(64);
+            mutation.writeTo(new DataOutputStream(payload));
+            //Written anyway, it would be lost at the next recovery with the records after it.
+            if (payload.size() > maxPayloadSize)
+                throw new IllegalStateException("Unchecked mutation of " + payload.size() + " bytes");
+            appendLock.lock();
+            try {
+                long lsn = nextLsn++;
+                Record.write(new DataOutputStream(pending), lsn, payload.toByteArray());
+                return lsn;
+            } finally {
+                appendLock.unlock();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void await(long lsn) {
+        switch (policy) {
+            case ALWAYS:
+                flush(lsn, true);
+                break;
+            case NEVER:
+                flush(lsn, false);
+                break;
+            default:
+                //The background flusher takes care of it.
+                break;
+        }
+    }
+
+    @Override
+    public long checkpoint() {
+        flushLock.lock();
+        try {
+            write();
+            channel.force(false);
+            syncedLsn = writtenLsn;
+            channel.close();
+            channel = openSegment(writtenLsn);
+            return writtenLsn;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * The content is written in a temporary snapshot. The commit starts a new segment and installs the snapshot
+     * at its checkpoint, only its header is rewritten, then closing deletes the previous segments and snapshots.
+     */
+    @Override
+    public Reset prepareReset(Checkpoint checkpoint) {
+        Path temporary;
+        try {
+            temporary = SnapshotFile.writeTemporary(directory, checkpoint);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new Reset() {
+            Path snapshot;
+            long lsn;
+
+            @Override
+            public void commit() {
+                lsn = checkpoint();
+                try {
+                    snapshot = SnapshotFile.install(directory, temporary, lsn);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public void close() {
+                try {
+                    if (snapshot == null)
+                        Files.deleteIfExists(temporary);
+                    else {
+                        SnapshotFile.deleteOlder(directory, snapshot);
+                        deleteSegmentsBefore(lsn);
+                    }
+                } catch (IOException e) {
+                    log.log(Level.WARNING, "The files before the import could not be deleted", e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Deletes the segments whose every record is before a log sequence number, i.e. already in a snapshot.
+     *
+     * @param lsn the log sequence number of the first mutation not in the snapshot
+     * @throws IOException if a segment cannot be deleted.
+     */
+    public void deleteSegmentsBefore(long lsn) throws IOException {
+        List<Path> segments = listSegments(directory);
+        for (int i = 0; i + 1 < segments.size() && segmentStart(segments.get(i + 1)) <= lsn; i++)
+            Files.delete(segments.get(i));
+    }
+
+    /**
+     * Writes the records up to a given one, and forces them to the disk if asked.
+     * A writer finding its record already handled by another one returns at once.
+     */
+    private void flush(long lsn, boolean force) {
+        flushLock.lock();
+        try {
+            if (lsn < (force ? syncedLsn : writtenLsn)) return;
+            write();
+            if (force) {
+                channel.force(false);
+                syncedLsn = writtenLsn;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    //Must be called with the flush lock.
+    private void write() throws IOException {
+        ByteArrayOutputStream batch;
+        long upTo;
+        appendLock.lock();
+        try {
+            batch = pending;
+            upTo = nextLsn;
+            pending = new ByteArrayOutputStream(Math.max(32, batch.size()));
+        } finally {
+            appendLock.unlock();
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(batch.toByteArray());
+        while (buffer.hasRemaining()) channel.write(buffer);
+        writtenLsn = upTo;
+    }
+
+    private void flushInBackground() {
+        long last;
+        appendLock.lock();
+        try {
+            last = nextLsn - 1;
+        } finally {
+            appendLock.unlock();
+        }
+        try {
+            flush(last, true);
+        } catch (UncheckedIOException e) {
+            log.log(Level.SEVERE, "Background flush of the log failed", e);
+        }
+    }
+
+    /**
+     * Writes and forces the pending records, then closes the log.
+     *
+     * @throws IOException if the records cannot be written.
+     */
+    @Override
+    public void close() throws IOException {
+        if (flusher != null) flusher.shutdownNow();
+        flushLock.lock();
+        try {
+            write();
+            channel.force(false);
+            syncedLsn = writtenLsn;
+            channel.close();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * A record read from the log.
+     */
+    @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+    private static class Record {
+        long lsn;
+        Mutation mutation;
+        int payloadLength;
+
+        private Record(long lsn, Mutation mutation, int payloadLength) {
+            this.lsn = lsn;
+            this.mutation = mutation;
+            this.payloadLength = payloadLength;
+        }
+
+        private static long checksum(long lsn, byte[] payload) {
+            CRC32 crc = new CRC32();
+            crc.update(ByteBuffer.allocate(Long.BYTES).putLong(0, lsn));
+            crc.update(payload);
+            return crc.getValue();
+        }
+
+        /**
+         * Reads a record.
+         *
+         * @return the record, or null at the end of the segment or if the record is truncated or corrupted.
+         */
+        static Record readFrom(DataInputStream in) throws IOException {
+            try {
+                int length = in.readInt();
+                int crc = in.readInt();
+                long lsn = in.readLong();
+                if (length < 0 || length > MAX_PAYLOAD_SIZE) return null;
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                if ((int) checksum(lsn, payload) != crc) return null;
+                return new Record(lsn, Mutation.readFrom(new DataInputStream(new ByteArrayInputStream(payload))), length);
+            } catch (EOFException e) {
+                return null;
+            }
+        }
+
+        static void write(DataOutputStream out, long lsn, byte[] payload) throws IOException {
+            out.writeInt(payload.length);
+            out.writeInt((int) checksum(lsn, payload));
+            out.writeLong(lsn);
+            out.write(payload);
+        }
+
+        long size() {
+            return HEADER_SIZE + (long) payloadLength;
+        }
+    }
+}
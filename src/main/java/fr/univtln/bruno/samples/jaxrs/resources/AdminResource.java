@@ -1,25 +1,39 @@
 package fr.univtln.bruno.samples.jaxrs.resources;
 
+import fr.univtln.bruno.samples.jaxrs.accesslog.AccessLog;
+import fr.univtln.bruno.samples.jaxrs.async.QueryExecutor;
+import fr.univtln.bruno.samples.jaxrs.cache.ResponseCache;
+import fr.univtln.bruno.samples.jaxrs.exceptions.BusinessException;
+import fr.univtln.bruno.samples.jaxrs.metrics.Metrics;
+import fr.univtln.bruno.samples.jaxrs.model.Library;
+import fr.univtln.bruno.samples.jaxrs.persistence.Checkpoint;
+import fr.univtln.bruno.samples.jaxrs.persistence.SnapshotFile;
 import fr.univtln.bruno.samples.jaxrs.security.InMemoryLoginModule;
 import fr.univtln.bruno.samples.jaxrs.security.User;
 import fr.univtln.bruno.samples.jaxrs.security.annotations.BasicAuth;
 import fr.univtln.bruno.samples.jaxrs.security.annotations.JWTAuth;
 import fr.univtln.bruno.samples.jaxrs.security.filter.request.BasicAuthenticationFilter;
 import fr.univtln.bruno.samples.jaxrs.security.filter.request.JsonWebTokenFilter;
+import fr.univtln.bruno.samples.jaxrs.server.BiblioServer;
+import fr.univtln.bruno.samples.jaxrs.server.ServerConfig;
+import fr.univtln.bruno.samples.jaxrs.writers.FragmentCache;
 import io.jsonwebtoken.Jwts;
 import jakarta.annotation.security.RolesAllowed;
-import jakarta.ws.rs.GET;
-import jakarta.ws.rs.Path;
-import jakarta.ws.rs.Produces;
-import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.*;
 import lombok.extern.java.Log;
+import org.glassfish.jersey.server.CloseableService;
 
 import javax.naming.AuthenticationException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.temporal.ChronoUnit;
 import java.util.Date;
+import java.util.Map;
 
 /**
  * A administration class for the libraryBiblio resource.
@@ -99,7 +113,7 @@ public class AdminResource {
     @JWTAuth
     @Produces({MediaType.TEXT_PLAIN, MediaType.APPLICATION_JSON, MediaType.TEXT_XML})
     public String securedByJWT(@Context SecurityContext securityContext) {
-        log.info("USER ACCESS :" + securityContext.getUserPrincipal().getName());
+        log.fine(() -> "USER ACCESS :" + securityContext.getUserPrincipal().getName());
         return "Access with JWT ok for " + securityContext.getUserPrincipal().getName();
     }
 
@@ -115,7 +129,7 @@ public class AdminResource {
     @JWTAuth
     @Produces({MediaType.TEXT_PLAIN, MediaType.APPLICATION_JSON, MediaType.TEXT_XML})
     public String securedByJWTAdminOnly(@Context SecurityContext securityContext) {
-        log.info("ADMIN ACCESS :" + securityContext.getUserPrincipal().getName());
+        log.fine(() -> "ADMIN ACCESS :" + securityContext.getUserPrincipal().getName());
         return "Access with JWT ok for " + securityContext.getUserPrincipal().getName();
     }
 
@@ -145,4 +159,163 @@ public class AdminResource {
         }
         throw new WebApplicationException(new AuthenticationException());
     }
+
+    /**
+     * Exports the demo library as a binary snapshot, restricted to ADMIN roles with a JWT Token.
+     * The snapshot is a pinned version of the library and is streamed without blocking the writers.
+     * The version is released once written, or at the end of the request if it is not (HEAD, errors).
+     *
+     * @param closeables the resources of the request, closed at its end
+     * @return the snapshot
+     */
+    @GET
+    @Path("snapshot")
+    @RolesAllowed({"ADMIN"})
+    @JWTAuth
+    @Produces(MediaType.APPLICATION_OCTET_STREAM)
+    public StreamingOutput exportSnapshot(@Context CloseableService closeables) {
+        Checkpoint checkpoint = Library.demoLibrary.export();
+        closeables.add(checkpoint::close);
+        return output -> {
+            try (checkpoint) {
+                SnapshotFile.write(checkpoint, output);
+            }
+        };
+    }
+
+    /**
+     * Replaces the demo library by a binary snapshot (see {@link #exportSnapshot()}), restricted to ADMIN roles with a JWT Token.
+     * The snapshot is received in a temporary file which is then mapped in memory to be decoded.
+     *
+     * @param snapshot the snapshot
+     * @return the number of authors.
+     * @throws BusinessException (400) if the snapshot is invalid.
+     * @throws IOException       if the snapshot cannot be received or stored.
+     */
+    @PUT
+    @Path("snapshot")
+    @RolesAllowed({"ADMIN"})
+    @JWTAuth
+    @Consumes(MediaType.APPLICATION_OCTET_STREAM)
+    @Produces({MediaType.TEXT_PLAIN, MediaType.APPLICATION_JSON, MediaType.TEXT_XML})
+    public int importSnapshot(InputStream snapshot) throws BusinessException, IOException {
+        java.nio.file.Path file = Files.createTempFile("library-import", SnapshotFile.SUFFIX);
+        try {
+            //A failure to receive or store it is not the fault of the snapshot.
+            Files.copy(snapshot, file, StandardCopyOption.REPLACE_EXISTING);
+            Checkpoint checkpoint;
+            try {
+                checkpoint = SnapshotFile.read(file);
+            } catch (IOException e) {
+                throw new BusinessException(Response.Status.BAD_REQUEST, "Invalid snapshot : " + e.getMessage());
+            }
+            Library.demoLibrary.importCheckpoint(checkpoint);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+        return Library.demoLibrary.getAuthorsNumber();
+    }
+
+    /**
+     * Gives the hits and misses of the caches of encoded authors and books, by form (see {@link FragmentCache}),
+     * restricted to ADMIN roles with a JWT Token.
+     *
+     * @return the statistics of each cache
+     */
+    @GET
+    @Path("fragments")
+    @RolesAllowed({"ADMIN"})
+    @JWTAuth
+    @Produces(MediaType.APPLICATION_JSON)
+    public Map<String, FragmentCache.Statistics> getFragmentStatistics() {
+        return FragmentCache.statistics();
+    }
+
+    /**
+     * Gives the statistics of the cache of the responses (see {@link ResponseCache}),
+     * restricted to ADMIN roles with a JWT Token.
+     *
+     * @return the hits, misses and evictions and the number and size of the kept responses
+     */
+    @GET
+    @Path("cache")
+    @RolesAllowed({"ADMIN"})
+    @JWTAuth
+    @Produces(MediaType.APPLICATION_JSON)
+    public ResponseCache.Statistics getCacheStatistics() {
+        return ResponseCache.responses.getStatistics();
+    }
+
+    /**
+     * Gives the state of the executor of the queries (see {@link QueryExecutor}),
+     * restricted to ADMIN roles with a JWT Token.
+     *
+     * @return the threads, the waiting queries and the counts of completed, rejected and timed out queries
+     */
+    @GET
+    @Path("queries")
+    @RolesAllowed({"ADMIN"})
+    @JWTAuth
+    @Produces(MediaType.APPLICATION_JSON)
+    public QueryExecutor.Statistics getQueryStatistics() {
+        return QueryExecutor.queries.getStatistics();
+    }
+
+    /**
+     * Gives the configuration the listeners of the server were started with (see {@link ServerConfig}),
+     * the settings left to the defaults of Grizzly are null. Restricted to ADMIN roles with a JWT Token.
+     *
+     * @return the profile and the effective settings
+     */
+    @GET
+    @Path("server")
+    @RolesAllowed({"ADMIN"})
+    @JWTAuth
+    @Produces(MediaType.APPLICATION_JSON)
+    public ServerConfig getServerConfig() {
+        return BiblioServer.getConfig();
+    }
+
+    /**
+     * Gives the counts of the access log (see {@link AccessLog}), restricted to ADMIN roles with a JWT Token.
+     *
+     * @return the recorded, dropped, slow and written records and the rotations of the file
+     */
+    @GET
+    @Path("accesslog")
+    @RolesAllowed({"ADMIN"})
+    @JWTAuth
+    @Produces(MediaType.APPLICATION_JSON)
+    public AccessLog.Statistics getAccessLogStatistics() {
+        return AccessLog.accesses.getStatistics();
+    }
+
+    /**
+     * Gives the latency of each resource method, the business exceptions and the state of the JVM
+     * in the text format of Prometheus (see {@link Metrics}), restricted to ADMIN roles with a JWT Token.
+     *
+     * @return the metrics
+     */
+    @GET
+    @Path("metrics")
+    @RolesAllowed({"ADMIN"})
+    @JWTAuth
+    @Produces(Metrics.CONTENT_TYPE)
+    public String getMetrics() {
+        return Metrics.metrics.toPrometheus();
+    }
+
+    /**
+     * Gives the metrics (see {@link #getMetrics()}) without authentication, for a Prometheus server which cannot
+     * get a token. It must be enabled with -Dlibrary.metrics.public=true.
+     *
+     * @return the metrics, or 404 (without a body) if the public metrics are not enabled.
+     */
+    @GET
+    @Path("metrics/public")
+    @Produces(Metrics.CONTENT_TYPE)
+    public Response getPublicMetrics() {
+        if (!Boolean.getBoolean(Metrics.PUBLIC_PROPERTY)) return Response.status(Response.Status.NOT_FOUND).build();
+        return Response.ok(Metrics.metrics.toPrometheus()).build();
+    }
 }
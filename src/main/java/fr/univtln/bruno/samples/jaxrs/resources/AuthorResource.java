@@ -1,35 +1,51 @@
 package fr.univtln.bruno.samples.jaxrs.resources;
 
+import fr.univtln.bruno.samples.jaxrs.async.QueryExecutor;
+import fr.univtln.bruno.samples.jaxrs.binary.CborProvider;
+import fr.univtln.bruno.samples.jaxrs.binary.SmileProvider;
+import fr.univtln.bruno.samples.jaxrs.cache.Cacheable;
 import fr.univtln.bruno.samples.jaxrs.exceptions.BusinessException;
 import fr.univtln.bruno.samples.jaxrs.exceptions.IllegalArgumentException;
 import fr.univtln.bruno.samples.jaxrs.exceptions.NotFoundException;
 import fr.univtln.bruno.samples.jaxrs.model.Library;
+import fr.univtln.bruno.samples.jaxrs.model.LibraryView;
 import fr.univtln.bruno.samples.jaxrs.model.Page;
+import fr.univtln.bruno.samples.jaxrs.model.Version;
 import fr.univtln.bruno.samples.jaxrs.status.Status;
 import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Request;
+import jakarta.ws.rs.core.Response;
 import lombok.extern.java.Log;
+import org.glassfish.jersey.server.CloseableService;
 
-import java.util.Collection;
+import java.util.concurrent.CompletionStage;
 
 @Log
-@Produces({MediaType.APPLICATION_JSON, MediaType.TEXT_XML})
+@Produces({MediaType.APPLICATION_JSON, MediaType.TEXT_XML, CborProvider.APPLICATION_CBOR, SmileProvider.APPLICATION_SMILE})
 @Path("authors")
 public class AuthorResource {
     /**
      * Update an author with an given id.
+     * With If-Match (the ETag of a previous GET) the author is updated only if it has not changed since,
+     * the check and the update are atomic.
      *
-     * @param id     the id injected from the path param "id"
-     * @param author a injected author made from the JSON data (@Consumes) from body of the request. This author is forbidden to havce an Id.
-     * @return The resulting author with its id.
+     * @param id      the id injected from the path param "id"
+     * @param author  a injected author made from the JSON data (@Consumes) from body of the request. This author is forbidden to havce an Id.
+     * @param request the request and its preconditions
+     * @return The resulting author with its id and its new ETag.
      * @throws NotFoundException        is returned if no author has the "id".
      * @throws IllegalArgumentException is returned if an "id" is also given in the request body.
+     * @throws BusinessException        with the status 412 if the author has changed.
      */
     @PUT
     @Path("{id}")
-    @Consumes(MediaType.APPLICATION_JSON)
-    public Library.Author updateAuthor(@PathParam("id") long id, Library.Author author) throws BusinessException {
-        return Library.demoLibrary.updateAuteur(id, author);
+    @Consumes({MediaType.APPLICATION_JSON, CborProvider.APPLICATION_CBOR, SmileProvider.APPLICATION_SMILE})
+    public Response updateAuthor(@PathParam("id") long id, Library.Author author, @Context Request request) throws BusinessException {
+        Version version = Library.demoLibrary.updateAuteur(id, author,
+                current -> Preconditions.evaluate(request, current) == null);
+        return Preconditions.tagged(Response.ok(author), version);
     }
 
     /**
@@ -42,7 +58,7 @@ public class AuthorResource {
      */
     @POST
     @Status(Status.CREATED)
-    @Consumes(MediaType.APPLICATION_JSON)
+    @Consumes({MediaType.APPLICATION_JSON, CborProvider.APPLICATION_CBOR, SmileProvider.APPLICATION_SMILE})
     public Library.Author addAuthor(Library.Author author) throws BusinessException {
         return Library.demoLibrary.addAuthor(author);
     }
@@ -70,25 +86,42 @@ public class AuthorResource {
     /**
      * Find and return an author by id with a GET on the path "biblio/auteurs/{id}" where  {id} is the needed id.
      * The path parameter "id" is injected with @PathParam.
+     * The response carries the version of the author as ETag, with If-None-Match a 304 is sent
+     * if it has not changed, before the author is read.
      *
-     * @param id the needed author id.
+     * @param id      the needed author id.
+     * @param request the request and its preconditions
      * @return the auteur with id.
      * @throws NotFoundException is returned if no author has the "id".
      */
     @GET
     @Path("{id}")
-    public Library.Author getAuthor(@PathParam("id") final long id) throws BusinessException {
-        return Library.demoLibrary.getAuthor(id);
+    public Response getAuthor(@PathParam("id") final long id, @Context Request request) throws BusinessException {
+        //The version is read first : if the author changes in between, the ETag is older than the body, never newer.
+        Version version = Library.demoLibrary.getAuthorVersion(id);
+        Response.ResponseBuilder notModified = Preconditions.evaluate(request, version);
+        if (notModified != null) return notModified.build();
+        return Preconditions.tagged(Response.ok(Library.demoLibrary.getAuthor(id)), version);
     }
 
     /**
-     * Gets auteurs.
+     * Gets auteurs from a pinned version of the library, they are streamed while it is iterated.
+     * The response carries the version of the library as ETag, with If-None-Match a 304 is sent
+     * if it has not changed, before anything is pinned.
+     * The version is released at the end of the request, whether its body is written or not (HEAD, errors).
      *
+     * @param request    the request and its preconditions
+     * @param closeables the resources of the request, closed at its end
      * @return the auteurs
      */
     @GET
-    public Collection<Library.Author> getAuthors() {
-        return Library.demoLibrary.getAuthors().values();
+    @Cacheable
+    public Response getAuthors(@Context Request request, @Context CloseableService closeables) {
+        Response.ResponseBuilder notModified = Preconditions.evaluate(request, Library.demoLibrary.getVersion());
+        if (notModified != null) return notModified.build();
+        LibraryView view = Library.demoLibrary.pin();
+        closeables.add(view::close);
+        return Preconditions.tagged(Response.ok(view.onlyAuthors()), view.getVersion());
     }
 
     /**
@@ -98,14 +131,16 @@ public class AuthorResource {
      * @param firstname     an optional exact filter on the firstname.
      * @param biography an optional contains filter on the biography.
      * @param sortKey    the sort key (prenom or nom).
-     * @return the filtered auteurs
+     * @return the filtered auteurs, computed on the query executor (see {@link QueryExecutor}).
+     * The result fails with a BusinessException if the sort key is invalid.
      */
     @GET
     @Path("filter")
-    public Page<Library.Author> getFilteredAuthors(@QueryParam("name") String name,
-                                                   @QueryParam("firstname") String firstname,
-                                                   @QueryParam("biography") String biography,
-                                                   @HeaderParam("sortKey") @DefaultValue("name") String sortKey) {
+    @Cacheable(headers = "sortKey")
+    public CompletionStage<Page<Library.Author>> getFilteredAuthors(@QueryParam("name") String name,
+                                                                    @QueryParam("firstname") String firstname,
+                                                                    @QueryParam("biography") String biography,
+                                                                    @HeaderParam("sortKey") @DefaultValue("name") String sortKey) {
         PaginationInfo paginationInfo = PaginationInfo.builder()
                 .name(name)
                 .firstname(firstname)
@@ -113,19 +148,25 @@ public class AuthorResource {
                 .sortKey(sortKey)
                 .build();
 
-        return Library.demoLibrary.getAuthorsWithFilter(paginationInfo);
+        return QueryExecutor.queries.submit(() -> Library.demoLibrary.getAuthorsWithFilter(paginationInfo));
     }
 
     /**
      * Gets a page of authors after applying a sort.
      *
      * @param paginationInfo the pagination info represented as a class injected with @BeanParam.
-     * @return the page of authors.
+     * With a cursor (empty for the first page) the page is located after or before it (keyset pagination)
+     * and the links to the neighbour pages carry their cursors.
+     *
+     * @param paginationInfo the pagination info represented as a class injected with @BeanParam.
+     * @return the page of authors, computed on the query executor (see {@link QueryExecutor}).
+     * The result fails with a BusinessException if the cursor is invalid.
      */
     @GET
     @Path("page")
-    public Page<Library.Author> getAuthorsPage(@BeanParam PaginationInfo paginationInfo) {
-        return Library.demoLibrary.getAuthorsWithFilter(paginationInfo);
+    @Cacheable(headers = "sortKey")
+    public CompletionStage<Page<Library.Author>> getAuthorsPage(@BeanParam PaginationInfo paginationInfo) {
+        return QueryExecutor.queries.submit(() -> Library.demoLibrary.getAuthorsWithFilter(paginationInfo));
     }
 
 }
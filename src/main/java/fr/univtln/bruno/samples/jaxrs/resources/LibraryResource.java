@@ -1,26 +1,55 @@
 package fr.univtln.bruno.samples.jaxrs.resources;
 
+import fr.univtln.bruno.samples.jaxrs.binary.CborProvider;
+import fr.univtln.bruno.samples.jaxrs.binary.SmileProvider;
+import fr.univtln.bruno.samples.jaxrs.bulk.ImportReport;
+import fr.univtln.bruno.samples.jaxrs.bulk.NdjsonImporter;
+import fr.univtln.bruno.samples.jaxrs.cache.Cacheable;
 import fr.univtln.bruno.samples.jaxrs.exceptions.BusinessException;
 import fr.univtln.bruno.samples.jaxrs.exceptions.IllegalArgumentException;
 import fr.univtln.bruno.samples.jaxrs.model.Library;
+import fr.univtln.bruno.samples.jaxrs.model.LibraryView;
+import fr.univtln.bruno.samples.jaxrs.model.Operation;
 import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Request;
+import jakarta.ws.rs.core.Response;
 import lombok.extern.java.Log;
+import org.glassfish.jersey.server.CloseableService;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.security.SecureRandom;
+import java.util.List;
 import java.util.Set;
 
 @Log
-@Produces({MediaType.APPLICATION_JSON, MediaType.TEXT_XML})
+@Produces({MediaType.APPLICATION_JSON, MediaType.TEXT_XML, CborProvider.APPLICATION_CBOR, SmileProvider.APPLICATION_SMILE})
 @Path("library")
 public class LibraryResource {
 
     //A random number generator
     private static final SecureRandom random = new SecureRandom();
 
+    /**
+     * Gives the whole library as a pinned version : it is consistent and the writers are not blocked while it is sent.
+     * The response carries the version of the library as ETag, with If-None-Match a 304 is sent
+     * if it has not changed, before anything is pinned.
+     * The version is released at the end of the request, whether its body is written or not (HEAD, errors).
+     *
+     * @param request    the request and its preconditions
+     * @param closeables the resources of the request, closed at its end
+     * @return the library
+     */
     @GET
-    public Library getLibrary() {
-        return Library.demoLibrary;
+    @Cacheable
+    public Response getLibrary(@Context Request request, @Context CloseableService closeables) {
+        Response.ResponseBuilder notModified = Preconditions.evaluate(request, Library.demoLibrary.getVersion());
+        if (notModified != null) return notModified.build();
+        LibraryView view = Library.demoLibrary.pin();
+        closeables.add(view::close);
+        return Preconditions.tagged(Response.ok(view), view.getVersion());
     }
 
     /**
@@ -78,6 +107,40 @@ public class LibraryResource {
         return Library.demoLibrary.getAuthorsNumber();
     }
 
+    /**
+     * Imports authors and books in bulk with a POST of newline delimited JSON (see {@link NdjsonImporter}).
+     * The body is read as a stream and added in batches, the invalid records are reported with their line numbers.
+     *
+     * @param records the records, one JSON object per line
+     * @return the report of the import.
+     * @throws IOException if the body cannot be read.
+     */
+    @POST
+    @Path("import")
+    @Consumes(NdjsonImporter.MEDIA_TYPE)
+    @Produces(MediaType.APPLICATION_JSON)
+    public ImportReport importRecords(InputStream records) throws IOException {
+        return new NdjsonImporter(Library.demoLibrary).importFrom(records);
+    }
+
+    /**
+     * Executes an ordered batch of operations on authors and books in a single request (see {@link Operation}).
+     * They are applied under a single write lock, with the atomic query parameter all of them or none are applied.
+     *
+     * @param operations the operations
+     * @param atomic     whether all the operations or none must be applied
+     * @return the result of each operation, with its http status.
+     * @throws BusinessException (413) if the batch is too large to be journaled.
+     */
+    @POST
+    @Path("batch")
+    @Consumes({MediaType.APPLICATION_JSON, CborProvider.APPLICATION_CBOR, SmileProvider.APPLICATION_SMILE})
+    @Produces({MediaType.APPLICATION_JSON, CborProvider.APPLICATION_CBOR, SmileProvider.APPLICATION_SMILE})
+    public List<Operation.Result> executeBatch(List<Operation> operations, @QueryParam("atomic") boolean atomic)
+            throws BusinessException {
+        return Library.demoLibrary.execute(operations, atomic);
+    }
+
     /**
      * A random string generator
      *
@@ -9,6 +9,8 @@ import lombok.experimental.FieldDefaults;
 /**
  * The Pagination information to be injected with @BeanPararm Filter Queries.
  * Each field is annotated with a JAX-RS parameter injection.
+ * Pages are given either by number (offset pagination with page and pageSize) or,
+ * when a cursor is given (empty for the first page), after or before a cursor (keyset pagination).
  */
 @FieldDefaults(level = AccessLevel.PRIVATE)
 @Getter
@@ -39,4 +41,11 @@ public class PaginationInfo {
 
     @QueryParam("biography")
     String biography;
+
+    @QueryParam("cursor")
+    String cursor;
+
+    //With a cursor the total number of authors is only computed on demand.
+    @QueryParam("count")
+    boolean count;
 }
@@ -0,0 +1,35 @@
+package fr.univtln.bruno.samples.jaxrs.resources;
+
+import fr.univtln.bruno.samples.jaxrs.model.Version;
+import jakarta.ws.rs.core.Request;
+import jakarta.ws.rs.core.Response;
+
+/**
+ * Evaluates the conditional requests (If-None-Match, If-Match, If-Modified-Since...) against the versions of the library.
+ */
+final class Preconditions {
+    private Preconditions() {
+    }
+
+    /**
+     * Evaluates the preconditions of a request against a version.
+     *
+     * @param request the request
+     * @param version the version of the resource
+     * @return null if they are satisfied, otherwise the response to send (304 for a GET, 412 for a PUT).
+     */
+    static Response.ResponseBuilder evaluate(Request request, Version version) {
+        return request.evaluatePreconditions(version.getLastModifiedDate(), version.getEntityTag());
+    }
+
+    /**
+     * Adds the validators of a version (ETag and Last-Modified) to a response.
+     *
+     * @param response the response
+     * @param version  the version of its entity
+     * @return the response
+     */
+    static Response tagged(Response.ResponseBuilder response, Version version) {
+        return response.tag(version.getEntityTag()).lastModified(version.getLastModifiedDate()).build();
+    }
+}
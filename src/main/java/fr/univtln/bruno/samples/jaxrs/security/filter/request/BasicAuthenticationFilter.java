@@ -71,7 +71,7 @@ public class BasicAuthenticationFilter implements ContainerRequestFilter {
             final String username = usernameAndPassword[0];
             final String password = usernameAndPassword[1];
 
-            log.info(username + " tries to log in");
+            log.fine(() -> username + " tries to log in");
 
             //We verify user access rights according to roles
             //After Authentication we are doing Authorization
@@ -1,20 +1,23 @@
 package fr.univtln.bruno.samples.jaxrs.server;
 
+import fr.univtln.bruno.samples.jaxrs.accesslog.AccessLog;
+import fr.univtln.bruno.samples.jaxrs.accesslog.AccessLogConfig;
+import fr.univtln.bruno.samples.jaxrs.model.Library;
+import fr.univtln.bruno.samples.jaxrs.persistence.LibraryStore;
+import fr.univtln.bruno.samples.jaxrs.persistence.StoreConfig;
+import jakarta.ws.rs.ProcessingException;
 import lombok.extern.java.Log;
 import org.glassfish.grizzly.http.server.HttpServer;
 import org.glassfish.grizzly.http.server.NetworkListener;
 import org.glassfish.grizzly.http2.Http2AddOn;
-import org.glassfish.grizzly.http2.Http2Configuration;
 import org.glassfish.grizzly.ssl.SSLContextConfigurator;
 import org.glassfish.grizzly.ssl.SSLEngineConfigurator;
 import org.glassfish.jersey.grizzly2.httpserver.GrizzlyHttpServerFactory;
-import org.glassfish.jersey.logging.LoggingFeature;
 import org.glassfish.jersey.server.ResourceConfig;
 
 import java.io.IOException;
 import java.net.URI;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.util.concurrent.ExecutorService;
 
 @Log
 public class BiblioServer {
@@ -26,19 +29,36 @@ public class BiblioServer {
 
     public static final int TLS_PORT = 4443;
 
+    //The cleartext HTTP/2 (h2c) listener, for the proxies which terminate TLS.
+    public static final int H2C_PORT = 9999;
+
+    //The configuration the server was last started with.
+    private static volatile ServerConfig serverConfig = ServerConfig.builder().build();
+
+    //The worker pool shared by the listeners of the server, null for the pools of Grizzly.
+    private static volatile ExecutorService workerPool;
+
     /**
      * Main method.
+     * The library is durable if a data directory is given with -Dlibrary.data.dir=... (see {@link StoreConfig}).
+     * The listeners are tuned by a profile and by system properties or environment variables (see {@link ServerConfig}).
+     * The requests are logged asynchronously (see {@link AccessLogConfig}).
      *
      * @param args the input arguments
      */
     public static void main(String[] args) throws InterruptedException, IOException {
-        log.info("Rest server starting..." + BASE_URI);
+        final LibraryStore store = openStore();
         final HttpServer server = startServer();
+        log.info("Rest server started with the " + serverConfig.getProfile() + " profile..." + serverConfig.getBaseUri());
 
         addTLSandHTTP2(server);
 
-        //The server will be shutdown at the end of the program
-        Runtime.getRuntime().addShutdownHook(new Thread(server::shutdownNow));
+        //The server will be shutdown at the end of the program, then the library and the access log are closed
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            stopServer(server);
+            closeStore(store);
+            closeAccessLog();
+        }));
 
         log.info(String.format("Application started.%n" +
                                "Stop the application using CTRL+C"));
@@ -48,6 +68,35 @@ public class BiblioServer {
         server.shutdown();
     }
 
+    /**
+     * Recovers the demo library from its data directory if one is configured.
+     *
+     * @return the store, or null if the library is in memory only.
+     * @throws IOException if the library cannot be recovered.
+     */
+    public static LibraryStore openStore() throws IOException {
+        StoreConfig config = StoreConfig.fromSystemProperties().orElse(null);
+        if (config == null) return null;
+        return LibraryStore.open(Library.demoLibrary, config);
+    }
+
+    private static void closeStore(LibraryStore store) {
+        if (store == null) return;
+        try {
+            store.close();
+        } catch (IOException e) {
+            log.severe("The library could not be closed : " + e.getMessage());
+        }
+    }
+
+    private static void closeAccessLog() {
+        try {
+            AccessLog.accesses.close();
+        } catch (IOException e) {
+            log.severe("The access log could not be closed : " + e.getMessage());
+        }
+    }
+
     /**
      * Starts Grizzly HTTP server exposing JAX-RS resources defined in this application.
      *
@@ -55,17 +104,44 @@ public class BiblioServer {
      */
     public static HttpServer startServer() {
         // create a resource config that scans for JAX-RS resources and providers
-        // in demos package and add a logging feature to the server.
-        Logger logger = Logger.getLogger(BiblioServer.class.getName());
-        logger.setLevel(Level.FINE);
-
+        // in demos package, the requests are logged by the AccessLogFilter.
         final ResourceConfig rc = new ResourceConfig()
-                .packages(true, "fr.univtln.bruno.samples.jaxrs")
-                .register(new LoggingFeature(logger, Level.INFO, LoggingFeature.Verbosity.PAYLOAD_TEXT, null));
+                .packages(true, "fr.univtln.bruno.samples.jaxrs");
+
+        // create a new instance of grizzly http server exposing the Jersey application at the configured URI
+        // and start it once its listeners are configured
+        serverConfig = ServerConfig.fromEnvironment();
+        HttpServer server = GrizzlyHttpServerFactory.createHttpServer(URI.create(serverConfig.getBaseUri()), rc, false);
+        //One worker pool for all the listeners, the TLS one included.
+        workerPool = serverConfig.getExecutionMode().newWorkerPool();
+        server.getListeners().forEach(listener -> serverConfig.configure(listener, workerPool));
+        NetworkListener h2c = serverConfig.newH2cListener(URI.create(serverConfig.getBaseUri()).getHost(), workerPool);
+        if (h2c != null) server.addListener(h2c);
+        try {
+            server.start();
+        } catch (IOException e) {
+            stopServer(server);
+            throw new ProcessingException("The server could not be started", e);
+        }
+        return server;
+    }
+
+    /**
+     * Stops a server started by {@link #startServer()} at once, then the worker pool of its listeners.
+     *
+     * @param server the server
+     */
+    public static void stopServer(HttpServer server) {
+        server.shutdownNow();
+        ExecutorService workers = workerPool;
+        if (workers != null) workers.shutdownNow();
+    }
 
-        // create and start a new instance of grizzly http server
-        // exposing the Jersey application at BASE_URI
-        return GrizzlyHttpServerFactory.createHttpServer(URI.create(BASE_URI), rc);
+    /**
+     * @return the configuration the server was last started with.
+     */
+    public static ServerConfig getConfig() {
+        return serverConfig;
     }
 
     /**
@@ -78,7 +154,7 @@ public class BiblioServer {
         NetworkListener listener =
                 new NetworkListener("TLS",
                         NetworkListener.DEFAULT_NETWORK_HOST,
-                        TLS_PORT);
+                        serverConfig.getTlsPort());
         listener.setSecure(true);
 
         // We add the certificate stored in a java keystore in src/main/resources/ssl
@@ -89,12 +165,12 @@ public class BiblioServer {
 
         listener.setSSLEngineConfig(new SSLEngineConfigurator(sslContextConfigurator, false, false, false));
 
-        // Create default HTTP/2 configuration and provide it to the AddOn
-        Http2Configuration configuration = Http2Configuration.builder().build();
-        Http2AddOn http2Addon = new Http2AddOn(configuration);
+        // Create the HTTP/2 configuration (streams, window and frame sizes) and provide it to the AddOn
+        Http2AddOn http2Addon = new Http2AddOn(serverConfig.http2Configuration(false));
 
         // Register the Addon.
         listener.registerAddOn(http2Addon);
+        serverConfig.configure(listener, workerPool);
         httpServer.addListener(listener);
 
         return httpServer;
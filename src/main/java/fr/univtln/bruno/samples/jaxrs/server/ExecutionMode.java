@@ -0,0 +1,63 @@
+package fr.univtln.bruno.samples.jaxrs.server;
+
+import lombok.extern.java.Log;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * How the requests are executed by the listeners of the server (-Dlibrary.server.execution=fixed|virtual,
+ * see {@link ServerConfig}).
+ */
+@Log
+public enum ExecutionMode {
+    /**
+     * The fixed pool of worker threads of Grizzly : the requests blocked beyond its size wait for a thread.
+     */
+    FIXED,
+    /**
+     * A virtual thread for each request when the runtime has them (Java 21). Otherwise a platform thread
+     * for each concurrent request, up to {@value #FALLBACK_THREADS_PROPERTY} threads (256 by default) reused
+     * while the requests keep coming, the next requests wait in a queue of {@value #FALLBACK_QUEUE_PROPERTY}
+     * (1024 by default) beyond which they are rejected.
+     */
+    VIRTUAL;
+
+    public static final String PROPERTY = "library.server.execution";
+    public static final String FALLBACK_THREADS_PROPERTY = "library.server.execution.threads";
+    public static final String FALLBACK_QUEUE_PROPERTY = "library.server.execution.queue";
+
+    /**
+     * Creates the worker pool shared by the listeners of a server. Grizzly does not shut down a pool it is given,
+     * so it is shut down by the caller once the server is stopped (see {@link BiblioServer#stopServer}).
+     *
+     * @return the pool, or null for the default pool of Grizzly.
+     */
+    public ExecutorService newWorkerPool() {
+        if (this == FIXED) return null;
+        try {
+            //Looked up at runtime, the sources target a Java without virtual threads.
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+            int threads = Integer.getInteger(FALLBACK_THREADS_PROPERTY, 256);
+            int queue = Integer.getInteger(FALLBACK_QUEUE_PROPERTY, 1024);
+            log.warning(() -> String.format("No virtual threads in this runtime, a platform thread is used for each "
+                                            + "concurrent request, up to %d threads and %d waiting requests", threads, queue));
+            AtomicInteger number = new AtomicInteger();
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(queue), runnable -> {
+                Thread thread = new Thread(runnable, "request-" + number.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.AbortPolicy());
+            //The threads are started on demand and stopped when idle, as in a cached pool.
+            pool.allowCoreThreadTimeOut(true);
+            return pool;
+        }
+    }
+}
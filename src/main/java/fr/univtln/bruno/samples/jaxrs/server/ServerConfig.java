@@ -0,0 +1,241 @@
+package fr.univtln.bruno.samples.jaxrs.server;
+
+import lombok.AccessLevel;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+import org.glassfish.grizzly.http.server.NetworkListener;
+import org.glassfish.grizzly.http2.Http2AddOn;
+import org.glassfish.grizzly.http2.Http2Configuration;
+import org.glassfish.grizzly.memory.ByteBufferManager;
+import org.glassfish.grizzly.memory.HeapMemoryManager;
+import org.glassfish.grizzly.nio.transport.TCPNIOTransport;
+import org.glassfish.grizzly.threadpool.ThreadPoolConfig;
+
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
+
+/**
+ * The configuration of the listeners of the server and of their transports.
+ * It starts from a profile and each setting can be given by a system property (-Dlibrary.server.workers=16)
+ * or an environment variable (LIBRARY_SERVER_WORKERS=16). The unset transport settings keep the defaults of Grizzly.
+ */
+@Getter
+@Builder(toBuilder = true)
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class ServerConfig {
+    public static final String PROFILE_PROPERTY = "library.server.profile";
+    public static final String URI_PROPERTY = "library.server.uri";
+    public static final String TLS_PORT_PROPERTY = "library.server.tls.port";
+    public static final String SELECTORS_PROPERTY = "library.server.selectors";
+    public static final String WORKERS_PROPERTY = "library.server.workers";
+    public static final String KEEP_ALIVE_IDLE_PROPERTY = "library.server.keepalive.idle.s";
+    public static final String KEEP_ALIVE_REQUESTS_PROPERTY = "library.server.keepalive.requests";
+    public static final String MAX_HEADER_SIZE_PROPERTY = "library.server.header.max";
+    public static final String DIRECT_BUFFERS_PROPERTY = "library.server.buffers.direct";
+    public static final String SOCKET_BUFFER_SIZE_PROPERTY = "library.server.buffers.socket";
+    public static final String TCP_NO_DELAY_PROPERTY = "library.server.tcp.nodelay";
+    public static final String H2C_PORT_PROPERTY = "library.server.h2c.port";
+    public static final String H2C_MODE_PROPERTY = "library.server.h2c.mode";
+    public static final String HTTP2_STREAMS_PROPERTY = "library.server.http2.streams";
+    public static final String HTTP2_WINDOW_PROPERTY = "library.server.http2.window";
+    public static final String HTTP2_FRAME_PROPERTY = "library.server.http2.frame";
+
+    @Builder.Default
+    Profile profile = Profile.DEFAULT;
+    @Builder.Default
+    String baseUri = BiblioServer.BASE_URI;
+    @Builder.Default
+    int tlsPort = BiblioServer.TLS_PORT;
+    //The port of the cleartext HTTP/2 listener, -1 for none.
+    @Builder.Default
+    int h2cPort = BiblioServer.H2C_PORT;
+    @Builder.Default
+    H2cMode h2cMode = H2cMode.PRIOR_KNOWLEDGE;
+    @Builder.Default
+    ExecutionMode executionMode = ExecutionMode.FIXED;
+    //The threads of the selectors, which accept the connections and read the requests.
+    Integer selectorThreads;
+    //The fixed worker pool, in the FIXED mode only.
+    Integer workerThreads;
+    Integer keepAliveIdleSeconds;
+    //-1 for no limit.
+    Integer keepAliveMaxRequests;
+    Integer maxHttpHeaderSize;
+    //Off heap buffers for the reads and the writes, instead of heap ones.
+    Boolean directBuffers;
+    //The size of the socket read and write buffers.
+    Integer socketBufferSize;
+    Boolean tcpNoDelay;
+    //The concurrent streams of an HTTP/2 connection, the initial flow control window of a stream
+    //and the largest frame payload, in bytes (TLS and h2c listeners).
+    Integer http2MaxConcurrentStreams;
+    Integer http2InitialWindowSize;
+    Integer http2MaxFrameSize;
+
+    //A system property first, then the environment variable of the same name (LIBRARY_SERVER_...).
+    private static String setting(String property) {
+        String value = System.getProperty(property);
+        if (value == null) value = System.getenv(property.toUpperCase(Locale.ROOT).replace('.', '_'));
+        return value == null || value.isBlank() ? null : value.trim();
+    }
+
+    private static <T> T setting(String property, Function<String, T> parser, T defaultValue) {
+        String value = setting(property);
+        return value == null ? defaultValue : parser.apply(value);
+    }
+
+    /**
+     * Reads the configuration from the system properties and the environment, on top of the chosen profile.
+     *
+     * @return the configuration
+     */
+    public static ServerConfig fromEnvironment() {
+        Profile profile = setting(PROFILE_PROPERTY, value -> Profile.valueOf(value.toUpperCase(Locale.ROOT).replace('-', '_')), Profile.DEFAULT);
+        ServerConfig defaults = profile.config();
+        return defaults.toBuilder()
+                .baseUri(setting(URI_PROPERTY, Function.identity(), defaults.baseUri))
+                .tlsPort(setting(TLS_PORT_PROPERTY, Integer::valueOf, defaults.tlsPort))
+                .h2cPort(setting(H2C_PORT_PROPERTY, Integer::valueOf, defaults.h2cPort))
+                .h2cMode(setting(H2C_MODE_PROPERTY, value -> H2cMode.valueOf(value.toUpperCase(Locale.ROOT).replace('-', '_')), defaults.h2cMode))
+                .executionMode(setting(ExecutionMode.PROPERTY, value -> ExecutionMode.valueOf(value.toUpperCase(Locale.ROOT)), defaults.executionMode))
+                .selectorThreads(setting(SELECTORS_PROPERTY, Integer::valueOf, defaults.selectorThreads))
+                .workerThreads(setting(WORKERS_PROPERTY, Integer::valueOf, defaults.workerThreads))
+                .keepAliveIdleSeconds(setting(KEEP_ALIVE_IDLE_PROPERTY, Integer::valueOf, defaults.keepAliveIdleSeconds))
+                .keepAliveMaxRequests(setting(KEEP_ALIVE_REQUESTS_PROPERTY, Integer::valueOf, defaults.keepAliveMaxRequests))
+                .maxHttpHeaderSize(setting(MAX_HEADER_SIZE_PROPERTY, Integer::valueOf, defaults.maxHttpHeaderSize))
+                .directBuffers(setting(DIRECT_BUFFERS_PROPERTY, Boolean::valueOf, defaults.directBuffers))
+                .socketBufferSize(setting(SOCKET_BUFFER_SIZE_PROPERTY, Integer::valueOf, defaults.socketBufferSize))
+                .tcpNoDelay(setting(TCP_NO_DELAY_PROPERTY, Boolean::valueOf, defaults.tcpNoDelay))
+                .http2MaxConcurrentStreams(setting(HTTP2_STREAMS_PROPERTY, Integer::valueOf, defaults.http2MaxConcurrentStreams))
+                .http2InitialWindowSize(setting(HTTP2_WINDOW_PROPERTY, Integer::valueOf, defaults.http2InitialWindowSize))
+                .http2MaxFrameSize(setting(HTTP2_FRAME_PROPERTY, Integer::valueOf, defaults.http2MaxFrameSize))
+                .build();
+    }
+
+    /**
+     * Applies the configuration to a listener and its transport, before they are started.
+     *
+     * @param listener the listener
+     * @param workers  the worker pool shared by the listeners (see {@link ExecutionMode#newWorkerPool()}),
+     *                 null for the pool of Grizzly of each transport
+     */
+    public void configure(NetworkListener listener, ExecutorService workers) {
+        TCPNIOTransport transport = listener.getTransport();
+        if (selectorThreads != null) transport.setSelectorRunnersCount(selectorThreads);
+        if (workers != null) transport.setWorkerThreadPool(workers);
+        else if (workerThreads != null) {
+            ThreadPoolConfig pool = transport.getWorkerThreadPoolConfig();
+            if (pool != null) pool.setMaxPoolSize(workerThreads).setCorePoolSize(workerThreads);
+        }
+        if (directBuffers != null)
+            transport.setMemoryManager(directBuffers ? new ByteBufferManager(true) : new HeapMemoryManager());
+        if (socketBufferSize != null) {
+            transport.setReadBufferSize(socketBufferSize);
+            transport.setWriteBufferSize(socketBufferSize);
+        }
+        if (tcpNoDelay != null) transport.setTcpNoDelay(tcpNoDelay);
+        if (keepAliveIdleSeconds != null) listener.getKeepAlive().setIdleTimeoutInSeconds(keepAliveIdleSeconds);
+        if (keepAliveMaxRequests != null) listener.getKeepAlive().setMaxRequestsCount(keepAliveMaxRequests);
+        if (maxHttpHeaderSize != null) listener.setMaxHttpHeaderSize(maxHttpHeaderSize);
+    }
+
+    /**
+     * Builds the HTTP/2 settings of a listener, the unset ones keep the defaults of Grizzly.
+     *
+     * @param priorKnowledge whether a cleartext connection starts with the HTTP/2 preface, without an upgrade.
+     * @return the HTTP/2 configuration
+     */
+    public Http2Configuration http2Configuration(boolean priorKnowledge) {
+        Http2Configuration.Http2ConfigurationBuilder builder = Http2Configuration.builder().priorKnowledge(priorKnowledge);
+        if (http2MaxConcurrentStreams != null) builder.maxConcurrentStreams(http2MaxConcurrentStreams);
+        if (http2InitialWindowSize != null) builder.initialWindowSize(http2InitialWindowSize);
+        if (http2MaxFrameSize != null) builder.maxFramePayloadSize(http2MaxFrameSize);
+        return builder.build();
+    }
+
+    /**
+     * Creates the cleartext HTTP/2 listener next to the plain HTTP one, configured as the others.
+     *
+     * @param host    the host of the plain HTTP listener
+     * @param workers the worker pool shared by the listeners, null for the pool of Grizzly
+     * @return the listener, or null if there is no h2c port.
+     */
+    public NetworkListener newH2cListener(String host, ExecutorService workers) {
+        if (h2cPort < 0) return null;
+        NetworkListener listener = new NetworkListener("h2c", host, h2cPort);
+        listener.registerAddOn(new Http2AddOn(http2Configuration(h2cMode == H2cMode.PRIOR_KNOWLEDGE)));
+        configure(listener, workers);
+        return listener;
+    }
+
+    /**
+     * How a client starts HTTP/2 on the cleartext listener.
+     */
+    public enum H2cMode {
+        /**
+         * The client sends the HTTP/2 preface at once, as the proxies of a service mesh do.
+         */
+        PRIOR_KNOWLEDGE,
+        /**
+         * The client sends an HTTP/1.1 request with an Upgrade: h2c header, the answer is sent over HTTP/2.
+         */
+        UPGRADE
+    }
+
+    /**
+     * The named sets of settings the configuration starts from.
+     */
+    public enum Profile {
+        /**
+         * The defaults of Grizzly.
+         */
+        DEFAULT,
+        /**
+         * Short answers to few clients : as many selectors as cores, a small worker pool,
+         * heap buffers and the small writes sent at once.
+         */
+        LOW_LATENCY,
+        /**
+         * Many connections kept open and large responses : a large worker pool, long keep-alive,
+         * direct and larger socket buffers.
+         */
+        HIGH_THROUGHPUT;
+
+        /**
+         * @return the settings of the profile.
+         */
+        public ServerConfig config() {
+            int cores = Runtime.getRuntime().availableProcessors();
+            switch (this) {
+                case LOW_LATENCY:
+                    return ServerConfig.builder().profile(this)
+                            .selectorThreads(cores)
+                            .workerThreads(cores * 2)
+                            .keepAliveIdleSeconds(30)
+                            .keepAliveMaxRequests(-1)
+                            .directBuffers(false)
+                            .tcpNoDelay(true)
+                            .http2MaxConcurrentStreams(100)
+                            .build();
+                case HIGH_THROUGHPUT:
+                    return ServerConfig.builder().profile(this)
+                            .selectorThreads(cores)
+                            .workerThreads(cores * 8)
+                            .keepAliveIdleSeconds(120)
+                            .keepAliveMaxRequests(-1)
+                            .maxHttpHeaderSize(16 * 1024)
+                            .directBuffers(true)
+                            .socketBufferSize(64 * 1024)
+                            .tcpNoDelay(true)
+                            .http2MaxConcurrentStreams(1000)
+                            .http2InitialWindowSize(1024 * 1024)
+                            .http2MaxFrameSize(64 * 1024)
+                            .build();
+                default:
+                    return ServerConfig.builder().profile(this).build();
+            }
+        }
+    }
+}
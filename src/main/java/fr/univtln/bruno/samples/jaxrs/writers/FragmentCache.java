@@ -0,0 +1,262 @@
+package fr.univtln.bruno.samples.jaxrs.writers;
+
+import fr.univtln.bruno.samples.jaxrs.model.Library;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.LongStream;
+
+/**
+ * The already encoded fragments (the JSON or XML element) of the authors and the books in one form,
+ * so that the lists are written by copying them one after the other.
+ * A fragment is kept with the content it was encoded from (the fields and the ids of the references)
+ * and is used only for an entity with an equal content : a reader of a pinned version never gets the fragment of
+ * another version. The fragments are bounded by their total size, the least recently used ones are evicted first, and the
+ * fragments of the changed entities are dropped by the demo library (see {@link Library.ChangeListener}).
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class FragmentCache implements Library.ChangeListener {
+    public static final String CAPACITY_PROPERTY = "library.fragments.bytes";
+    //Every cache by name, for the statistics.
+    private static final Map<String, FragmentCache> caches = new ConcurrentSkipListMap<>();
+    //The bytes counted for the key and the entry besides the fragment and its content.
+    private static final int ENTRY_OVERHEAD = 96;
+
+    long capacity;
+    //By id, the books with the low bit set. In access order, the eldest is the least recently used.
+    LinkedHashMap<Long, Fragment> fragments = new LinkedHashMap<>(16, 0.75f, true);
+    ReentrantLock lock = new ReentrantLock();
+    @NonFinal
+    long size;
+    @NonFinal
+    long evictions;
+    LongAdder hits = new LongAdder();
+    LongAdder misses = new LongAdder();
+
+    private FragmentCache(long capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Creates a cache invalidated by the changes of the demo library, of the size given by {@value #CAPACITY_PROPERTY}.
+     *
+     * @param name the name of the form of the fragments in the statistics
+     * @return the cache
+     */
+    public static FragmentCache newInstance(String name) {
+        return newInstance(name, Long.getLong(CAPACITY_PROPERTY, 16L << 20));
+    }
+
+    /**
+     * Creates a cache invalidated by the changes of the demo library.
+     *
+     * @param name     the name of the form of the fragments in the statistics
+     * @param capacity the total size of the fragments in bytes, 0 disables the cache
+     * @return the cache
+     */
+    public static FragmentCache newInstance(String name, long capacity) {
+        FragmentCache cache = new FragmentCache(capacity);
+        caches.put(name, cache);
+        Library.demoLibrary.addChangeListener(cache);
+        return cache;
+    }
+
+    /**
+     * @return the statistics of every cache by name.
+     */
+    public static Map<String, Statistics> statistics() {
+        Map<String, Statistics> statistics = new ConcurrentSkipListMap<>();
+        caches.forEach((name, cache) -> statistics.put(name, cache.getStatistics()));
+        return statistics;
+    }
+
+    private static long authorKey(long id) {
+        return id << 1;
+    }
+
+    private static long bookKey(long id) {
+        return id << 1 | 1;
+    }
+
+    static Content content(Library.Author author) {
+        //The books are referred to by id.
+        return new Content(new String[]{author.getName(), author.getFirstname(), author.getBiography()},
+                author.getBooks() == null ? null : sortedIds(author.getBooks().stream().mapToLong(Library.Book::getId)));
+    }
+
+    static Content content(Library.Book book) {
+        return new Content(new String[]{book.getTitle()},
+                book.getAuthors() == null ? null : sortedIds(book.getAuthors().stream().mapToLong(Library.Author::getId)));
+    }
+
+    //The ids of a set, in an order which does not depend on the set.
+    private static long[] sortedIds(LongStream ids) {
+        return ids.sorted().toArray();
+    }
+
+    private static long sizeOf(Fragment fragment) {
+        return fragment.bytes.length + fragment.content.size() + ENTRY_OVERHEAD;
+    }
+
+    /**
+     * Gets the fragment of an author, it is encoded and kept if there is none or if it was encoded from another content.
+     *
+     * @param author  the author with its books
+     * @param encoder the encoder of the form of this cache
+     * @return the fragment
+     * @throws IOException if the author cannot be encoded.
+     */
+    public byte[] get(Library.Author author, Encoder<Library.Author> encoder) throws IOException {
+        return get(authorKey(author.getId()), content(author), author, encoder);
+    }
+
+    /**
+     * Gets the fragment of a book, it is encoded and kept if there is none or if it was encoded from another content.
+     *
+     * @param book    the book with its authors
+     * @param encoder the encoder of the form of this cache
+     * @return the fragment
+     * @throws IOException if the book cannot be encoded.
+     */
+    public byte[] get(Library.Book book, Encoder<Library.Book> encoder) throws IOException {
+        return get(bookKey(book.getId()), content(book), book, encoder);
+    }
+
+    private <T> byte[] get(long key, Content content, T value, Encoder<T> encoder) throws IOException {
+        Fragment fragment;
+        lock.lock();
+        try {
+            fragment = fragments.get(key);
+        } finally {
+            lock.unlock();
+        }
+        if (fragment != null && fragment.content.equals(content)) {
+            hits.increment();
+            return fragment.bytes;
+        }
+        misses.increment();
+        byte[] bytes = encoder.encode(value);
+        put(key, new Fragment(content, bytes));
+        return bytes;
+    }
+
+    //Keeps a fragment, the least recently used ones are evicted to make room.
+    private void put(long key, Fragment fragment) {
+        //A larger one would evict too many others.
+        if (fragment.bytes.length > capacity / 8) return;
+        lock.lock();
+        try {
+            Fragment previous = fragments.put(key, fragment);
+            if (previous != null) size -= sizeOf(previous);
+            size += sizeOf(fragment);
+            Iterator<Fragment> eldest = fragments.values().iterator();
+            while (size > capacity && eldest.hasNext()) {
+                size -= sizeOf(eldest.next());
+                eldest.remove();
+                evictions++;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void remove(long key) {
+        lock.lock();
+        try {
+            Fragment fragment = fragments.remove(key);
+            if (fragment != null) size -= sizeOf(fragment);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void authorChanged(long id) {
+        remove(authorKey(id));
+    }
+
+    @Override
+    public void bookChanged(long id) {
+        remove(bookKey(id));
+    }
+
+    @Override
+    public void cleared() {
+        lock.lock();
+        try {
+            fragments.clear();
+            size = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of hits, misses and evictions since the start and the number and size of the fragments.
+     */
+    public Statistics getStatistics() {
+        lock.lock();
+        try {
+            return new Statistics(hits.sum(), misses.sum(), evictions, fragments.size(), size);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Encodes an entity in the form of a cache.
+     *
+     * @param <T> the type of the entity
+     */
+    @FunctionalInterface
+    public interface Encoder<T> {
+        byte[] encode(T value) throws IOException;
+    }
+
+    @AllArgsConstructor
+    @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+    private static class Fragment {
+        Content content;
+        byte[] bytes;
+    }
+
+    /**
+     * What a fragment was encoded from : the fields and the sorted ids of the references, compared as a whole.
+     */
+    @EqualsAndHashCode
+    @AllArgsConstructor
+    @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+    static class Content {
+        String[] fields;
+        long[] ids;
+
+        //The bytes of the chars and the ids, the strings may be shared with the library.
+        long size() {
+            long size = ids == null ? 0 : 8L * ids.length;
+            for (String field : fields) if (field != null) size += 2L * field.length();
+            return size;
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+    public static class Statistics {
+        long hits;
+        long misses;
+        long evictions;
+        int fragments;
+        long bytes;
+    }
+}
@@ -0,0 +1,51 @@
+package fr.univtln.bruno.samples.jaxrs.writers;
+
+import fr.univtln.bruno.samples.jaxrs.model.Library;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.ext.ContextResolver;
+import jakarta.ws.rs.ext.Provider;
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.JAXBException;
+
+import java.util.Set;
+
+/**
+ * Gives the default JAXB providers a single context for the model, created once,
+ * instead of one context for each type they read or write.
+ */
+@Provider
+@Produces({MediaType.TEXT_XML, MediaType.APPLICATION_XML})
+public class JaxbContextResolver implements ContextResolver<JAXBContext> {
+    private static final Set<Class<?>> TYPES = Set.of(Library.class, Library.Author.class, Library.Book.class);
+    private static final JAXBContext CONTEXT;
+
+    static {
+        try {
+            CONTEXT = JAXBContext.newInstance(Library.class, Library.Author.class, Library.Book.class);
+        } catch (JAXBException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * @param type the type to read or write
+     * @return whether it is a type of the model.
+     */
+    static boolean isModel(Class<?> type) {
+        return TYPES.contains(type);
+    }
+
+    /**
+     * @return the context of the model.
+     */
+    static JAXBContext context() {
+        return CONTEXT;
+    }
+
+    @Override
+    public JAXBContext getContext(Class<?> type) {
+        //null lets Jersey create the context of the other types.
+        return isModel(type) ? CONTEXT : null;
+    }
+}
@@ -0,0 +1,147 @@
+package fr.univtln.bruno.samples.jaxrs.writers;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import fr.univtln.bruno.samples.jaxrs.model.Library;
+import fr.univtln.bruno.samples.jaxrs.model.LibraryView;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.ext.MessageBodyWriter;
+import jakarta.ws.rs.ext.Provider;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+
+/**
+ * Writes the pinned versions of the Library and the lists of authors (the pages) in JSON while iterating them :
+ * the authors and the books are written one by one to the response stream, which is sent in chunks once
+ * the first buffer is full. The memory needed does not depend on the size of the catalogue.
+ * Each entity is copied from its already encoded fragment (see {@link FragmentCache}), only the changed ones are encoded.
+ * The result is the same as the one of the default JSON provider : {"authors":[...],"books":[...]}
+ * for a whole view and [...] for its authors.
+ */
+@Provider
+@Produces(MediaType.APPLICATION_JSON)
+public class LibraryViewJsonWriter implements MessageBodyWriter<Object> {
+    private static final ObjectMapper MAPPER = streamingMapper(new JsonFactory());
+    private static final ObjectWriter AUTHOR_WRITER = MAPPER.writerFor(Library.Author.class);
+    private static final ObjectWriter BOOK_WRITER = MAPPER.writerFor(Library.Book.class);
+    private static final FragmentCache FRAGMENTS = FragmentCache.newInstance("json");
+    private static final int BUFFER_SIZE = 8192;
+    private static final byte[] AUTHORS_FIELD = "{\"authors\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] BOOKS_FIELD = ",\"books\":".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Creates a mapper for the entity streams of a format of Jackson.
+     * The container closes the streams, and flushing after each value would send tiny chunks.
+     *
+     * @param factory the factory of the format
+     * @return the mapper
+     */
+    public static ObjectMapper streamingMapper(JsonFactory factory) {
+        return new ObjectMapper(factory)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                .disable(JsonParser.Feature.AUTO_CLOSE_SOURCE)
+                .disable(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    /**
+     * @param type the type of an entity
+     * @return true if the entity is a pinned view or the authors of one.
+     */
+    public static boolean isView(Class<?> type) {
+        return type == LibraryView.class || type == LibraryView.Authors.class;
+    }
+
+    /**
+     * @param type        the type of an entity
+     * @param genericType its generic type
+     * @return true if the entity is a collection of authors.
+     */
+    public static boolean isAuthors(Class<?> type, Type genericType) {
+        return Collection.class.isAssignableFrom(type) && genericType instanceof ParameterizedType
+                && ((ParameterizedType) genericType).getActualTypeArguments()[0] == Library.Author.class;
+    }
+
+    /**
+     * Writes a pinned view or its authors while iterating it.
+     *
+     * @param mapper       the mapper of the format (see {@link #streamingMapper(JsonFactory)})
+     * @param entity       the view or its authors
+     * @param entityStream the stream
+     * @throws IOException if the stream cannot be written.
+     */
+    public static void write(ObjectMapper mapper, Object entity, OutputStream entityStream) throws IOException {
+        ObjectWriter authorWriter = mapper.writerFor(Library.Author.class);
+        try (JsonGenerator generator = mapper.getFactory().createGenerator(entityStream)) {
+            if (entity instanceof LibraryView.Authors) {
+                writeArray(generator, ((LibraryView.Authors) entity).authors(), authorWriter);
+            } else {
+                LibraryView view = (LibraryView) entity;
+                generator.writeStartObject();
+                generator.writeFieldName("authors");
+                writeArray(generator, view.authors(), authorWriter);
+                generator.writeFieldName("books");
+                writeArray(generator, view.books(), mapper.writerFor(Library.Book.class));
+                generator.writeEndObject();
+            }
+        }
+    }
+
+    private static void writeArray(JsonGenerator generator, Iterable<?> values, ObjectWriter writer) throws IOException {
+        generator.writeStartArray();
+        for (Object value : values)
+            writer.writeValue(generator, value);
+        generator.writeEndArray();
+    }
+
+    private static <T> void writeFragments(OutputStream out, Iterable<T> values, FragmentCache.Encoder<T> fragments) throws IOException {
+        out.write('[');
+        boolean first = true;
+        for (T value : values) {
+            if (!first) out.write(',');
+            first = false;
+            out.write(fragments.encode(value));
+        }
+        out.write(']');
+    }
+
+    private static void writeAuthors(OutputStream out, Iterable<Library.Author> authors) throws IOException {
+        writeFragments(out, authors, author -> FRAGMENTS.get(author, AUTHOR_WRITER::writeValueAsBytes));
+    }
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return isView(type) || isAuthors(type, genericType);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void writeTo(Object entity, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+                        MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException {
+        OutputStream out = new BufferedOutputStream(entityStream, BUFFER_SIZE);
+        if (entity instanceof LibraryView) {
+            LibraryView view = (LibraryView) entity;
+            out.write(AUTHORS_FIELD);
+            writeAuthors(out, view.authors());
+            out.write(BOOKS_FIELD);
+            writeFragments(out, view.books(), book -> FRAGMENTS.get(book, BOOK_WRITER::writeValueAsBytes));
+            out.write('}');
+        } else if (entity instanceof LibraryView.Authors)
+            writeAuthors(out, ((LibraryView.Authors) entity).authors());
+        else
+            writeAuthors(out, (Collection<Library.Author>) entity);
+        out.flush();
+    }
+}
@@ -0,0 +1,90 @@
+package fr.univtln.bruno.samples.jaxrs.writers;
+
+import fr.univtln.bruno.samples.jaxrs.model.Library;
+import fr.univtln.bruno.samples.jaxrs.model.LibraryView;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.ext.MessageBodyWriter;
+import jakarta.ws.rs.ext.Provider;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+
+/**
+ * Writes the pinned versions of the Library, the lists of authors (the pages) and the single authors and books in XML
+ * while iterating them : each author and each book is a fragment encoded on its own with StAX (see {@link XmlEncoder})
+ * and copied to the response stream (see {@link FragmentCache}), so the memory needed does not depend on the size
+ * of the catalogue. The documents are the ones of the default JAXB providers, up to the namespace declarations
+ * which are repeated in each fragment.
+ */
+@Provider
+@Produces({MediaType.TEXT_XML, MediaType.APPLICATION_XML})
+public class LibraryViewXmlWriter implements MessageBodyWriter<Object> {
+    private static final int BUFFER_SIZE = 8192;
+    private static final byte[] PROLOG = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] LIBRARY_START = ("<ebjax:library xmlns:ebjax=\"" + XmlEncoder.NAMESPACE + "\"><authors>").getBytes(StandardCharsets.UTF_8);
+    private static final byte[] LIBRARY_BOOKS = "</authors><books>".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] LIBRARY_END = "</books></ebjax:library>".getBytes(StandardCharsets.UTF_8);
+    //The name the JAXB collection provider gives to the root of a list of authors.
+    private static final byte[] AUTHORS_START = "<library_Authors>".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] AUTHORS_END = "</library_Authors>".getBytes(StandardCharsets.UTF_8);
+    //The authors and the books inside the library, and the authors and the books as the roots of documents or lists.
+    private static final FragmentCache ELEMENTS = FragmentCache.newInstance("xml");
+    private static final FragmentCache ROOTS = FragmentCache.newInstance("xml-root");
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return LibraryViewJsonWriter.isView(type) || LibraryViewJsonWriter.isAuthors(type, genericType)
+                || type == Library.Author.class || type == Library.Book.class;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void writeTo(Object entity, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+                        MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException {
+        OutputStream out = new BufferedOutputStream(entityStream, BUFFER_SIZE);
+        Encoders encoders = new Encoders();
+        out.write(PROLOG);
+        if (entity instanceof LibraryView) {
+            LibraryView view = (LibraryView) entity;
+            out.write(LIBRARY_START);
+            for (Library.Author author : view.authors())
+                out.write(ELEMENTS.get(author, value -> encoders.get().encode(value, false)));
+            out.write(LIBRARY_BOOKS);
+            for (Library.Book book : view.books())
+                out.write(ELEMENTS.get(book, value -> encoders.get().encode(value, false)));
+            out.write(LIBRARY_END);
+        } else if (entity instanceof Library.Author)
+            out.write(ROOTS.get((Library.Author) entity, value -> encoders.get().encode(value, true)));
+        else if (entity instanceof Library.Book)
+            out.write(ROOTS.get((Library.Book) entity, value -> encoders.get().encode(value, true)));
+        else if (entity instanceof LibraryView.Authors)
+            writeAuthors(out, ((LibraryView.Authors) entity).authors(), encoders);
+        else
+            writeAuthors(out, (Collection<Library.Author>) entity, encoders);
+        out.flush();
+    }
+
+    private static void writeAuthors(OutputStream out, Iterable<Library.Author> authors, Encoders encoders) throws IOException {
+        out.write(AUTHORS_START);
+        for (Library.Author author : authors)
+            out.write(ROOTS.get(author, value -> encoders.get().encode(value, true)));
+        out.write(AUTHORS_END);
+    }
+
+    //The encoder of a response is created on its first miss, most responses only copy fragments.
+    private static class Encoders {
+        private XmlEncoder encoder;
+
+        XmlEncoder get() throws IOException {
+            if (encoder == null) encoder = new XmlEncoder();
+            return encoder;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package fr.univtln.bruno.samples.jaxrs.writers;
+
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.ext.ContextResolver;
+import jakarta.ws.rs.ext.Provider;
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Marshaller;
+import jakarta.xml.bind.PropertyException;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Gives the default JAXB providers a marshaller of the model kept by each thread,
+ * instead of creating one for each response. A marshaller is not thread safe but it can be reused :
+ * the properties the providers change are reset each time it is handed out.
+ * Despite its name it is not a shared pool : there is one marshaller per thread which marshalled a response,
+ * as many as the worker threads, and one per request with virtual threads, which then gains nothing.
+ */
+@Provider
+@Produces({MediaType.TEXT_XML, MediaType.APPLICATION_XML})
+public class MarshallerPool implements ContextResolver<Marshaller> {
+    private static final ThreadLocal<Marshaller> MARSHALLERS = ThreadLocal.withInitial(() -> {
+        try {
+            return JaxbContextResolver.context().createMarshaller();
+        } catch (JAXBException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    @Override
+    public Marshaller getContext(Class<?> type) {
+        if (!JaxbContextResolver.isModel(type)) return null;
+        Marshaller marshaller = MARSHALLERS.get();
+        try {
+            //The list provider marshals fragments, a charset may be negotiated.
+            marshaller.setProperty(Marshaller.JAXB_FRAGMENT, false);
+            marshaller.setProperty(Marshaller.JAXB_ENCODING, StandardCharsets.UTF_8.name());
+        } catch (PropertyException e) {
+            throw new IllegalStateException(e);
+        }
+        return marshaller;
+    }
+}
@@ -0,0 +1,116 @@
+package fr.univtln.bruno.samples.jaxrs.writers;
+
+import fr.univtln.bruno.samples.jaxrs.model.Library;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+/**
+ * Encodes the authors and the books as XML elements with StAX : the elements are the ones JAXB makes
+ * from the annotations of the model, without reflection nor a marshaller per request.
+ * The elements are either inside the library (unqualified) or the roots of documents or lists (qualified).
+ * An encoder reuses its buffer and its writer, it is not thread safe.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class XmlEncoder {
+    public static final String NAMESPACE = "http://bruno.univ-tln.fr/sample-jaxrs";
+    public static final String PREFIX = "ebjax";
+    private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newFactory();
+    private static final String AUTHOR = "author";
+    private static final String BOOK = "book";
+
+    //The JDK writer is faster on characters than on an encoded stream, the element is encoded in UTF-8 at once.
+    StringWriter buffer = new StringWriter(512);
+    XMLStreamWriter writer;
+
+    public XmlEncoder() throws IOException {
+        try {
+            writer = OUTPUT_FACTORY.createXMLStreamWriter(buffer);
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Encodes an author.
+     *
+     * @param author the author with its books
+     * @param root   whether it is a root (ebjax:author) or an element of the library (author)
+     * @return the element
+     * @throws IOException if it cannot be written.
+     */
+    public byte[] encode(Library.Author author, boolean root) throws IOException {
+        try {
+            buffer.getBuffer().setLength(0);
+            writeStart(AUTHOR, root);
+            writer.writeAttribute("id", Library.Author.xmlId(author.getId()));
+            writeText("name", author.getName());
+            writeText("firstname", author.getFirstname());
+            writeText("biography", author.getBiography());
+            Set<Library.Book> books = author.getBooks();
+            if (books != null) {
+                writer.writeStartElement("books");
+                for (Library.Book book : books)
+                    writeText(BOOK, Library.Book.xmlId(book.getId()));
+                writer.writeEndElement();
+            }
+            writer.writeEndElement();
+            writer.flush();
+            return buffer.toString().getBytes(StandardCharsets.UTF_8);
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Encodes a book.
+     *
+     * @param book the book with its authors
+     * @param root whether it is a root (ebjax:book) or an element of the library (book)
+     * @return the element
+     * @throws IOException if it cannot be written.
+     */
+    public byte[] encode(Library.Book book, boolean root) throws IOException {
+        try {
+            buffer.getBuffer().setLength(0);
+            writeStart(BOOK, root);
+            writer.writeAttribute("id", Library.Book.xmlId(book.getId()));
+            writeText("title", book.getTitle());
+            Set<Library.Author> authors = book.getAuthors();
+            if (authors != null) {
+                writer.writeStartElement("authors");
+                for (Library.Author author : authors)
+                    writeText(AUTHOR, Library.Author.xmlId(author.getId()));
+                writer.writeEndElement();
+            }
+            writer.writeEndElement();
+            writer.flush();
+            return buffer.toString().getBytes(StandardCharsets.UTF_8);
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private void writeStart(String name, boolean root) throws XMLStreamException {
+        if (root) {
+            writer.writeStartElement(PREFIX, name, NAMESPACE);
+            writer.writeNamespace(PREFIX, NAMESPACE);
+        } else
+            writer.writeStartElement(name);
+    }
+
+    //A null value has no element, as with JAXB.
+    private void writeText(String name, String value) throws XMLStreamException {
+        if (value == null) return;
+        writer.writeStartElement(name);
+        writer.writeCharacters(value);
+        writer.writeEndElement();
+    }
+}
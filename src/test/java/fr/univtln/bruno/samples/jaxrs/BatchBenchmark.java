@@ -0,0 +1,115 @@
+package fr.univtln.bruno.samples.jaxrs;
+
+import fr.univtln.bruno.samples.jaxrs.exceptions.BusinessException;
+import fr.univtln.bruno.samples.jaxrs.model.Library;
+import fr.univtln.bruno.samples.jaxrs.server.BiblioServer;
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.openjdk.jmh.annotations.*;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.security.GeneralSecurityException;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Compares the update of many authors with one request per author and with a single batch request,
+ * on the HTTP/1.1 listener and on the HTTP/2 (TLS) one :
+ * mvn -P benchmarks test-compile exec:exec -Djmh.args="BatchBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Djdk.internal.httpclient.disableHostnameVerification=true")
+public class BatchBenchmark {
+    @Param({"HTTP_1_1", "HTTP_2"})
+    HttpClient.Version version;
+
+    @Param({"100"})
+    int operations;
+
+    HttpServer server;
+    HttpClient client;
+    URI base;
+    String batch;
+
+    //The server certificate is self signed.
+    private static SSLContext trustAll() throws GeneralSecurityException {
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(null, new TrustManager[]{new X509TrustManager() {
+            @Override
+            public void checkClientTrusted(X509Certificate[] chain, String authType) {
+                //Every client is trusted.
+            }
+
+            @Override
+            public void checkServerTrusted(X509Certificate[] chain, String authType) {
+                //Every server is trusted.
+            }
+
+            @Override
+            public X509Certificate[] getAcceptedIssuers() {
+                return new X509Certificate[0];
+            }
+        }}, null);
+        return context;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, GeneralSecurityException, BusinessException {
+        Library.demoLibrary.removesAuthors();
+        for (int i = 0; i < operations; i++)
+            Library.demoLibrary.addAuthor(Library.Author.builder().name("name" + i).firstname("firstname").build());
+
+        server = BiblioServer.addTLSandHTTP2(BiblioServer.startServer());
+        //The payloads are not logged, it would be measured instead of the requests.
+        Logger.getLogger(BiblioServer.class.getName()).setLevel(java.util.logging.Level.WARNING);
+        base = URI.create(version == HttpClient.Version.HTTP_2 ?
+                "https://localhost:" + BiblioServer.TLS_PORT + "/mylibrary/" : "http://localhost:9998/mylibrary/");
+        client = HttpClient.newBuilder().version(version).sslContext(trustAll()).build();
+
+        StringBuilder operationsJson = new StringBuilder("[");
+        for (int id = 1; id <= operations; id++)
+            operationsJson.append(id == 1 ? "" : ",")
+                    .append("{\"type\":\"UPDATE_AUTHOR\",\"id\":").append(id)
+                    .append(",\"author\":{\"name\":\"updated\",\"firstname\":\"author\"}}");
+        batch = operationsJson.append(']').toString();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BiblioServer.stopServer(server);
+        Library.demoLibrary.removesAuthors();
+    }
+
+    private int send(HttpRequest.Builder request) throws IOException, InterruptedException {
+        HttpResponse<String> response = client.send(request.header("Content-Type", "application/json")
+                .header("Accept", "application/json").build(), HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) throw new IllegalStateException("Status " + response.statusCode());
+        return response.body().length();
+    }
+
+    @Benchmark
+    public int oneRequestPerOperation() throws IOException, InterruptedException {
+        int length = 0;
+        for (int id = 1; id <= operations; id++)
+            length += send(HttpRequest.newBuilder(base.resolve("authors/" + id))
+                    .PUT(HttpRequest.BodyPublishers.ofString("{\"name\":\"updated\",\"firstname\":\"author\"}")));
+        return length;
+    }
+
+    @Benchmark
+    public int batchRequest() throws IOException, InterruptedException {
+        return send(HttpRequest.newBuilder(base.resolve("library/batch"))
+                .POST(HttpRequest.BodyPublishers.ofString(batch)));
+    }
+}
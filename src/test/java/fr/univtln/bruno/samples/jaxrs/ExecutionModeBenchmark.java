@@ -0,0 +1,98 @@
+package fr.univtln.bruno.samples.jaxrs;
+
+import fr.univtln.bruno.samples.jaxrs.exceptions.BusinessException;
+import fr.univtln.bruno.samples.jaxrs.model.Library;
+import fr.univtln.bruno.samples.jaxrs.server.BiblioServer;
+import fr.univtln.bruno.samples.jaxrs.server.ExecutionMode;
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.openjdk.jmh.annotations.*;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Compares the execution modes of the server under many concurrent connections : each invocation sends
+ * a burst of concurrent requests for the whole library, one connection each, and waits for all the responses.
+ * The score is the time of a burst, the latencies of the requests of the last burst of each iteration are logged.
+ * The file descriptors limit must allow twice the number of connections (client and server sides) :
+ * mvn -P benchmarks test-compile exec:exec -Djmh.args="ExecutionModeBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class ExecutionModeBenchmark {
+    private static final Logger log = Logger.getLogger(ExecutionModeBenchmark.class.getName());
+
+    @Param({"FIXED", "VIRTUAL"})
+    ExecutionMode mode;
+
+    @Param({"10000"})
+    int connections;
+
+    @Param({"100"})
+    int authors;
+
+    HttpServer server;
+    HttpClient client;
+    HttpRequest request;
+    long[] latencies;
+
+    @Setup(Level.Trial)
+    public void setUp() throws BusinessException {
+        Library.demoLibrary.removesAuthors();
+        for (int i = 0; i < authors; i++)
+            Library.demoLibrary.addAuthor(Library.Author.builder().name("name" + i).firstname("firstname").build());
+        System.setProperty(ExecutionMode.PROPERTY, mode.name());
+        server = BiblioServer.startServer();
+        //The payloads are not logged, it would be measured instead of the requests.
+        Logger.getLogger(BiblioServer.class.getName()).setLevel(java.util.logging.Level.WARNING);
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        request = HttpRequest.newBuilder(URI.create("http://localhost:9998/mylibrary/library"))
+                .header("Accept", "application/json").build();
+        latencies = new long[connections];
+    }
+
+    @TearDown(Level.Iteration)
+    public void logLatencies() {
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        log.info(() -> String.format("%s : p50 %d ms, p99 %d ms, p99.9 %d ms, max %d ms", mode,
+                percentile(sorted, 0.5), percentile(sorted, 0.99), percentile(sorted, 0.999), sorted[sorted.length - 1]));
+    }
+
+    private static long percentile(long[] sorted, double rank) {
+        return sorted[(int) Math.min(sorted.length - 1, Math.round(rank * sorted.length))];
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BiblioServer.stopServer(server);
+        System.clearProperty(ExecutionMode.PROPERTY);
+        Library.demoLibrary.removesAuthors();
+    }
+
+    @Benchmark
+    public int burst() {
+        CompletableFuture<?>[] responses = new CompletableFuture<?>[connections];
+        for (int i = 0; i < connections; i++) {
+            int index = i;
+            long start = System.nanoTime();
+            responses[i] = client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .thenAccept(response -> {
+                        if (response.statusCode() != 200) throw new IllegalStateException("Status " + response.statusCode());
+                        latencies[index] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                    });
+        }
+        CompletableFuture.allOf(responses).join();
+        return responses.length;
+    }
+}
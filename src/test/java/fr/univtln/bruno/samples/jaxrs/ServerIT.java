@@ -1,5 +1,7 @@
 package fr.univtln.bruno.samples.jaxrs;
 
+import fr.univtln.bruno.samples.jaxrs.binary.CborProvider;
+import fr.univtln.bruno.samples.jaxrs.binary.SmileProvider;
 import fr.univtln.bruno.samples.jaxrs.model.Library;
 import fr.univtln.bruno.samples.jaxrs.model.Library.Author;
 import fr.univtln.bruno.samples.jaxrs.security.InMemoryLoginModule;
@@ -12,20 +14,32 @@ import io.jsonwebtoken.security.Keys;
 import jakarta.ws.rs.client.Client;
 import jakarta.ws.rs.client.ClientBuilder;
 import jakarta.ws.rs.client.Entity;
+import jakarta.ws.rs.client.Invocation;
 import jakarta.ws.rs.client.WebTarget;
+import jakarta.ws.rs.core.EntityTag;
 import jakarta.ws.rs.core.GenericType;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.UriBuilder;
 import org.glassfish.grizzly.http.server.HttpServer;
 import org.glassfish.jersey.message.internal.MediaTypes;
 import org.junit.*;
 
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.temporal.ChronoUnit;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.junit.Assert.*;
 
@@ -34,6 +48,7 @@ import static org.junit.Assert.*;
  */
 public class ServerIT {
     private static HttpServer httpServer;
+    private static String adminToken;
 
     private static WebTarget webTarget;
 
@@ -45,7 +60,9 @@ public class ServerIT {
         //start the Grizzly2 web container
         httpServer = BiblioServer.startServer();
         // create the client
-        Client client = ClientBuilder.newClient();
+        Client client = ClientBuilder.newClient()
+                .register(CborProvider.class)
+                .register(SmileProvider.class);
         webTarget = client.target(BiblioServer.BASE_URI);
     }
 
@@ -54,7 +71,7 @@ public class ServerIT {
      */
     @AfterClass
     public static void tearDown() {
-        httpServer.shutdown();
+        BiblioServer.stopServer(httpServer);
     }
 
     /**
@@ -120,6 +137,85 @@ public class ServerIT {
         assertEquals(2, responseAuthors.size());
     }
 
+    /**
+     * Tests to get a collection of authors in XML.
+     */
+    @Test
+    public void testGetAuteursXML() {
+        List<Library.Author> responseAuthors = webTarget.path("authors").request(MediaType.TEXT_XML).get(new GenericType<>() {
+        });
+        assertEquals(List.of("Martin", "Durand"), responseAuthors.stream().map(Library.Author::getName).collect(Collectors.toList()));
+    }
+
+    /**
+     * Tests to get authors in the binary formats.
+     */
+    @Test
+    public void testGetAuteursBinary() {
+        Library.Author responseAuthor = webTarget.path("authors/1").request(CborProvider.APPLICATION_CBOR).get(Library.Author.class);
+        assertEquals("Martin", responseAuthor.getName());
+        List<Library.Author> responseAuthors = webTarget.path("authors").request(SmileProvider.APPLICATION_SMILE).get(new GenericType<>() {
+        });
+        assertEquals(2, responseAuthors.size());
+    }
+
+    /**
+     * Tests to update an author sent in CBOR.
+     */
+    @Test
+    public void testUpdateAuteurCbor() {
+        webTarget.path("authors/1")
+                .request(CborProvider.APPLICATION_CBOR)
+                .put(Entity.entity(Author.builder().firstname("Jane").name("Doe").build(), CborProvider.APPLICATION_CBOR));
+        assertEquals("Jane", webTarget.path("authors/1").request(MediaType.APPLICATION_JSON).get(Library.Author.class).getFirstname());
+    }
+
+    /**
+     * Tests to get the whole library in JSON.
+     */
+    @Test
+    public void testGetLibrary() {
+        Map<String, List<Map<String, Object>>> library = webTarget.path("library").request(MediaType.APPLICATION_JSON).get(new GenericType<>() {
+        });
+        assertEquals(2, library.get("authors").size());
+        assertEquals(Set.of("authors", "books"), library.keySet());
+    }
+
+    /**
+     * Tests that the views pinned for the library and the authors are released, even without a body (HEAD).
+     */
+    @Test
+    public void pinnedViewsAreReleased() throws InterruptedException {
+        for (String path : List.of("library", "authors")) {
+            Response head = webTarget.path(path).request(MediaType.APPLICATION_JSON).head();
+            assertEquals(200, head.getStatus());
+            assertFalse(head.hasEntity());
+            assertEquals(200, webTarget.path(path).request(MediaType.APPLICATION_JSON).get().getStatus());
+        }
+        //The views are released at the end of the requests, just after the responses are sent.
+        for (int i = 0; i < 100 && Library.demoLibrary.getPinnedViews() > 0; i++) Thread.sleep(10);
+        assertEquals(0, Library.demoLibrary.getPinnedViews());
+    }
+
+    /**
+     * Tests that the versions pinned for the exports are released, with or without a body (HEAD).
+     */
+    @Test
+    public void exportsAreReleased() throws InterruptedException {
+        String token = adminToken();
+        Response head = webTarget.path("setup/snapshot").request(MediaType.APPLICATION_OCTET_STREAM)
+                .header("Authorization", "Bearer " + token)
+                .head();
+        assertEquals(200, head.getStatus());
+        Response get = webTarget.path("setup/snapshot").request(MediaType.APPLICATION_OCTET_STREAM)
+                .header("Authorization", "Bearer " + token)
+                .get();
+        assertEquals(200, get.getStatus());
+        assertTrue(get.readEntity(byte[].class).length > 0);
+        for (int i = 0; i < 100 && Library.demoLibrary.getPinnedViews() > 0; i++) Thread.sleep(10);
+        assertEquals(0, Library.demoLibrary.getPinnedViews());
+    }
+
     /**
      * Tests to clear authors.
      */
@@ -192,6 +288,186 @@ public class ServerIT {
         assertEquals(Response.Status.NOT_ACCEPTABLE.getStatusCode(), response.getStatus());
     }
 
+    /**
+     * Tests a conditional GET : an unchanged author or library is not sent again.
+     */
+    @Test
+    public void conditionalGet() {
+        Response response = webTarget.path("authors/1").request(MediaType.APPLICATION_JSON).get();
+        EntityTag tag = response.getEntityTag();
+        assertNotNull(tag);
+        assertEquals(Response.Status.NOT_MODIFIED.getStatusCode(),
+                webTarget.path("authors/1").request(MediaType.APPLICATION_JSON).header("If-None-Match", tag).get().getStatus());
+
+        tag = webTarget.path("library").request(MediaType.APPLICATION_JSON).get().getEntityTag();
+        assertEquals(Response.Status.NOT_MODIFIED.getStatusCode(),
+                webTarget.path("library").request(MediaType.APPLICATION_JSON).header("If-None-Match", tag).get().getStatus());
+        webTarget.path("authors/2").request().delete();
+        assertEquals(Response.Status.OK.getStatusCode(),
+                webTarget.path("library").request(MediaType.APPLICATION_JSON).header("If-None-Match", tag).get().getStatus());
+    }
+
+    /**
+     * Tests an update with If-Match : it fails once the author has changed.
+     */
+    @Test
+    public void conditionalUpdate() {
+        EntityTag tag = webTarget.path("authors/1").request(MediaType.APPLICATION_JSON).get().getEntityTag();
+        Entity<String> jim = Entity.entity("{\"name\":\"Doe\",\"firstname\":\"Jim\"}", MediaType.APPLICATION_JSON);
+        Response response = webTarget.path("authors/1").request(MediaType.APPLICATION_JSON).header("If-Match", tag).put(jim);
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        assertNotEquals(tag, response.getEntityTag());
+        assertEquals(Response.Status.PRECONDITION_FAILED.getStatusCode(),
+                webTarget.path("authors/1").request(MediaType.APPLICATION_JSON).header("If-Match", tag).put(jim).getStatus());
+    }
+
+    //The token of an admin, for the views of the state of the server.
+    private static String adminToken() {
+        if (adminToken == null)
+            adminToken = webTarget.path("setup/login")
+                    .request()
+                    .accept(MediaType.TEXT_PLAIN)
+                    .header("Authorization", "Basic " + java.util.Base64.getEncoder().encodeToString("john.doe@nowhere.com:admin".getBytes()))
+                    .get(String.class);
+        return adminToken;
+    }
+
+    private static Invocation.Builder asAdmin(String path, String mediaType) {
+        return webTarget.path(path).request(mediaType).header("Authorization", "Bearer " + adminToken());
+    }
+
+    /**
+     * Tests that the views of the state of the server need an admin token, and that the public metrics are disabled.
+     */
+    @Test
+    public void adminViewsAreRestricted() {
+        for (String path : List.of("setup/fragments", "setup/cache", "setup/queries", "setup/server", "setup/accesslog", "setup/metrics")) {
+            assertEquals(path, Response.Status.UNAUTHORIZED.getStatusCode(), webTarget.path(path).request().get().getStatus());
+            assertEquals(path, Response.Status.OK.getStatusCode(), asAdmin(path, MediaType.WILDCARD).get().getStatus());
+        }
+        assertEquals(Response.Status.NOT_FOUND.getStatusCode(), webTarget.path("setup/metrics/public").request().get().getStatus());
+    }
+
+    private static long cacheHits() {
+        Map<String, Number> statistics = asAdmin("setup/cache", MediaType.APPLICATION_JSON).get(new GenericType<>() {
+        });
+        return statistics.get("hits").longValue();
+    }
+
+    /**
+     * Tests the cache of the responses : the second read is a hit, a change of the library or of the sort key is not.
+     */
+    @Test
+    public void cachedResponses() {
+        long hits = cacheHits();
+        String first = webTarget.path("authors/page").queryParam("pageSize", 10).request(MediaType.APPLICATION_JSON).header("sortKey", "name").get(String.class);
+        assertEquals(first, webTarget.path("authors/page").queryParam("pageSize", 10).request(MediaType.APPLICATION_JSON).header("sortKey", "name").get(String.class));
+        assertNotEquals(first, webTarget.path("authors/page").queryParam("pageSize", 10).request(MediaType.APPLICATION_JSON).header("sortKey", "firstname").get(String.class));
+        assertEquals(hits + 1, cacheHits());
+
+        webTarget.path("authors/1").request().put(Entity.entity("{\"name\":\"Doe\",\"firstname\":\"Jim\"}", MediaType.APPLICATION_JSON));
+        assertNotEquals(first, webTarget.path("authors/page").queryParam("pageSize", 10).request(MediaType.APPLICATION_JSON).header("sortKey", "name").get(String.class));
+    }
+
+    private static long accessRecords(String count) {
+        Map<String, Number> statistics = asAdmin("setup/accesslog", MediaType.APPLICATION_JSON).get(new GenericType<>() {
+        });
+        return statistics.get(count).longValue();
+    }
+
+    /**
+     * Tests the access log : the requests are recorded once answered, with or without a body.
+     */
+    @Test
+    public void accessLog() throws InterruptedException {
+        long recorded = accessRecords("recorded");
+        assertEquals(200, webTarget.path("authors/1").request(MediaType.APPLICATION_JSON).get().getStatus());
+        assertEquals(404, webTarget.path("authors/1000").request(MediaType.APPLICATION_JSON).get().getStatus());
+        assertEquals(204, webTarget.path("authors/2").request().delete().getStatus());
+        //The record of a response is added once its body is sent.
+        long deadline = System.currentTimeMillis() + 5000;
+        while (accessRecords("recorded") < recorded + 4 && System.currentTimeMillis() < deadline) Thread.sleep(10);
+        assertTrue(accessRecords("recorded") >= recorded + 4);
+        assertEquals(0, accessRecords("dropped"));
+    }
+
+    /**
+     * Tests the metrics : the latency of the resource methods and the business exceptions in the format of Prometheus.
+     */
+    @Test
+    public void metrics() {
+        webTarget.path("authors/1").request(MediaType.APPLICATION_JSON).get();
+        webTarget.path("authors/1000").request(MediaType.APPLICATION_JSON).get();
+        Response response = asAdmin("setup/metrics", MediaType.WILDCARD).get();
+        assertEquals("text/plain", response.getMediaType().getType() + "/" + response.getMediaType().getSubtype());
+        String metrics = response.readEntity(String.class);
+        assertTrue(metrics.contains("library_request_duration_seconds_count{endpoint=\"AuthorResource.getAuthor\",status=\"2xx\",media_type=\"application/json\"}"));
+        assertTrue(metrics.contains("library_request_duration_seconds_count{endpoint=\"AuthorResource.getAuthor\",status=\"4xx\",media_type=\"application/json\"}"));
+        assertTrue(metrics.contains("library_business_exceptions_total{status=\"404\"}"));
+        assertTrue(metrics.contains("# TYPE jvm_gc_collections_total counter"));
+    }
+
+    /**
+     * Tests the Server-Timing header : given only when asked, with the phases of the request until the headers,
+     * and the phases in the metrics.
+     */
+    @Test
+    public void serverTiming() {
+        Response timed = webTarget.path("authors/page").queryParam("pageSize", 1).request(MediaType.APPLICATION_JSON)
+                .header("X-Server-Timing", "on").get();
+        String timing = timed.getHeaderString("Server-Timing");
+        assertNotNull(timing);
+        assertTrue(timing.matches("match;desc=\"Matching\";dur=[0-9.]+, auth;.*, resource;.*, async;.*, total;desc=\"Until the headers\";dur=[0-9.]+"));
+
+        //Not asked, and not replayed by the cache.
+        assertNull(webTarget.path("authors/page").queryParam("pageSize", 1).request(MediaType.APPLICATION_JSON).get()
+                .getHeaderString("Server-Timing"));
+        String metrics = asAdmin("setup/metrics", MediaType.WILDCARD).get(String.class);
+        assertTrue(metrics.contains("library_phase_duration_seconds_count{endpoint=\"AuthorResource.getAuthorsPage\",phase=\"write\"}"));
+    }
+
+    /**
+     * Tests the authors over cleartext HTTP/2 : the first request upgrades the connection,
+     * the others are streams of the same connection.
+     */
+    @Test
+    public void h2cMultiplexing() throws Exception {
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).build();
+        URI h2c = UriBuilder.fromUri(BiblioServer.BASE_URI).host("localhost").port(BiblioServer.H2C_PORT).build();
+        HttpResponse<String> first = client.send(HttpRequest.newBuilder(UriBuilder.fromUri(h2c).path("authors/1").build()).build(),
+                HttpResponse.BodyHandlers.ofString());
+        assertEquals(HttpClient.Version.HTTP_2, first.version());
+
+        List<CompletableFuture<HttpResponse<String>>> responses = IntStream.range(0, 20)
+                .mapToObj(i -> HttpRequest.newBuilder(UriBuilder.fromUri(h2c).path("authors/{id}").build(i % 2 + 1)).build())
+                .map(request -> client.sendAsync(request, HttpResponse.BodyHandlers.ofString()))
+                .collect(Collectors.toList());
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            assertEquals(200, response.get().statusCode());
+            assertEquals(HttpClient.Version.HTTP_2, response.get().version());
+        }
+        assertEquals(first.body(), responses.get(0).get().body());
+    }
+
+    /**
+     * Tests a batch of operations, the invalid one is skipped.
+     */
+    @Test
+    public void executeBatch() {
+        List<Map<String, Object>> results = webTarget.path("library/batch")
+                .request(MediaType.APPLICATION_JSON)
+                .post(Entity.entity("""
+                        [{"type":"UPDATE_AUTHOR","id":1,"author":{"name":"Doe","firstname":"Jim"}},
+                         {"type":"REMOVE_AUTHOR","id":10},
+                         {"type":"REMOVE_AUTHOR","id":2}]""", MediaType.APPLICATION_JSON), new GenericType<>() {
+                });
+        assertEquals(List.of(200, 404, 204), results.stream().map(result -> result.get("status")).collect(Collectors.toList()));
+        Collection<Library.Author> responseAuthors = webTarget.path("authors").request(MediaType.APPLICATION_JSON).get(new GenericType<>() {
+        });
+        assertEquals(1, responseAuthors.size());
+        assertEquals("Doe", responseAuthors.iterator().next().getName());
+    }
+
     /**
      * Test if a WADL document is available at the relative path
      * "application.wadl".
@@ -0,0 +1,79 @@
+package fr.univtln.bruno.samples.jaxrs;
+
+import fr.univtln.bruno.samples.jaxrs.exceptions.BusinessException;
+import fr.univtln.bruno.samples.jaxrs.model.Library;
+import fr.univtln.bruno.samples.jaxrs.server.BiblioServer;
+import fr.univtln.bruno.samples.jaxrs.server.ServerConfig;
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the profiles of the server (see {@link ServerConfig}) on a small response (an author)
+ * and on a large one (the whole library), run it with several client threads to load the listener :
+ * mvn -P benchmarks test-compile exec:exec -Djmh.args="ServerProfileBenchmark -t 8"
+ * The sample mode gives the percentiles of the latency of the requests.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+//The access log is written to a file rather than to the console.
+@Fork(value = 1, jvmArgsAppend = "-Dlibrary.access.file=target/benchmark-access.log")
+public class ServerProfileBenchmark {
+    @Param({"DEFAULT", "LOW_LATENCY", "HIGH_THROUGHPUT"})
+    ServerConfig.Profile profile;
+
+    @Param({"1000"})
+    int authors;
+
+    HttpServer server;
+    HttpClient client;
+    HttpRequest author;
+    HttpRequest library;
+
+    @Setup(Level.Trial)
+    public void setUp() throws BusinessException {
+        Library.demoLibrary.removesAuthors();
+        for (int i = 0; i < authors; i++)
+            Library.demoLibrary.addAuthor(Library.Author.builder().name("name" + i).firstname("firstname")
+                    .biography("The biography of the author " + i).build());
+        System.setProperty(ServerConfig.PROFILE_PROPERTY, profile.name());
+        server = BiblioServer.startServer();
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        author = HttpRequest.newBuilder(URI.create("http://localhost:9998/mylibrary/authors/1"))
+                .header("Accept", "application/json").build();
+        library = HttpRequest.newBuilder(URI.create("http://localhost:9998/mylibrary/library"))
+                .header("Accept", "application/json").build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BiblioServer.stopServer(server);
+        System.clearProperty(ServerConfig.PROFILE_PROPERTY);
+        Library.demoLibrary.removesAuthors();
+    }
+
+    private int send(HttpRequest request) throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != 200) throw new IllegalStateException("Status " + response.statusCode());
+        return response.body().length;
+    }
+
+    @Benchmark
+    public int getAuthor() throws IOException, InterruptedException {
+        return send(author);
+    }
+
+    @Benchmark
+    public int getLibrary() throws IOException, InterruptedException {
+        return send(library);
+    }
+}
@@ -0,0 +1,70 @@
+package fr.univtln.bruno.samples.jaxrs.accesslog;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class AccessLogTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static AccessRecord record(int status) {
+        return AccessRecord.builder().timestamp(System.currentTimeMillis()).method("GET").path("/mylibrary/authors/1")
+                .status(status).bytes(60).latencyMicros(250).authScheme("Basic").build();
+    }
+
+    @Test
+    public void ringBufferRefusesWhenFull() throws Exception {
+        RingBuffer<Integer> buffer = new RingBuffer<>(3);
+        assertEquals(4, buffer.capacity());
+        for (int i = 0; i < 4; i++) assertTrue(buffer.offer(i));
+        assertFalse(buffer.offer(4));
+        assertEquals(Integer.valueOf(0), buffer.poll());
+        assertTrue(buffer.offer(4));
+
+        //Many producers, every element is consumed once.
+        RingBuffer<Integer> shared = new RingBuffer<>(1 << 16);
+        List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < 4; p++) {
+            int first = p * 10_000;
+            producers.add(new Thread(() -> {
+                for (int i = first; i < first + 10_000; i++) shared.offer(i);
+            }));
+        }
+        producers.forEach(Thread::start);
+        for (Thread producer : producers) producer.join();
+        Set<Integer> consumed = new HashSet<>();
+        for (Integer element = shared.poll(); element != null; element = shared.poll()) consumed.add(element);
+        assertEquals(40_000, consumed.size());
+    }
+
+    @Test
+    public void recordsAreWrittenAndRotated() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("logs/access.log");
+        AccessLog log = new AccessLog(AccessLogConfig.builder().file(file).maxFileSize(1024).files(2).build());
+        for (int i = 0; i < 30; i++) assertTrue(log.record(record(200 + i)));
+        assertTrue(log.flush(5000));
+
+        List<String> lines = Files.readAllLines(file);
+        assertTrue(lines.get(lines.size() - 1).contains("\"status\":229"));
+        assertTrue(lines.get(0).startsWith("{\"timestamp\":"));
+        assertFalse(lines.get(0).contains("Payload"));
+        assertTrue(Files.exists(file.resolveSibling("access.log.2")));
+        assertFalse(Files.exists(file.resolveSibling("access.log.3")));
+
+        AccessLog.Statistics statistics = log.getStatistics();
+        assertEquals(30, statistics.getWritten());
+        assertEquals(0, statistics.getDropped());
+        assertTrue(statistics.getRotations() >= 2);
+        log.close();
+    }
+}
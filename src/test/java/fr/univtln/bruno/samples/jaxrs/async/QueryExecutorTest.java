@@ -0,0 +1,83 @@
+package fr.univtln.bruno.samples.jaxrs.async;
+
+import fr.univtln.bruno.samples.jaxrs.exceptions.BusinessException;
+import jakarta.ws.rs.core.Response;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class QueryExecutorTest {
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @After
+    public void afterEach() {
+        release.countDown();
+    }
+
+    private String blocking() {
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return "done";
+    }
+
+    private static BusinessException failure(CompletableFuture<?> result) throws InterruptedException {
+        try {
+            result.get();
+        } catch (ExecutionException e) {
+            return (BusinessException) e.getCause();
+        }
+        throw new AssertionError("The query did not fail");
+    }
+
+    @Test
+    public void queriesBeyondTheQueueAreRejected() throws Exception {
+        QueryExecutor executor = new QueryExecutor(1, 1, 60_000);
+        CompletableFuture<String> running = executor.submit(this::blocking);
+        CompletableFuture<String> waiting = executor.submit(() -> "waited");
+        BusinessException rejected = failure(executor.submit(() -> "rejected"));
+        assertEquals(Response.Status.SERVICE_UNAVAILABLE, rejected.getStatus());
+        assertEquals(1, executor.getStatistics().getRejected());
+
+        release.countDown();
+        assertEquals("done", running.get());
+        assertEquals("waited", waiting.get());
+    }
+
+    @Test
+    public void slowQueriesTimeOut() throws Exception {
+        QueryExecutor executor = new QueryExecutor(1, 1, 50);
+        assertEquals("Query timed out", failure(executor.submit(this::blocking)).getMessage());
+        assertEquals(1, executor.getStatistics().getTimedOut());
+
+        //The queries failing in the resource are given as they are.
+        release.countDown();
+        BusinessException notFound = failure(executor.submit(() -> {
+            throw new BusinessException(Response.Status.NOT_FOUND);
+        }));
+        assertEquals(Response.Status.NOT_FOUND, notFound.getStatus());
+    }
+
+    @Test
+    public void timedOutQueriesAreInterrupted() throws Exception {
+        QueryExecutor executor = new QueryExecutor(1, 1, 50);
+        //A scan checking the interrupt, as those of the library.
+        CompletableFuture<String> scan = executor.submit(() -> {
+            while (!Thread.currentThread().isInterrupted()) Thread.onSpinWait();
+            throw new CancellationException();
+        });
+        assertEquals("Query timed out", failure(scan).getMessage());
+        //The thread is given back to the next queries.
+        assertEquals("next", executor.submit(() -> "next").get(10, TimeUnit.SECONDS));
+        assertEquals(1, executor.getStatistics().getCompleted());
+    }
+}
@@ -0,0 +1,133 @@
+package fr.univtln.bruno.samples.jaxrs.binary;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.univtln.bruno.samples.jaxrs.exceptions.BusinessException;
+import fr.univtln.bruno.samples.jaxrs.model.Library;
+import fr.univtln.bruno.samples.jaxrs.model.LibraryView;
+import fr.univtln.bruno.samples.jaxrs.writers.LibraryViewJsonWriter;
+import fr.univtln.bruno.samples.jaxrs.writers.LibraryViewXmlWriter;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Unmarshaller;
+import org.openjdk.jmh.annotations.*;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Compares the content types on the authors of a library (each one with two books) :
+ * the time to encode them as GET /authors does, the time to decode them and the size of the payload (logged at setup).
+ * mvn -P benchmarks test-compile exec:exec -Djmh.args="ContentTypeBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ContentTypeBenchmark {
+    private static final Logger log = Logger.getLogger(ContentTypeBenchmark.class.getName());
+    private static final Type AUTHORS = new TypeReference<List<Library.Author>>() {
+    }.getType();
+
+    @Param({"JSON", "XML", "CBOR", "SMILE"})
+    Format format;
+
+    @Param({"1000"})
+    int size;
+
+    Library library;
+    LibraryView view;
+    byte[] payload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws BusinessException, IOException, JAXBException, XMLStreamException {
+        library = Library.newInstance();
+        library.removesAuthors();
+        Library.Author previous = null;
+        for (int i = 0; i < size; i++) {
+            Library.Author author = library.addAuthor(Library.Author.builder()
+                    .name("name" + i).firstname("firstname" + i).biography("The biography of the author " + i).build());
+            library.addBook(Library.Book.builder().title("title" + i)
+                    .authors(previous == null ? Set.of(author) : Set.of(previous, author)).build());
+            previous = author;
+        }
+        view = library.pin();
+        payload = encode();
+        log.info(() -> format + " : " + payload.length + " bytes");
+        if (decode().size() != size) throw new IllegalStateException("Authors lost by " + format);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        view.close();
+        library.removesAuthors();
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        format.write(view.onlyAuthors(), out);
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public List<Library.Author> decode() throws IOException, JAXBException, XMLStreamException {
+        return format.read(payload);
+    }
+
+    public enum Format {
+        JSON(LibraryViewJsonWriter.streamingMapper(new JsonFactory())),
+        XML(null),
+        CBOR(new CborProvider().getMapper()),
+        SMILE(new SmileProvider().getMapper());
+
+        private static final LibraryViewXmlWriter XML_WRITER = new LibraryViewXmlWriter();
+        private static final XMLInputFactory INPUT_FACTORY = XMLInputFactory.newFactory();
+        private static JAXBContext context;
+
+        private final ObjectMapper mapper;
+
+        Format(ObjectMapper mapper) {
+            this.mapper = mapper;
+        }
+
+        void write(LibraryView.Authors authors, ByteArrayOutputStream out) throws IOException {
+            if (mapper == null)
+                XML_WRITER.writeTo(authors, LibraryView.Authors.class, LibraryView.Authors.class, null, MediaType.TEXT_XML_TYPE, null, out);
+            else
+                LibraryViewJsonWriter.write(mapper, authors, out);
+        }
+
+        List<Library.Author> read(byte[] payload) throws IOException, JAXBException, XMLStreamException {
+            if (mapper != null)
+                return mapper.readerFor(mapper.constructType(AUTHORS)).readValue(mapper.getFactory().createParser(payload));
+
+            //The authors are unmarshalled one by one under the root, each unmarshal moves after its element.
+            if (context == null) context = JAXBContext.newInstance(Library.Author.class);
+            Unmarshaller unmarshaller = context.createUnmarshaller();
+            XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(new ByteArrayInputStream(payload));
+            List<Library.Author> authors = new ArrayList<>();
+            reader.nextTag();
+            reader.nextTag();
+            while (reader.isStartElement()) {
+                authors.add(unmarshaller.unmarshal(reader, Library.Author.class).getValue());
+                if (reader.isWhiteSpace()) reader.nextTag();
+            }
+            return authors;
+        }
+    }
+}
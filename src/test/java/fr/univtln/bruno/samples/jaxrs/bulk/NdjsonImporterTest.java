@@ -0,0 +1,98 @@
+package fr.univtln.bruno.samples.jaxrs.bulk;
+
+import fr.univtln.bruno.samples.jaxrs.exceptions.BusinessException;
+import fr.univtln.bruno.samples.jaxrs.model.Library;
+import fr.univtln.bruno.samples.jaxrs.persistence.FsyncPolicy;
+import fr.univtln.bruno.samples.jaxrs.persistence.LibraryStore;
+import fr.univtln.bruno.samples.jaxrs.persistence.StoreConfig;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+
+public class NdjsonImporterTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Library library = Library.newInstance();
+
+    @After
+    public void afterEach() {
+        library.removesAuthors();
+    }
+
+    private ImportReport importFrom(String records) throws IOException {
+        return new NdjsonImporter(library)
+                .importFrom(new ByteArrayInputStream(records.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void validRecordsAreAdded() throws IOException, BusinessException {
+        ImportReport report = importFrom("{\"type\":\"author\",\"name\":\"Martin\",\"firstname\":\"Jean\",\"biography\":\"My life\"}\n"
+                                         + "\n"
+                                         + "{\"type\":\"author\",\"name\":\"Durand\",\"extra\":{\"ignored\":[1]}}\n"
+                                         + "{\"type\":\"book\",\"title\":\"title1\",\"authors\":[1,2]}\n");
+
+        assertEquals(3, report.getRecords());
+        assertEquals(2, report.getAuthors());
+        assertEquals(1, report.getBooks());
+        assertEquals(0, report.getRejected());
+        assertEquals("My life", library.getAuthor(1).getBiography());
+        assertEquals(2, library.getAuthorIds(1).size());
+    }
+
+    @Test
+    public void invalidRecordsAreReportedWithTheirLine() throws IOException {
+        ImportReport report = importFrom("{\"type\":\"author\",\"name\":\"Martin\"}\n"
+                                         + "{\"type\":\"author\",\"name\":\n"
+                                         + "{\"type\":\"magazine\"}\n"
+                                         + "{\"type\":\"book\",\"title\":\"title1\",\"authors\":[42]}\n"
+                                         + "{\"type\":\"book\",\"title\":\"title2\",\"authors\":[1]}\n");
+
+        assertEquals(5, report.getRecords());
+        assertEquals(1, report.getAuthors());
+        assertEquals(1, report.getBooks());
+        assertEquals(3, report.getRejected());
+        assertEquals(2, report.getErrors().get(0).getLine());
+        assertEquals(3, report.getErrors().get(1).getLine());
+        assertEquals(4, report.getErrors().get(2).getLine());
+        assertEquals("Author not found", report.getErrors().get(2).getMessage());
+    }
+
+    @Test
+    public void refusedAuthorsAreRejectedAlone() throws IOException, BusinessException {
+        StoreConfig config = StoreConfig.builder().directory(folder.getRoot().toPath()).fsyncPolicy(FsyncPolicy.ALWAYS)
+                .snapshotIntervalSeconds(0).maxRecordBytes(1024).build();
+        try (LibraryStore ignored = LibraryStore.open(library, config)) {
+            ImportReport report = importFrom("{\"type\":\"author\",\"name\":\"Martin\"}\n"
+                                             + "{\"type\":\"author\",\"name\":\"Durand\",\"biography\":\"" + "x".repeat(2000) + "\"}\n"
+                                             + "{\"type\":\"author\",\"name\":\"Doe\"}\n");
+
+            assertEquals(2, report.getAuthors());
+            assertEquals(1, report.getRejected());
+            assertEquals(2, report.getErrors().get(0).getLine());
+            assertEquals("Doe", library.getAuthor(2).getName());
+        }
+    }
+
+    @Test
+    public void tooLongLinesAreRejected() throws IOException, BusinessException {
+        ImportReport report = new NdjsonImporter(library, 64).importFrom(new ByteArrayInputStream(
+                ("{\"type\":\"author\",\"name\":\"Martin\"}\r\n"
+                 + "{\"type\":\"author\",\"name\":\"" + "x".repeat(100_000) + "\"}\n"
+                 + "{\"type\":\"author\",\"name\":\"Doe\"}").getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(3, report.getRecords());
+        assertEquals(2, report.getAuthors());
+        assertEquals(1, report.getRejected());
+        assertEquals(2, report.getErrors().get(0).getLine());
+        assertEquals("Martin", library.getAuthor(1).getName());
+        assertEquals("Doe", library.getAuthor(2).getName());
+    }
+}
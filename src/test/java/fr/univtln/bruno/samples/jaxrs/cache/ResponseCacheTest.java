@@ -0,0 +1,58 @@
+package fr.univtln.bruno.samples.jaxrs.cache;
+
+import fr.univtln.bruno.samples.jaxrs.exceptions.BusinessException;
+import fr.univtln.bruno.samples.jaxrs.model.Library;
+import fr.univtln.bruno.samples.jaxrs.model.Version;
+import jakarta.ws.rs.core.MultivaluedHashMap;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ResponseCacheTest {
+    private final Library library = Library.newInstance();
+
+    @After
+    public void afterEach() {
+        library.removesAuthors();
+    }
+
+    private static ResponseCache.Entry entry(Version version, int size) {
+        return new ResponseCache.Entry(version, 200, new MultivaluedHashMap<>(), new byte[size]);
+    }
+
+    @Test
+    public void leastRecentlyUsedResponsesAreEvicted() {
+        //Room for three responses of 100 bytes with their overhead.
+        ResponseCache cache = new ResponseCache(2400);
+        Version version = library.getVersion();
+        cache.put("a", entry(version, 100));
+        cache.put("b", entry(version, 100));
+        cache.put("c", entry(version, 100));
+        assertNotNull(cache.get("a", version));
+        cache.put("d", entry(version, 100));
+
+        assertNotNull(cache.get("a", version));
+        assertNull(cache.get("b", version));
+        assertEquals(1, cache.getStatistics().getEvictions());
+        assertEquals(3, cache.getStatistics().getEntries());
+
+        //Too large to be kept.
+        cache.put("f", entry(version, 1000));
+        assertNull(cache.get("f", version));
+    }
+
+    @Test
+    public void responsesOfOlderVersionsAreDropped() throws BusinessException {
+        ResponseCache cache = new ResponseCache(1 << 20);
+        Version version = library.getVersion();
+        cache.put("authors", entry(version, 100));
+        assertSame(version, cache.get("authors", version).getVersion());
+
+        library.addAuthor(Library.Author.builder().name("Martin").firstname("Alfred").build());
+        assertNull(cache.get("authors", library.getVersion()));
+        assertEquals(0, cache.getStatistics().getEntries());
+        assertEquals(1, cache.getStatistics().getHits());
+        assertEquals(1, cache.getStatistics().getMisses());
+    }
+}
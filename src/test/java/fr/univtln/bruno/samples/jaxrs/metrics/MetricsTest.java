@@ -0,0 +1,64 @@
+package fr.univtln.bruno.samples.jaxrs.metrics;
+
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+public class MetricsTest {
+
+    @Test
+    public void histogramsKeepThePrecision() {
+        for (long value = 0; value < 1L << 30; value = value * 3 / 2 + 1) {
+            long highest = Histogram.highestValue(Histogram.index(value));
+            assertTrue(highest >= value);
+            assertTrue("" + value, highest - value <= Math.max(1, value / 32));
+        }
+
+        Histogram histogram = new Histogram();
+        for (long micros = 1; micros <= 10_000; micros++) histogram.record(micros);
+        assertEquals(10_000, histogram.getCount());
+        assertEquals(5000, histogram.getValueAtQuantile(0.5), 5000 / 32.0);
+        assertEquals(9900, histogram.getValueAtQuantile(0.99), 9900 / 32.0);
+        long[] cumulative = histogram.countsAtOrBelow(new long[]{100, 1000, 20_000});
+        assertEquals(100, cumulative[0], 100 / 32.0);
+        assertEquals(1000, cumulative[1], 1000 / 32.0);
+        assertEquals(10_000, cumulative[2]);
+    }
+
+    @Test
+    public void recordingDoesNotAllocate() {
+        Metrics.Endpoint endpoint = new Metrics().endpoint("TestResource.get");
+        MediaType json = MediaType.valueOf(MediaType.APPLICATION_JSON);
+        for (int i = 0; i < 100_000; i++) endpoint.histogram(200, json).record(i);
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < 100_000; i++) endpoint.histogram(200, json).record(i);
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        //The measure itself allocates a few bytes.
+        assertTrue(allocated + " bytes", allocated < 1024);
+    }
+
+    @Test
+    public void prometheusFormat() {
+        Metrics metrics = new Metrics();
+        metrics.endpoint("AuthorResource.getAuthor").histogram(200, MediaType.APPLICATION_JSON_TYPE).record(1500);
+        metrics.endpoint("AuthorResource.getAuthor").histogram(404, null).record(300);
+        metrics.businessException(Response.Status.NOT_FOUND);
+
+        String text = metrics.toPrometheus();
+        String labels = "endpoint=\"AuthorResource.getAuthor\",status=\"2xx\",media_type=\"application/json\"";
+        assertTrue(text.contains("# TYPE library_request_duration_seconds histogram\n"));
+        assertTrue(text.contains("library_request_duration_seconds_bucket{" + labels + ",le=\"0.001\"} 0\n"));
+        assertTrue(text.contains("library_request_duration_seconds_bucket{" + labels + ",le=\"0.0025\"} 1\n"));
+        assertTrue(text.contains("library_request_duration_seconds_count{" + labels + "} 1\n"));
+        assertTrue(text.contains("status=\"4xx\",media_type=\"none\""));
+        assertTrue(text.contains("library_business_exceptions_total{status=\"404\"} 1\n"));
+        assertTrue(text.contains("jvm_memory_used_bytes{area=\"heap\"}"));
+    }
+}
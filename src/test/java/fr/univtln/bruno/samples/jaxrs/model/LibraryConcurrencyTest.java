@@ -0,0 +1,134 @@
+package fr.univtln.bruno.samples.jaxrs.model;
+
+import fr.univtln.bruno.samples.jaxrs.exceptions.BusinessException;
+import fr.univtln.bruno.samples.jaxrs.resources.PaginationInfo;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LibraryConcurrencyTest {
+    private static final int THREADS = 8;
+    private static final int AUTHORS_PER_THREAD = 1000;
+
+    private final Library library = Library.newInstance();
+
+    @After
+    public void afterEach() {
+        library.removesAuthors();
+    }
+
+    /**
+     * Writers and readers share the library, no write must be lost and ids must be unique.
+     */
+    @Test
+    public void concurrentAddsAndReads() throws InterruptedException, ExecutionException {
+        ExecutorService executor = Executors.newFixedThreadPool(2 * THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < AUTHORS_PER_THREAD; i++)
+                    library.addAuthor(Library.Author.builder().name("name" + i).firstname("firstname").build());
+                return null;
+            }));
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < AUTHORS_PER_THREAD / 100; i++)
+                    library.getAuthorsWithFilter(PaginationInfo.builder().sortKey("name").build());
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) future.get();
+        executor.shutdown();
+
+        assertEquals(THREADS * AUTHORS_PER_THREAD, library.getAuthorsNumber());
+        assertEquals(THREADS * AUTHORS_PER_THREAD, library.getAuthors().keySet().size());
+    }
+
+    /**
+     * The filtered queries run on a pinned version : they see the writes in order and release their version.
+     */
+    @Test
+    public void filteredQueriesDuringWrites() throws InterruptedException, ExecutionException, BusinessException {
+        ExecutorService executor = Executors.newFixedThreadPool(2 * THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < AUTHORS_PER_THREAD; i++)
+                    library.addAuthor(Library.Author.builder().name("name" + i).firstname("firstname").build());
+                return null;
+            }));
+            futures.add(executor.submit(() -> {
+                start.await();
+                long seen = 0;
+                for (int i = 0; i < AUTHORS_PER_THREAD / 100; i++) {
+                    Page<Library.Author> page = library.getAuthorsWithFilter(PaginationInfo.builder()
+                            .sortKey("name").firstname("firstname").build());
+                    assertTrue(page.getElementTotal() >= seen);
+                    seen = page.getElementTotal();
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) future.get();
+        executor.shutdown();
+
+        assertEquals(0, library.getPinnedViews());
+        assertEquals(THREADS * AUTHORS_PER_THREAD, library.getAuthorsWithFilter(PaginationInfo.builder()
+                .sortKey("name").firstname("firstname").build()).getElementTotal());
+    }
+
+    @Test
+    public void interruptedScansStop() throws BusinessException {
+        library.addAuthor(Library.Author.builder().name("Martin").biography("My life").build());
+        Thread.currentThread().interrupt();
+        try {
+            library.getAuthorsWithFilter(PaginationInfo.builder().sortKey("name").biography("life").build());
+            fail();
+        } catch (CancellationException e) {
+            assertTrue(Thread.interrupted());
+        }
+        assertEquals(0, library.getPinnedViews());
+        assertEquals(1, library.getAuthorsWithFilter(PaginationInfo.builder()
+                .sortKey("name").biography("life").build()).getElementTotal());
+    }
+
+    @Test
+    public void concurrentRemovesOfTheSameAuthor() throws BusinessException, InterruptedException {
+        long id = library.addAuthor(Library.Author.builder().name("Doe").firstname("John").build()).getId();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Callable<Boolean>> removals = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++)
+            removals.add(() -> {
+                try {
+                    library.removeAuthor(id);
+                    return true;
+                } catch (BusinessException e) {
+                    return false;
+                }
+            });
+        long succeeded = executor.invokeAll(removals).stream().filter(f -> {
+            try {
+                return f.get();
+            } catch (InterruptedException | ExecutionException e) {
+                return false;
+            }
+        }).count();
+        executor.shutdown();
+
+        assertEquals(1, succeeded);
+        assertEquals(0, library.getAuthorsNumber());
+    }
+}
@@ -0,0 +1,72 @@
+package fr.univtln.bruno.samples.jaxrs.model;
+
+import fr.univtln.bruno.samples.jaxrs.exceptions.BusinessException;
+import fr.univtln.bruno.samples.jaxrs.resources.PaginationInfo;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the Library under contention. Run it with an increasing number of threads
+ * to see how reads scale with the number of cores, for example :
+ * mvn -P benchmarks test-compile exec:exec -Djmh.args="LibraryContention -t 1"
+ * mvn -P benchmarks test-compile exec:exec -Djmh.args="LibraryContention -t 8"
+ * The mixed group runs seven readers for one writer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LibraryContentionBenchmark {
+    @Param({"10000"})
+    int size;
+
+    Library library;
+
+    @Setup(Level.Trial)
+    public void setUp() throws BusinessException {
+        library = Library.newInstance();
+        library.removesAuthors();
+        for (int i = 0; i < size; i++)
+            library.addAuthor(Library.Author.builder().name("name" + i).firstname("firstname" + i).build());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        library.removesAuthors();
+    }
+
+    private long randomId() {
+        return ThreadLocalRandom.current().nextLong(size) + 1;
+    }
+
+    @Benchmark
+    public Library.Author getAuthor() throws BusinessException {
+        return library.getAuthor(randomId());
+    }
+
+    @Benchmark
+    public Page<Library.Author> getPage() throws BusinessException {
+        return library.getAuthorsWithFilter(PaginationInfo.builder()
+                .sortKey("name")
+                .page(ThreadLocalRandom.current().nextLong(size / 10) + 1)
+                .build());
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(7)
+    public Library.Author mixedRead() throws BusinessException {
+        return library.getAuthor(randomId());
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public Library.Author mixedWrite() throws BusinessException {
+        return library.updateAuteur(randomId(), Library.Author.builder().name("updated").firstname("author").build());
+    }
+}
@@ -2,15 +2,23 @@ package fr.univtln.bruno.samples.jaxrs.model;
 
 import fr.univtln.bruno.samples.jaxrs.exceptions.BusinessException;
 import fr.univtln.bruno.samples.jaxrs.exceptions.NotFoundException;
+import fr.univtln.bruno.samples.jaxrs.resources.PaginationInfo;
 import org.apache.commons.lang3.SerializationUtils;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.samePropertyValuesAs;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 
 public class LibraryModelTest {
     private static final Library modeleBibliotheque = Library.newInstance();
@@ -45,6 +53,93 @@ public class LibraryModelTest {
         assertThat(author, samePropertyValuesAs(modeleBibliotheque.getAuthor(4), "id"));
     }
 
+    @Test
+    public void pinnedViewIsNotAffectedByWrites() throws BusinessException {
+        Library.Author martin = modeleBibliotheque.getAuthor(1);
+        modeleBibliotheque.addBook(Library.Book.builder().title("title1").authors(Set.of(martin)).build());
+        try (LibraryView view = modeleBibliotheque.pin()) {
+            modeleBibliotheque.removeAuthor(2);
+            modeleBibliotheque.updateAuteur(1, Library.Author.builder().firstname("John").name("Doe").build());
+            modeleBibliotheque.addBook(Library.Book.builder().title("title2").authors(Set.of(martin)).build());
+
+            assertEquals(2, view.getAuthorsNumber());
+            assertEquals(1, view.getBooksAsList().size());
+            Library.Author pinned = view.getAuthorsAsList().stream().filter(author -> author.getId() == 1).findFirst().orElseThrow();
+            assertEquals("Martin", pinned.getName());
+            assertEquals(1, pinned.getBooks().size());
+        }
+        assertEquals(1, modeleBibliotheque.getAuthorsNumber());
+        assertEquals(2, modeleBibliotheque.getAuthor(1).getBooks().size());
+    }
+
+    @Test
+    public void removalsCascadeToTheRelation() throws BusinessException {
+        Library.Author martin = modeleBibliotheque.getAuthor(1);
+        Library.Author durand = modeleBibliotheque.getAuthor(2);
+        long book1 = modeleBibliotheque.addBook(Library.Book.builder().title("title1").authors(Set.of(martin, durand)).build()).getId();
+        long book2 = modeleBibliotheque.addBook(Library.Book.builder().title("title2").authors(Set.of(durand)).build()).getId();
+
+        modeleBibliotheque.removeAuthor(2);
+        assertEquals(Set.of(1L), modeleBibliotheque.getBooks().get(book1).getAuthors().stream()
+                .map(Library.Author::getId).collect(Collectors.toSet()));
+        assertEquals(0, modeleBibliotheque.getAuthorIds(book2).size());
+
+        modeleBibliotheque.removeBook(book1);
+        assertEquals(0, modeleBibliotheque.getBookIds(1).size());
+        assertNull(modeleBibliotheque.getAuthor(1).getBooks());
+    }
+
+    @Test
+    public void versionsFollowTheChanges() throws BusinessException {
+        Version library = modeleBibliotheque.getVersion();
+        Version martin = modeleBibliotheque.getAuthorVersion(1);
+        Version durand = modeleBibliotheque.getAuthorVersion(2);
+
+        //A new book changes its authors and the library.
+        modeleBibliotheque.addBook(Library.Book.builder().title("title1").authors(Set.of(modeleBibliotheque.getAuthor(1))).build());
+        assertNotEquals(martin.getEntityTag(), modeleBibliotheque.getAuthorVersion(1).getEntityTag());
+        assertEquals(durand.getEntityTag(), modeleBibliotheque.getAuthorVersion(2).getEntityTag());
+        assertNotEquals(library.getEntityTag(), modeleBibliotheque.getVersion().getEntityTag());
+    }
+
+    @Test(expected = BusinessException.class)
+    public void updateWithAFailedPrecondition() throws BusinessException {
+        Version martin = modeleBibliotheque.getAuthorVersion(1);
+        modeleBibliotheque.updateAuteur(1, Library.Author.builder().name("Doe").build());
+        modeleBibliotheque.updateAuteur(1, Library.Author.builder().name("Doe").build(),
+                current -> current.getEntityTag().equals(martin.getEntityTag()));
+    }
+
+    @Test(expected = BusinessException.class)
+    public void addBookWithUnknownAuthor() throws BusinessException {
+        modeleBibliotheque.addBook(Library.Book.builder().title("title1")
+                .authors(Set.of(Library.Author.builder().id(42).build())).build());
+    }
+
+    @Test
+    public void executeBatch() throws BusinessException {
+        List<Operation.Result> results = modeleBibliotheque.execute(List.of(
+                Operation.builder().type(Operation.Type.ADD_AUTHOR).author(Library.Author.builder().name("Doe").build()).build(),
+                Operation.builder().type(Operation.Type.REMOVE_AUTHOR).id(2).build(),
+                Operation.builder().type(Operation.Type.ADD_BOOK).title("title1").authors(new long[]{2}).build(),
+                Operation.builder().type(Operation.Type.ADD_BOOK).title("title2").authors(new long[]{1, 3}).build()), false);
+
+        assertEquals(List.of(201, 204, 404, 201), results.stream().map(Operation.Result::getStatus).collect(Collectors.toList()));
+        assertEquals(3, results.get(0).getId());
+        assertEquals(2, modeleBibliotheque.getAuthorsNumber());
+        assertEquals(2, modeleBibliotheque.getAuthorIds(results.get(3).getId()).size());
+    }
+
+    @Test
+    public void executeAtomicBatch() throws BusinessException {
+        List<Operation.Result> results = modeleBibliotheque.execute(List.of(
+                Operation.builder().type(Operation.Type.REMOVE_AUTHOR).id(1).build(),
+                Operation.builder().type(Operation.Type.UPDATE_AUTHOR).id(1).author(Library.Author.builder().name("Doe").build()).build()), true);
+
+        assertEquals(List.of(409, 404), results.stream().map(Operation.Result::getStatus).collect(Collectors.toList()));
+        assertEquals("Martin", modeleBibliotheque.getAuthor(1).getName());
+    }
+
     @Test
     public void updateAuteur() throws BusinessException {
         Library.Author author = Library.Author.builder().firstname("John").name("Doe").build();
@@ -87,4 +182,103 @@ public class LibraryModelTest {
     public void getAuteurs() {
         assertNotNull(modeleBibliotheque.getAuthors());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void getAuthorsWithFilterSortedPage() throws BusinessException {
+        modeleBibliotheque.addAuthor(Library.Author.builder().firstname("Albert").name("Bernard").build());
+        Page<Library.Author> page = modeleBibliotheque.getAuthorsWithFilter(PaginationInfo.builder()
+                .sortKey("firstname").page(2).pageSize(2).build());
+        assertEquals(3, page.getElementTotal());
+        assertThat(page.getContent().stream().map(Library.Author::getFirstname).collect(Collectors.toList()), contains("Marie"));
+
+        page = modeleBibliotheque.getAuthorsWithFilter(PaginationInfo.builder().sortKey("name").build());
+        assertThat(page.getContent().stream().map(Library.Author::getName).collect(Collectors.toList()), contains("Bernard", "Durand", "Martin"));
+    }
+
+    @Test
+    public void getAuthorsWithFilterAfterUpdate() throws BusinessException {
+        modeleBibliotheque.updateAuteur(1, Library.Author.builder().firstname("Jean").name("Aubert").build());
+        Page<Library.Author> page = modeleBibliotheque.getAuthorsWithFilter(PaginationInfo.builder().sortKey("name").build());
+        assertThat(page.getContent().stream().map(Library.Author::getName).collect(Collectors.toList()), contains("Aubert", "Durand"));
+
+        page = modeleBibliotheque.getAuthorsWithFilter(PaginationInfo.builder().sortKey("name").name("martin").build());
+        assertEquals(0, page.getElementTotal());
+        page = modeleBibliotheque.getAuthorsWithFilter(PaginationInfo.builder().sortKey("name").name("aubert").firstname("JEAN").build());
+        assertEquals(1, page.getElementTotal());
+    }
+
+    @Test
+    public void getAuthorsWithBiographyFilter() throws BusinessException {
+        modeleBibliotheque.addAuthor(Library.Author.builder().firstname("John").name("Doe").biography("My weird life").build());
+        modeleBibliotheque.addAuthor(Library.Author.builder().firstname("Jim").name("Doe").biography("My life").build());
+
+        Page<Library.Author> page = modeleBibliotheque.getAuthorsWithFilter(PaginationInfo.builder()
+                .sortKey("firstname").biography("life").build());
+        assertThat(page.getContent().stream().map(Library.Author::getFirstname).collect(Collectors.toList()), contains("Jim", "John"));
+
+        modeleBibliotheque.updateAuteur(3, Library.Author.builder().firstname("John").name("Doe").build());
+        page = modeleBibliotheque.getAuthorsWithFilter(PaginationInfo.builder().sortKey("name").biography("weird").build());
+        assertEquals(0, page.getElementTotal());
+        page = modeleBibliotheque.getAuthorsWithFilter(PaginationInfo.builder().sortKey("name").biography("My").build());
+        assertEquals(1, page.getElementTotal());
+    }
+
+    @Test
+    public void getAuthorsWithCursor() throws BusinessException {
+        modeleBibliotheque.addAuthor(Library.Author.builder().firstname("Albert").name("Bernard").build());
+        modeleBibliotheque.addAuthor(Library.Author.builder().firstname("Paul").name("Durand").build());
+
+        Page<Library.Author> page = modeleBibliotheque.getAuthorsWithFilter(PaginationInfo.builder()
+                .sortKey("name").pageSize(2).cursor("").build());
+        assertThat(page.getContent().stream().map(Library.Author::getId).collect(Collectors.toList()), contains(3L, 2L));
+        assertEquals(Page.UNKNOWN, page.getElementTotal());
+        assertNull(page.getPreviousCursor());
+
+        page = modeleBibliotheque.getAuthorsWithFilter(PaginationInfo.builder()
+                .sortKey("name").pageSize(2).cursor(page.getNextCursor()).count(true).build());
+        assertThat(page.getContent().stream().map(Library.Author::getId).collect(Collectors.toList()), contains(4L, 1L));
+        assertEquals(4, page.getElementTotal());
+        assertNull(page.getNextCursor());
+
+        page = modeleBibliotheque.getAuthorsWithFilter(PaginationInfo.builder()
+                .sortKey("name").pageSize(2).cursor(page.getPreviousCursor()).build());
+        assertThat(page.getContent().stream().map(Library.Author::getId).collect(Collectors.toList()), contains(3L, 2L));
+        assertNull(page.getPreviousCursor());
+    }
+
+    @Test
+    public void getAuthorsWithCursorAndFilter() throws BusinessException {
+        modeleBibliotheque.addAuthor(Library.Author.builder().firstname("Paul").name("Durand").build());
+
+        Page<Library.Author> page = modeleBibliotheque.getAuthorsWithFilter(PaginationInfo.builder()
+                .sortKey("firstname").name("durand").pageSize(1).cursor("").build());
+        assertThat(page.getContent().stream().map(Library.Author::getFirstname).collect(Collectors.toList()), contains("Marie"));
+
+        page = modeleBibliotheque.getAuthorsWithFilter(PaginationInfo.builder()
+                .sortKey("firstname").name("durand").pageSize(1).cursor(page.getNextCursor()).build());
+        assertThat(page.getContent().stream().map(Library.Author::getFirstname).collect(Collectors.toList()), contains("Paul"));
+        assertNull(page.getNextCursor());
+
+        page = modeleBibliotheque.getAuthorsWithFilter(PaginationInfo.builder()
+                .sortKey("firstname").name("durand").pageSize(1).cursor(page.getPreviousCursor()).build());
+        assertThat(page.getContent().stream().map(Library.Author::getFirstname).collect(Collectors.toList()), contains("Marie"));
+        assertNull(page.getPreviousCursor());
+    }
+
+    @Test
+    public void filteredPagesHaveTheirBooks() throws BusinessException {
+        modeleBibliotheque.addBook(Library.Book.builder().title("title1").authors(Set.of(modeleBibliotheque.getAuthor(2))).build());
+
+        Page<Library.Author> page = modeleBibliotheque.getAuthorsWithFilter(PaginationInfo.builder()
+                .sortKey("name").name("durand").build());
+        assertEquals(1, page.getContent().get(0).getBooks().size());
+        page = modeleBibliotheque.getAuthorsWithFilter(PaginationInfo.builder()
+                .sortKey("name").firstname("marie").pageSize(1).cursor("").build());
+        assertEquals("title1", page.getContent().get(0).getBooks().iterator().next().getTitle());
+    }
+
+    @Test(expected = BusinessException.class)
+    public void getAuthorsWithInvalidCursor() throws BusinessException {
+        modeleBibliotheque.getAuthorsWithFilter(PaginationInfo.builder().sortKey("name").cursor("not a cursor").build());
+    }
+}
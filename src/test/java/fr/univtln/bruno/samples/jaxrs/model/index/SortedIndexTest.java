@@ -0,0 +1,83 @@
+package fr.univtln.bruno.samples.jaxrs.model.index;
+
+import org.eclipse.collections.impl.factory.primitive.LongLists;
+import org.eclipse.collections.impl.factory.primitive.LongSets;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+
+public class SortedIndexTest {
+
+    @Test
+    public void rangeFollowsValueThenIdOrder() {
+        SortedIndex index = new SortedIndex();
+        index.add("Martin", 1);
+        index.add("Durand", 2);
+        index.add(null, 3);
+        index.add("Durand", 4);
+
+        assertEquals(4, index.size());
+        assertEquals(LongLists.immutable.of(3, 2, 4, 1), index.range(0, 10));
+        assertEquals(LongLists.immutable.of(4, 1), index.range(2, 2));
+        assertEquals(0, index.range(4, 2).size());
+    }
+
+    @Test
+    public void rankCountsEntriesBefore() {
+        SortedIndex index = new SortedIndex();
+        index.add("Martin", 1);
+        index.add("Durand", 2);
+        index.add(null, 3);
+        index.add("Durand", 4);
+
+        assertEquals(0, index.rank(null, 3));
+        assertEquals(2, index.rank("Durand", 4));
+        assertEquals(3, index.rank("Durand", 5));
+        assertEquals(4, index.rank("Zola", 0));
+    }
+
+    @Test
+    public void exactMatchesIgnoreCase() {
+        SortedIndex index = new SortedIndex();
+        index.add("Durand", 1);
+        index.add("DURAND", 2);
+        index.add("Martin", 3);
+
+        assertEquals(LongSets.immutable.of(1, 2), index.getExactMatches("durand"));
+        index.remove("DURAND", 2);
+        assertEquals(LongSets.immutable.of(1), index.getExactMatches("durand"));
+        assertEquals(0, index.getExactMatches("Doe").size());
+    }
+
+    /**
+     * Compares random pages of the index with a sorted reference after random additions and removals.
+     */
+    @Test
+    public void randomOperationsMatchSortedReference() {
+        Random random = new Random(42);
+        SortedIndex index = new SortedIndex();
+        Comparator<Map.Entry<String, Long>> order = Map.Entry.<String, Long>comparingByKey()
+                .thenComparing(Map.Entry.comparingByValue());
+        TreeSet<Map.Entry<String, Long>> reference = new TreeSet<>(order);
+
+        for (long id = 1; id <= 2000; id++) {
+            String key = "k" + random.nextInt(100);
+            index.add(key, id);
+            reference.add(Map.entry(key, id));
+            if (random.nextInt(4) == 0) {
+                Map.Entry<String, Long> removed = reference.pollFirst();
+                index.remove(removed.getKey(), removed.getValue());
+            }
+        }
+
+        List<Map.Entry<String, Long>> sorted = new ArrayList<>(reference);
+        assertEquals(sorted.size(), index.size());
+        for (int from = 0; from < sorted.size(); from += 97) {
+            long[] expected = sorted.subList(from, Math.min(from + 10, sorted.size())).stream()
+                    .mapToLong(Map.Entry::getValue).toArray();
+            assertEquals(LongLists.immutable.of(expected), index.range(from, 10));
+        }
+    }
+}
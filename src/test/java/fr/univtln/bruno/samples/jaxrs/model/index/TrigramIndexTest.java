@@ -0,0 +1,36 @@
+package fr.univtln.bruno.samples.jaxrs.model.index;
+
+import org.eclipse.collections.impl.factory.primitive.LongSets;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TrigramIndexTest {
+
+    @Test
+    public void candidatesContainEveryTrigram() {
+        TrigramIndex index = new TrigramIndex();
+        index.add("My life", 1);
+        index.add("My weird life", 2);
+        index.add("Another story", 3);
+        index.add(null, 4);
+
+        assertEquals(LongSets.immutable.of(1, 2), index.getCandidates("life"));
+        assertEquals(LongSets.immutable.of(2), index.getCandidates("weird"));
+        assertEquals(0, index.getCandidates("unknown").size());
+        assertNull(index.getCandidates("My"));
+    }
+
+    @Test
+    public void removedTextsAreNoMoreCandidates() {
+        TrigramIndex index = new TrigramIndex();
+        index.add("My life", 1);
+        index.add("My weird life", 2);
+        index.remove("My life", 1);
+
+        assertEquals(LongSets.immutable.of(2), index.getCandidates("life"));
+        index.clear();
+        assertEquals(0, index.getCandidates("life").size());
+    }
+}
@@ -0,0 +1,37 @@
+package fr.univtln.bruno.samples.jaxrs.model.query;
+
+import fr.univtln.bruno.samples.jaxrs.exceptions.BusinessException;
+import fr.univtln.bruno.samples.jaxrs.model.Library;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class CursorTest {
+
+    @Test
+    public void encodeDecodeRoundTrip() throws BusinessException {
+        Library.Author author = Library.Author.builder().id(7).name("Du|rand").firstname("Marie").build();
+        Cursor cursor = Cursor.decode(Cursor.after(Library.Field.NAME, author).encode());
+
+        assertEquals(Cursor.Direction.AFTER, cursor.getDirection());
+        assertEquals(Library.Field.NAME, cursor.getField());
+        assertEquals("Du|rand", cursor.getKey());
+        assertEquals(7, cursor.getId());
+        assertEquals(0, cursor.locate(author));
+    }
+
+    @Test
+    public void nullKeyRoundTrip() throws BusinessException {
+        Library.Author author = Library.Author.builder().id(3).name("Doe").build();
+        Cursor cursor = Cursor.decode(Cursor.before(Library.Field.FIRSTNAME, author).encode());
+
+        assertEquals(Cursor.Direction.BEFORE, cursor.getDirection());
+        assertNull(cursor.getKey());
+    }
+
+    @Test(expected = BusinessException.class)
+    public void decodeInvalid() throws BusinessException {
+        Cursor.decode("QUZURVJ8Tk9ORXwx");
+    }
+}
@@ -0,0 +1,31 @@
+package fr.univtln.bruno.samples.jaxrs.model.query;
+
+import org.junit.Test;
+
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class TopKTest {
+
+    @Test
+    public void keepsTheSmallestElements() {
+        TopK<Integer> topK = new TopK<>(Comparator.naturalOrder(), 3);
+        for (int i : new int[]{7, 3, 9, 1, 5, 8, 2})
+            topK.offer(i);
+        assertEquals(7, topK.getOffered());
+        assertEquals(List.of(1, 2, 3), topK.toSortedList());
+        assertEquals(List.of(3), topK.toSortedList(2));
+        assertEquals(List.of(), topK.toSortedList(5));
+    }
+
+    @Test
+    public void zeroCapacityOnlyCounts() {
+        TopK<Integer> topK = new TopK<>(Comparator.naturalOrder(), 0);
+        topK.offer(1);
+        topK.offer(2);
+        assertEquals(2, topK.getOffered());
+        assertEquals(List.of(), topK.toSortedList());
+    }
+}
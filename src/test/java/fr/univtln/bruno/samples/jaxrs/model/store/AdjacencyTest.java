@@ -0,0 +1,33 @@
+package fr.univtln.bruno.samples.jaxrs.model.store;
+
+import org.eclipse.collections.impl.factory.primitive.LongSets;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AdjacencyTest {
+
+    @Test
+    public void removalsKeepBothDirectionsConsistent() {
+        Adjacency adjacency = Adjacency.empty()
+                .addBook(10, LongSets.immutable.of(1, 2))
+                .addBook(11, LongSets.immutable.of(2));
+
+        assertEquals(LongSets.immutable.of(10, 11), adjacency.getBooks(2));
+        assertEquals(LongSets.immutable.of(1, 2), adjacency.getAuthors(10));
+
+        Adjacency withoutAuthor = adjacency.removeAuthor(2);
+        assertTrue(withoutAuthor.getBooks(2).isEmpty());
+        assertEquals(LongSets.immutable.of(1), withoutAuthor.getAuthors(10));
+        assertTrue(withoutAuthor.getAuthors(11).isEmpty());
+
+        Adjacency withoutBook = adjacency.removeBook(10);
+        assertEquals(LongSets.immutable.of(11), withoutBook.getBooks(2));
+        assertTrue(withoutBook.getBooks(1).isEmpty());
+        assertTrue(withoutBook.getAuthors(10).isEmpty());
+
+        //The previous version is unchanged.
+        assertEquals(LongSets.immutable.of(1, 2), adjacency.getAuthors(10));
+    }
+}
@@ -0,0 +1,91 @@
+package fr.univtln.bruno.samples.jaxrs.model.store;
+
+import fr.univtln.bruno.samples.jaxrs.exceptions.BusinessException;
+import fr.univtln.bruno.samples.jaxrs.model.Library;
+import fr.univtln.bruno.samples.jaxrs.model.Page;
+import fr.univtln.bruno.samples.jaxrs.resources.PaginationInfo;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.samePropertyValuesAs;
+import static org.junit.Assert.*;
+
+public class OffHeapAuthorStoreTest {
+
+    @Test
+    public void putGetAndRemove() {
+        OffHeapAuthorStore store = new OffHeapAuthorStore();
+        Library.Author martin = Library.Author.builder().id(1).firstname("Jean").name("Martin").biography("My life").build();
+        Library.Author durand = Library.Author.builder().id(2).name("Durand").build();
+        store.put(martin);
+        store.put(durand);
+
+        assertEquals(2, store.size());
+        assertThat(store.get(1), samePropertyValuesAs(martin));
+        assertThat(store.get(2), samePropertyValuesAs(durand));
+        assertNull(store.get(3));
+
+        assertThat(store.remove(1), samePropertyValuesAs(martin));
+        assertFalse(store.contains(1));
+        store.put(Library.Author.builder().id(3).name("Doe").build());
+        Set<Long> ids = new HashSet<>();
+        store.forEach(author -> ids.add(author.getId()));
+        assertEquals(Set.of(3L, 2L), ids);
+    }
+
+    @Test
+    public void pinnedViewIsNotAffectedByWrites() {
+        OffHeapAuthorStore store = new OffHeapAuthorStore();
+        store.put(Library.Author.builder().id(1).name("Martin").biography("My life").build());
+        store.put(Library.Author.builder().id(2).name("Durand").build());
+
+        try (AuthorStore.View view = store.snapshot()) {
+            store.put(Library.Author.builder().id(1).name("Doe").biography("Another life").build());
+            store.remove(2);
+            store.put(Library.Author.builder().id(3).name("Dupont").build());
+
+            assertEquals(2, view.size());
+            assertEquals("Martin", view.get(1).getName());
+            assertEquals("My life", view.get(1).getBiography());
+            assertEquals("Durand", view.get(2).getName());
+            assertNull(view.get(3));
+            assertEquals("Doe", store.get(1).getName());
+        }
+        //The rows retired while the view was pinned are reclaimed by the next write.
+        store.put(Library.Author.builder().id(1).name("Martin").build());
+        assertEquals("Martin", store.get(1).getName());
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    public void biographiesAreCompacted() {
+        OffHeapAuthorStore store = new OffHeapAuthorStore();
+        String biography = "a".repeat(1 << 20);
+        store.put(Library.Author.builder().id(1).name("Martin").biography("short").build());
+        for (int i = 0; i < 10; i++)
+            store.put(Library.Author.builder().id(2).name("Durand").biography(biography + i).build());
+
+        assertEquals(biography + 9, store.get(2).getBiography());
+        assertEquals("short", store.get(1).getBiography());
+        assertTrue(store.getOffHeapBytes() < 8 << 20);
+    }
+
+    @Test
+    public void libraryOnOffHeapStore() throws BusinessException {
+        Library library = Library.newInstance(new OffHeapAuthorStore());
+        try {
+            Library.Author martin = library.addAuthor(Library.Author.builder().firstname("Jean").name("Martin").build());
+            library.addAuthor(Library.Author.builder().firstname("Marie").name("Durand").biography("My life").build());
+            library.addBook(Library.Book.builder().title("title1").authors(Set.of(martin)).build());
+
+            assertEquals(1, library.getAuthor(martin.getId()).getBooks().size());
+            Page<Library.Author> page = library.getAuthorsWithFilter(PaginationInfo.builder().sortKey("name").biography("life").build());
+            assertEquals("Durand", page.getContent().get(0).getName());
+        } finally {
+            library.removesAuthors();
+        }
+    }
+}
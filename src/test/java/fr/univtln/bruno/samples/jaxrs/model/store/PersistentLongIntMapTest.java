@@ -0,0 +1,72 @@
+package fr.univtln.bruno.samples.jaxrs.model.store;
+
+import org.eclipse.collections.api.iterator.IntIterator;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+
+public class PersistentLongIntMapTest {
+
+    @Test
+    public void versionsAreIndependent() {
+        PersistentLongIntMap empty = PersistentLongIntMap.empty();
+        PersistentLongIntMap first = empty.put(1, 10).put(2, 20);
+        PersistentLongIntMap second = first.put(1, 11).remove(2).put(3, 30);
+
+        assertEquals(0, empty.size());
+        assertEquals(2, first.size());
+        assertEquals(10, first.get(1));
+        assertEquals(20, first.get(2));
+        assertEquals(PersistentLongIntMap.ABSENT, first.get(3));
+        assertEquals(2, second.size());
+        assertEquals(11, second.get(1));
+        assertEquals(PersistentLongIntMap.ABSENT, second.get(2));
+        assertEquals(30, second.get(3));
+    }
+
+    /**
+     * Compares the map with a reference after random puts and removes, keeping an old version untouched.
+     */
+    @Test
+    public void randomOperationsMatchReference() {
+        Random random = new Random(42);
+        PersistentLongIntMap map = PersistentLongIntMap.empty();
+        Map<Long, Integer> reference = new HashMap<>();
+        PersistentLongIntMap old = null;
+        Map<Long, Integer> oldReference = null;
+
+        for (int i = 0; i < 20000; i++) {
+            long key = random.nextInt(5000) - 100;
+            if (random.nextInt(3) == 0) {
+                map = map.remove(key);
+                reference.remove(key);
+            } else {
+                map = map.put(key, i);
+                reference.put(key, i);
+            }
+            if (i == 10000) {
+                old = map;
+                oldReference = new HashMap<>(reference);
+            }
+        }
+
+        assertEquals(reference.size(), map.size());
+        for (long key = -100; key < 4900; key++)
+            assertEquals((int) reference.getOrDefault(key, PersistentLongIntMap.ABSENT), map.get(key));
+        List<Integer> values = new ArrayList<>();
+        map.forEachValue(values::add);
+        List<Integer> iterated = new ArrayList<>();
+        for (IntIterator iterator = map.intIterator(); iterator.hasNext(); ) iterated.add(iterator.next());
+        assertEquals(values, iterated);
+        List<Integer> expected = new ArrayList<>(reference.values());
+        Collections.sort(values);
+        Collections.sort(expected);
+        assertEquals(expected, values);
+
+        assertEquals(oldReference.size(), old.size());
+        for (long key = -100; key < 4900; key++)
+            assertEquals((int) oldReference.getOrDefault(key, PersistentLongIntMap.ABSENT), old.get(key));
+    }
+}
@@ -0,0 +1,67 @@
+package fr.univtln.bruno.samples.jaxrs.model.store;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class PersistentLongMapTest {
+
+    @Test
+    public void versionsAreIndependent() {
+        PersistentLongMap<String> empty = PersistentLongMap.empty();
+        PersistentLongMap<String> first = empty.put(1, "one").put(2, "two");
+        PersistentLongMap<String> second = first.put(1, "uno").remove(2).put(3, "three");
+
+        assertEquals(0, empty.size());
+        assertEquals(2, first.size());
+        assertEquals("one", first.get(1));
+        assertEquals("two", first.get(2));
+        assertNull(first.get(3));
+        assertEquals(2, second.size());
+        assertEquals("uno", second.get(1));
+        assertNull(second.get(2));
+        assertEquals("three", second.get(3));
+    }
+
+    /**
+     * Compares the map with a reference after random puts and removes, keeping an old version untouched.
+     */
+    @Test
+    public void randomOperationsMatchReference() {
+        Random random = new Random(42);
+        PersistentLongMap<Long> map = PersistentLongMap.empty();
+        Map<Long, Long> reference = new HashMap<>();
+        PersistentLongMap<Long> old = null;
+        Map<Long, Long> oldReference = null;
+
+        for (int i = 0; i < 20000; i++) {
+            long key = random.nextInt(5000) - 100;
+            if (random.nextInt(3) == 0) {
+                map = map.remove(key);
+                reference.remove(key);
+            } else {
+                map = map.put(key, (long) i);
+                reference.put(key, (long) i);
+            }
+            if (i == 10000) {
+                old = map;
+                oldReference = new HashMap<>(reference);
+            }
+        }
+
+        assertEquals(reference.size(), map.size());
+        for (long key = -100; key < 4900; key++) assertEquals(reference.get(key), map.get(key));
+        List<Long> values = new ArrayList<>();
+        map.forEach(values::add);
+        List<Long> expected = new ArrayList<>(reference.values());
+        Collections.sort(values);
+        Collections.sort(expected);
+        assertEquals(expected, values);
+
+        assertEquals(oldReference.size(), old.size());
+        for (long key = -100; key < 4900; key++) assertEquals(oldReference.get(key), old.get(key));
+    }
+}
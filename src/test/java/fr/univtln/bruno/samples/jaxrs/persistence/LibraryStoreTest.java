@@ -0,0 +1,240 @@
+package fr.univtln.bruno.samples.jaxrs.persistence;
+
+import fr.univtln.bruno.samples.jaxrs.exceptions.BusinessException;
+import fr.univtln.bruno.samples.jaxrs.model.Library;
+import fr.univtln.bruno.samples.jaxrs.model.Operation;
+import jakarta.ws.rs.core.Response;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class LibraryStoreTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Library library = Library.newInstance();
+
+    @After
+    public void afterEach() {
+        library.removesAuthors();
+    }
+
+    private StoreConfig config() {
+        return StoreConfig.builder()
+                .directory(folder.getRoot().toPath())
+                .fsyncPolicy(FsyncPolicy.ALWAYS)
+                .snapshotIntervalSeconds(0)
+                .build();
+    }
+
+    private Library reopen() throws IOException {
+        Library recovered = Library.newInstance();
+        LibraryStore.open(recovered, config()).close();
+        return recovered;
+    }
+
+    @Test
+    public void mutationsSurviveReopen() throws IOException, BusinessException {
+        try (LibraryStore ignored = LibraryStore.open(library, config())) {
+            Library.Author martin = library.addAuthor(Library.Author.builder().firstname("Jean").name("Martin").build());
+            library.addAuthor(Library.Author.builder().firstname("Marie").name("Durand").build());
+            library.addAuthor(Library.Author.builder().firstname("John").name("Doe").build());
+            library.addBook(Library.Book.builder().title("title1").authors(Set.of(martin)).build());
+            library.updateAuteur(2, Library.Author.builder().firstname("Marie").name("Aubert").biography("My life").build());
+            library.removeAuthor(3);
+        }
+
+        Library recovered = reopen();
+        assertEquals(2, recovered.getAuthorsNumber());
+        assertEquals("Aubert", recovered.getAuthor(2).getName());
+        assertEquals("My life", recovered.getAuthor(2).getBiography());
+        assertEquals(1, recovered.getAuthor(1).getBooks().size());
+        assertEquals("title1", recovered.getBooks().get(1).getTitle());
+        //Ids are not reused after a restart.
+        assertEquals(4, recovered.addAuthor(Library.Author.builder().name("Zola").build()).getId());
+    }
+
+    @Test
+    public void snapshotAndLogTail() throws IOException, BusinessException {
+        try (LibraryStore store = LibraryStore.open(library, config())) {
+            for (int i = 0; i < 10; i++)
+                library.addAuthor(Library.Author.builder().name("name" + i).build());
+            assertEquals(10, store.snapshot());
+            library.removeAuthor(1);
+            library.addAuthor(Library.Author.builder().name("name10").build());
+        }
+
+        //The segment before the snapshot is deleted.
+        assertEquals(1, WriteAheadLog.listSegments(folder.getRoot().toPath()).size());
+        Library recovered = reopen();
+        assertEquals(10, recovered.getAuthorsNumber());
+        assertEquals("name10", recovered.getAuthor(11).getName());
+    }
+
+    @Test
+    public void batchIsReplayed() throws IOException, BusinessException {
+        try (LibraryStore ignored = LibraryStore.open(library, config())) {
+            Library.Author martin = library.addAuthor(Library.Author.builder().name("Martin").build());
+            library.execute(List.of(
+                    Operation.builder().type(Operation.Type.ADD_AUTHOR).author(Library.Author.builder().name("Durand").build()).build(),
+                    Operation.builder().type(Operation.Type.ADD_BOOK).title("title1").authors(new long[]{martin.getId()}).build(),
+                    Operation.builder().type(Operation.Type.UPDATE_AUTHOR).id(martin.getId())
+                            .author(Library.Author.builder().name("Doe").build()).build()), true);
+        }
+
+        Library recovered = reopen();
+        assertEquals(2, recovered.getAuthorsNumber());
+        assertEquals("Doe", recovered.getAuthor(1).getName());
+        assertEquals(1, recovered.getBookIds(1).size());
+    }
+
+    @Test
+    public void tornRecordIsIgnored() throws IOException, BusinessException {
+        try (LibraryStore ignored = LibraryStore.open(library, config())) {
+            library.addAuthor(Library.Author.builder().name("Martin").build());
+            library.addAuthor(Library.Author.builder().name("Durand").build());
+        }
+        List<Path> segments = WriteAheadLog.listSegments(folder.getRoot().toPath());
+        Path last = segments.get(segments.size() - 1);
+        //A record whose write was interrupted by a crash.
+        Files.write(last, new byte[]{0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        Library recovered = Library.newInstance();
+        try (LibraryStore ignored = LibraryStore.open(recovered, config())) {
+            assertEquals(2, recovered.getAuthorsNumber());
+            recovered.addAuthor(Library.Author.builder().name("Doe").build());
+        }
+        assertEquals("Doe", reopen().getAuthor(3).getName());
+    }
+
+    @Test
+    public void segmentsAfterACorruptRecordAreSetAside() throws IOException, BusinessException {
+        try (LibraryStore ignored = LibraryStore.open(library, config())) {
+            library.addAuthor(Library.Author.builder().name("Martin").build());
+            library.addAuthor(Library.Author.builder().name("Durand").build());
+        }
+        //A later segment, opened at the next start.
+        Library reopened = Library.newInstance();
+        try (LibraryStore ignored = LibraryStore.open(reopened, config())) {
+            reopened.addAuthor(Library.Author.builder().name("Dupont").build());
+        }
+        List<Path> segments = WriteAheadLog.listSegments(folder.getRoot().toPath());
+        assertEquals(2, segments.size());
+        //The second record of the first segment is corrupted.
+        byte[] bytes = Files.readAllBytes(segments.get(0));
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(segments.get(0), bytes);
+
+        Library recovered = Library.newInstance();
+        try (LibraryStore ignored = LibraryStore.open(recovered, config())) {
+            assertEquals(1, recovered.getAuthorsNumber());
+            recovered.addAuthor(Library.Author.builder().name("Doe").build());
+        }
+        assertTrue(Files.exists(folder.getRoot().toPath().resolve(
+                segments.get(1).getFileName() + WriteAheadLog.DISCARDED_SUFFIX)));
+
+        //The set aside record, at the same log sequence number as the one of Doe, is not replayed.
+        Library again = reopen();
+        assertEquals(2, again.getAuthorsNumber());
+        assertEquals("Doe", again.getAuthor(2).getName());
+    }
+
+    @Test
+    public void oversizedMutationIsRefused() throws IOException, BusinessException {
+        StoreConfig config = StoreConfig.builder().directory(folder.getRoot().toPath()).fsyncPolicy(FsyncPolicy.ALWAYS)
+                .snapshotIntervalSeconds(0).maxRecordBytes(1024).build();
+        String biography = "é".repeat(600);
+        Mutation mutation = Mutation.addAuthor(Library.Author.builder().name("Durand").firstname("\uD83D\uDCD6 \uD800").biography(biography).build());
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        mutation.writeTo(new DataOutputStream(encoded));
+        assertEquals(encoded.size(), mutation.encodedSize());
+        try (LibraryStore ignored = LibraryStore.open(library, config)) {
+            library.addAuthor(Library.Author.builder().name("Martin").build());
+            try {
+                library.addAuthor(Library.Author.builder().name("Durand").biography(biography).build());
+                fail();
+            } catch (BusinessException e) {
+                assertEquals(Response.Status.REQUEST_ENTITY_TOO_LARGE, e.getStatus());
+            }
+            //The batch is checked as a whole, even if each operation would fit.
+            List<Operation> operations = new ArrayList<>();
+            for (int i = 0; i < 20; i++)
+                operations.add(Operation.builder().type(Operation.Type.ADD_AUTHOR)
+                        .author(Library.Author.builder().name("name" + i).biography("x".repeat(100)).build()).build());
+            try {
+                library.execute(operations, false);
+                fail();
+            } catch (BusinessException e) {
+                assertEquals(Response.Status.REQUEST_ENTITY_TOO_LARGE, e.getStatus());
+            }
+            assertEquals(1, library.getAuthorsNumber());
+            library.addAuthor(Library.Author.builder().name("Doe").build());
+        }
+
+        //Nothing was lost at the recovery.
+        Library recovered = Library.newInstance();
+        LibraryStore.open(recovered, config).close();
+        assertEquals(2, recovered.getAuthorsNumber());
+        assertEquals("Doe", recovered.getAuthor(2).getName());
+    }
+
+    @Test
+    public void importIsDurable() throws IOException, BusinessException {
+        Library source = Library.newInstance();
+        Library.Author martin = source.addAuthor(Library.Author.builder().firstname("Jean").name("Martin").build());
+        source.addAuthor(Library.Author.builder().firstname("Marie").name("Durand").biography("My life").build());
+        source.addBook(Library.Book.builder().title("title1").authors(Set.of(martin)).build());
+        Path exported = folder.newFile("export" + SnapshotFile.SUFFIX).toPath();
+        try (OutputStream out = Files.newOutputStream(exported)) {
+            SnapshotFile.write(source.export(), out);
+        }
+
+        Path directory = folder.newFolder("data").toPath();
+        StoreConfig config = StoreConfig.builder().directory(directory).snapshotIntervalSeconds(0).build();
+        try (LibraryStore ignored = LibraryStore.open(library, config)) {
+            library.addAuthor(Library.Author.builder().name("Doe").build());
+            library.importCheckpoint(SnapshotFile.read(exported));
+            //Logged after the snapshot of the import.
+            library.addAuthor(Library.Author.builder().name("Dupont").build());
+        }
+        //Only the snapshot of the import and the segment after it are left.
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(2, files.count());
+        }
+
+        Library recovered = Library.newInstance();
+        LibraryStore.open(recovered, config).close();
+        assertEquals(3, recovered.getAuthorsNumber());
+        assertEquals("My life", recovered.getAuthor(2).getBiography());
+        assertEquals(1, recovered.getAuthor(1).getBooks().size());
+        assertEquals("Dupont", recovered.getAuthor(3).getName());
+    }
+
+    @Test(expected = IOException.class)
+    public void corruptedSnapshotIsRejected() throws IOException, BusinessException {
+        library.addAuthor(Library.Author.builder().name("Martin").build());
+        Path exported = folder.newFile("export" + SnapshotFile.SUFFIX).toPath();
+        try (OutputStream out = Files.newOutputStream(exported)) {
+            SnapshotFile.write(library.export(), out);
+        }
+        byte[] bytes = Files.readAllBytes(exported);
+        bytes[40] ^= 1;
+        Files.write(exported, bytes);
+        SnapshotFile.read(exported);
+    }
+}
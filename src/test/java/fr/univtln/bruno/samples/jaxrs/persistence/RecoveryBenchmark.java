@@ -0,0 +1,62 @@
+package fr.univtln.bruno.samples.jaxrs.persistence;
+
+import fr.univtln.bruno.samples.jaxrs.exceptions.BusinessException;
+import fr.univtln.bruno.samples.jaxrs.model.Library;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the recovery time of a durable Library, from the log only or from a snapshot.
+ * The default size needs a large heap, a smaller one can be given, for example :
+ * mvn -P benchmarks test-compile exec:exec -Djmh.args="RecoveryBenchmark -p entities=100000"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx12g")
+public class RecoveryBenchmark {
+    @Param({"10000000"})
+    int entities;
+
+    @Param({"false", "true"})
+    boolean fromSnapshot;
+
+    Path directory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, BusinessException {
+        directory = Files.createTempDirectory("recovery-benchmark");
+        Library library = Library.newInstance();
+        try (LibraryStore store = LibraryStore.open(library, StoreConfig.builder()
+                .directory(directory)
+                .fsyncPolicy(FsyncPolicy.NEVER)
+                .snapshotIntervalSeconds(0)
+                .build())) {
+            for (int i = 0; i < entities; i++)
+                library.addAuthor(Library.Author.builder().name("name" + i).firstname("firstname" + i).build());
+            if (fromSnapshot) store.snapshot();
+        }
+        library.removesAuthors();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        WriteAheadLogBenchmark.delete(directory);
+    }
+
+    @Benchmark
+    public Library recover() throws IOException {
+        Library library = Library.newInstance();
+        LibraryStore.open(library, StoreConfig.builder()
+                .directory(directory)
+                .snapshotIntervalSeconds(0)
+                .build()).close();
+        return library;
+    }
+}
@@ -0,0 +1,62 @@
+package fr.univtln.bruno.samples.jaxrs.persistence;
+
+import fr.univtln.bruno.samples.jaxrs.exceptions.BusinessException;
+import fr.univtln.bruno.samples.jaxrs.model.Library;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures the throughput of the mutations of a durable Library under each fsync policy.
+ * With several threads the writers share the fsyncs (group commit), for example :
+ * mvn -P benchmarks test-compile exec:exec -Djmh.args="WriteAheadLogBenchmark -t 8"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WriteAheadLogBenchmark {
+    @Param({"ALWAYS", "INTERVAL", "NEVER"})
+    FsyncPolicy policy;
+
+    Path directory;
+    Library library;
+    LibraryStore store;
+
+    static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator)
+                Files.delete(path);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("wal-benchmark");
+        library = Library.newInstance();
+        store = LibraryStore.open(library, StoreConfig.builder()
+                .directory(directory)
+                .fsyncPolicy(policy)
+                .snapshotIntervalSeconds(0)
+                .build());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        store.close();
+        library.removesAuthors();
+        delete(directory);
+    }
+
+    @Benchmark
+    public Library.Author addAuthor() throws BusinessException {
+        return library.addAuthor(Library.Author.builder().name("name").firstname("firstname").build());
+    }
+}
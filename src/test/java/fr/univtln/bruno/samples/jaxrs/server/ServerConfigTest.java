@@ -0,0 +1,98 @@
+package fr.univtln.bruno.samples.jaxrs.server;
+
+import org.glassfish.grizzly.http.server.NetworkListener;
+import org.glassfish.grizzly.http2.Http2Configuration;
+import org.glassfish.grizzly.memory.ByteBufferManager;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import static org.junit.Assert.*;
+
+public class ServerConfigTest {
+
+    @After
+    public void afterEach() {
+        System.clearProperty(ServerConfig.PROFILE_PROPERTY);
+        System.clearProperty(ServerConfig.KEEP_ALIVE_IDLE_PROPERTY);
+        System.clearProperty(ServerConfig.H2C_MODE_PROPERTY);
+        System.clearProperty(ServerConfig.HTTP2_STREAMS_PROPERTY);
+    }
+
+    @Test
+    public void settingsOverrideTheProfile() {
+        System.setProperty(ServerConfig.PROFILE_PROPERTY, "high-throughput");
+        System.setProperty(ServerConfig.KEEP_ALIVE_IDLE_PROPERTY, "5");
+        ServerConfig config = ServerConfig.fromEnvironment();
+
+        assertEquals(ServerConfig.Profile.HIGH_THROUGHPUT, config.getProfile());
+        assertEquals(Integer.valueOf(5), config.getKeepAliveIdleSeconds());
+        assertEquals(Boolean.TRUE, config.getDirectBuffers());
+        assertEquals(BiblioServer.BASE_URI, config.getBaseUri());
+    }
+
+    @Test
+    public void profilesAreAppliedToTheListener() {
+        NetworkListener listener = new NetworkListener("test", "localhost", 0);
+        int idle = listener.getKeepAlive().getIdleTimeoutInSeconds();
+        ServerConfig.Profile.DEFAULT.config().configure(listener, null);
+        assertEquals(idle, listener.getKeepAlive().getIdleTimeoutInSeconds());
+
+        ServerConfig.Profile.HIGH_THROUGHPUT.config().configure(listener, null);
+        assertEquals(120, listener.getKeepAlive().getIdleTimeoutInSeconds());
+        assertEquals(16 * 1024, listener.getMaxHttpHeaderSize());
+        assertTrue(listener.getTransport().getMemoryManager() instanceof ByteBufferManager);
+        assertEquals(64 * 1024, listener.getTransport().getReadBufferSize());
+    }
+
+    @Test
+    public void http2Settings() {
+        System.setProperty(ServerConfig.H2C_MODE_PROPERTY, "upgrade");
+        System.setProperty(ServerConfig.HTTP2_STREAMS_PROPERTY, "50");
+        ServerConfig config = ServerConfig.fromEnvironment();
+        assertEquals(ServerConfig.H2cMode.UPGRADE, config.getH2cMode());
+
+        Http2Configuration http2 = config.http2Configuration(true);
+        assertEquals(50, http2.getMaxConcurrentStreams());
+        assertTrue(http2.isPriorKnowledge());
+        assertEquals(Http2Configuration.builder().build().getInitialWindowSize(), http2.getInitialWindowSize());
+
+        assertNull(config.toBuilder().h2cPort(-1).build().newH2cListener("localhost", null));
+        NetworkListener listener = config.newH2cListener("localhost", null);
+        assertEquals(BiblioServer.H2C_PORT, listener.getPort());
+        assertEquals(1, listener.getAddOns().length);
+    }
+
+    @Test
+    public void listenersShareTheWorkerPool() {
+        ServerConfig config = ServerConfig.builder().executionMode(ExecutionMode.VIRTUAL).build();
+        ExecutorService workers = config.getExecutionMode().newWorkerPool();
+        try {
+            NetworkListener http = new NetworkListener("test", "localhost", 0);
+            config.configure(http, workers);
+            NetworkListener h2c = config.newH2cListener("localhost", workers);
+            assertSame(workers, http.getTransport().getWorkerThreadPool());
+            assertSame(workers, h2c.getTransport().getWorkerThreadPool());
+        } finally {
+            workers.shutdownNow();
+        }
+        assertNull(ExecutionMode.FIXED.newWorkerPool());
+    }
+
+    @Test
+    public void virtualFallbackIsBounded() {
+        ExecutorService workers = ExecutionMode.VIRTUAL.newWorkerPool();
+        try {
+            //Only without virtual threads.
+            if (workers instanceof ThreadPoolExecutor) {
+                ThreadPoolExecutor pool = (ThreadPoolExecutor) workers;
+                assertEquals(256, pool.getMaximumPoolSize());
+                assertEquals(1024, pool.getQueue().remainingCapacity());
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package fr.univtln.bruno.samples.jaxrs.writers;
+
+import fr.univtln.bruno.samples.jaxrs.exceptions.BusinessException;
+import fr.univtln.bruno.samples.jaxrs.model.Library;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class FragmentCacheTest {
+    private final FragmentCache cache = FragmentCache.newInstance("test");
+    private final AtomicInteger encodings = new AtomicInteger();
+
+    @After
+    public void afterEach() {
+        Library.demoLibrary.removesAuthors();
+    }
+
+    private byte[] encode(Library.Author author) {
+        encodings.incrementAndGet();
+        return author.getName().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void fragmentsAreReusedForTheSameContent() throws IOException {
+        Library.Author author = Library.Author.builder().id(1).name("Martin").firstname("Alfred").build();
+        cache.get(author, this::encode);
+        cache.get(author.toBuilder().build(), this::encode);
+        assertEquals(1, encodings.get());
+
+        byte[] updated = cache.get(author.toBuilder().name("Durand").build(), this::encode);
+        assertEquals("Durand", new String(updated, StandardCharsets.UTF_8));
+        assertEquals(2, encodings.get());
+        assertEquals(1, cache.getStatistics().getHits());
+        assertEquals(2, cache.getStatistics().getMisses());
+    }
+
+    @Test
+    public void changesOfTheLibraryDropFragments() throws BusinessException, IOException {
+        Library.Author author = Library.demoLibrary.addAuthor(Library.Author.builder().name("Martin").firstname("Alfred").build());
+        cache.get(author, this::encode);
+        assertEquals(1, cache.getStatistics().getFragments());
+
+        //Adding a book changes the books of its authors.
+        Library.demoLibrary.addBook(Library.Book.builder().title("title").authors(Set.of(author)).build());
+        assertEquals(0, cache.getStatistics().getFragments());
+
+        cache.get(Library.demoLibrary.getAuthor(author.getId()), this::encode);
+        Library.demoLibrary.removesAuthors();
+        assertEquals(0, cache.getStatistics().getFragments());
+    }
+
+    @Test
+    public void leastRecentlyUsedFragmentsAreEvicted() throws IOException {
+        //Room for two fragments of 6 bytes, encoded from a name of 6 chars.
+        FragmentCache small = FragmentCache.newInstance("test-small", 2 * 114 + 50);
+        Library.Author first = Library.Author.builder().id(1).name("Martin").build();
+        Library.Author second = Library.Author.builder().id(2).name("Durand").build();
+        Library.Author third = Library.Author.builder().id(3).name("Dupont").build();
+        small.get(first, this::encode);
+        small.get(second, this::encode);
+        small.get(first, this::encode);
+        small.get(third, this::encode);
+        assertEquals(2, small.getStatistics().getFragments());
+        assertEquals(1, small.getStatistics().getEvictions());
+        assertEquals(2 * 114, small.getStatistics().getBytes());
+
+        //The second one was the least recently used.
+        small.get(first, this::encode);
+        small.get(second, this::encode);
+        assertEquals(4, encodings.get());
+    }
+
+    @Test
+    public void contentIsComparedAsAWhole() {
+        Library.Author author = Library.Author.builder().id(1).name("Martin").firstname("Alfred").build();
+        assertEquals(FragmentCache.content(author), FragmentCache.content(author.toBuilder().build()));
+        assertNotEquals(FragmentCache.content(author),
+                FragmentCache.content(author.toBuilder().name("Marti").firstname("nAlfred").build()));
+        assertNotEquals(FragmentCache.content(author), FragmentCache.content(author.toBuilder().biography("").build()));
+
+        //The books are compared by id, in any order.
+        Library.Book first = Library.Book.builder().id(1).title("title1").build();
+        Library.Book second = Library.Book.builder().id(2).title("title2").build();
+        Library.Author withBooks = author.toBuilder().books(new LinkedHashSet<>(List.of(first, second))).build();
+        assertEquals(FragmentCache.content(withBooks),
+                FragmentCache.content(author.toBuilder().books(new LinkedHashSet<>(List.of(second, first))).build()));
+        assertNotEquals(FragmentCache.content(withBooks), FragmentCache.content(author.toBuilder().books(Set.of(first)).build()));
+    }
+}
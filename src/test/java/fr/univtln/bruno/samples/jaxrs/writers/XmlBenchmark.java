@@ -0,0 +1,107 @@
+package fr.univtln.bruno.samples.jaxrs.writers;
+
+import fr.univtln.bruno.samples.jaxrs.exceptions.BusinessException;
+import fr.univtln.bruno.samples.jaxrs.model.Library;
+import fr.univtln.bruno.samples.jaxrs.model.LibraryView;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.xml.bind.JAXBElement;
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Marshaller;
+import org.openjdk.jmh.annotations.*;
+
+import javax.xml.namespace.QName;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the ways to write the library in XML (each author with two books) :
+ * a JAXB marshaller created for each element (as the misses did before), a marshaller reused for the whole document,
+ * the StAX encoder, and the writer of the server which copies the cached fragments.
+ * mvn -P benchmarks test-compile exec:exec -Djmh.args="XmlBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class XmlBenchmark {
+    private static final QName AUTHOR = new QName("author");
+    private static final QName BOOK = new QName("book");
+
+    @Param({"1000"})
+    int size;
+
+    Library library;
+    LibraryView view;
+    LibraryViewXmlWriter writer;
+
+    @Setup(Level.Trial)
+    public void setUp() throws BusinessException {
+        library = Library.newInstance();
+        library.removesAuthors();
+        Library.Author previous = null;
+        for (int i = 0; i < size; i++) {
+            Library.Author author = library.addAuthor(Library.Author.builder()
+                    .name("name" + i).firstname("firstname" + i).biography("The biography of the author " + i).build());
+            library.addBook(Library.Book.builder().title("title" + i)
+                    .authors(previous == null ? Set.of(author) : Set.of(previous, author)).build());
+            previous = author;
+        }
+        view = library.pin();
+        writer = new LibraryViewXmlWriter();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        view.close();
+        library.removesAuthors();
+    }
+
+    private static Marshaller fragmentMarshaller() throws JAXBException {
+        Marshaller marshaller = JaxbContextResolver.context().createMarshaller();
+        marshaller.setProperty(Marshaller.JAXB_FRAGMENT, true);
+        return marshaller;
+    }
+
+    @Benchmark
+    public byte[] jaxbMarshallerPerElement() throws JAXBException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (Library.Author author : view.authors())
+            fragmentMarshaller().marshal(new JAXBElement<>(AUTHOR, Library.Author.class, author), out);
+        for (Library.Book book : view.books())
+            fragmentMarshaller().marshal(new JAXBElement<>(BOOK, Library.Book.class, book), out);
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] jaxbReusedMarshaller() throws JAXBException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Marshaller marshaller = fragmentMarshaller();
+        for (Library.Author author : view.authors())
+            marshaller.marshal(new JAXBElement<>(AUTHOR, Library.Author.class, author), out);
+        for (Library.Book book : view.books())
+            marshaller.marshal(new JAXBElement<>(BOOK, Library.Book.class, book), out);
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] staxEncoder() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        XmlEncoder encoder = new XmlEncoder();
+        for (Library.Author author : view.authors())
+            out.write(encoder.encode(author, false));
+        for (Library.Book book : view.books())
+            out.write(encoder.encode(book, false));
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] cachedFragments() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.writeTo(view, LibraryView.class, LibraryView.class, null, MediaType.TEXT_XML_TYPE, null, out);
+        return out.toByteArray();
+    }
+}
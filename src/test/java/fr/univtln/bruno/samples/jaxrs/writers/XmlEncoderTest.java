@@ -0,0 +1,61 @@
+package fr.univtln.bruno.samples.jaxrs.writers;
+
+import fr.univtln.bruno.samples.jaxrs.model.Library;
+import jakarta.xml.bind.JAXBElement;
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Marshaller;
+import org.junit.Test;
+
+import javax.xml.namespace.QName;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+public class XmlEncoderTest {
+    private final Library.Book book = Library.Book.builder().id(2).title("Fables & <Contes>").build();
+    private final Library.Author author = Library.Author.builder().id(1).name("La Fontaine").firstname("Jean")
+            .books(Set.of(book)).build();
+
+    private static String marshal(Object element) throws JAXBException {
+        Marshaller marshaller = JaxbContextResolver.context().createMarshaller();
+        marshaller.setProperty(Marshaller.JAXB_FRAGMENT, true);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        marshaller.marshal(element, out);
+        //JAXB declares the namespaces of the context on each fragment even if they are not used.
+        return out.toString(StandardCharsets.UTF_8).replace(" xmlns:xs=\"http://www.w3.org/2001/XMLSchema\"", "");
+    }
+
+    private static String element(String name, Object value, Class<?> type) throws JAXBException {
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        JAXBElement<?> element = new JAXBElement(new QName(name), type, value);
+        return marshal(element).replace(" xmlns:ebjax=\"" + XmlEncoder.NAMESPACE + "\"", "");
+    }
+
+    private static String string(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void elementsAreTheOnesOfJaxb() throws IOException, JAXBException {
+        XmlEncoder encoder = new XmlEncoder();
+        book.setAuthors(Set.of(author));
+
+        assertEquals(element("author", author, Library.Author.class),
+                string(encoder.encode(author, false)));
+        assertEquals(element("book", book, Library.Book.class),
+                string(encoder.encode(book, false)));
+        assertEquals(marshal(author), string(encoder.encode(author, true)));
+        assertEquals(marshal(book), string(encoder.encode(book, true)));
+    }
+
+    @Test
+    public void missingValuesHaveNoElement() throws IOException, JAXBException {
+        Library.Author unknown = Library.Author.builder().id(3).name("Anonyme").build();
+        assertEquals(marshal(unknown), string(new XmlEncoder().encode(unknown, true)));
+        assertEquals("<ebjax:author xmlns:ebjax=\"" + XmlEncoder.NAMESPACE + "\" id=\"Author-3\"><name>Anonyme</name></ebjax:author>",
+                string(new XmlEncoder().encode(unknown, true)));
+    }
+}